@@ -0,0 +1,58 @@
+/*
+ *  Copyright 2024 Dataport. All rights reserved. Developed as part of the MERLOT project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package eu.merloteducation.s3library.service;
+
+import eu.merloteducation.s3library.backend.AwsV1StorageBackend;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+
+/**
+ * Creates storage clients for the benchmarks that work on an in-memory S3 stand-in behind a configurable latency.
+ */
+final class BenchmarkStorage {
+    static final String BUCKET = "merlot-storage-benchmark";
+
+    private BenchmarkStorage() {
+    }
+
+    static StorageClient createClient(long latencyMicros) throws StorageClientCreationException {
+
+        return createClient(new StorageClientProperties(), latencyMicros);
+    }
+
+    static StorageClient createClient(StorageClientProperties properties, long latencyMicros)
+        throws StorageClientCreationException {
+
+        StorageClient client = new StorageClient("accessKey", "secret", "example.com", "de", "S3SignerType", BUCKET,
+            "benchmark", properties);
+        AmazonS3Fake s3Fake = new AmazonS3Fake();
+        for (AmazonS3Fake.Operation operation : AmazonS3Fake.Operation.values()) {
+            s3Fake.setLatency(operation, Duration.ofNanos(latencyMicros * 1000));
+        }
+        ReflectionTestUtils.setField(client, "backend", new AwsV1StorageBackend(s3Fake, BUCKET));
+        return client;
+    }
+
+    static byte[] createContent(int size) {
+
+        byte[] content = new byte[size];
+        for (int i = 0; i < size; i++) {
+            content[i] = (byte) (i % 251);
+        }
+        return content;
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ *  Copyright 2024 Dataport. All rights reserved. Developed as part of the MERLOT project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package eu.merloteducation.s3library.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Composition of storage keys from scope and item key and the reverse mapping applied to every listed item.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KeyCompositionBenchmark {
+    private StorageClient storageClient;
+
+    private String composedKey;
+
+    private String scope;
+
+    @Setup(Level.Trial)
+    public void setup() throws StorageClientCreationException {
+
+        storageClient = BenchmarkStorage.createClient(0);
+        scope = storageClient.getComposedKey("Contract:1234-5678", "");
+        composedKey = storageClient.getComposedKey("Contract:1234-5678", "contract-document.pdf");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+
+        storageClient.close();
+    }
+
+    @Benchmark
+    public String composeKey() {
+
+        return storageClient.getComposedKey("Contract:1234-5678", "contract-document.pdf");
+    }
+
+    @Benchmark
+    public String removePrefix() {
+
+        return storageClient.removePrefix(composedKey, scope);
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ *  Copyright 2024 Dataport. All rights reserved. Developed as part of the MERLOT project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package eu.merloteducation.s3library.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Listing of a scope including the mapping of the listed objects to item keys, with and without the listing cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ListItemsBenchmark {
+    @Param({ "100", "1000", "10000" })
+    public int itemCount;
+
+    @Param({ "0", "1000" })
+    public long latencyMicros;
+
+    @Param({ "false", "true" })
+    public boolean listingCache;
+
+    private StorageClient storageClient;
+
+    @Setup(Level.Trial)
+    public void setup() throws StorageClientCreationException, StorageClientException {
+
+        StorageClientProperties properties = new StorageClientProperties();
+        properties.getListingCache().setEnabled(listingCache);
+        storageClient = BenchmarkStorage.createClient(properties, latencyMicros);
+        byte[] content = BenchmarkStorage.createContent(16);
+        for (int i = 0; i < itemCount; i++) {
+            storageClient.pushItem("benchmark:01", String.format("item-%06d", i), content);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+
+        storageClient.close();
+    }
+
+    @Benchmark
+    public List<String> listItems() throws StorageClientException {
+
+        return storageClient.listItems("benchmark:01");
+    }
+}
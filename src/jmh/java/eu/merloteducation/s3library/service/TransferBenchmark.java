@@ -0,0 +1,80 @@
+/*
+ *  Copyright 2024 Dataport. All rights reserved. Developed as part of the MERLOT project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package eu.merloteducation.s3library.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single threaded throughput of getItem and pushItem across item sizes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransferBenchmark {
+    @Param({ "1024", "65536", "1048576", "16777216" })
+    public int itemSize;
+
+    @Param({ "0", "1000" })
+    public long latencyMicros;
+
+    private StorageClient storageClient;
+
+    private byte[] content;
+
+    @Setup(Level.Trial)
+    public void setup() throws StorageClientCreationException, StorageClientException {
+
+        storageClient = BenchmarkStorage.createClient(latencyMicros);
+        content = BenchmarkStorage.createContent(itemSize);
+        storageClient.pushItem("benchmark:01", "item", content);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+
+        storageClient.close();
+    }
+
+    @Benchmark
+    public byte[] getItem() throws IOException, StorageClientException {
+
+        return storageClient.getItem("benchmark:01", "item");
+    }
+
+    @Benchmark
+    public void pushItem() throws StorageClientException {
+
+        storageClient.pushItem("benchmark:01", "pushed", content);
+    }
+}
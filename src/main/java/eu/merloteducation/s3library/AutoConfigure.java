@@ -16,11 +16,14 @@
 
 package eu.merloteducation.s3library;
 
+import eu.merloteducation.s3library.service.StorageClientProperties;
 import org.springframework.boot.autoconfigure.AutoConfiguration;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.ComponentScan;
 
 @AutoConfiguration
 @ComponentScan
+@EnableConfigurationProperties(StorageClientProperties.class)
 public class AutoConfigure {
     // intentionally left empty
 }
\ No newline at end of file
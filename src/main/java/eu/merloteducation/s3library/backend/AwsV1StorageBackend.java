@@ -0,0 +1,408 @@
+/*
+ *  Copyright 2024 Dataport. All rights reserved. Developed as part of the MERLOT project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package eu.merloteducation.s3library.backend;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.AmazonWebServiceRequest;
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.Request;
+import com.amazonaws.Response;
+import com.amazonaws.SdkClientException;
+import com.amazonaws.auth.AWSStaticCredentialsProvider;
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.client.builder.AwsClientBuilder;
+import com.amazonaws.metrics.RequestMetricCollector;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.AmazonS3ClientBuilder;
+import com.amazonaws.services.s3.Headers;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CopyObjectRequest;
+import com.amazonaws.services.s3.model.CopyObjectResult;
+import com.amazonaws.services.s3.model.CopyPartRequest;
+import com.amazonaws.services.s3.model.CopyPartResult;
+import com.amazonaws.services.s3.model.DeleteObjectRequest;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest;
+import com.amazonaws.services.s3.model.GetObjectMetadataRequest;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
+import com.amazonaws.services.s3.model.MultiObjectDeleteException;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.amazonaws.util.AWSRequestMetrics;
+import com.amazonaws.util.TimingInfo;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Storage backend on the blocking client of the AWS SDK for Java 1.x.
+ */
+public class AwsV1StorageBackend implements StorageBackend {
+    private final AmazonS3 s3Client;
+
+    private final String bucket;
+
+    private final ConnectionPoolStats connectionPoolStats;
+
+    private volatile RequestMetricCollector metricCollector;
+
+    /**
+     * Create a backend on the given client.
+     *
+     * @param s3Client client to use
+     * @param bucket bucket
+     */
+    public AwsV1StorageBackend(AmazonS3 s3Client, String bucket) {
+
+        this(s3Client, bucket, null);
+    }
+
+    private AwsV1StorageBackend(AmazonS3 s3Client, String bucket, ConnectionPoolStats connectionPoolStats) {
+
+        this.s3Client = s3Client;
+        this.bucket = bucket;
+        this.connectionPoolStats = connectionPoolStats;
+    }
+
+    /**
+     * Create a backend with a new client for the given credentials, endpoint and client configuration.
+     *
+     * @param accessKey access key
+     * @param secret secret
+     * @param serviceEndpoint service endpoint
+     * @param signingRegion signing region
+     * @param clientConfiguration client configuration
+     * @param bucket bucket
+     * @return backend
+     * @throws StorageBackendException if the client cannot be created
+     */
+    public static AwsV1StorageBackend create(String accessKey, String secret, String serviceEndpoint,
+        String signingRegion, ClientConfiguration clientConfiguration, String bucket) {
+
+        BasicAWSCredentials awsCredentials = new BasicAWSCredentials(accessKey, secret);
+        ConnectionPoolStats connectionPoolStats = new ConnectionPoolStats();
+        try {
+            return new AwsV1StorageBackend(AmazonS3ClientBuilder.standard()
+                .withCredentials(new AWSStaticCredentialsProvider(awsCredentials))
+                .withEndpointConfiguration(new AwsClientBuilder.EndpointConfiguration(serviceEndpoint, signingRegion))
+                .withClientConfiguration(clientConfiguration).build(), bucket, connectionPoolStats);
+        } catch (IllegalArgumentException | SdkClientException exception) {
+            throw new StorageBackendException(exception.getMessage(), 0, null, exception);
+        }
+    }
+
+    @Override
+    public StorageObject getObject(String key, ObjectReadOptions options) {
+
+        GetObjectRequest request = new GetObjectRequest(this.bucket, key);
+        if (options.range() != null && options.range().isSuffix()) {
+            // the SDK only supports ranges with a start
+            request.putCustomRequestHeader(Headers.RANGE, options.range().toHeaderValue());
+        } else if (options.range() != null) {
+            request.withRange(options.range().start(), options.range().end());
+        }
+        if (options.ifMatch() != null) {
+            request.withMatchingETagConstraint(options.ifMatch());
+        }
+        if (options.ifNoneMatch() != null) {
+            request.withNonmatchingETagConstraint(options.ifNoneMatch());
+        }
+
+        S3Object object;
+        try {
+            object = s3Client.getObject(collect(request));
+        } catch (SdkClientException exception) {
+            throw translate(exception);
+        }
+        if (object == null) {
+            // the SDK does not tell which constraint failed
+            if (options.ifMatch() == null) {
+                throw new StorageBackendException("The item was not modified.", 304, "NotModified");
+            }
+            throw new StorageBackendException("The item was modified.", 412, "PreconditionFailed");
+        }
+
+        ObjectMetadata metadata = object.getObjectMetadata();
+        long size = options.range() != null && metadata.getInstanceLength() > 0 ? metadata.getInstanceLength()
+            : metadata.getContentLength();
+        return new StorageObject(toInfo(key, size, metadata), metadata.getContentLength(),
+            object.getObjectContent(), object.getObjectContent()::abort);
+    }
+
+    @Override
+    public StorageObjectInfo headObject(String key) {
+
+        try {
+            ObjectMetadata metadata = s3Client.getObjectMetadata(collect(new GetObjectMetadataRequest(this.bucket,
+                key)));
+            return toInfo(key, metadata.getContentLength(), metadata);
+        } catch (SdkClientException exception) {
+            throw translate(exception);
+        }
+    }
+
+    @Override
+    public boolean objectExists(String key) {
+
+        try {
+            s3Client.getObjectMetadata(collect(new GetObjectMetadataRequest(this.bucket, key)));
+            return true;
+        } catch (AmazonServiceException exception) {
+            if (exception.getStatusCode() == 404) {
+                return false;
+            }
+            throw translate(exception);
+        } catch (SdkClientException exception) {
+            throw translate(exception);
+        }
+    }
+
+    @Override
+    public String putObject(String key, InputStream content, long contentLength, ObjectWriteOptions options) {
+
+        try {
+            return s3Client.putObject(collect(new PutObjectRequest(this.bucket, key, content,
+                toMetadata(contentLength, options)))).getETag();
+        } catch (SdkClientException exception) {
+            throw translate(exception);
+        }
+    }
+
+    @Override
+    public ObjectListingPage listObjects(String prefix, String startAfter, String continuationToken, int maxKeys) {
+
+        ListObjectsV2Result result;
+        try {
+            result = s3Client.listObjectsV2(collect(new ListObjectsV2Request().withBucketName(this.bucket)
+                .withPrefix(prefix).withStartAfter(startAfter).withContinuationToken(continuationToken)
+                .withMaxKeys(maxKeys)));
+        } catch (SdkClientException exception) {
+            throw translate(exception);
+        }
+        return new ObjectListingPage(result.getObjectSummaries().stream().map(
+            summary -> new StorageObjectInfo(summary.getKey(), summary.getSize(), summary.getETag(),
+                summary.getLastModified() == null ? null : summary.getLastModified().toInstant(), null,
+                summary.getStorageClass(), null)).toList(),
+            result.isTruncated() ? result.getNextContinuationToken() : null);
+    }
+
+    @Override
+    public String copyObject(String sourceKey, String key, String ifMatch) {
+
+        CopyObjectRequest request = new CopyObjectRequest(this.bucket, sourceKey, this.bucket, key);
+        if (ifMatch != null) {
+            request.withMatchingETagConstraint(ifMatch);
+        }
+        CopyObjectResult result;
+        try {
+            result = s3Client.copyObject(collect(request));
+        } catch (SdkClientException exception) {
+            throw translate(exception);
+        }
+        if (result == null) {
+            // the SDK reports a failed constraint of the source object with an empty result
+            throw new StorageBackendException("The source object does not match the ETag.", 412,
+                "PreconditionFailed");
+        }
+        return result.getETag();
+    }
+
+    @Override
+    public void deleteObject(String key) {
+
+        try {
+            s3Client.deleteObject(collect(new DeleteObjectRequest(this.bucket, key)));
+        } catch (SdkClientException exception) {
+            throw translate(exception);
+        }
+    }
+
+    @Override
+    public Map<String, String> deleteObjects(List<String> keys) {
+
+        Map<String, String> failures = new LinkedHashMap<>();
+        try {
+            s3Client.deleteObjects(collect(
+                new DeleteObjectsRequest(this.bucket).withKeys(keys.toArray(new String[0])).withQuiet(true)));
+        } catch (MultiObjectDeleteException exception) {
+            exception.getErrors().forEach(error -> failures.put(error.getKey(),
+                error.getMessage() != null ? error.getMessage() : String.valueOf(error.getCode())));
+        } catch (SdkClientException exception) {
+            throw translate(exception);
+        }
+        return failures;
+    }
+
+    @Override
+    public String createMultipartUpload(String key, ObjectWriteOptions options) {
+
+        ObjectMetadata metadata = toMetadata(-1, options);
+        try {
+            return s3Client.initiateMultipartUpload(collect(new InitiateMultipartUploadRequest(this.bucket, key,
+                metadata))).getUploadId();
+        } catch (SdkClientException exception) {
+            throw translate(exception);
+        }
+    }
+
+    @Override
+    public String uploadPart(String key, String uploadId, int partNumber, InputStream content, long contentLength) {
+
+        try {
+            return s3Client.uploadPart(collect(new UploadPartRequest().withBucketName(this.bucket).withKey(key)
+                .withUploadId(uploadId).withPartNumber(partNumber).withInputStream(content)
+                .withPartSize(contentLength))).getETag();
+        } catch (SdkClientException exception) {
+            throw translate(exception);
+        }
+    }
+
+    @Override
+    public String copyPart(String key, String uploadId, int partNumber, String sourceKey, ByteRange range,
+        String ifMatch) {
+
+        CopyPartRequest request = new CopyPartRequest().withSourceBucketName(this.bucket).withSourceKey(sourceKey)
+            .withDestinationBucketName(this.bucket).withDestinationKey(key).withUploadId(uploadId)
+            .withPartNumber(partNumber).withFirstByte(range.start()).withLastByte(range.end());
+        if (ifMatch != null) {
+            request.withMatchingETagConstraint(ifMatch);
+        }
+        CopyPartResult result;
+        try {
+            result = s3Client.copyPart(collect(request));
+        } catch (SdkClientException exception) {
+            throw translate(exception);
+        }
+        if (result == null) {
+            throw new StorageBackendException("The source object does not match the ETag.", 412,
+                "PreconditionFailed");
+        }
+        return result.getETag();
+    }
+
+    @Override
+    public void completeMultipartUpload(String key, String uploadId, List<String> partETags) {
+
+        List<PartETag> parts = new ArrayList<>(partETags.size());
+        for (int i = 0; i < partETags.size(); i++) {
+            parts.add(new PartETag(i + 1, partETags.get(i)));
+        }
+        try {
+            s3Client.completeMultipartUpload(collect(new CompleteMultipartUploadRequest(this.bucket, key, uploadId,
+                parts)));
+        } catch (SdkClientException exception) {
+            throw translate(exception);
+        }
+    }
+
+    @Override
+    public void abortMultipartUpload(String key, String uploadId) {
+
+        try {
+            s3Client.abortMultipartUpload(collect(new AbortMultipartUploadRequest(this.bucket, key, uploadId)));
+        } catch (SdkClientException exception) {
+            throw translate(exception);
+        }
+    }
+
+    @Override
+    public void close() {
+
+        s3Client.shutdown();
+    }
+
+    private static ObjectMetadata toMetadata(long contentLength, ObjectWriteOptions options) {
+
+        ObjectMetadata metadata = new ObjectMetadata();
+        if (contentLength >= 0) {
+            metadata.setContentLength(contentLength);
+        }
+        if (options.contentType() != null) {
+            metadata.setContentType(options.contentType());
+        }
+        metadata.setUserMetadata(new LinkedHashMap<>(options.userMetadata()));
+        return metadata;
+    }
+
+    private static StorageObjectInfo toInfo(String key, long size, ObjectMetadata metadata) {
+
+        return new StorageObjectInfo(key, size, metadata.getETag(),
+            metadata.getLastModified() == null ? null : metadata.getLastModified().toInstant(),
+            metadata.getContentType(), metadata.getStorageClass(), metadata.getUserMetadata());
+    }
+
+    private static StorageBackendException translate(SdkClientException exception) {
+
+        if (exception instanceof AmazonServiceException serviceException) {
+            return new StorageBackendException(exception.getMessage(), serviceException.getStatusCode(),
+                serviceException.getErrorCode(), exception);
+        }
+        return new StorageBackendException(exception.getMessage(), 0, null, exception);
+    }
+
+    @Override
+    public ConnectionPoolStats collectConnectionPoolStats() {
+
+        if (connectionPoolStats != null && metricCollector == null) {
+            metricCollector = new ConnectionPoolCollector(connectionPoolStats);
+        }
+        return connectionPoolStats;
+    }
+
+    private <T extends AmazonWebServiceRequest> T collect(T request) {
+
+        // without a collector the SDK does not record request metrics at all
+        RequestMetricCollector collector = metricCollector;
+        if (collector != null) {
+            request.setRequestMetricCollector(collector);
+        }
+        return request;
+    }
+
+    /**
+     * Collects the connection pool counters the SDK records with every request that has a metric collector set.
+     */
+    private static class ConnectionPoolCollector extends RequestMetricCollector {
+        private final ConnectionPoolStats connectionPoolStats;
+
+        ConnectionPoolCollector(ConnectionPoolStats connectionPoolStats) {
+
+            this.connectionPoolStats = connectionPoolStats;
+        }
+
+        @Override
+        public void collectMetrics(Request<?> request, Response<?> response) {
+
+            TimingInfo timingInfo = request.getAWSRequestMetrics().getTimingInfo();
+            Number leased = timingInfo.getCounter(AWSRequestMetrics.Field.HttpClientPoolLeasedCount.name());
+            Number available = timingInfo.getCounter(AWSRequestMetrics.Field.HttpClientPoolAvailableCount.name());
+            Number pending = timingInfo.getCounter(AWSRequestMetrics.Field.HttpClientPoolPendingCount.name());
+            if (leased != null && available != null && pending != null) {
+                connectionPoolStats.update(leased.intValue(), available.intValue(), pending.intValue());
+            }
+        }
+    }
+}
@@ -0,0 +1,371 @@
+/*
+ *  Copyright 2024 Dataport. All rights reserved. Developed as part of the MERLOT project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package eu.merloteducation.s3library.backend;
+
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.awscore.AwsRequest;
+import software.amazon.awssdk.awscore.exception.AwsServiceException;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.core.async.AsyncRequestBody;
+import software.amazon.awssdk.core.async.AsyncResponseTransformer;
+import software.amazon.awssdk.core.async.BlockingInputStreamAsyncRequestBody;
+import software.amazon.awssdk.core.client.config.ClientOverrideConfiguration;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.http.HttpMetric;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
+import software.amazon.awssdk.metrics.MetricCollection;
+import software.amazon.awssdk.metrics.MetricPublisher;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.CompletedMultipartUpload;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.Delete;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
+import software.amazon.awssdk.services.s3.model.ObjectIdentifier;
+import software.amazon.awssdk.services.s3.model.S3Error;
+
+import java.io.InputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+/**
+ * Storage backend on the asynchronous client of the AWS SDK for Java 2.x with a non-blocking HTTP client. The
+ * backend operations wait for the results of the asynchronous requests, but the requests themselves share a small
+ * number of event loop threads and a pool of persistent connections.
+ */
+public class AwsV2StorageBackend implements StorageBackend {
+    private final S3AsyncClient s3Client;
+
+    private final String bucket;
+
+    private final ConnectionPoolStats connectionPoolStats;
+
+    private volatile MetricPublisher metricPublisher;
+
+    /**
+     * Create a backend on the given client.
+     *
+     * @param s3Client client to use
+     * @param bucket bucket
+     */
+    public AwsV2StorageBackend(S3AsyncClient s3Client, String bucket) {
+
+        this(s3Client, bucket, null);
+    }
+
+    private AwsV2StorageBackend(S3AsyncClient s3Client, String bucket, ConnectionPoolStats connectionPoolStats) {
+
+        this.s3Client = s3Client;
+        this.bucket = bucket;
+        this.connectionPoolStats = connectionPoolStats;
+    }
+
+    /**
+     * Create a backend with a new client for the given credentials and endpoint. Requests are always signed with
+     * signature version 4.
+     *
+     * @param accessKey access key
+     * @param secret secret
+     * @param serviceEndpoint service endpoint, https is assumed if no scheme is given
+     * @param signingRegion signing region
+     * @param httpClientBuilder builder of the HTTP client
+     * @param overrideConfiguration client configuration such as the request timeouts
+     * @param bucket bucket
+     * @return backend
+     * @throws StorageBackendException if the client cannot be created
+     */
+    public static AwsV2StorageBackend create(String accessKey, String secret, String serviceEndpoint,
+        String signingRegion, NettyNioAsyncHttpClient.Builder httpClientBuilder,
+        ClientOverrideConfiguration overrideConfiguration, String bucket) {
+
+        String endpoint = serviceEndpoint.contains("://") ? serviceEndpoint : "https://" + serviceEndpoint;
+        ConnectionPoolStats connectionPoolStats = new ConnectionPoolStats();
+        try {
+            return new AwsV2StorageBackend(S3AsyncClient.builder()
+                .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create(accessKey, secret)))
+                .endpointOverride(URI.create(endpoint)).region(Region.of(signingRegion))
+                .httpClientBuilder(httpClientBuilder).overrideConfiguration(overrideConfiguration)
+                .build(), bucket, connectionPoolStats);
+        } catch (IllegalArgumentException | SdkException exception) {
+            throw new StorageBackendException(exception.getMessage(), 0, null, exception);
+        }
+    }
+
+    @Override
+    public StorageObject getObject(String key, ObjectReadOptions options) {
+
+        GetObjectRequest.Builder request = GetObjectRequest.builder().bucket(this.bucket).key(key);
+        if (options.range() != null) {
+            request.range(options.range().toHeaderValue());
+        }
+        if (options.ifMatch() != null) {
+            request.ifMatch(options.ifMatch());
+        }
+        if (options.ifNoneMatch() != null) {
+            request.ifNoneMatch(options.ifNoneMatch());
+        }
+
+        ResponseInputStream<GetObjectResponse> content = join(
+            () -> s3Client.getObject(collect(request).build(), AsyncResponseTransformer.toBlockingInputStream()));
+        GetObjectResponse response = content.response();
+        long size = getObjectSize(response);
+        return new StorageObject(
+            new StorageObjectInfo(key, size, StorageObjectInfo.unquote(response.eTag()), response.lastModified(),
+                response.contentType(), response.storageClassAsString(), response.metadata()),
+            response.contentLength(), content, content::abort);
+    }
+
+    @Override
+    public StorageObjectInfo headObject(String key) {
+
+        HeadObjectResponse response = join(() -> s3Client.headObject(request -> collect(request).bucket(this.bucket)
+            .key(key)));
+        return new StorageObjectInfo(key, response.contentLength(), StorageObjectInfo.unquote(response.eTag()),
+            response.lastModified(), response.contentType(), response.storageClassAsString(), response.metadata());
+    }
+
+    @Override
+    public boolean objectExists(String key) {
+
+        try {
+            headObject(key);
+            return true;
+        } catch (StorageBackendException exception) {
+            if (exception.getStatusCode() == 404) {
+                return false;
+            }
+            throw exception;
+        }
+    }
+
+    @Override
+    public String putObject(String key, InputStream content, long contentLength, ObjectWriteOptions options) {
+
+        BlockingInputStreamAsyncRequestBody body = AsyncRequestBody.forBlockingInputStream(contentLength);
+        CompletableFuture<String> eTag = start(() -> s3Client.putObject(request -> collect(request).bucket(this.bucket)
+                .key(key).contentLength(contentLength).contentType(options.contentType())
+                .metadata(options.userMetadata()), body)
+            .thenApply(response -> StorageObjectInfo.unquote(response.eTag())));
+        writeBody(body, content, contentLength, eTag);
+        return join(() -> eTag);
+    }
+
+    @Override
+    public ObjectListingPage listObjects(String prefix, String startAfter, String continuationToken, int maxKeys) {
+
+        ListObjectsV2Response response = join(() -> s3Client.listObjectsV2(request -> collect(request)
+            .bucket(this.bucket).prefix(prefix).startAfter(startAfter).continuationToken(continuationToken)
+            .maxKeys(maxKeys)));
+        return new ObjectListingPage(response.contents().stream().map(
+                object -> new StorageObjectInfo(object.key(), object.size(), StorageObjectInfo.unquote(object.eTag()),
+                    object.lastModified(), null, object.storageClassAsString(), null)).toList(),
+            Boolean.TRUE.equals(response.isTruncated()) ? response.nextContinuationToken() : null);
+    }
+
+    @Override
+    public String copyObject(String sourceKey, String key, String ifMatch) {
+
+        return StorageObjectInfo.unquote(join(() -> s3Client.copyObject(request -> collect(request)
+            .sourceBucket(this.bucket).sourceKey(sourceKey).destinationBucket(this.bucket).destinationKey(key)
+            .copySourceIfMatch(ifMatch))).copyObjectResult().eTag());
+    }
+
+    @Override
+    public void deleteObject(String key) {
+
+        join(() -> s3Client.deleteObject(request -> collect(request).bucket(this.bucket).key(key)));
+    }
+
+    @Override
+    public Map<String, String> deleteObjects(List<String> keys) {
+
+        Delete delete = Delete.builder().quiet(true)
+            .objects(keys.stream().map(key -> ObjectIdentifier.builder().key(key).build()).toList()).build();
+        Map<String, String> failures = new LinkedHashMap<>();
+        for (S3Error error : join(() -> s3Client.deleteObjects(request -> collect(request).bucket(this.bucket)
+            .delete(delete))).errors()) {
+            failures.put(error.key(), error.message() != null ? error.message() : String.valueOf(error.code()));
+        }
+        return failures;
+    }
+
+    @Override
+    public String createMultipartUpload(String key, ObjectWriteOptions options) {
+
+        return join(() -> s3Client.createMultipartUpload(request -> collect(request).bucket(this.bucket).key(key)
+            .contentType(options.contentType()).metadata(options.userMetadata()))).uploadId();
+    }
+
+    @Override
+    public String uploadPart(String key, String uploadId, int partNumber, InputStream content, long contentLength) {
+
+        BlockingInputStreamAsyncRequestBody body = AsyncRequestBody.forBlockingInputStream(contentLength);
+        CompletableFuture<String> eTag = start(() -> s3Client.uploadPart(request -> collect(request).bucket(this.bucket)
+            .key(key).uploadId(uploadId).partNumber(partNumber).contentLength(contentLength), body)
+            .thenApply(response -> response.eTag()));
+        writeBody(body, content, contentLength, eTag);
+        return join(() -> eTag);
+    }
+
+    @Override
+    public String copyPart(String key, String uploadId, int partNumber, String sourceKey, ByteRange range,
+        String ifMatch) {
+
+        return join(() -> s3Client.uploadPartCopy(request -> collect(request).sourceBucket(this.bucket)
+            .sourceKey(sourceKey).destinationBucket(this.bucket).destinationKey(key).uploadId(uploadId)
+            .partNumber(partNumber).copySourceRange(range.toHeaderValue()).copySourceIfMatch(ifMatch)))
+            .copyPartResult().eTag();
+    }
+
+    @Override
+    public void completeMultipartUpload(String key, String uploadId, List<String> partETags) {
+
+        List<CompletedPart> parts = new ArrayList<>(partETags.size());
+        for (int i = 0; i < partETags.size(); i++) {
+            parts.add(CompletedPart.builder().partNumber(i + 1).eTag(partETags.get(i)).build());
+        }
+        join(() -> s3Client.completeMultipartUpload(request -> collect(request).bucket(this.bucket).key(key)
+            .uploadId(uploadId).multipartUpload(CompletedMultipartUpload.builder().parts(parts).build())));
+    }
+
+    @Override
+    public void abortMultipartUpload(String key, String uploadId) {
+
+        join(() -> s3Client.abortMultipartUpload(request -> collect(request).bucket(this.bucket).key(key)
+            .uploadId(uploadId)));
+    }
+
+    @Override
+    public void close() {
+
+        s3Client.close();
+    }
+
+    private static void writeBody(BlockingInputStreamAsyncRequestBody body, InputStream content, long contentLength,
+        CompletableFuture<?> request) {
+
+        try {
+            body.writeInputStream(new BoundedInputStream(content, contentLength, false));
+        } catch (RuntimeException exception) {
+            request.cancel(true);
+            throw new StorageBackendException(exception.getMessage(), 0, null, exception);
+        }
+    }
+
+    private static long getObjectSize(GetObjectResponse response) {
+
+        // a ranged response reports the size of the whole object after the slash, e.g. "bytes 0-99/1234"
+        String contentRange = response.contentRange();
+        if (contentRange != null && contentRange.lastIndexOf('/') >= 0) {
+            String size = contentRange.substring(contentRange.lastIndexOf('/') + 1);
+            if (!size.equals("*")) {
+                return Long.parseLong(size);
+            }
+        }
+        return response.contentLength();
+    }
+
+    private static <T> CompletableFuture<T> start(Supplier<CompletableFuture<T>> request) {
+
+        try {
+            return request.get();
+        } catch (SdkException exception) {
+            throw translate(exception);
+        }
+    }
+
+    private static <T> T join(Supplier<CompletableFuture<T>> request) {
+
+        try {
+            return start(request).join();
+        } catch (CompletionException exception) {
+            throw translate(exception.getCause());
+        }
+    }
+
+    private static StorageBackendException translate(Throwable exception) {
+
+        if (exception instanceof AwsServiceException serviceException) {
+            String errorCode = serviceException.awsErrorDetails() == null ? null
+                : serviceException.awsErrorDetails().errorCode();
+            return new StorageBackendException(exception.getMessage(), serviceException.statusCode(), errorCode,
+                exception);
+        }
+        return new StorageBackendException(exception.getMessage(), 0, null, exception);
+    }
+
+    @Override
+    public ConnectionPoolStats collectConnectionPoolStats() {
+
+        if (connectionPoolStats != null && metricPublisher == null) {
+            metricPublisher = new ConnectionPoolPublisher(connectionPoolStats);
+        }
+        return connectionPoolStats;
+    }
+
+    private <B extends AwsRequest.Builder> B collect(B request) {
+
+        // without a publisher the SDK does not collect request metrics at all
+        MetricPublisher publisher = metricPublisher;
+        if (publisher != null) {
+            request.overrideConfiguration(override -> override.addMetricPublisher(publisher));
+        }
+        return request;
+    }
+
+    /**
+     * Collects the concurrency metrics the Netty HTTP client records with every request attempt that has a publisher
+     * set.
+     */
+    private static class ConnectionPoolPublisher implements MetricPublisher {
+        private final ConnectionPoolStats connectionPoolStats;
+
+        ConnectionPoolPublisher(ConnectionPoolStats connectionPoolStats) {
+
+            this.connectionPoolStats = connectionPoolStats;
+        }
+
+        @Override
+        public void publish(MetricCollection metricCollection) {
+
+            List<Integer> leased = metricCollection.metricValues(HttpMetric.LEASED_CONCURRENCY);
+            List<Integer> available = metricCollection.metricValues(HttpMetric.AVAILABLE_CONCURRENCY);
+            List<Integer> pending = metricCollection.metricValues(HttpMetric.PENDING_CONCURRENCY_ACQUIRES);
+            if (!leased.isEmpty() && !available.isEmpty() && !pending.isEmpty()) {
+                connectionPoolStats.update(leased.get(leased.size() - 1), available.get(available.size() - 1),
+                    pending.get(pending.size() - 1));
+            }
+            metricCollection.children().forEach(this::publish);
+        }
+
+        @Override
+        public void close() {
+
+            // nothing to release
+        }
+    }
+}
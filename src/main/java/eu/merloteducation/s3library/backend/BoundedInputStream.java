@@ -0,0 +1,98 @@
+/*
+ *  Copyright 2024 Dataport. All rights reserved. Developed as part of the MERLOT project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package eu.merloteducation.s3library.backend;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Input stream that provides at most a given number of bytes of the underlying stream.
+ */
+public class BoundedInputStream extends FilterInputStream {
+    private final boolean closeUnderlying;
+
+    private long remaining;
+
+    /**
+     * Create a stream on the given number of bytes of the underlying stream.
+     *
+     * @param in underlying stream
+     * @param limit maximum number of bytes to provide
+     * @param closeUnderlying whether closing this stream closes the underlying stream
+     */
+    public BoundedInputStream(InputStream in, long limit, boolean closeUnderlying) {
+
+        super(in);
+        this.remaining = limit;
+        this.closeUnderlying = closeUnderlying;
+    }
+
+    @Override
+    public int read() throws IOException {
+
+        if (remaining <= 0) {
+            return -1;
+        }
+        int value = super.read();
+        if (value != -1) {
+            remaining--;
+        }
+        return value;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+
+        if (remaining <= 0) {
+            return -1;
+        }
+        int count = super.read(b, off, (int) Math.min(len, remaining));
+        if (count != -1) {
+            remaining -= count;
+        }
+        return count;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+
+        long skipped = super.skip(Math.min(n, remaining));
+        remaining -= skipped;
+        return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+
+        return (int) Math.min(super.available(), remaining);
+    }
+
+    @Override
+    public boolean markSupported() {
+
+        return false;
+    }
+
+    @Override
+    public void close() throws IOException {
+
+        if (closeUnderlying) {
+            super.close();
+        }
+    }
+}
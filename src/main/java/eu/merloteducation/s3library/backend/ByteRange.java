@@ -0,0 +1,66 @@
+/*
+ *  Copyright 2024 Dataport. All rights reserved. Developed as part of the MERLOT project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package eu.merloteducation.s3library.backend;
+
+/**
+ * Inclusive range of bytes within an object. A suffix range of the last bytes of an object has a negative start of
+ * minus its length and an end of -1, see {@link #suffix(long)}.
+ *
+ * @param start offset of the first byte
+ * @param end offset of the last byte
+ */
+public record ByteRange(long start, long end) {
+    /**
+     * Create a range of the last bytes of an object. If the object is shorter, the range covers the whole object.
+     *
+     * @param length number of bytes at the end of the object, must be positive
+     * @return suffix range
+     */
+    public static ByteRange suffix(long length) {
+
+        return new ByteRange(-length, -1);
+    }
+
+    /**
+     * Check whether this range is a suffix range of the last bytes of an object.
+     *
+     * @return true if this is a suffix range
+     */
+    public boolean isSuffix() {
+
+        return start < 0;
+    }
+
+    /**
+     * Get the value of the HTTP Range header requesting this range.
+     *
+     * @return range header value
+     */
+    public String toHeaderValue() {
+
+        return isSuffix() ? "bytes=" + start : "bytes=" + start + "-" + end;
+    }
+    /**
+     * Get the number of bytes within the range.
+     *
+     * @return length of the range
+     */
+    public long length() {
+
+        return end - start + 1;
+    }
+}
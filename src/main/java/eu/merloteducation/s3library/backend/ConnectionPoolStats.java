@@ -0,0 +1,67 @@
+/*
+ *  Copyright 2024 Dataport. All rights reserved. Developed as part of the MERLOT project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package eu.merloteducation.s3library.backend;
+
+/**
+ * Utilization of the HTTP connection pool of a storage backend as reported by the SDK with the most recent request.
+ * The SDKs only sample the pool when a request acquires a connection, so the values describe the pool at the time
+ * of the last request.
+ */
+public class ConnectionPoolStats {
+    private volatile int leased;
+
+    private volatile int available;
+
+    private volatile int pending;
+
+    /**
+     * Get the number of connections in use by requests.
+     *
+     * @return leased connections
+     */
+    public int getLeased() {
+
+        return leased;
+    }
+
+    /**
+     * Get the number of idle connections that can be reused.
+     *
+     * @return available connections
+     */
+    public int getAvailable() {
+
+        return available;
+    }
+
+    /**
+     * Get the number of requests waiting for a connection.
+     *
+     * @return pending requests
+     */
+    public int getPending() {
+
+        return pending;
+    }
+
+    void update(int leased, int available, int pending) {
+
+        this.leased = leased;
+        this.available = available;
+        this.pending = pending;
+    }
+}
@@ -0,0 +1,535 @@
+/*
+ *  Copyright 2024 Dataport. All rights reserved. Developed as part of the MERLOT project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package eu.merloteducation.s3library.backend;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * Storage backend on the local file system for development and tests. Objects are stored as files below
+ * {@code <rootPath>/<bucket>/objects}, their metadata as properties files below {@code <rootPath>/<bucket>/metadata}.
+ * As keys are mapped to paths, a key cannot be both an object and the prefix of another object.
+ */
+public class FileSystemStorageBackend implements StorageBackend {
+    private static final String USER_METADATA_PREFIX = "user.";
+
+    private final Path objectsPath;
+
+    private final Path metadataPath;
+
+    private final Path uploadsPath;
+
+    private final Path temporaryPath;
+
+    /**
+     * Create a backend that stores the objects of the given bucket below the given root path.
+     *
+     * @param rootPath root path of all buckets
+     * @param bucket bucket
+     * @throws StorageBackendException if the directories of the bucket cannot be created
+     */
+    public FileSystemStorageBackend(Path rootPath, String bucket) {
+
+        Path bucketPath = rootPath.resolve(bucket);
+        this.objectsPath = bucketPath.resolve("objects");
+        this.metadataPath = bucketPath.resolve("metadata");
+        this.uploadsPath = bucketPath.resolve("uploads");
+        this.temporaryPath = bucketPath.resolve("tmp");
+        try {
+            Files.createDirectories(objectsPath);
+            Files.createDirectories(metadataPath);
+            Files.createDirectories(uploadsPath);
+            Files.createDirectories(temporaryPath);
+        } catch (IOException exception) {
+            throw translate(exception);
+        }
+    }
+
+    @Override
+    public StorageObject getObject(String key, ObjectReadOptions options) {
+
+        StorageObjectInfo info = headObject(key);
+        if (options.ifMatch() != null && !options.ifMatch().equals(info.eTag())) {
+            throw new StorageBackendException("At least one of the pre-conditions you specified did not hold", 412,
+                "PreconditionFailed");
+        }
+        if (options.ifNoneMatch() != null && options.ifNoneMatch().equals(info.eTag())) {
+            throw new StorageBackendException("Not Modified", 304, "NotModified");
+        }
+
+        long start = 0;
+        long length = info.size();
+        if (options.range() != null) {
+            ByteRange range = options.range();
+            if (range.isSuffix()) {
+                range = new ByteRange(Math.max(0, info.size() + range.start()), info.size() - 1);
+            }
+            if (range.start() >= info.size()) {
+                throw new StorageBackendException("The requested range is not satisfiable", 416, "InvalidRange");
+            }
+            start = range.start();
+            length = Math.min(range.end(), info.size() - 1) - start + 1;
+        }
+
+        try {
+            SeekableByteChannel channel = Files.newByteChannel(getObjectPath(key), StandardOpenOption.READ);
+            channel.position(start);
+            InputStream content = new BoundedInputStream(Channels.newInputStream(channel), length, true);
+            return new StorageObject(info, length, content, () -> closeQuietly(content));
+        } catch (IOException exception) {
+            throw translate(exception);
+        }
+    }
+
+    @Override
+    public StorageObjectInfo headObject(String key) {
+
+        Path objectPath = getObjectPath(key);
+        try {
+            Properties metadata = readMetadata(key);
+            BasicFileAttributes attributes = Files.readAttributes(objectPath, BasicFileAttributes.class);
+            String eTag = metadata.getProperty("eTag");
+            String version = metadata.getProperty("version");
+            if (eTag == null || version != null && !version.equals(getVersion(attributes))) {
+                // the metadata is written after the content, so it may not describe the current content yet
+                eTag = hash(objectPath);
+            }
+            return new StorageObjectInfo(key, attributes.size(), eTag, attributes.lastModifiedTime().toInstant(),
+                metadata.getProperty("contentType"), "STANDARD", getUserMetadata(metadata));
+        } catch (IOException exception) {
+            throw translate(exception);
+        }
+    }
+
+    @Override
+    public boolean objectExists(String key) {
+
+        return Files.isRegularFile(getObjectPath(key));
+    }
+
+    @Override
+    public String putObject(String key, InputStream content, long contentLength, ObjectWriteOptions options) {
+
+        Path objectPath = getObjectPath(key);
+        Path temporaryFile = temporaryPath.resolve(UUID.randomUUID().toString());
+        try {
+            MessageDigest digest = createDigest();
+            try (InputStream digestStream = new DigestInputStream(
+                new BoundedInputStream(content, contentLength, false), digest);
+                OutputStream target = Files.newOutputStream(temporaryFile)) {
+                if (digestStream.transferTo(target) != contentLength) {
+                    throw new StorageBackendException(
+                        "The request body ended before the declared content length was reached.", 400,
+                        "IncompleteBody");
+                }
+            }
+            String eTag = HexFormat.of().formatHex(digest.digest());
+            String version = getVersion(Files.readAttributes(temporaryFile, BasicFileAttributes.class));
+            moveIntoPlace(temporaryFile, objectPath);
+            writeMetadata(key, eTag, version, options);
+            return eTag;
+        } catch (IOException exception) {
+            throw translate(exception);
+        } finally {
+            deleteQuietly(temporaryFile);
+        }
+    }
+
+    @Override
+    public ObjectListingPage listObjects(String prefix, String startAfter, String continuationToken, int maxKeys) {
+
+        String after = continuationToken != null ? continuationToken : startAfter;
+        int directoryEnd = prefix.lastIndexOf('/');
+        Path directory = directoryEnd < 0 ? objectsPath : objectsPath.resolve(prefix.substring(0, directoryEnd));
+        if (!Files.isDirectory(directory)) {
+            return new ObjectListingPage(List.of(), null);
+        }
+
+        List<String> keys;
+        try (Stream<Path> paths = Files.walk(directory)) {
+            keys = paths.filter(Files::isRegularFile).map(this::getKey).filter(key -> key.startsWith(prefix))
+                .filter(key -> after == null || key.compareTo(after) > 0).sorted().limit(maxKeys + 1L).toList();
+        } catch (IOException | UncheckedIOException exception) {
+            throw translate(exception instanceof UncheckedIOException unchecked ? unchecked.getCause()
+                : (IOException) exception);
+        }
+
+        List<StorageObjectInfo> objects = new ArrayList<>();
+        for (String key : keys.subList(0, Math.min(maxKeys, keys.size()))) {
+            try {
+                StorageObjectInfo info = headObject(key);
+                objects.add(new StorageObjectInfo(key, info.size(), info.eTag(), info.lastModified(), null,
+                    info.storageClass(), null));
+            } catch (StorageBackendException exception) {
+                // deleted since the directory was walked
+            }
+        }
+        return new ObjectListingPage(objects, keys.size() > maxKeys ? keys.get(maxKeys - 1) : null);
+    }
+
+    @Override
+    public String copyObject(String sourceKey, String key, String ifMatch) {
+
+        try (StorageObject source = getObject(sourceKey, ObjectReadOptions.none().withIfMatch(ifMatch))) {
+            StorageObjectInfo info = source.getInfo();
+            return putObject(key, source.getContent(), source.getContentLength(),
+                new ObjectWriteOptions(info.contentType(), info.userMetadata()));
+        } catch (IOException exception) {
+            throw translate(exception);
+        }
+    }
+
+    @Override
+    public void deleteObject(String key) {
+
+        try {
+            Files.deleteIfExists(getObjectPath(key));
+            Files.deleteIfExists(getMetadataPath(key));
+        } catch (IOException exception) {
+            throw translate(exception);
+        }
+    }
+
+    @Override
+    public Map<String, String> deleteObjects(List<String> keys) {
+
+        Map<String, String> failures = new LinkedHashMap<>();
+        for (String key : keys) {
+            try {
+                deleteObject(key);
+            } catch (StorageBackendException exception) {
+                failures.put(key, exception.getMessage());
+            }
+        }
+        return failures;
+    }
+
+    @Override
+    public String createMultipartUpload(String key, ObjectWriteOptions options) {
+
+        String uploadId = UUID.randomUUID().toString();
+        Path uploadPath = uploadsPath.resolve(uploadId);
+        Properties upload = new Properties();
+        upload.setProperty("key", key);
+        putWriteOptions(upload, options);
+        try {
+            Files.createDirectories(uploadPath);
+            try (OutputStream target = Files.newOutputStream(uploadPath.resolve("upload.properties"))) {
+                upload.store(target, null);
+            }
+        } catch (IOException exception) {
+            throw translate(exception);
+        }
+        return uploadId;
+    }
+
+    @Override
+    public String uploadPart(String key, String uploadId, int partNumber, InputStream content, long contentLength) {
+
+        Path uploadPath = getUploadPath(key, uploadId);
+        Path temporaryFile = temporaryPath.resolve(UUID.randomUUID().toString());
+        try {
+            MessageDigest digest = createDigest();
+            try (InputStream digestStream = new DigestInputStream(
+                new BoundedInputStream(content, contentLength, false), digest);
+                OutputStream target = Files.newOutputStream(temporaryFile)) {
+                digestStream.transferTo(target);
+            }
+            moveIntoPlace(temporaryFile, uploadPath.resolve(String.valueOf(partNumber)));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (IOException exception) {
+            throw translate(exception);
+        } finally {
+            deleteQuietly(temporaryFile);
+        }
+    }
+
+    @Override
+    public String copyPart(String key, String uploadId, int partNumber, String sourceKey, ByteRange range,
+        String ifMatch) {
+
+        try (StorageObject source = getObject(sourceKey, ObjectReadOptions.none().withRange(range)
+            .withIfMatch(ifMatch))) {
+            return uploadPart(key, uploadId, partNumber, source.getContent(), source.getContentLength());
+        } catch (IOException exception) {
+            throw translate(exception);
+        }
+    }
+
+    @Override
+    public void completeMultipartUpload(String key, String uploadId, List<String> partETags) {
+
+        Path uploadPath = getUploadPath(key, uploadId);
+        Path temporaryFile = temporaryPath.resolve(UUID.randomUUID().toString());
+        try {
+            MessageDigest digest = createDigest();
+            try (OutputStream target = Files.newOutputStream(temporaryFile)) {
+                for (int i = 0; i < partETags.size(); i++) {
+                    Path partPath = uploadPath.resolve(String.valueOf(i + 1));
+                    if (!Files.isRegularFile(partPath)) {
+                        throw new StorageBackendException("One or more of the specified parts could not be found.",
+                            400, "InvalidPart");
+                    }
+                    Files.copy(partPath, target);
+                    digest.update(HexFormat.of().parseHex(partETags.get(i)));
+                }
+            }
+
+            Properties upload = readProperties(uploadPath.resolve("upload.properties"));
+            String eTag = HexFormat.of().formatHex(digest.digest()) + "-" + partETags.size();
+            String version = getVersion(Files.readAttributes(temporaryFile, BasicFileAttributes.class));
+            moveIntoPlace(temporaryFile, getObjectPath(key));
+            writeMetadata(key, eTag, version,
+                new ObjectWriteOptions(upload.getProperty("contentType"), getUserMetadata(upload)));
+            deleteUpload(uploadPath);
+        } catch (IOException exception) {
+            throw translate(exception);
+        } finally {
+            deleteQuietly(temporaryFile);
+        }
+    }
+
+    @Override
+    public void abortMultipartUpload(String key, String uploadId) {
+
+        try {
+            deleteUpload(getUploadPath(key, uploadId));
+        } catch (IOException exception) {
+            throw translate(exception);
+        }
+    }
+
+    @Override
+    public void close() {
+
+        // no resources to release
+    }
+
+    private Path getObjectPath(String key) {
+
+        return resolve(objectsPath, key);
+    }
+
+    private Path getMetadataPath(String key) {
+
+        return resolve(metadataPath, key + ".properties");
+    }
+
+    private Path getUploadPath(String key, String uploadId) {
+
+        Path uploadPath = uploadsPath.resolve(uploadId).normalize();
+        if (!uploadPath.getParent().equals(uploadsPath) || !Files.isDirectory(uploadPath)
+            || !key.equals(readPropertiesQuietly(uploadPath.resolve("upload.properties")).getProperty("key"))) {
+            throw new StorageBackendException("The specified upload does not exist.", 404, "NoSuchUpload");
+        }
+        return uploadPath;
+    }
+
+    private Path resolve(Path basePath, String key) {
+
+        for (String segment : key.split("/", -1)) {
+            if (segment.isEmpty() || segment.equals(".") || segment.equals("..")) {
+                throw new StorageBackendException(String.format("The key %s is not supported by the file system.",
+                    key), 400, "InvalidKey");
+            }
+        }
+        return basePath.resolve(key);
+    }
+
+    private String getKey(Path objectPath) {
+
+        StringBuilder key = new StringBuilder();
+        for (Path segment : objectsPath.relativize(objectPath)) {
+            if (!key.isEmpty()) {
+                key.append('/');
+            }
+            key.append(segment);
+        }
+        return key.toString();
+    }
+
+    private Properties readMetadata(String key) throws IOException {
+
+        Path path = getMetadataPath(key);
+        if (!Files.isRegularFile(getObjectPath(key))) {
+            throw new NoSuchFileException(key);
+        }
+        return Files.isRegularFile(path) ? readProperties(path) : new Properties();
+    }
+
+    private void writeMetadata(String key, String eTag, String version, ObjectWriteOptions options)
+        throws IOException {
+
+        Properties metadata = new Properties();
+        metadata.setProperty("eTag", eTag);
+        metadata.setProperty("version", version);
+        putWriteOptions(metadata, options);
+
+        Path path = getMetadataPath(key);
+        Path temporaryFile = temporaryPath.resolve(UUID.randomUUID().toString());
+        try {
+            try (OutputStream target = Files.newOutputStream(temporaryFile)) {
+                metadata.store(target, null);
+            }
+            moveIntoPlace(temporaryFile, path);
+        } finally {
+            deleteQuietly(temporaryFile);
+        }
+    }
+
+    private static void putWriteOptions(Properties properties, ObjectWriteOptions options) {
+
+        if (options.contentType() != null) {
+            properties.setProperty("contentType", options.contentType());
+        }
+        options.userMetadata().forEach((name, value) -> properties.setProperty(USER_METADATA_PREFIX + name, value));
+    }
+
+    private static Map<String, String> getUserMetadata(Properties properties) {
+
+        Map<String, String> userMetadata = new LinkedHashMap<>();
+        properties.stringPropertyNames().stream().filter(name -> name.startsWith(USER_METADATA_PREFIX))
+            .forEach(name -> userMetadata.put(name.substring(USER_METADATA_PREFIX.length()),
+                properties.getProperty(name)));
+        return userMetadata;
+    }
+
+    private static Properties readProperties(Path path) throws IOException {
+
+        Properties properties = new Properties();
+        try (InputStream source = Files.newInputStream(path)) {
+            properties.load(source);
+        }
+        return properties;
+    }
+
+    private static Properties readPropertiesQuietly(Path path) {
+
+        try {
+            return readProperties(path);
+        } catch (IOException exception) {
+            return new Properties();
+        }
+    }
+
+    private static String getVersion(BasicFileAttributes attributes) {
+
+        // a moved file keeps its attributes, a replaced file gets new ones
+        return attributes.size() + "/" + attributes.lastModifiedTime() + "/" + attributes.fileKey();
+    }
+
+    private static String hash(Path path) throws IOException {
+
+        // the ETag of a multipart upload cannot be restored from its content, the plain digest identifies it as well
+        MessageDigest digest = createDigest();
+        try (InputStream content = new DigestInputStream(Files.newInputStream(path), digest)) {
+            content.transferTo(OutputStream.nullOutputStream());
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static void moveIntoPlace(Path source, Path target) throws IOException {
+
+        Files.createDirectories(target.getParent());
+        if (Files.isDirectory(target)) {
+            // an atomic move onto a directory only fails with an unspecific error
+            throw new FileAlreadyExistsException(target.toString(), null, "The key is the prefix of other objects");
+        }
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException exception) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static void deleteUpload(Path uploadPath) throws IOException {
+
+        try (Stream<Path> paths = Files.list(uploadPath)) {
+            for (Path path : paths.toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+        Files.deleteIfExists(uploadPath);
+    }
+
+    private static void deleteQuietly(Path path) {
+
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException ignored) {
+            // temporary files are cleaned up on a best effort basis
+        }
+    }
+
+    private static void closeQuietly(InputStream stream) {
+
+        try {
+            stream.close();
+        } catch (IOException ignored) {
+            // aborting a file read cannot fail in a relevant way
+        }
+    }
+
+    private static MessageDigest createDigest() {
+
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException exception) {
+            throw new IllegalStateException(exception);
+        }
+    }
+
+    private static StorageBackendException translate(IOException exception) {
+
+        if (exception instanceof NoSuchFileException) {
+            return new StorageBackendException("The specified key does not exist.", 404, "NoSuchKey", exception);
+        }
+        if (exception instanceof AccessDeniedException) {
+            return new StorageBackendException("Access Denied", 403, "AccessDenied", exception);
+        }
+        if (exception instanceof FileAlreadyExistsException || exception instanceof DirectoryNotEmptyException) {
+            // a key that is both an object and the prefix of another object, retrying does not resolve it
+            return new StorageBackendException(exception.getMessage(), 409, "Conflict", exception);
+        }
+        return new StorageBackendException(exception.getMessage(), 0, null, exception);
+    }
+}
@@ -0,0 +1,32 @@
+/*
+ *  Copyright 2024 Dataport. All rights reserved. Developed as part of the MERLOT project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package eu.merloteducation.s3library.backend;
+
+import java.util.List;
+
+/**
+ * One page of an object listing.
+ *
+ * @param objects objects of the page in lexicographical order of their keys
+ * @param nextContinuationToken token to request the next page with, null if this is the last page
+ */
+public record ObjectListingPage(List<StorageObjectInfo> objects, String nextContinuationToken) {
+    public boolean isTruncated() {
+
+        return nextContinuationToken != null;
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ *  Copyright 2024 Dataport. All rights reserved. Developed as part of the MERLOT project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package eu.merloteducation.s3library.backend;
+
+/**
+ * Options of reading an object from a {@link StorageBackend}.
+ *
+ * @param range range of bytes to read, null to read the whole object
+ * @param ifMatch ETag the object must have, null to read any version of the object
+ * @param ifNoneMatch ETag the object must not have, the read fails with status 304 if it still has it
+ */
+public record ObjectReadOptions(ByteRange range, String ifMatch, String ifNoneMatch) {
+    private static final ObjectReadOptions NONE = new ObjectReadOptions(null, null, null);
+
+    /**
+     * Get options to read the whole object unconditionally.
+     *
+     * @return options
+     */
+    public static ObjectReadOptions none() {
+
+        return NONE;
+    }
+
+    public ObjectReadOptions withRange(ByteRange range) {
+
+        return new ObjectReadOptions(range, ifMatch, ifNoneMatch);
+    }
+
+    public ObjectReadOptions withIfMatch(String ifMatch) {
+
+        return new ObjectReadOptions(range, ifMatch, ifNoneMatch);
+    }
+
+    public ObjectReadOptions withIfNoneMatch(String ifNoneMatch) {
+
+        return new ObjectReadOptions(range, ifMatch, ifNoneMatch);
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ *  Copyright 2024 Dataport. All rights reserved. Developed as part of the MERLOT project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package eu.merloteducation.s3library.backend;
+
+import java.util.Map;
+
+/**
+ * Options of writing an object to a {@link StorageBackend}.
+ *
+ * @param contentType content type of the object, may be null
+ * @param userMetadata user defined metadata of the object
+ */
+public record ObjectWriteOptions(String contentType, Map<String, String> userMetadata) {
+    private static final ObjectWriteOptions NONE = new ObjectWriteOptions(null, Map.of());
+
+    public ObjectWriteOptions {
+
+        userMetadata = userMetadata == null ? Map.of() : Map.copyOf(userMetadata);
+    }
+
+    /**
+     * Get options to write an object without content type and user defined metadata.
+     *
+     * @return options
+     */
+    public static ObjectWriteOptions none() {
+
+        return NONE;
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ *  Copyright 2024 Dataport. All rights reserved. Developed as part of the MERLOT project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package eu.merloteducation.s3library.backend;
+
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Storage the StorageClient operates on, bound to a single bucket. Implementations translate the operations to a
+ * concrete transport and report all failures as {@link StorageBackendException}.
+ */
+public interface StorageBackend extends AutoCloseable {
+    /**
+     * Read an object.
+     *
+     * @param key key of the object
+     * @param options options of the read
+     * @return content of the object, must be closed by the caller
+     * @throws StorageBackendException with status 304 if the object still has the ETag given as ifNoneMatch, with
+     *         status 412 if it does not have the ETag given as ifMatch
+     */
+    StorageObject getObject(String key, ObjectReadOptions options);
+
+    /**
+     * Read the metadata of an object without its content.
+     *
+     * @param key key of the object
+     * @return metadata of the object
+     */
+    StorageObjectInfo headObject(String key);
+
+    /**
+     * Check whether an object exists.
+     *
+     * @param key key of the object
+     * @return true if the object exists
+     */
+    boolean objectExists(String key);
+
+    /**
+     * Write an object, streaming its content without buffering it.
+     *
+     * @param key key of the object
+     * @param content stream providing the content, it is not closed
+     * @param contentLength exact number of bytes to read from the stream
+     * @param options options of the write
+     * @return ETag of the written object
+     */
+    String putObject(String key, InputStream content, long contentLength, ObjectWriteOptions options);
+
+    /**
+     * List one page of the objects below a prefix.
+     *
+     * @param prefix prefix of the keys
+     * @param startAfter key after which the listing starts, may be null
+     * @param continuationToken token of a previous page to continue the listing with, may be null
+     * @param maxKeys maximum number of objects of the page
+     * @return page of objects
+     */
+    ObjectListingPage listObjects(String prefix, String startAfter, String continuationToken, int maxKeys);
+
+    /**
+     * Copy an object of up to 5GB within the bucket with a single request, without transferring its content
+     * through the client. The copy keeps the content type and user metadata of the source object.
+     *
+     * @param sourceKey key of the object to copy
+     * @param key key of the copy
+     * @param ifMatch ETag the source object must have, may be null
+     * @return ETag of the copy
+     * @throws StorageBackendException with status 412 if the source object does not have the ETag given as ifMatch
+     */
+    String copyObject(String sourceKey, String key, String ifMatch);
+
+    /**
+     * Delete an object.
+     *
+     * @param key key of the object
+     */
+    void deleteObject(String key);
+
+    /**
+     * Delete up to 1000 objects with a single request.
+     *
+     * @param keys keys of the objects
+     * @return keys of the objects that could not be deleted, mapped to the reason of the failure
+     */
+    Map<String, String> deleteObjects(List<String> keys);
+
+    /**
+     * Start a multipart upload of an object.
+     *
+     * @param key key of the object
+     * @param options options of the write
+     * @return id of the upload
+     */
+    String createMultipartUpload(String key, ObjectWriteOptions options);
+
+    /**
+     * Upload a part of a multipart upload.
+     *
+     * @param key key of the object
+     * @param uploadId id of the upload
+     * @param partNumber number of the part, starting at 1
+     * @param content stream providing the content of the part, it is not closed
+     * @param contentLength exact number of bytes to read from the stream
+     * @return ETag of the part
+     */
+    String uploadPart(String key, String uploadId, int partNumber, InputStream content, long contentLength);
+
+    /**
+     * Copy a byte range of another object as part of a multipart upload, without transferring its content through
+     * the client.
+     *
+     * @param key key of the object
+     * @param uploadId id of the upload
+     * @param partNumber number of the part, starting at 1
+     * @param sourceKey key of the object to copy from
+     * @param range range of the source object to copy
+     * @param ifMatch ETag the source object must have, may be null
+     * @return ETag of the part
+     * @throws StorageBackendException with status 412 if the source object does not have the ETag given as ifMatch
+     */
+    String copyPart(String key, String uploadId, int partNumber, String sourceKey, ByteRange range, String ifMatch);
+
+    /**
+     * Complete a multipart upload.
+     *
+     * @param key key of the object
+     * @param uploadId id of the upload
+     * @param partETags ETags of all parts ordered by their part number
+     */
+    void completeMultipartUpload(String key, String uploadId, List<String> partETags);
+
+    /**
+     * Abort a multipart upload and discard its uploaded parts.
+     *
+     * @param key key of the object
+     * @param uploadId id of the upload
+     */
+    void abortMultipartUpload(String key, String uploadId);
+
+    /**
+     * Release the resources of the backend.
+     */
+    @Override
+    void close();
+
+    /**
+     * Start measuring the utilization of the connection pool of the backend. Backends may only measure their pool
+     * after this is called, since the measurement adds work to every request.
+     *
+     * @return connection pool statistics or null if the backend does not pool connections
+     */
+    default ConnectionPoolStats collectConnectionPoolStats() {
+
+        return null;
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ *  Copyright 2024 Dataport. All rights reserved. Developed as part of the MERLOT project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package eu.merloteducation.s3library.backend;
+
+import lombok.Getter;
+
+/**
+ * Thrown by a {@link StorageBackend} if an operation fails. Carries the HTTP status code and error code reported by
+ * the storage where available.
+ */
+@Getter
+public class StorageBackendException extends RuntimeException {
+    /**
+     * HTTP status code of the failed request, 0 if the request failed on the client side.
+     */
+    private final int statusCode;
+
+    /**
+     * Error code reported by the storage, may be null.
+     */
+    private final String errorCode;
+
+    /**
+     * Number of attempts of the failed request, including retries.
+     */
+    private final int attempts;
+
+    public StorageBackendException(String message, int statusCode, String errorCode, Throwable cause, int attempts) {
+
+        super(message, cause);
+        this.statusCode = statusCode;
+        this.errorCode = errorCode;
+        this.attempts = attempts;
+    }
+
+    public StorageBackendException(String message, int statusCode, String errorCode, Throwable cause) {
+
+        this(message, statusCode, errorCode, cause, 1);
+    }
+
+    public StorageBackendException(String message, int statusCode, String errorCode) {
+
+        this(message, statusCode, errorCode, null);
+    }
+
+    /**
+     * Get a copy of this exception that reports the given number of attempts.
+     *
+     * @param attempts number of attempts of the failed request
+     * @return exception with the same failure and the given number of attempts
+     */
+    public StorageBackendException withAttempts(int attempts) {
+
+        StorageBackendException exception = new StorageBackendException(getMessage(), statusCode, errorCode,
+            getCause(), attempts);
+        exception.setStackTrace(getStackTrace());
+        return exception;
+    }
+}
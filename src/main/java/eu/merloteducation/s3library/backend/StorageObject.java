@@ -0,0 +1,71 @@
+/*
+ *  Copyright 2024 Dataport. All rights reserved. Developed as part of the MERLOT project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package eu.merloteducation.s3library.backend;
+
+import lombok.Getter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Content of an object read from a {@link StorageBackend}, holding the underlying connection until it is closed or
+ * aborted.
+ */
+public class StorageObject implements Closeable {
+    /**
+     * Metadata of the whole object, independent of the range that was read.
+     */
+    @Getter
+    private final StorageObjectInfo info;
+
+    /**
+     * Number of bytes provided by the content stream.
+     */
+    @Getter
+    private final long contentLength;
+
+    /**
+     * Stream providing the content that was read.
+     */
+    @Getter
+    private final InputStream content;
+
+    private final Runnable abortAction;
+
+    public StorageObject(StorageObjectInfo info, long contentLength, InputStream content, Runnable abortAction) {
+
+        this.info = info;
+        this.contentLength = contentLength;
+        this.content = content;
+        this.abortAction = abortAction;
+    }
+
+    /**
+     * Abort the underlying connection without reading the remaining content.
+     */
+    public void abort() {
+
+        abortAction.run();
+    }
+
+    @Override
+    public void close() throws IOException {
+
+        content.close();
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ *  Copyright 2024 Dataport. All rights reserved. Developed as part of the MERLOT project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package eu.merloteducation.s3library.backend;
+
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * Metadata of an object in a {@link StorageBackend}. Listings only provide part of the metadata, the other fields are
+ * null or empty then.
+ *
+ * @param key key of the object
+ * @param size size of the object in bytes
+ * @param eTag ETag of the object without quotes
+ * @param lastModified time of the last modification, may be null
+ * @param contentType content type of the object, may be null
+ * @param storageClass storage class of the object, may be null
+ * @param userMetadata user defined metadata of the object
+ */
+public record StorageObjectInfo(String key, long size, String eTag, Instant lastModified, String contentType,
+                                String storageClass, Map<String, String> userMetadata) {
+    public StorageObjectInfo {
+
+        userMetadata = userMetadata == null ? Map.of() : Map.copyOf(userMetadata);
+    }
+
+    /**
+     * Remove the quotes S3 puts around ETags.
+     *
+     * @param eTag ETag with or without quotes
+     * @return ETag without quotes
+     */
+    static String unquote(String eTag) {
+
+        if (eTag != null && eTag.length() >= 2 && eTag.startsWith("\"") && eTag.endsWith("\"")) {
+            return eTag.substring(1, eTag.length() - 1);
+        }
+        return eTag;
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ *  Copyright 2024 Dataport. All rights reserved. Developed as part of the MERLOT project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package eu.merloteducation.s3library.metrics;
+
+import eu.merloteducation.s3library.service.StorageClientMetrics;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Records the operations of the storage client in the meter registry of the application if Micrometer is on the
+ * class path and a registry is available.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnClass(name = "io.micrometer.core.instrument.MeterRegistry")
+public class MetricsConfiguration {
+    @Bean
+    @ConditionalOnMissingBean
+    public StorageClientMetrics storageClientMetrics(ObjectProvider<MeterRegistry> meterRegistry) {
+
+        MeterRegistry registry = meterRegistry.getIfUnique();
+        return registry == null ? StorageClientMetrics.NONE : new MicrometerStorageClientMetrics(registry);
+    }
+}
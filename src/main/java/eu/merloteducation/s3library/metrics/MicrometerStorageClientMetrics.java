@@ -0,0 +1,107 @@
+/*
+ *  Copyright 2024 Dataport. All rights reserved. Developed as part of the MERLOT project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package eu.merloteducation.s3library.metrics;
+
+import eu.merloteducation.s3library.backend.ConnectionPoolStats;
+import eu.merloteducation.s3library.service.StorageClientMetrics;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Records the operations of a storage client in a Micrometer meter registry:
+ * <ul>
+ *     <li>{@code s3library.operations}: timer with percentile histogram per operation, outcome and exception</li>
+ *     <li>{@code s3library.operations.active}: gauge of the running operations per operation</li>
+ *     <li>{@code s3library.operations.errors}: counter of failed operations per operation and exception</li>
+ *     <li>{@code s3library.transfer}: distribution summary of the bytes per direction</li>
+ *     <li>{@code s3library.connections.leased}, {@code .available} and {@code .pending}: gauges of the connection
+ *     pool of the storage backend</li>
+ * </ul>
+ */
+public class MicrometerStorageClientMetrics implements StorageClientMetrics {
+    private static final String PREFIX = "s3library.";
+
+    private final MeterRegistry registry;
+
+    private final Map<String, AtomicInteger> activeOperations = new ConcurrentHashMap<>();
+
+    public MicrometerStorageClientMetrics(MeterRegistry registry) {
+
+        this.registry = registry;
+    }
+
+    @Override
+    public Sample start(String operation) {
+
+        AtomicInteger active = activeOperations.computeIfAbsent(operation,
+            key -> registry.gauge(PREFIX + "operations.active", Tags.of("operation", key), new AtomicInteger()));
+        active.incrementAndGet();
+        Timer.Sample timerSample = Timer.start(registry);
+        return failure -> {
+            active.decrementAndGet();
+            String exception = failure == null ? "none" : failure.getClass().getSimpleName();
+            timerSample.stop(Timer.builder(PREFIX + "operations")
+                .description("Duration of storage client operations")
+                .tag("operation", operation)
+                .tag("outcome", failure == null ? "success" : "error")
+                .tag("exception", exception)
+                .publishPercentileHistogram()
+                .register(registry));
+            if (failure != null) {
+                Counter.builder(PREFIX + "operations.errors")
+                    .description("Failed storage client operations")
+                    .tag("operation", operation)
+                    .tag("exception", exception)
+                    .register(registry)
+                    .increment();
+            }
+        };
+    }
+
+    @Override
+    public void recordTransfer(String direction, long bytes) {
+
+        DistributionSummary.builder(PREFIX + "transfer")
+            .description("Bytes transferred by storage client operations")
+            .baseUnit("bytes")
+            .tag("direction", direction)
+            .register(registry)
+            .record(bytes);
+    }
+
+    @Override
+    public void bindConnectionPool(ConnectionPoolStats connectionPoolStats) {
+
+        Gauge.builder(PREFIX + "connections.leased", connectionPoolStats, ConnectionPoolStats::getLeased)
+            .description("Connections of the storage backend in use by requests")
+            .register(registry);
+        Gauge.builder(PREFIX + "connections.available", connectionPoolStats, ConnectionPoolStats::getAvailable)
+            .description("Idle connections of the storage backend")
+            .register(registry);
+        Gauge.builder(PREFIX + "connections.pending", connectionPoolStats, ConnectionPoolStats::getPending)
+            .description("Requests waiting for a connection of the storage backend")
+            .register(registry);
+    }
+}
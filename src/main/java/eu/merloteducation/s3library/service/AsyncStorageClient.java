@@ -0,0 +1,397 @@
+/*
+ *  Copyright 2024 Dataport. All rights reserved. Developed as part of the MERLOT project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package eu.merloteducation.s3library.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Asynchronous companion of the {@link StorageClient}. Every operation runs on the configured executor and returns a
+ * future that completes with the result or exceptionally with the exception thrown by the storage client. By
+ * default, operations run on virtual threads if the runtime supports them, so fanning out to many operations does
+ * not occupy platform threads. The number of operations in flight at the same time is capped globally, operations
+ * beyond the cap wait in a queue until a running operation completes instead of occupying a thread of the executor.
+ */
+@Service
+public class AsyncStorageClient implements AutoCloseable {
+    private final StorageClient storageClient;
+
+    private final Executor executor;
+
+    private final ExecutorService ownedExecutor;
+
+    private final Semaphore inFlight;
+
+    private final Queue<PendingOperation<?>> pending = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Create an AsyncStorageClient object that runs the operations of the given storage client on the executor
+     * configured by the given properties.
+     *
+     * @param storageClient storage client to run the operations with
+     * @param properties tuning properties
+     * @throws StorageClientCreationException if the properties are invalid
+     */
+    @Autowired
+    public AsyncStorageClient(StorageClient storageClient, StorageClientProperties properties)
+        throws StorageClientCreationException {
+
+        if (properties.getAsync().getThreads() < 1) {
+            throw new StorageClientCreationException("The number of async threads must be at least 1.");
+        }
+        this.storageClient = storageClient;
+        this.inFlight = createInFlightLimit(properties.getAsync().getMaxInFlight());
+        this.ownedExecutor = createExecutor(properties.getAsync());
+        this.executor = ownedExecutor;
+    }
+
+    /**
+     * Create an AsyncStorageClient object that runs the operations of the given storage client on the given
+     * executor. The executor is not shut down when this client is closed.
+     *
+     * @param storageClient storage client to run the operations with
+     * @param executor executor to run the operations on
+     * @param maxInFlight maximum number of operations in flight at the same time
+     * @throws StorageClientCreationException if the maximum number of operations in flight is not positive
+     */
+    public AsyncStorageClient(StorageClient storageClient, Executor executor, int maxInFlight)
+        throws StorageClientCreationException {
+
+        this.storageClient = storageClient;
+        this.inFlight = createInFlightLimit(maxInFlight);
+        this.ownedExecutor = null;
+        this.executor = executor;
+    }
+
+    /**
+     * List items within the scope of the provided referenceId.
+     *
+     * @param referenceId scope of the items
+     * @return future list of items
+     */
+    public CompletableFuture<List<String>> listItems(String referenceId) {
+
+        return supply(() -> storageClient.listItems(referenceId));
+    }
+
+    /**
+     * List items within the scope of the provided referenceId with the metadata that the listing provides.
+     *
+     * @param referenceId scope of the items
+     * @return future list of items with their metadata
+     */
+    public CompletableFuture<List<ItemInfo>> listItemsWithMetadata(String referenceId) {
+
+        return supply(() -> storageClient.listItemsWithMetadata(referenceId));
+    }
+
+    /**
+     * Push an item with given file name to the provided scope.
+     *
+     * @param referenceId scope to push the item to
+     * @param fileName name of the item
+     * @param item item to push
+     * @return future that completes when the item is pushed
+     */
+    public CompletableFuture<Void> pushItem(String referenceId, String fileName, byte[] item) {
+
+        return supply(() -> {
+            storageClient.pushItem(referenceId, fileName, item);
+            return null;
+        });
+    }
+
+    /**
+     * Push multiple items to the provided scope, packing small items if packing is enabled.
+     *
+     * @param referenceId scope to push the items to
+     * @param items contents of the items by name
+     * @return future that completes when the items are pushed
+     */
+    public CompletableFuture<Void> pushItems(String referenceId, Map<String, byte[]> items) {
+
+        return supply(() -> {
+            storageClient.pushItems(referenceId, items);
+            return null;
+        });
+    }
+
+    /**
+     * Push an item with given file name and content type to the provided scope by streaming it from the given input
+     * stream. The input stream is not closed.
+     *
+     * @param referenceId scope to push the item to
+     * @param fileName name of the item
+     * @param item stream providing the content of the item
+     * @param contentLength exact number of bytes provided by the stream
+     * @param contentType content type of the item, may be null
+     * @return future that completes when the item is pushed
+     */
+    public CompletableFuture<Void> pushItem(String referenceId, String fileName, InputStream item,
+        long contentLength, String contentType) {
+
+        return supply(() -> {
+            storageClient.pushItem(referenceId, fileName, item, contentLength, contentType);
+            return null;
+        });
+    }
+
+    /**
+     * Get an item with given key from the provided scope.
+     *
+     * @param referenceId scope from where to get the item
+     * @param key key of the item
+     * @return future item
+     */
+    public CompletableFuture<byte[]> getItem(String referenceId, String key) {
+
+        return supply(() -> storageClient.getItem(referenceId, key));
+    }
+
+    /**
+     * Get the metadata of an item with given key from the provided scope.
+     *
+     * @param referenceId scope from where to get the item
+     * @param key key of the item
+     * @return future metadata of the item
+     */
+    public CompletableFuture<ItemInfo> getItemInfo(String referenceId, String key) {
+
+        return supply(() -> storageClient.getItemInfo(referenceId, key));
+    }
+
+    /**
+     * Get a range of an item with given key from the provided scope.
+     *
+     * @param referenceId scope from where to get the item
+     * @param key key of the item
+     * @param offset offset of the range within the item, negative to start that many bytes before its end
+     * @param length maximum length of the range
+     * @return future content of the range
+     */
+    public CompletableFuture<byte[]> getItemRange(String referenceId, String key, long offset, int length) {
+
+        return supply(() -> storageClient.getItemRange(referenceId, key, offset, length));
+    }
+
+    /**
+     * Download an item with given key from the provided scope into the given file.
+     *
+     * @param referenceId scope from where to get the item
+     * @param key key of the item
+     * @param target file to write the item to
+     * @return future number of downloaded bytes
+     */
+    public CompletableFuture<Long> downloadItem(String referenceId, String key, Path target) {
+
+        return supply(() -> storageClient.downloadItem(referenceId, key, target));
+    }
+
+    /**
+     * Copy an item to another key, possibly in another scope, with server-side copy requests.
+     *
+     * @param sourceReferenceId scope of the item to copy
+     * @param sourceKey key of the item to copy
+     * @param targetReferenceId scope to copy the item to
+     * @param targetKey key of the copy
+     * @return future that completes when the item is copied
+     */
+    public CompletableFuture<Void> copyItem(String sourceReferenceId, String sourceKey, String targetReferenceId,
+        String targetKey) {
+
+        return supply(() -> {
+            storageClient.copyItem(sourceReferenceId, sourceKey, targetReferenceId, targetKey);
+            return null;
+        });
+    }
+
+    /**
+     * Move an item to another key, possibly in another scope, with server-side copy requests.
+     *
+     * @param sourceReferenceId scope of the item to move
+     * @param sourceKey key of the item to move
+     * @param targetReferenceId scope to move the item to
+     * @param targetKey new key of the item
+     * @return future that completes when the item is moved
+     */
+    public CompletableFuture<Void> moveItem(String sourceReferenceId, String sourceKey, String targetReferenceId,
+        String targetKey) {
+
+        return supply(() -> {
+            storageClient.moveItem(sourceReferenceId, sourceKey, targetReferenceId, targetKey);
+            return null;
+        });
+    }
+
+    /**
+     * Copy all items of a scope into another scope with server-side copy requests.
+     *
+     * @param sourceReferenceId scope to copy the items from
+     * @param targetReferenceId scope to copy the items to
+     * @return future outcome per item
+     */
+    public CompletableFuture<BatchCopyResult> copyScope(String sourceReferenceId, String targetReferenceId) {
+
+        return supply(() -> storageClient.copyScope(sourceReferenceId, targetReferenceId));
+    }
+
+    /**
+     * Delete an item with given key from the provided scope.
+     *
+     * @param referenceId scope from where to delete the item
+     * @param key key of the item
+     * @return future that completes when the item is deleted
+     */
+    public CompletableFuture<Void> deleteItem(String referenceId, String key) {
+
+        return supply(() -> {
+            storageClient.deleteItem(referenceId, key);
+            return null;
+        });
+    }
+
+    /**
+     * Delete the items with given keys from the provided scope.
+     *
+     * @param referenceId scope from where to delete the items
+     * @param keys keys of the items
+     * @return future outcome per item
+     */
+    public CompletableFuture<BatchDeleteResult> deleteItems(String referenceId, Collection<String> keys) {
+
+        return supply(() -> storageClient.deleteItems(referenceId, keys));
+    }
+
+    /**
+     * Delete all items within the scope of the provided referenceId.
+     *
+     * @param referenceId scope to delete
+     * @return future outcome per item
+     */
+    public CompletableFuture<BatchDeleteResult> deleteScope(String referenceId) {
+
+        return supply(() -> storageClient.deleteScope(referenceId));
+    }
+
+    /**
+     * Shut down the executor if it was created by this client.
+     */
+    @Override
+    public void close() {
+
+        if (ownedExecutor != null) {
+            ownedExecutor.shutdown();
+        }
+    }
+
+    private <T> CompletableFuture<T> supply(StorageOperation<T> operation) {
+
+        CompletableFuture<T> result = new CompletableFuture<>();
+        pending.add(new PendingOperation<>(operation, result));
+        dispatch();
+        return result;
+    }
+
+    /**
+     * Submit queued operations to the executor while permits are available. Every submitted operation holds a
+     * permit until it completes and then dispatches the next queued operation.
+     */
+    private void dispatch() {
+
+        while (!pending.isEmpty() && inFlight.tryAcquire()) {
+            PendingOperation<?> operation = pending.poll();
+            if (operation == null) {
+                // another thread took the operation after the check
+                inFlight.release();
+                continue;
+            }
+            try {
+                executor.execute(() -> {
+                    try {
+                        operation.run();
+                    } finally {
+                        inFlight.release();
+                        dispatch();
+                    }
+                });
+            } catch (RejectedExecutionException exception) {
+                inFlight.release();
+                operation.result().completeExceptionally(exception);
+            }
+        }
+    }
+
+    private static Semaphore createInFlightLimit(int maxInFlight) throws StorageClientCreationException {
+
+        if (maxInFlight < 1) {
+            throw new StorageClientCreationException(
+                "The maximum number of operations in flight must be at least 1.");
+        }
+        return new Semaphore(maxInFlight);
+    }
+
+    private static ExecutorService createExecutor(StorageClientProperties.Async properties) {
+
+        if (properties.isVirtualThreads()) {
+            try {
+                // virtual threads are only available from Java 21 on, while the library is built for Java 17
+                return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException ignored) {
+                // fall back to platform threads
+            }
+        }
+
+        AtomicInteger threadCount = new AtomicInteger();
+        return Executors.newFixedThreadPool(properties.getThreads(), runnable -> {
+            Thread thread = new Thread(runnable, "s3-library-async-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @FunctionalInterface
+    private interface StorageOperation<T> {
+        T execute() throws Exception;
+    }
+
+    private record PendingOperation<T>(StorageOperation<T> operation, CompletableFuture<T> result) {
+        void run() {
+
+            try {
+                result.complete(operation.execute());
+            } catch (Throwable exception) {
+                // errors complete the future as well, a caller waiting on it would otherwise never return
+                result.completeExceptionally(exception);
+            }
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ *  Copyright 2024 Dataport. All rights reserved. Developed as part of the MERLOT project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package eu.merloteducation.s3library.service;
+
+import eu.merloteducation.s3library.backend.AwsV2StorageBackend;
+import eu.merloteducation.s3library.backend.StorageBackend;
+import io.netty.channel.ChannelOption;
+import org.springframework.util.ClassUtils;
+import software.amazon.awssdk.awscore.retry.AwsRetryStrategy;
+import software.amazon.awssdk.core.client.config.ClientOverrideConfiguration;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
+
+/**
+ * Translates the client properties into the transport configuration of the AWS SDK v2 backend and creates it. The
+ * SDK v2 is an optional dependency, so its classes are only referenced here and loaded once the backend is selected.
+ */
+final class AwsV2ClientTransport {
+    private static final String S3_ASYNC_CLIENT = "software.amazon.awssdk.services.s3.S3AsyncClient";
+
+    private static final String NETTY_HTTP_CLIENT = "software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient";
+
+    private AwsV2ClientTransport() {
+    }
+
+    /**
+     * Check whether the AWS SDK v2 backend can be used with the libraries on the class path.
+     *
+     * @return true if the backend is available
+     */
+    static boolean isAvailable() {
+
+        ClassLoader classLoader = AwsV2ClientTransport.class.getClassLoader();
+        return ClassUtils.isPresent(S3_ASYNC_CLIENT, classLoader) && ClassUtils.isPresent(NETTY_HTTP_CLIENT,
+            classLoader);
+    }
+
+    /**
+     * Create an AWS SDK v2 backend with a new client for the given credentials and endpoint.
+     *
+     * @param accessKey access key
+     * @param secret secret
+     * @param serviceEndpoint service endpoint
+     * @param signingRegion signing region
+     * @param bucket bucket
+     * @param properties storage client properties
+     * @return backend
+     */
+    static StorageBackend createBackend(String accessKey, String secret, String serviceEndpoint,
+        String signingRegion, String bucket, StorageClientProperties properties) {
+
+        return AwsV2StorageBackend.create(accessKey, secret, serviceEndpoint, signingRegion,
+            toHttpClientBuilder(properties.getClient()),
+            toOverrideConfiguration(properties.getClient(), properties.getRetry()), bucket);
+    }
+
+    /**
+     * Create the HTTP client builder of an AWS SDK v2 client.
+     *
+     * @param client client properties
+     * @return HTTP client builder
+     */
+    static NettyNioAsyncHttpClient.Builder toHttpClientBuilder(StorageClientProperties.Client client) {
+
+        NettyNioAsyncHttpClient.Builder builder = NettyNioAsyncHttpClient.builder()
+            .maxConcurrency(client.getMaxConnections())
+            .connectionMaxIdleTime(client.getConnectionMaxIdleTime())
+            .useIdleConnectionReaper(client.isIdleConnectionReaper())
+            .connectionTimeout(client.getConnectionTimeout())
+            .readTimeout(client.getSocketTimeout())
+            .writeTimeout(client.getSocketTimeout())
+            .tcpKeepAlive(client.isTcpKeepAlive());
+        if (!client.getConnectionTtl().isZero()) {
+            builder.connectionTimeToLive(client.getConnectionTtl());
+        }
+        if (client.getSocketSendBufferSize().toBytes() > 0) {
+            builder.putChannelOption(ChannelOption.SO_SNDBUF, (int) client.getSocketSendBufferSize().toBytes());
+        }
+        if (client.getSocketReceiveBufferSize().toBytes() > 0) {
+            builder.putChannelOption(ChannelOption.SO_RCVBUF, (int) client.getSocketReceiveBufferSize().toBytes());
+        }
+        return builder;
+    }
+
+    /**
+     * Create the override configuration of an AWS SDK v2 client carrying the request timeouts. The SDK does not
+     * retry if the storage client does.
+     *
+     * @param client client properties
+     * @param retry retry properties
+     * @return override configuration
+     */
+    static ClientOverrideConfiguration toOverrideConfiguration(StorageClientProperties.Client client,
+        StorageClientProperties.Retry retry) {
+
+        ClientOverrideConfiguration.Builder builder = ClientOverrideConfiguration.builder();
+        if (!client.getRequestTimeout().isZero()) {
+            builder.apiCallAttemptTimeout(client.getRequestTimeout());
+        }
+        if (!client.getClientExecutionTimeout().isZero()) {
+            builder.apiCallTimeout(client.getClientExecutionTimeout());
+        }
+        if (retry.isEnabled()) {
+            builder.retryStrategy(AwsRetryStrategy.doNotRetry());
+        }
+        return builder.build();
+    }
+}
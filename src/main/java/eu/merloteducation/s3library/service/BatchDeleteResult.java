@@ -0,0 +1,38 @@
+/*
+ *  Copyright 2024 Dataport. All rights reserved. Developed as part of the MERLOT project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package eu.merloteducation.s3library.service;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Outcome of deleting multiple items at once.
+ *
+ * @param deletedItems items that were deleted
+ * @param failedItems items that could not be deleted, mapped to the reason of the failure
+ */
+public record BatchDeleteResult(List<String> deletedItems, Map<String, String> failedItems) {
+    /**
+     * Check whether all items were deleted.
+     *
+     * @return true if no item failed
+     */
+    public boolean isSuccessful() {
+
+        return failedItems.isEmpty();
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ *  Copyright 2024 Dataport. All rights reserved. Developed as part of the MERLOT project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package eu.merloteducation.s3library.service;
+
+import eu.merloteducation.s3library.backend.StorageBackend;
+import eu.merloteducation.s3library.backend.StorageBackendException;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.function.UnaryOperator;
+
+/**
+ * Deletes many objects with multi-object delete requests of up to 1000 keys each. The requests are sent
+ * concurrently while the keys are still being consumed, and failures are collected per key instead of stopping the
+ * whole batch.
+ */
+class BatchDeleter {
+    static final int MAX_KEYS_PER_REQUEST = 1000;
+
+    private final StorageBackend backend;
+
+    private final int concurrency;
+
+    private final Executor executor;
+
+    BatchDeleter(StorageBackend backend, int concurrency, Executor executor) {
+
+        this.backend = backend;
+        this.concurrency = Math.max(1, concurrency);
+        this.executor = executor;
+    }
+
+    /**
+     * Delete all objects with the given keys.
+     *
+     * @param composedKeys keys of the objects to delete
+     * @param toItemKey function to map the key of an object to the key of the item reported in the result
+     * @return outcome per item
+     * @throws StorageClientException if the deletion is interrupted
+     */
+    BatchDeleteResult delete(Iterator<String> composedKeys, UnaryOperator<String> toItemKey)
+        throws StorageClientException {
+
+        Semaphore permits = new Semaphore(concurrency);
+        List<CompletableFuture<Map<String, String>>> chunks = new ArrayList<>();
+        try {
+            while (composedKeys.hasNext()) {
+                List<String> chunk = new ArrayList<>(MAX_KEYS_PER_REQUEST);
+                while (composedKeys.hasNext() && chunk.size() < MAX_KEYS_PER_REQUEST) {
+                    chunk.add(composedKeys.next());
+                }
+                permits.acquire();
+                CompletableFuture<Map<String, String>> result = CompletableFuture.supplyAsync(
+                    () -> deleteChunk(chunk), executor);
+                chunks.add(result.whenComplete((failures, throwable) -> permits.release()));
+            }
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new StorageClientException("The deletion was interrupted.");
+        }
+
+        List<String> deletedItems = new ArrayList<>();
+        Map<String, String> failedItems = new LinkedHashMap<>();
+        for (CompletableFuture<Map<String, String>> chunk : chunks) {
+            chunk.join().forEach((composedKey, failure) -> {
+                if (failure == null) {
+                    deletedItems.add(toItemKey.apply(composedKey));
+                } else {
+                    failedItems.put(toItemKey.apply(composedKey), failure);
+                }
+            });
+        }
+        return new BatchDeleteResult(deletedItems, failedItems);
+    }
+
+    /**
+     * Delete a chunk of objects.
+     *
+     * @param chunk keys of the objects
+     * @return keys of the objects in request order, mapped to the reason of the failure or null if deleted
+     */
+    private Map<String, String> deleteChunk(List<String> chunk) {
+
+        Map<String, String> outcome = new LinkedHashMap<>();
+        chunk.forEach(composedKey -> outcome.put(composedKey, null));
+        try {
+            outcome.putAll(backend.deleteObjects(chunk));
+        } catch (StorageBackendException exception) {
+            outcome.replaceAll((composedKey, failure) -> exception.getMessage());
+        }
+        return outcome;
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ *  Copyright 2024 Dataport. All rights reserved. Developed as part of the MERLOT project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package eu.merloteducation.s3library.service;
+
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.retry.PredefinedRetryPolicies;
+
+import java.time.Duration;
+
+/**
+ * Translates the client properties into the transport configuration of the AWS SDK v1 backend. The configuration of
+ * the optional AWS SDK v2 backend is translated by {@link AwsV2ClientTransport}.
+ */
+final class ClientTransport {
+    private ClientTransport() {
+    }
+
+    /**
+     * Check the client properties for values neither SDK accepts.
+     *
+     * @param client client properties
+     * @throws StorageClientCreationException if a property is invalid
+     */
+    static void validate(StorageClientProperties.Client client) throws StorageClientCreationException {
+
+        if (client.getMaxConnections() < 1) {
+            throw new StorageClientCreationException("The maximum number of connections must be at least 1.");
+        }
+        if (client.getConnectionMaxIdleTime().isZero() || client.getConnectionMaxIdleTime().isNegative()) {
+            throw new StorageClientCreationException("The maximum idle time of a connection must be positive.");
+        }
+        validateTimeout("connection TTL", client.getConnectionTtl());
+        validateTimeout("connection timeout", client.getConnectionTimeout());
+        validateTimeout("socket timeout", client.getSocketTimeout());
+        validateTimeout("request timeout", client.getRequestTimeout());
+        validateTimeout("client execution timeout", client.getClientExecutionTimeout());
+        validateBufferSize("socket send buffer size", client.getSocketSendBufferSize().toBytes());
+        validateBufferSize("socket receive buffer size", client.getSocketReceiveBufferSize().toBytes());
+    }
+
+    /**
+     * Create the configuration of an AWS SDK v1 client. The SDK does not retry if the storage client does.
+     *
+     * @param client client properties
+     * @param retry retry properties
+     * @param signerType signer type
+     * @return client configuration
+     */
+    static ClientConfiguration toClientConfiguration(StorageClientProperties.Client client,
+        StorageClientProperties.Retry retry, String signerType) {
+
+        ClientConfiguration configuration = new ClientConfiguration();
+        configuration.setSignerOverride(signerType);
+        configuration.setMaxConnections(client.getMaxConnections());
+        configuration.setConnectionTTL(client.getConnectionTtl().isZero() ? -1 : client.getConnectionTtl().toMillis());
+        configuration.setConnectionMaxIdleMillis(client.getConnectionMaxIdleTime().toMillis());
+        configuration.setUseReaper(client.isIdleConnectionReaper());
+        configuration.setConnectionTimeout((int) client.getConnectionTimeout().toMillis());
+        configuration.setSocketTimeout((int) client.getSocketTimeout().toMillis());
+        configuration.setRequestTimeout((int) client.getRequestTimeout().toMillis());
+        configuration.setClientExecutionTimeout((int) client.getClientExecutionTimeout().toMillis());
+        configuration.setUseTcpKeepAlive(client.isTcpKeepAlive());
+        configuration.setSocketBufferSizeHints((int) client.getSocketSendBufferSize().toBytes(),
+            (int) client.getSocketReceiveBufferSize().toBytes());
+        configuration.setUseExpectContinue(client.isUseExpectContinue());
+        if (retry.isEnabled()) {
+            configuration.setRetryPolicy(PredefinedRetryPolicies.NO_RETRY_POLICY);
+        }
+        return configuration;
+    }
+
+    private static void validateTimeout(String name, Duration timeout) throws StorageClientCreationException {
+
+        if (timeout.isNegative() || timeout.toMillis() > Integer.MAX_VALUE) {
+            throw new StorageClientCreationException(
+                String.format("The %s must be between 0 and %s milliseconds.", name, Integer.MAX_VALUE));
+        }
+    }
+
+    private static void validateBufferSize(String name, long size) throws StorageClientCreationException {
+
+        if (size < 0 || size > Integer.MAX_VALUE) {
+            throw new StorageClientCreationException(
+                String.format("The %s must be between 0 and %s bytes.", name, Integer.MAX_VALUE));
+        }
+    }
+}
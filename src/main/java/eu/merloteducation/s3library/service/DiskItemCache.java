@@ -0,0 +1,324 @@
+/*
+ *  Copyright 2024 Dataport. All rights reserved. Developed as part of the MERLOT project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package eu.merloteducation.s3library.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+/**
+ * Cache of item contents in local files that is bounded by a disk quota and survives restarts. Files are named by
+ * the hashes of the scope and the key of the item and by the ETag of the cached content, so the index can be
+ * rebuilt from the directory listing alone. Since every entry carries its ETag, it is revalidated against the
+ * storage before it is used and stale files never have to be detected locally.
+ * <p>
+ * The index is ordered by last access, which is persisted as modification time of the files, and the least
+ * recently used files are deleted first when the quota is exceeded.
+ */
+class DiskItemCache {
+    private static final Pattern ETAG_PATTERN = Pattern.compile("[A-Za-z0-9-]{1,100}");
+
+    private static final String TEMPORARY_DIRECTORY = "tmp";
+
+    private final Path directory;
+
+    private final Path temporaryDirectory;
+
+    private final long maxSize;
+
+    private final long maxItemSize;
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long size;
+
+    /**
+     * Create a cache in the given directory and rebuild the index from the files left by a previous run.
+     *
+     * @param directory directory of the cached files
+     * @param maxSize maximum total size of the cached files
+     * @param maxItemSize items larger than this size are not cached
+     * @throws IOException if the directory cannot be read or created
+     */
+    DiskItemCache(Path directory, long maxSize, long maxItemSize) throws IOException {
+
+        this.directory = directory;
+        this.temporaryDirectory = directory.resolve(TEMPORARY_DIRECTORY);
+        this.maxSize = maxSize;
+        this.maxItemSize = maxItemSize;
+        rebuildIndex();
+    }
+
+    /**
+     * Get the cached entry of the given item.
+     *
+     * @param scope composed prefix of the scope of the item
+     * @param composedKey composed key of the item
+     * @return entry or null if the item is not cached
+     */
+    synchronized Entry get(String scope, String composedKey) {
+
+        return entries.get(getIndexKey(scope, composedKey));
+    }
+
+    /**
+     * Read the content of a cached entry and mark it as recently used.
+     *
+     * @param entry entry to read
+     * @return content or null if the entry was evicted in the meantime or cannot be read
+     */
+    byte[] read(Entry entry) {
+
+        try (FileChannel channel = FileChannel.open(entry.path(), StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if (fileSize > Integer.MAX_VALUE - 8) {
+                return null;
+            }
+            byte[] content = new byte[(int) fileSize];
+            ByteBuffer buffer = ByteBuffer.wrap(content);
+            while (buffer.hasRemaining() && channel.read(buffer) != -1) {
+                // read until the buffer is full
+            }
+            if (buffer.hasRemaining()) {
+                return null;
+            }
+            Files.setLastModifiedTime(entry.path(), FileTime.fromMillis(System.currentTimeMillis()));
+            return content;
+        } catch (IOException exception) {
+            return null;
+        }
+    }
+
+    /**
+     * Store the content of an item, replacing any cached content of the item, and evict the least recently used
+     * entries if the quota is exceeded. Items above the maximum item size or with ETags that cannot be part of a
+     * file name are not stored.
+     *
+     * @param scope composed prefix of the scope of the item
+     * @param composedKey composed key of the item
+     * @param content content of the item
+     * @param eTag ETag of the item
+     * @throws IOException if the file cannot be written
+     */
+    void put(String scope, String composedKey, byte[] content, String eTag) throws IOException {
+
+        if (eTag == null || !ETAG_PATTERN.matcher(eTag).matches() || content.length > maxItemSize) {
+            return;
+        }
+        String indexKey = getIndexKey(scope, composedKey);
+        Path target = directory.resolve(indexKey + "-" + eTag);
+
+        Path temporaryFile = temporaryDirectory.resolve(UUID.randomUUID().toString());
+        try (FileChannel channel = FileChannel.open(temporaryFile, StandardOpenOption.CREATE_NEW,
+            StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.wrap(content);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+        Files.createDirectories(target.getParent());
+        try {
+            Files.move(temporaryFile, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temporaryFile);
+        }
+
+        List<Path> evicted = new ArrayList<>();
+        synchronized (this) {
+            Entry previous = entries.put(indexKey, new Entry(target, eTag, content.length));
+            if (previous != null) {
+                size -= previous.size();
+                if (!previous.path().equals(target)) {
+                    evicted.add(previous.path());
+                }
+            }
+            size += content.length;
+            evictEldest(evicted);
+        }
+        deleteFiles(evicted);
+    }
+
+    /**
+     * Remove the cached content of an item.
+     *
+     * @param scope composed prefix of the scope of the item
+     * @param composedKey composed key of the item
+     */
+    void invalidate(String scope, String composedKey) {
+
+        Entry removed;
+        synchronized (this) {
+            removed = entries.remove(getIndexKey(scope, composedKey));
+            if (removed != null) {
+                size -= removed.size();
+            }
+        }
+        if (removed != null) {
+            deleteFiles(List.of(removed.path()));
+        }
+    }
+
+    /**
+     * Remove the cached contents of all items of a scope.
+     *
+     * @param scope composed prefix of the scope
+     */
+    void invalidateScope(String scope) {
+
+        String scopePrefix = hash(scope) + "/";
+        List<Path> removed = new ArrayList<>();
+        synchronized (this) {
+            Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<String, Entry> entry = iterator.next();
+                if (entry.getKey().startsWith(scopePrefix)) {
+                    size -= entry.getValue().size();
+                    removed.add(entry.getValue().path());
+                    iterator.remove();
+                }
+            }
+        }
+        deleteFiles(removed);
+    }
+
+    /**
+     * Get the total size of the cached files.
+     *
+     * @return size in bytes
+     */
+    synchronized long getSize() {
+
+        return size;
+    }
+
+    private void rebuildIndex() throws IOException {
+
+        Files.createDirectories(directory);
+        if (Files.isDirectory(temporaryDirectory)) {
+            try (DirectoryStream<Path> leftovers = Files.newDirectoryStream(temporaryDirectory)) {
+                for (Path leftover : leftovers) {
+                    Files.deleteIfExists(leftover);
+                }
+            }
+        }
+        Files.createDirectories(temporaryDirectory);
+
+        List<IndexedFile> files = new ArrayList<>();
+        try (DirectoryStream<Path> scopes = Files.newDirectoryStream(directory, Files::isDirectory)) {
+            for (Path scope : scopes) {
+                if (scope.equals(temporaryDirectory)) {
+                    continue;
+                }
+                try (DirectoryStream<Path> items = Files.newDirectoryStream(scope)) {
+                    for (Path item : items) {
+                        String name = item.getFileName().toString();
+                        int separator = name.indexOf('-');
+                        if (separator < 0) {
+                            Files.deleteIfExists(item);
+                            continue;
+                        }
+                        BasicFileAttributes attributes = Files.readAttributes(item, BasicFileAttributes.class);
+                        files.add(new IndexedFile(scope.getFileName() + "/" + name.substring(0, separator),
+                            new Entry(item, name.substring(separator + 1), attributes.size()),
+                            attributes.lastModifiedTime().toMillis()));
+                    }
+                }
+            }
+        } catch (UncheckedIOException exception) {
+            throw exception.getCause();
+        }
+
+        files.sort(Comparator.comparingLong(IndexedFile::lastAccess));
+        List<Path> evicted = new ArrayList<>();
+        synchronized (this) {
+            for (IndexedFile file : files) {
+                Entry previous = entries.put(file.indexKey(), file.entry());
+                if (previous != null) {
+                    // an older version of the same item, the later one wins
+                    size -= previous.size();
+                    evicted.add(previous.path());
+                }
+                size += file.entry().size();
+            }
+            evictEldest(evicted);
+        }
+        deleteFiles(evicted);
+    }
+
+    private void evictEldest(List<Path> evicted) {
+
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (size > maxSize && eldest.hasNext()) {
+            Entry entry = eldest.next();
+            size -= entry.size();
+            evicted.add(entry.path());
+            eldest.remove();
+        }
+    }
+
+    private void deleteFiles(List<Path> files) {
+
+        for (Path file : files) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException ignored) {
+                // the file is no longer part of the index and is at most reported by the next rebuild
+            }
+        }
+    }
+
+    private static String getIndexKey(String scope, String composedKey) {
+
+        return hash(scope) + "/" + hash(composedKey);
+    }
+
+    private static String hash(String value) {
+
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, 16);
+        } catch (NoSuchAlgorithmException exception) {
+            throw new IllegalStateException(exception);
+        }
+    }
+
+    record Entry(Path path, String eTag, long size) {
+    }
+
+    private record IndexedFile(String indexKey, Entry entry, long lastAccess) {
+    }
+}
@@ -0,0 +1,290 @@
+/*
+ *  Copyright 2024 Dataport. All rights reserved. Developed as part of the MERLOT project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package eu.merloteducation.s3library.service;
+
+import eu.merloteducation.s3library.backend.ByteRange;
+import eu.merloteducation.s3library.backend.ConnectionPoolStats;
+import eu.merloteducation.s3library.backend.ObjectListingPage;
+import eu.merloteducation.s3library.backend.ObjectReadOptions;
+import eu.merloteducation.s3library.backend.ObjectWriteOptions;
+import eu.merloteducation.s3library.backend.StorageBackend;
+import eu.merloteducation.s3library.backend.StorageBackendException;
+import eu.merloteducation.s3library.backend.StorageObject;
+import eu.merloteducation.s3library.backend.StorageObjectInfo;
+
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Storage backend that hedges reads of whole objects of another backend. If a read has not returned its response
+ * after a delay, a second identical read is sent, the first response is used and the other one is aborted. The
+ * delay is either fixed or follows a percentile of the recent response times, and a budget limits the hedged reads
+ * to a fraction of all reads. The reads are sent from a bounded pool of threads, if all of them are busy a read is
+ * sent by the calling thread and cannot be hedged. All other requests, including streamed reads through
+ * {@link #getObject}, are passed on unchanged.
+ */
+class HedgingStorageBackend implements StorageBackend {
+    private static final int LATENCY_SAMPLES = 256;
+
+    private static final int DELAY_UPDATE_INTERVAL = 32;
+
+    private static final double MAX_BUDGET = 10;
+
+    private final StorageBackend delegate;
+
+    private final StorageClientProperties.Hedging properties;
+
+    private final ThreadPoolExecutor executor;
+
+    private final long[] latencies = new long[LATENCY_SAMPLES];
+
+    private int latencyCount;
+
+    private volatile long adaptiveDelay;
+
+    private double budget = MAX_BUDGET;
+
+    HedgingStorageBackend(StorageBackend delegate, StorageClientProperties.Hedging properties) {
+
+        this.delegate = delegate;
+        this.properties = properties;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(0, properties.getMaxThreads(), 60L, TimeUnit.SECONDS,
+            new SynchronousQueue<>(), runnable -> {
+                Thread thread = new Thread(runnable, "s3-library-hedging-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }, new ThreadPoolExecutor.CallerRunsPolicy());
+        this.adaptiveDelay = properties.getMaxDelay().toNanos();
+    }
+
+    @Override
+    public StorageObject getObject(String key, ObjectReadOptions options) {
+
+        return delegate.getObject(key, options);
+    }
+
+    /**
+     * Read an object whose content is read completely right away, sending a second read if the first one does not
+     * respond within the hedging delay.
+     *
+     * @param key key of the object
+     * @param options options of the read
+     * @return object of the first successful read
+     * @throws StorageBackendException if the reads fail
+     */
+    StorageObject getHedgedObject(String key, ObjectReadOptions options) {
+
+        CompletableFuture<StorageObject> result = new CompletableFuture<>();
+        AtomicInteger pending = new AtomicInteger(1);
+        send(key, options, result, pending);
+        depositBudget();
+
+        try {
+            return result.get(getDelay(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException exception) {
+            // the first read may have failed transiently in the meantime, then the result is already complete
+            if (withdrawBudget() && pending.incrementAndGet() > 1) {
+                send(key, options, result, pending);
+            }
+        } catch (ExecutionException exception) {
+            throw (StorageBackendException) exception.getCause();
+        } catch (InterruptedException exception) {
+            return interrupted(result);
+        }
+
+        try {
+            return result.get();
+        } catch (ExecutionException exception) {
+            throw (StorageBackendException) exception.getCause();
+        } catch (InterruptedException exception) {
+            return interrupted(result);
+        }
+    }
+
+    StorageBackend getDelegate() {
+
+        return delegate;
+    }
+
+    @Override
+    public StorageObjectInfo headObject(String key) {
+
+        return delegate.headObject(key);
+    }
+
+    @Override
+    public boolean objectExists(String key) {
+
+        return delegate.objectExists(key);
+    }
+
+    @Override
+    public String putObject(String key, InputStream content, long contentLength, ObjectWriteOptions options) {
+
+        return delegate.putObject(key, content, contentLength, options);
+    }
+
+    @Override
+    public ObjectListingPage listObjects(String prefix, String startAfter, String continuationToken, int maxKeys) {
+
+        return delegate.listObjects(prefix, startAfter, continuationToken, maxKeys);
+    }
+
+    @Override
+    public String copyObject(String sourceKey, String key, String ifMatch) {
+
+        return delegate.copyObject(sourceKey, key, ifMatch);
+    }
+
+    @Override
+    public void deleteObject(String key) {
+
+        delegate.deleteObject(key);
+    }
+
+    @Override
+    public Map<String, String> deleteObjects(List<String> keys) {
+
+        return delegate.deleteObjects(keys);
+    }
+
+    @Override
+    public String createMultipartUpload(String key, ObjectWriteOptions options) {
+
+        return delegate.createMultipartUpload(key, options);
+    }
+
+    @Override
+    public String uploadPart(String key, String uploadId, int partNumber, InputStream content, long contentLength) {
+
+        return delegate.uploadPart(key, uploadId, partNumber, content, contentLength);
+    }
+
+    @Override
+    public String copyPart(String key, String uploadId, int partNumber, String sourceKey, ByteRange range,
+        String ifMatch) {
+
+        return delegate.copyPart(key, uploadId, partNumber, sourceKey, range, ifMatch);
+    }
+
+    @Override
+    public void completeMultipartUpload(String key, String uploadId, List<String> partETags) {
+
+        delegate.completeMultipartUpload(key, uploadId, partETags);
+    }
+
+    @Override
+    public void abortMultipartUpload(String key, String uploadId) {
+
+        delegate.abortMultipartUpload(key, uploadId);
+    }
+
+    @Override
+    public ConnectionPoolStats collectConnectionPoolStats() {
+
+        return delegate.collectConnectionPoolStats();
+    }
+
+    @Override
+    public void close() {
+
+        executor.shutdown();
+        delegate.close();
+    }
+
+    /**
+     * Send a read in the background. The first successful response or definite error completes the result,
+     * responses arriving after that are aborted. Transient errors only complete the result if no other read is
+     * pending anymore.
+     */
+    private void send(String key, ObjectReadOptions options, CompletableFuture<StorageObject> result,
+        AtomicInteger pending) {
+
+        long start = System.nanoTime();
+        CompletableFuture.supplyAsync(() -> delegate.getObject(key, options), executor).whenComplete(
+            (object, throwable) -> {
+                if (throwable == null) {
+                    recordLatency(System.nanoTime() - start);
+                    if (!result.complete(object)) {
+                        object.abort();
+                    }
+                    return;
+                }
+                Throwable cause = throwable.getCause() != null ? throwable.getCause() : throwable;
+                StorageBackendException exception = cause instanceof StorageBackendException backendException
+                    ? backendException : new StorageBackendException(cause.getMessage(), 0, null, cause);
+                if (pending.decrementAndGet() == 0 || !RetryingStorageBackend.isRetryable(exception)) {
+                    result.completeExceptionally(exception);
+                }
+            });
+    }
+
+    private StorageObject interrupted(CompletableFuture<StorageObject> result) {
+
+        Thread.currentThread().interrupt();
+        if (!result.cancel(false)) {
+            StorageObject object = result.getNow(null);
+            if (object != null) {
+                object.abort();
+            }
+        }
+        throw new StorageBackendException("The request was interrupted.", 0, null);
+    }
+
+    private long getDelay() {
+
+        return properties.getDelay().isZero() ? adaptiveDelay : properties.getDelay().toNanos();
+    }
+
+    private synchronized void depositBudget() {
+
+        budget = Math.min(MAX_BUDGET, budget + properties.getMaxExtraRequests());
+    }
+
+    private synchronized boolean withdrawBudget() {
+
+        if (budget < 1) {
+            return false;
+        }
+        budget--;
+        return true;
+    }
+
+    private synchronized void recordLatency(long latency) {
+
+        latencies[latencyCount++ % LATENCY_SAMPLES] = latency;
+        if (latencyCount % DELAY_UPDATE_INTERVAL == 0) {
+            long[] samples = Arrays.copyOf(latencies, Math.min(latencyCount, LATENCY_SAMPLES));
+            Arrays.sort(samples);
+            int index = (int) Math.ceil(properties.getPercentile() / 100 * samples.length) - 1;
+            adaptiveDelay = Math.min(properties.getMaxDelay().toNanos(),
+                Math.max(properties.getMinDelay().toNanos(), samples[Math.max(0, index)]));
+        }
+        if (latencyCount == Integer.MAX_VALUE) {
+            latencyCount = LATENCY_SAMPLES;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ *  Copyright 2024 Dataport. All rights reserved. Developed as part of the MERLOT project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package eu.merloteducation.s3library.service;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Generations of the latest invalidations of keys and key prefixes, used by the caches to drop contents that were
+ * read before an invalidation of the same key while leaving reads of other keys untouched. Only a bounded number of
+ * invalidations is tracked, an invalidation that is no longer tracked counts as an invalidation of every key.
+ * <p>
+ * The tracker is not thread safe, the caches call it while holding their own lock.
+ */
+class InvalidationTracker {
+    private final int maxTracked;
+
+    private final LinkedHashMap<String, Long> keys = new LinkedHashMap<>();
+
+    private final LinkedHashMap<String, Long> prefixes = new LinkedHashMap<>();
+
+    private long generation;
+
+    private long untrackedGeneration;
+
+    InvalidationTracker(int maxTracked) {
+
+        this.maxTracked = maxTracked;
+    }
+
+    /**
+     * Get the current generation, to be passed to {@link #isInvalidatedSince} after reading the storage.
+     *
+     * @return generation
+     */
+    long getGeneration() {
+
+        return generation;
+    }
+
+    /**
+     * Record an invalidation of the given key.
+     *
+     * @param key key
+     */
+    void invalidate(String key) {
+
+        track(keys, key);
+    }
+
+    /**
+     * Record an invalidation of all keys starting with the given prefix.
+     *
+     * @param prefix prefix of the keys
+     */
+    void invalidatePrefix(String prefix) {
+
+        track(prefixes, prefix);
+    }
+
+    /**
+     * Check whether the given key was invalidated after the given generation.
+     *
+     * @param key key
+     * @param readGeneration generation before the read started
+     * @return true if the key was invalidated since
+     */
+    boolean isInvalidatedSince(String key, long readGeneration) {
+
+        if (untrackedGeneration > readGeneration) {
+            return true;
+        }
+        Long keyGeneration = keys.get(key);
+        if (keyGeneration != null && keyGeneration > readGeneration) {
+            return true;
+        }
+        for (Map.Entry<String, Long> prefix : prefixes.entrySet()) {
+            if (prefix.getValue() > readGeneration && key.startsWith(prefix.getKey())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void track(LinkedHashMap<String, Long> invalidations, String key) {
+
+        generation++;
+        // reinserting moves the key to the end, so the eldest invalidation is always first
+        invalidations.remove(key);
+        invalidations.put(key, generation);
+        if (invalidations.size() > maxTracked) {
+            Iterator<Long> eldest = invalidations.values().iterator();
+            untrackedGeneration = Math.max(untrackedGeneration, eldest.next());
+            eldest.remove();
+        }
+    }
+}
@@ -0,0 +1,454 @@
+/*
+ *  Copyright 2024 Dataport. All rights reserved. Developed as part of the MERLOT project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package eu.merloteducation.s3library.service;
+
+import eu.merloteducation.s3library.backend.ObjectWriteOptions;
+import eu.merloteducation.s3library.backend.StorageBackend;
+import eu.merloteducation.s3library.backend.StorageBackendException;
+import eu.merloteducation.s3library.backend.StorageObjectInfo;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Stores large items as chunks that are cut at content defined boundaries, so a change within an item only changes
+ * the chunks around it. Every chunk is stored once below its SHA-256 hash, and the item itself becomes a manifest
+ * object listing the hashes and lengths of its chunks. Pushing a new version of an item only uploads the chunks
+ * that are not listed in the previous manifest and not stored yet.
+ * <p>
+ * The boundaries are found with the FastCDC gear hash and normalized chunking, which keeps the chunk sizes close to
+ * the average size. Chunks are not deleted together with the manifests that reference them.
+ */
+class ItemChunker {
+    static final String MANIFEST_METADATA = "s3library-manifest";
+
+    private static final String MANIFEST_VERSION = "1";
+
+    private static final String CHUNK_DIRECTORY = ".s3library/chunks/";
+
+    private static final long[] GEAR = createGearTable();
+
+    private final StorageBackend backend;
+
+    private final StorageClientProperties.Chunking properties;
+
+    private final String chunkPrefix;
+
+    private final Executor executor;
+
+    /**
+     * Receiver of the content of chunks that are not stored yet.
+     */
+    @FunctionalInterface
+    interface ChunkWriter {
+        void write(String chunkKey, InputStream content, long contentLength)
+            throws IOException, StorageClientException;
+    }
+
+    /**
+     * Provider of the content of stored chunks.
+     */
+    @FunctionalInterface
+    interface ChunkReader {
+        byte[] read(String chunkKey) throws IOException;
+    }
+
+    /**
+     * Reader of the chunks listed in the manifest stored for an item.
+     */
+    @FunctionalInterface
+    interface ManifestReader {
+        List<Chunk> read(String composedKey) throws IOException;
+    }
+
+    ItemChunker(StorageBackend backend, StorageClientProperties.Chunking properties, String rootDirectory,
+        Executor executor) {
+
+        this.backend = backend;
+        this.properties = properties;
+        this.chunkPrefix = rootDirectory + "/" + CHUNK_DIRECTORY;
+        this.executor = executor;
+    }
+
+    /**
+     * Check whether an object is a manifest of a chunked item.
+     *
+     * @param info metadata of the object
+     * @return true if the object is a manifest
+     */
+    static boolean isManifest(StorageObjectInfo info) {
+
+        return info.userMetadata().containsKey(MANIFEST_METADATA);
+    }
+
+    /**
+     * Store the given content in chunks and write the manifest of the item after all chunks are stored.
+     *
+     * @param composedKey key of the item
+     * @param item stream providing the content of the item
+     * @param contentLength exact number of bytes provided by the stream
+     * @param contentType content type of the item, may be null
+     * @param chunkWriter writer of chunks that are not stored yet
+     * @param previousChunks reader of the previous manifest of the item, used to skip chunks known to be stored
+     * @throws IOException if the content cannot be read
+     * @throws StorageClientException if the item cannot be stored
+     */
+    void write(String composedKey, InputStream item, long contentLength, String contentType, ChunkWriter chunkWriter,
+        ManifestReader previousChunks) throws IOException, StorageClientException {
+
+        Set<String> storedChunks = ConcurrentHashMap.newKeySet();
+        previousChunks.read(composedKey).forEach(chunk -> storedChunks.add(chunk.hash()));
+
+        int concurrency = Math.max(1, properties.getConcurrency());
+        Semaphore permits = new Semaphore(concurrency);
+        List<CompletableFuture<Void>> uploads = new ArrayList<>();
+        StringBuilder manifest = new StringBuilder();
+        long length = 0;
+        try {
+            ChunkSplitter splitter = new ChunkSplitter(item, contentLength);
+            byte[] chunk;
+            while ((chunk = splitter.next()) != null) {
+                byte[] content = chunk;
+                String hash = hash(content);
+                manifest.append(hash).append(' ').append(content.length).append('\n');
+                length += content.length;
+                if (!storedChunks.add(hash)) {
+                    continue;
+                }
+                permits.acquire();
+                failFast(uploads);
+                uploads.add(CompletableFuture.runAsync(() -> uploadChunk(hash, content, chunkWriter), executor)
+                    .whenComplete((result, throwable) -> permits.release()));
+            }
+            CompletableFuture.allOf(uploads.toArray(new CompletableFuture[0])).join();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new StorageClientException("The upload was interrupted.");
+        } catch (CompletionException exception) {
+            Throwable cause = exception.getCause();
+            if (cause instanceof UncheckedIOException ioException) {
+                cause = ioException.getCause();
+            } else if (cause instanceof UncheckedStorageClientException storageClientException) {
+                throw storageClientException.getCause();
+            }
+            throw new StorageClientException(cause.getMessage(), cause);
+        }
+        if (length != contentLength) {
+            throw new StorageClientException("The item did not provide the declared content length.");
+        }
+
+        byte[] manifestContent = manifest.toString().getBytes(StandardCharsets.US_ASCII);
+        backend.putObject(composedKey, new ByteArrayInputStream(manifestContent), manifestContent.length,
+            new ObjectWriteOptions(contentType, Map.of(MANIFEST_METADATA, MANIFEST_VERSION,
+                ItemCompression.SIZE_METADATA, Long.toString(contentLength))));
+    }
+
+    /**
+     * Parse the chunks of an item from the content of its manifest.
+     *
+     * @param manifest content of the manifest
+     * @return chunks of the item in order
+     * @throws IOException if the manifest is malformed
+     */
+    static List<Chunk> parseManifest(byte[] manifest) throws IOException {
+
+        List<Chunk> chunks = new ArrayList<>();
+        for (String line : new String(manifest, StandardCharsets.US_ASCII).split("\n")) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            int separator = line.indexOf(' ');
+            try {
+                chunks.add(new Chunk(line.substring(0, separator), Integer.parseInt(line.substring(separator + 1))));
+            } catch (RuntimeException exception) {
+                throw new IOException("The manifest of the chunked item is malformed.", exception);
+            }
+        }
+        return chunks;
+    }
+
+    /**
+     * Create a stream providing the content of a chunked item. Up to the configured concurrency of chunks are
+     * fetched ahead of the current read position in parallel.
+     *
+     * @param chunks chunks of the item in order
+     * @param chunkReader provider of the content of the chunks
+     * @return stream of the content of the item
+     */
+    InputStream openStream(List<Chunk> chunks, ChunkReader chunkReader) {
+
+        return new ChunkedInputStream(chunks, chunkReader);
+    }
+
+    private void uploadChunk(String hash, byte[] content, ChunkWriter chunkWriter) {
+
+        String chunkKey = chunkPrefix + hash;
+        try {
+            if (!backend.objectExists(chunkKey)) {
+                chunkWriter.write(chunkKey, new ByteArrayInputStream(content), content.length);
+            }
+        } catch (IOException exception) {
+            throw new UncheckedIOException(exception);
+        } catch (StorageClientException exception) {
+            throw new UncheckedStorageClientException(exception);
+        }
+    }
+
+    private void failFast(List<CompletableFuture<Void>> uploads) {
+
+        for (CompletableFuture<Void> upload : uploads) {
+            if (upload.isCompletedExceptionally()) {
+                upload.join();
+            }
+        }
+    }
+
+    private static String hash(byte[] content) {
+
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+        } catch (NoSuchAlgorithmException exception) {
+            // every Java platform supports SHA-256
+            throw new IllegalStateException(exception);
+        }
+    }
+
+    private static long[] createGearTable() {
+
+        // the table defines the chunk boundaries, so it must never change
+        Random random = new Random(0x5333_4c49_4252_4152L);
+        long[] gear = new long[256];
+        for (int i = 0; i < gear.length; i++) {
+            gear[i] = random.nextLong();
+        }
+        return gear;
+    }
+
+    /**
+     * Chunk of a chunked item.
+     *
+     * @param hash SHA-256 hash of the content of the chunk
+     * @param length length of the chunk in bytes
+     */
+    record Chunk(String hash, int length) {
+    }
+
+    /**
+     * Splits a stream into chunks at content defined boundaries.
+     */
+    private class ChunkSplitter {
+        private final InputStream source;
+
+        private final byte[] buffer;
+
+        private final int minSize;
+
+        private final int normalSize;
+
+        private final long smallMask;
+
+        private final long largeMask;
+
+        private long remaining;
+
+        private int filled;
+
+        ChunkSplitter(InputStream source, long contentLength) {
+
+            this.source = source;
+            this.remaining = contentLength;
+            this.buffer = new byte[(int) properties.getMaxChunkSize().toBytes()];
+            this.minSize = (int) properties.getMinChunkSize().toBytes();
+            this.normalSize = (int) properties.getAverageChunkSize().toBytes();
+            int bits = 63 - Long.numberOfLeadingZeros(normalSize);
+            // a stricter mask below the average size and a looser one above it keeps the sizes close to the average
+            this.smallMask = mask(bits + 2);
+            this.largeMask = mask(bits - 2);
+        }
+
+        byte[] next() throws IOException {
+
+            if (remaining > 0 && filled < buffer.length) {
+                int count = source.readNBytes(buffer, filled, (int) Math.min(buffer.length - filled, remaining));
+                filled += count;
+                remaining = count == 0 ? 0 : remaining - count;
+            }
+            if (filled == 0) {
+                return null;
+            }
+            int cut = findBoundary();
+            byte[] chunk = Arrays.copyOf(buffer, cut);
+            System.arraycopy(buffer, cut, buffer, 0, filled - cut);
+            filled -= cut;
+            return chunk;
+        }
+
+        private int findBoundary() {
+
+            if (filled <= minSize) {
+                return filled;
+            }
+            long fingerprint = 0;
+            int normal = Math.min(normalSize, filled);
+            int i = minSize;
+            for (; i < normal; i++) {
+                fingerprint = (fingerprint << 1) + GEAR[buffer[i] & 0xff];
+                if ((fingerprint & smallMask) == 0) {
+                    return i + 1;
+                }
+            }
+            for (; i < filled; i++) {
+                fingerprint = (fingerprint << 1) + GEAR[buffer[i] & 0xff];
+                if ((fingerprint & largeMask) == 0) {
+                    return i + 1;
+                }
+            }
+            return filled;
+        }
+
+        private static long mask(int bits) {
+
+            // the high bits of the gear hash depend on the most bytes
+            int maskBits = Math.max(1, Math.min(63, bits));
+            return -1L << (64 - maskBits);
+        }
+    }
+
+    /**
+     * Input stream that reassembles a chunked item from chunks fetched in parallel.
+     */
+    private class ChunkedInputStream extends InputStream {
+        private final List<Chunk> chunks;
+
+        private final ChunkReader chunkReader;
+
+        private final Deque<CompletableFuture<byte[]>> window = new ArrayDeque<>();
+
+        private int nextChunk;
+
+        private byte[] current = new byte[0];
+
+        private int position;
+
+        private boolean closed;
+
+        ChunkedInputStream(List<Chunk> chunks, ChunkReader chunkReader) {
+
+            this.chunks = chunks;
+            this.chunkReader = chunkReader;
+        }
+
+        @Override
+        public int read() throws IOException {
+
+            byte[] single = new byte[1];
+            return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+
+            if (closed) {
+                throw new IOException("The stream is closed.");
+            }
+            if (len == 0) {
+                return 0;
+            }
+            while (position == current.length) {
+                fillWindow();
+                CompletableFuture<byte[]> fetch = window.poll();
+                if (fetch == null) {
+                    return -1;
+                }
+                current = await(fetch);
+                position = 0;
+            }
+            int count = Math.min(len, current.length - position);
+            System.arraycopy(current, position, b, off, count);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public void close() {
+
+            closed = true;
+            window.forEach(fetch -> fetch.cancel(false));
+            window.clear();
+        }
+
+        private void fillWindow() {
+
+            int concurrency = Math.max(1, properties.getConcurrency());
+            while (window.size() < concurrency && nextChunk < chunks.size()) {
+                Chunk chunk = chunks.get(nextChunk++);
+                window.add(CompletableFuture.supplyAsync(() -> fetchChunk(chunk), executor));
+            }
+        }
+
+        private byte[] fetchChunk(Chunk chunk) {
+
+            byte[] content;
+            try {
+                content = chunkReader.read(chunkPrefix + chunk.hash());
+            } catch (IOException exception) {
+                throw new UncheckedIOException(exception);
+            }
+            if (content.length != chunk.length()) {
+                throw new StorageBackendException(
+                    String.format("The chunk %s does not have the length listed in the manifest.", chunk.hash()), 0,
+                    null);
+            }
+            if (!hash(content).equals(chunk.hash())) {
+                throw new StorageBackendException(
+                    String.format("The chunk %s does not match the hash listed in the manifest.", chunk.hash()), 0,
+                    null);
+            }
+            return content;
+        }
+
+        private byte[] await(CompletableFuture<byte[]> fetch) throws IOException {
+
+            try {
+                return fetch.join();
+            } catch (CompletionException exception) {
+                if (exception.getCause() instanceof UncheckedIOException ioException) {
+                    throw ioException.getCause();
+                }
+                throw new IOException(exception.getCause().getMessage(), exception.getCause());
+            }
+        }
+    }
+}
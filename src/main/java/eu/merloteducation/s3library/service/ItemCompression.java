@@ -0,0 +1,300 @@
+/*
+ *  Copyright 2024 Dataport. All rights reserved. Developed as part of the MERLOT project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package eu.merloteducation.s3library.service;
+
+import org.springframework.util.ClassUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compresses item contents on upload and decompresses them on download. The codec of a compressed item is recorded
+ * in its user metadata together with the uncompressed size, so items are decompressed based on how they were
+ * stored, independent of the current configuration. The zstd and LZ4 codecs are used through zstd-jni and lz4-java
+ * if these libraries are on the class path.
+ */
+final class ItemCompression {
+    static final String ENCODING_METADATA = "s3library-encoding";
+
+    static final String SIZE_METADATA = "s3library-size";
+
+    /**
+     * Number of leading bytes inspected to recognize content that is already compressed.
+     */
+    static final int SIGNATURE_LENGTH = 4;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final List<byte[]> COMPRESSED_SIGNATURES = List.of(
+        new byte[] { 0x1f, (byte) 0x8b }, // gzip
+        new byte[] { 0x28, (byte) 0xb5, 0x2f, (byte) 0xfd }, // zstd
+        new byte[] { 0x04, 0x22, 0x4d, 0x18 }, // lz4 frame
+        new byte[] { 0x50, 0x4b, 0x03, 0x04 }, // zip and office documents
+        new byte[] { 0x42, 0x5a, 0x68 }, // bzip2
+        new byte[] { 0x37, 0x7a, (byte) 0xbc, (byte) 0xaf }, // 7z
+        new byte[] { (byte) 0xfd, 0x37, 0x7a, 0x58 }, // xz
+        new byte[] { (byte) 0x89, 0x50, 0x4e, 0x47 }, // png
+        new byte[] { (byte) 0xff, (byte) 0xd8, (byte) 0xff }, // jpeg
+        new byte[] { 0x47, 0x49, 0x46, 0x38 }, // gif
+        new byte[] { 0x52, 0x49, 0x46, 0x46 } // webp and other riff containers
+    );
+
+    private static final String ZSTD_OUTPUT_STREAM = "com.github.luben.zstd.ZstdOutputStream";
+
+    private static final String ZSTD_INPUT_STREAM = "com.github.luben.zstd.ZstdInputStream";
+
+    private static final String LZ4_OUTPUT_STREAM = "net.jpountz.lz4.LZ4FrameOutputStream";
+
+    private static final String LZ4_INPUT_STREAM = "net.jpountz.lz4.LZ4FrameInputStream";
+
+    private ItemCompression() {
+    }
+
+    /**
+     * Check whether the given codec can be used with the libraries on the class path.
+     *
+     * @param codec codec
+     * @return true if the codec is available
+     */
+    static boolean isAvailable(StorageClientProperties.CompressionCodec codec) {
+
+        ClassLoader classLoader = ItemCompression.class.getClassLoader();
+        return switch (codec) {
+            case GZIP -> true;
+            case ZSTD -> ClassUtils.isPresent(ZSTD_OUTPUT_STREAM, classLoader);
+            case LZ4 -> ClassUtils.isPresent(LZ4_OUTPUT_STREAM, classLoader);
+        };
+    }
+
+    /**
+     * Get the name of the given codec as recorded in the metadata of compressed items.
+     *
+     * @param codec codec
+     * @return name of the codec
+     */
+    static String getEncoding(StorageClientProperties.CompressionCodec codec) {
+
+        return codec.name().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Check whether content of the given type should be compressed at all.
+     *
+     * @param properties compression properties
+     * @param contentLength length of the content
+     * @param contentType content type, may be null
+     * @return true if the content should be compressed
+     */
+    static boolean isCandidate(StorageClientProperties.Compression properties, long contentLength,
+        String contentType) {
+
+        if (contentLength < properties.getMinSize().toBytes()) {
+            return false;
+        }
+        if (contentType == null) {
+            return true;
+        }
+        String type = contentType.toLowerCase(Locale.ROOT);
+        return properties.getSkippedContentTypes().stream().noneMatch(type::startsWith);
+    }
+
+    /**
+     * Check whether content starting with the given bytes is already compressed.
+     *
+     * @param head leading bytes of the content
+     * @return true if the content starts with the signature of a compressed format
+     */
+    static boolean isCompressed(byte[] head) {
+
+        return COMPRESSED_SIGNATURES.stream().anyMatch(
+            signature -> head.length >= signature.length && Arrays.equals(head, 0, signature.length, signature, 0,
+                signature.length));
+    }
+
+    /**
+     * Compress the given content completely.
+     *
+     * @param codec codec
+     * @param content content to compress
+     * @return compressed content
+     * @throws IOException if the content cannot be compressed
+     */
+    static byte[] compress(StorageClientProperties.CompressionCodec codec, byte[] content) throws IOException {
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(Math.max(32, content.length / 4));
+        try (OutputStream encoder = createEncoder(codec, compressed)) {
+            encoder.write(content);
+        }
+        return compressed.toByteArray();
+    }
+
+    /**
+     * Create a stream providing the compressed content of the given stream, which is compressed while it is read.
+     * Reading the compressed stream fails if the given stream ends before the declared content length.
+     *
+     * @param codec codec
+     * @param content stream of the content to compress
+     * @param contentLength exact number of bytes provided by the stream
+     * @return stream of the compressed content
+     * @throws IOException if the encoder cannot be created
+     */
+    static InputStream compressingStream(StorageClientProperties.CompressionCodec codec, InputStream content,
+        long contentLength) throws IOException {
+
+        return new CompressingInputStream(codec, content, contentLength);
+    }
+
+    /**
+     * Create a stream providing the decompressed content of a stored item.
+     *
+     * @param encoding encoding recorded in the metadata of the item
+     * @param content stream of the stored content
+     * @return stream of the decompressed content
+     * @throws IOException if the encoding is not supported or the decoder cannot be created
+     */
+    static InputStream decompressingStream(String encoding, InputStream content) throws IOException {
+
+        for (StorageClientProperties.CompressionCodec codec : StorageClientProperties.CompressionCodec.values()) {
+            if (getEncoding(codec).equals(encoding)) {
+                if (!isAvailable(codec)) {
+                    throw new IOException(String.format("The item is compressed with %s, which is not available.",
+                        encoding));
+                }
+                return switch (codec) {
+                    case GZIP -> new GZIPInputStream(content, BUFFER_SIZE);
+                    case ZSTD -> (InputStream) instantiate(ZSTD_INPUT_STREAM, InputStream.class, content);
+                    case LZ4 -> (InputStream) instantiate(LZ4_INPUT_STREAM, InputStream.class, content);
+                };
+            }
+        }
+        throw new IOException(String.format("The item has the unknown encoding %s.", encoding));
+    }
+
+    private static OutputStream createEncoder(StorageClientProperties.CompressionCodec codec, OutputStream target)
+        throws IOException {
+
+        return switch (codec) {
+            case GZIP -> new GZIPOutputStream(target, BUFFER_SIZE);
+            case ZSTD -> (OutputStream) instantiate(ZSTD_OUTPUT_STREAM, OutputStream.class, target);
+            case LZ4 -> (OutputStream) instantiate(LZ4_OUTPUT_STREAM, OutputStream.class, target);
+        };
+    }
+
+    private static Object instantiate(String className, Class<?> parameterType, Object argument)
+        throws IOException {
+
+        try {
+            return ClassUtils.forName(className, ItemCompression.class.getClassLoader())
+                .getConstructor(parameterType).newInstance(argument);
+        } catch (InvocationTargetException exception) {
+            if (exception.getCause() instanceof IOException ioException) {
+                throw ioException;
+            }
+            throw new IOException(exception.getCause());
+        } catch (ReflectiveOperationException | LinkageError exception) {
+            throw new IOException(exception);
+        }
+    }
+
+    /**
+     * Input stream that reads the content from its source in blocks and passes each block through the encoder,
+     * so only a single block and its compressed output are held in memory.
+     */
+    private static final class CompressingInputStream extends InputStream {
+        private final InputStream source;
+
+        private final Buffer compressed = new Buffer();
+
+        private final OutputStream encoder;
+
+        private final byte[] block = new byte[BUFFER_SIZE];
+
+        private long remaining;
+
+        private int position;
+
+        private boolean finished;
+
+        CompressingInputStream(StorageClientProperties.CompressionCodec codec, InputStream source,
+            long contentLength) throws IOException {
+
+            this.source = source;
+            this.encoder = createEncoder(codec, compressed);
+            this.remaining = contentLength;
+        }
+
+        @Override
+        public int read() throws IOException {
+
+            byte[] single = new byte[1];
+            return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+
+            if (len == 0) {
+                return 0;
+            }
+            while (position == compressed.size()) {
+                if (finished) {
+                    return -1;
+                }
+                compressed.reset();
+                position = 0;
+                if (remaining == 0) {
+                    encoder.close();
+                    finished = true;
+                    continue;
+                }
+                int count = source.read(block, 0, (int) Math.min(block.length, remaining));
+                if (count == -1) {
+                    throw new IOException("The item ended before the declared content length was reached.");
+                }
+                encoder.write(block, 0, count);
+                remaining -= count;
+            }
+            int count = Math.min(len, compressed.size() - position);
+            System.arraycopy(compressed.getBuffer(), position, b, off, count);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public void close() throws IOException {
+
+            if (!finished) {
+                finished = true;
+                encoder.close();
+            }
+        }
+    }
+
+    private static final class Buffer extends ByteArrayOutputStream {
+        byte[] getBuffer() {
+
+            return buf;
+        }
+    }
+}
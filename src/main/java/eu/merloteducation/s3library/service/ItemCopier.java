@@ -0,0 +1,137 @@
+/*
+ *  Copyright 2024 Dataport. All rights reserved. Developed as part of the MERLOT project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package eu.merloteducation.s3library.service;
+
+import eu.merloteducation.s3library.backend.ByteRange;
+import eu.merloteducation.s3library.backend.ObjectWriteOptions;
+import eu.merloteducation.s3library.backend.StorageBackend;
+import eu.merloteducation.s3library.backend.StorageBackendException;
+import eu.merloteducation.s3library.backend.StorageObjectInfo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Copies objects within the bucket with server-side copy requests, so their content is not transferred through the
+ * client. Objects above the copy threshold are copied in concurrent parts of a multipart upload, as a single copy
+ * request is limited to 5GB.
+ */
+class ItemCopier {
+    static final long MAX_COPY_SIZE = 5L * 1024 * 1024 * 1024;
+
+    private static final int MAX_PARTS = 10000;
+
+    private final StorageBackend backend;
+
+    private final StorageClientProperties.Copy properties;
+
+    private final Executor executor;
+
+    ItemCopier(StorageBackend backend, StorageClientProperties.Copy properties, Executor executor) {
+
+        this.backend = backend;
+        this.properties = properties;
+        this.executor = executor;
+    }
+
+    /**
+     * Copy the given object to the given key. All requests are made with the ETag of the object as matching
+     * constraint, so a concurrent modification of the object fails the copy instead of mixing two versions.
+     *
+     * @param source metadata of the object to copy, at least its key, size and ETag
+     * @param composedKey key of the copy
+     * @throws StorageClientException if an error occurs while copying the object
+     */
+    void copy(StorageObjectInfo source, String composedKey) throws StorageClientException {
+
+        if (source.size() <= properties.getThreshold().toBytes()) {
+            backend.copyObject(source.key(), composedKey, source.eTag());
+            return;
+        }
+
+        // listings do not provide the content type and user metadata that a multipart upload has to set
+        StorageObjectInfo info = backend.headObject(source.key());
+        String uploadId = backend.createMultipartUpload(composedKey,
+            new ObjectWriteOptions(info.contentType(), info.userMetadata()));
+        try {
+            backend.completeMultipartUpload(composedKey, uploadId, copyParts(info, composedKey, uploadId));
+        } catch (StorageClientException exception) {
+            abort(composedKey, uploadId);
+            throw exception;
+        } catch (StorageBackendException exception) {
+            abort(composedKey, uploadId);
+            throw new StorageClientException(exception.getMessage(), exception);
+        }
+    }
+
+    private List<String> copyParts(StorageObjectInfo source, String composedKey, String uploadId)
+        throws StorageClientException {
+
+        long partSize = Math.max(properties.getPartSize().toBytes(), (source.size() + MAX_PARTS - 1) / MAX_PARTS);
+        Semaphore permits = new Semaphore(Math.max(1, properties.getConcurrency()));
+        AtomicBoolean failed = new AtomicBoolean();
+        List<CompletableFuture<String>> parts = new ArrayList<>();
+        try {
+            for (long start = 0; start < source.size() && !failed.get(); start += partSize) {
+                ByteRange range = new ByteRange(start, Math.min(start + partSize, source.size()) - 1);
+                int partNumber = parts.size() + 1;
+                permits.acquire();
+                parts.add(CompletableFuture.supplyAsync(() -> backend.copyPart(composedKey, uploadId, partNumber,
+                    source.key(), range, source.eTag()), executor).whenComplete((partETag, throwable) -> {
+                        if (throwable != null) {
+                            failed.set(true);
+                        }
+                        permits.release();
+                    }));
+            }
+            CompletableFuture.allOf(parts.toArray(new CompletableFuture[0])).join();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            awaitSettled(parts);
+            throw new StorageClientException("The copy was interrupted.");
+        } catch (CompletionException exception) {
+            throw new StorageClientException(exception.getCause().getMessage(), exception.getCause());
+        }
+        // parts are numbered in the order of the list
+        return parts.stream().map(CompletableFuture::join).toList();
+    }
+
+    private void awaitSettled(List<CompletableFuture<String>> parts) {
+
+        for (CompletableFuture<String> part : parts) {
+            try {
+                part.join();
+            } catch (RuntimeException ignored) {
+                // the upload is aborted by the caller
+            }
+        }
+    }
+
+    private void abort(String composedKey, String uploadId) {
+
+        try {
+            backend.abortMultipartUpload(composedKey, uploadId);
+        } catch (StorageBackendException ignored) {
+            // the original failure is more relevant to the caller
+        }
+    }
+}
@@ -0,0 +1,306 @@
+/*
+ *  Copyright 2024 Dataport. All rights reserved. Developed as part of the MERLOT project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package eu.merloteducation.s3library.service;
+
+import eu.merloteducation.s3library.backend.ObjectWriteOptions;
+import eu.merloteducation.s3library.backend.StorageBackend;
+import eu.merloteducation.s3library.backend.StorageBackendException;
+import eu.merloteducation.s3library.backend.StorageObjectInfo;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+
+/**
+ * Stores the contents of items once per distinct content. The content is stored as blob under its SHA-256 hash and
+ * the item itself becomes a pointer object that holds the hash in its content and user metadata. Every pointer is
+ * counted by an empty reference object below the blob's hash, and a blob is deleted together with its last
+ * reference.
+ * <p>
+ * S3 offers no atomic counters, so the reference counting is not safe against deleting the last reference to a
+ * content while the same content is pushed by another client: the push may find the blob, skip its upload and
+ * reference it just before it is deleted. Deduplicated items should therefore only be deleted by a single writer
+ * or while no pushes of the same content are in progress.
+ */
+class ItemDeduplicator {
+    static final String BLOB_METADATA = "s3library-blob";
+
+    /**
+     * Content length of pointer objects, the length of a hex encoded SHA-256 hash.
+     */
+    static final int POINTER_SIZE = 64;
+
+    private static final String BLOB_DIRECTORY = ".s3library/blobs/";
+
+    private static final String REFERENCE_DIRECTORY = ".s3library/refs/";
+
+    private final StorageBackend backend;
+
+    private final String rootPrefix;
+
+    private final long spoolThreshold;
+
+    /**
+     * Receiver of the content of blobs that are not stored yet.
+     */
+    @FunctionalInterface
+    interface BlobWriter {
+        void write(String blobKey, InputStream content, long contentLength)
+            throws IOException, StorageClientException;
+    }
+
+    /**
+     * Write of an object that replaces the object stored at its key.
+     */
+    @FunctionalInterface
+    interface WriteAction {
+        void run() throws IOException, StorageClientException;
+    }
+
+    /**
+     * Create a deduplicator for the items below the given root directory.
+     *
+     * @param backend storage backend
+     * @param rootDirectory root directory of the storage client
+     * @param spoolThreshold items of at least this size are hashed into a temporary file instead of memory
+     */
+    ItemDeduplicator(StorageBackend backend, String rootDirectory, long spoolThreshold) {
+
+        this.backend = backend;
+        this.rootPrefix = rootDirectory + "/";
+        this.spoolThreshold = spoolThreshold;
+    }
+
+    /**
+     * Get the key of the blob an object points to.
+     *
+     * @param info metadata of the object
+     * @return key of the blob or null if the object is no pointer
+     */
+    String getBlobKey(StorageObjectInfo info) {
+
+        String hash = getBlobHash(info);
+        return hash == null ? null : rootPrefix + BLOB_DIRECTORY + hash;
+    }
+
+    /**
+     * Get the hash of the blob an object points to.
+     *
+     * @param info metadata of the object
+     * @return hash of the blob or null if the object is no pointer
+     */
+    static String getBlobHash(StorageObjectInfo info) {
+
+        return info.userMetadata().get(BLOB_METADATA);
+    }
+
+    /**
+     * Get the metadata of the object with the given key.
+     *
+     * @param composedKey key of the object
+     * @return metadata of the object or null if it does not exist
+     */
+    StorageObjectInfo findObject(String composedKey) {
+
+        try {
+            return backend.headObject(composedKey);
+        } catch (StorageBackendException exception) {
+            if (exception.getStatusCode() == 404) {
+                return null;
+            }
+            throw exception;
+        }
+    }
+
+    /**
+     * Store the given content as pointer to its blob, uploading the blob only if the content is not stored yet.
+     *
+     * @param composedKey key of the item
+     * @param item stream providing the content of the item
+     * @param contentLength exact number of bytes provided by the stream
+     * @param contentType content type of the item, may be null
+     * @param blobWriter writer of blobs that are not stored yet
+     * @throws IOException if the content cannot be read
+     * @throws StorageClientException if the item cannot be stored
+     */
+    void write(String composedKey, InputStream item, long contentLength, String contentType, BlobWriter blobWriter)
+        throws IOException, StorageClientException {
+
+        StorageObjectInfo previous = findObject(composedKey);
+        String previousHash = previous == null ? null : getBlobHash(previous);
+
+        MessageDigest digest = createDigest();
+        if (contentLength < spoolThreshold) {
+            byte[] content = new DigestInputStream(item, digest).readNBytes((int) contentLength);
+            checkLength(content.length, contentLength);
+            String hash = HexFormat.of().formatHex(digest.digest());
+            writePointer(composedKey, hash, previousHash, contentType,
+                blobKey -> blobWriter.write(blobKey, new ByteArrayInputStream(content), contentLength));
+            return;
+        }
+
+        Path spoolFile = Files.createTempFile("s3-library-dedup-", ".tmp");
+        try {
+            try (OutputStream spool = Files.newOutputStream(spoolFile)) {
+                checkLength(new DigestInputStream(item, digest).transferTo(spool), contentLength);
+            }
+            String hash = HexFormat.of().formatHex(digest.digest());
+            writePointer(composedKey, hash, previousHash, contentType, blobKey -> {
+                try (InputStream content = Files.newInputStream(spoolFile)) {
+                    blobWriter.write(blobKey, content, contentLength);
+                }
+            });
+        } finally {
+            Files.deleteIfExists(spoolFile);
+        }
+    }
+
+    /**
+     * Copy an object to another key with the given action. A copied pointer is counted as another reference to its
+     * blob before it is copied, and a pointer replaced by the copy releases its blob afterwards.
+     *
+     * @param source metadata of the object to copy
+     * @param composedKey key of the copy
+     * @param copyAction action copying the object
+     * @throws IOException if an I/O error occurs
+     * @throws StorageClientException if the object cannot be copied
+     */
+    void copy(StorageObjectInfo source, String composedKey, WriteAction copyAction)
+        throws IOException, StorageClientException {
+
+        String hash = getBlobHash(source);
+        if (hash == null) {
+            replace(composedKey, copyAction);
+            return;
+        }
+        StorageObjectInfo previous = findObject(composedKey);
+        String previousHash = previous == null ? null : getBlobHash(previous);
+        replacePointer(composedKey, hash, previousHash, blobKey -> copyAction.run());
+    }
+
+    /**
+     * Replace an object with one that is no pointer. A pointer replaced by the object releases its blob afterwards.
+     *
+     * @param composedKey key of the object
+     * @param writeAction action writing the object
+     * @throws IOException if an I/O error occurs
+     * @throws StorageClientException if the object cannot be written
+     */
+    void replace(String composedKey, WriteAction writeAction) throws IOException, StorageClientException {
+
+        StorageObjectInfo previous = findObject(composedKey);
+        String previousHash = previous == null ? null : getBlobHash(previous);
+        writeAction.run();
+        if (previousHash != null) {
+            release(composedKey, previousHash);
+        }
+    }
+
+    /**
+     * Remove the reference of a deleted pointer to its blob, deleting the blob if it was the last reference.
+     *
+     * @param composedKey key of the deleted pointer
+     * @param hash hash of the blob the pointer referenced
+     */
+    void release(String composedKey, String hash) {
+
+        backend.deleteObject(getReferenceKey(hash, composedKey));
+        String referencePrefix = rootPrefix + REFERENCE_DIRECTORY + hash + "/";
+        if (backend.listObjects(referencePrefix, null, null, 1).objects().isEmpty()) {
+            backend.deleteObject(rootPrefix + BLOB_DIRECTORY + hash);
+        }
+    }
+
+    private void writePointer(String composedKey, String hash, String previousHash, String contentType,
+        UploadAction upload) throws IOException, StorageClientException {
+
+        replacePointer(composedKey, hash, previousHash, blobKey -> {
+            if (!backend.objectExists(blobKey)) {
+                upload.run(blobKey);
+            }
+            byte[] pointer = hash.getBytes(StandardCharsets.US_ASCII);
+            backend.putObject(composedKey, new ByteArrayInputStream(pointer), pointer.length,
+                new ObjectWriteOptions(contentType, Map.of(BLOB_METADATA, hash)));
+        });
+    }
+
+    private void replacePointer(String composedKey, String hash, String previousHash, UploadAction write)
+        throws IOException, StorageClientException {
+
+        String blobKey = rootPrefix + BLOB_DIRECTORY + hash;
+        boolean referenced = hash.equals(previousHash);
+        // the reference is added before the blob is checked, so a concurrent release keeps the blob
+        backend.putObject(getReferenceKey(hash, composedKey), new ByteArrayInputStream(new byte[0]), 0,
+            ObjectWriteOptions.none());
+        boolean written = false;
+        try {
+            write.run(blobKey);
+            written = true;
+        } finally {
+            if (!written && !referenced) {
+                releaseQuietly(composedKey, hash);
+            }
+        }
+        if (previousHash != null && !referenced) {
+            release(composedKey, previousHash);
+        }
+    }
+
+    private void releaseQuietly(String composedKey, String hash) {
+
+        try {
+            release(composedKey, hash);
+        } catch (StorageBackendException ignored) {
+            // the original failure is more relevant to the caller, the reference only keeps the blob alive
+        }
+    }
+
+    private String getReferenceKey(String hash, String composedKey) {
+
+        return rootPrefix + REFERENCE_DIRECTORY + hash + "/" + composedKey.substring(rootPrefix.length());
+    }
+
+    private static void checkLength(long length, long contentLength) throws StorageClientException {
+
+        if (length != contentLength) {
+            throw new StorageClientException("The item did not provide the declared content length.");
+        }
+    }
+
+    private static MessageDigest createDigest() {
+
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException exception) {
+            // every Java platform supports SHA-256
+            throw new IllegalStateException(exception);
+        }
+    }
+
+    @FunctionalInterface
+    private interface UploadAction {
+        void run(String blobKey) throws IOException, StorageClientException;
+    }
+}
@@ -0,0 +1,31 @@
+/*
+ *  Copyright 2024 Dataport. All rights reserved. Developed as part of the MERLOT project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package eu.merloteducation.s3library.service;
+
+import java.time.Instant;
+
+/**
+ * Metadata of a stored item.
+ *
+ * @param key key of the item within its scope
+ * @param size size of the item in bytes
+ * @param eTag ETag of the stored object, null for packed items
+ * @param lastModified time of the last modification, null for packed items
+ * @param storageClass storage class of the stored object, null if the storage does not report it and for packed items
+ */
+public record ItemInfo(String key, long size, String eTag, Instant lastModified, String storageClass) {
+}
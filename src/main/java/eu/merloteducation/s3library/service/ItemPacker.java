@@ -0,0 +1,482 @@
+/*
+ *  Copyright 2024 Dataport. All rights reserved. Developed as part of the MERLOT project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package eu.merloteducation.s3library.service;
+
+import eu.merloteducation.s3library.backend.ByteRange;
+import eu.merloteducation.s3library.backend.ObjectListingPage;
+import eu.merloteducation.s3library.backend.ObjectReadOptions;
+import eu.merloteducation.s3library.backend.ObjectWriteOptions;
+import eu.merloteducation.s3library.backend.StorageBackend;
+import eu.merloteducation.s3library.backend.StorageBackendException;
+import eu.merloteducation.s3library.backend.StorageObject;
+import eu.merloteducation.s3library.backend.StorageObjectInfo;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.function.Function;
+
+/**
+ * Stores small items of a scope together in pack objects and keeps their positions in a {@link PackIndex} per
+ * scope. Packed items are read with ranged requests into their pack, and packs whose items were mostly deleted or
+ * replaced are rewritten by {@link #compact(String)}. Packs and indexes are stored below
+ * {@code <root-directory>/.s3library/packs/<referenceId>/}.
+ * <p>
+ * The indexes are cached per client and written with read-modify-write cycles, so the packed items of a scope
+ * must only be written by a single client. Other clients see the changes after the index time to live. Readers
+ * with an outdated index that find a pack deleted by a compaction reload the index and read again.
+ */
+class ItemPacker {
+    private static final String PACK_DIRECTORY = ".s3library/packs/";
+
+    private static final String INDEX_NAME = "index";
+
+    private final StorageBackend backend;
+
+    private final StorageClientProperties.Packing properties;
+
+    private final String rootPrefix;
+
+    private final String packPrefix;
+
+    private final Map<String, PackIndex> indexes;
+
+    ItemPacker(StorageBackend backend, StorageClientProperties.Packing properties, String rootDirectory,
+        Map<String, PackIndex> indexes) {
+
+        this.backend = backend;
+        this.properties = properties;
+        this.rootPrefix = rootDirectory + "/";
+        this.packPrefix = rootPrefix + PACK_DIRECTORY;
+        this.indexes = indexes;
+    }
+
+    /**
+     * Create the cache of the indexes of the scopes, the least recently used indexes are evicted first.
+     *
+     * @param maxScopes maximum number of cached indexes
+     * @return cache of the indexes per referenceId
+     */
+    static Map<String, PackIndex> createIndexCache(int maxScopes) {
+
+        return Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PackIndex> eldest) {
+
+                return size() > maxScopes;
+            }
+        });
+    }
+
+    /**
+     * Check whether an item is small enough to be packed.
+     *
+     * @param properties packing properties
+     * @param length length of the item
+     * @return true if the item can be packed
+     */
+    static boolean isPackable(StorageClientProperties.Packing properties, long length) {
+
+        return length > 0 && length <= properties.getMaxItemSize().toBytes();
+    }
+
+    /**
+     * Get the keys of the packed items of a scope with their sizes.
+     *
+     * @param referenceId scope of the items
+     * @return sizes of the items by key in lexicographic order
+     * @throws IOException if the index is malformed
+     */
+    NavigableMap<String, Integer> getSizes(String referenceId) throws IOException {
+
+        PackIndex index = getIndex(referenceId);
+        NavigableMap<String, Integer> sizes = new TreeMap<>();
+        synchronized (index) {
+            refresh(referenceId, index, false);
+            index.entries().forEach((key, entry) -> sizes.put(key, entry.length()));
+        }
+        return sizes;
+    }
+
+    /**
+     * Get the size of a packed item.
+     *
+     * @param referenceId scope of the item
+     * @param key key of the item
+     * @return size of the item in bytes or -1 if the item is not packed
+     * @throws IOException if the index is malformed
+     */
+    long getSize(String referenceId, String key) throws IOException {
+
+        PackIndex index = getIndex(referenceId);
+        synchronized (index) {
+            refresh(referenceId, index, false);
+            PackIndex.Entry entry = index.get(key);
+            return entry == null ? -1 : entry.length();
+        }
+    }
+
+    /**
+     * Open a packed item with a ranged read of its pack.
+     *
+     * @param referenceId scope of the item
+     * @param key key of the item
+     * @return content of the item or null if the item is not packed
+     * @throws IOException if the index is malformed
+     */
+    StorageObject open(String referenceId, String key) throws IOException {
+
+        return open(referenceId, key, 0, Long.MAX_VALUE);
+    }
+
+    /**
+     * Open a range of a packed item with a ranged read of its pack.
+     *
+     * @param referenceId scope of the item
+     * @param key key of the item
+     * @param offset offset of the range within the item, negative to start that many bytes before its end
+     * @param length maximum length of the range
+     * @return content of the range or null if the item is not packed
+     * @throws IOException if the index is malformed
+     */
+    StorageObject open(String referenceId, String key, long offset, long length) throws IOException {
+
+        PackIndex index = getIndex(referenceId);
+        PackIndex.Entry entry;
+        synchronized (index) {
+            refresh(referenceId, index, false);
+            entry = index.get(key);
+        }
+        if (entry == null) {
+            return null;
+        }
+        try {
+            return read(referenceId, entry, offset, length);
+        } catch (StorageBackendException exception) {
+            if (exception.getStatusCode() != 404) {
+                throw exception;
+            }
+        }
+
+        // the pack was removed by a compaction since the index was loaded
+        synchronized (index) {
+            refresh(referenceId, index, true);
+            entry = index.get(key);
+        }
+        return entry == null ? null : read(referenceId, entry, offset, length);
+    }
+
+    /**
+     * Write the given items into new packs of a scope and add them to its index. Items stored as objects with the
+     * same keys are deleted afterwards.
+     *
+     * @param referenceId scope of the items
+     * @param items contents of the items by key, each small enough to be packed
+     * @throws IOException if the index is malformed
+     */
+    void write(String referenceId, Map<String, byte[]> items) throws IOException {
+
+        PackIndex index = getIndex(referenceId);
+        synchronized (index) {
+            refresh(referenceId, index, true);
+            List<PackIndex.Entry> replacedEntries = new ArrayList<>();
+            items.keySet().forEach(key -> replacedEntries.add(index.get(key)));
+            writePacks(referenceId, items, index);
+            List<String> emptyPacks = removeEmptyPacks(index, replacedEntries);
+            writeIndex(referenceId, index);
+            deletePacks(referenceId, emptyPacks);
+        }
+
+        // the index takes precedence over objects, so objects that cannot be deleted are only listed once
+        List<String> composedKeys = items.keySet().stream().map(key -> rootPrefix + referenceId + "/" + key)
+            .toList();
+        for (int start = 0; start < composedKeys.size(); start += BatchDeleter.MAX_KEYS_PER_REQUEST) {
+            backend.deleteObjects(composedKeys.subList(start,
+                Math.min(start + BatchDeleter.MAX_KEYS_PER_REQUEST, composedKeys.size())));
+        }
+    }
+
+    /**
+     * Remove the given items from the index of a scope. Packs without remaining items are deleted.
+     *
+     * @param referenceId scope of the items
+     * @param keys keys of the items
+     * @return keys of the items that were packed and are removed
+     * @throws IOException if the index is malformed
+     */
+    List<String> remove(String referenceId, Collection<String> keys) throws IOException {
+
+        PackIndex index = getIndex(referenceId);
+        synchronized (index) {
+            refresh(referenceId, index, false);
+            List<String> removedKeys = new ArrayList<>();
+            List<PackIndex.Entry> removedEntries = new ArrayList<>();
+            for (String key : keys) {
+                PackIndex.Entry entry = index.entries().remove(key);
+                if (entry != null) {
+                    removedKeys.add(key);
+                    removedEntries.add(entry);
+                }
+            }
+            if (!removedKeys.isEmpty()) {
+                List<String> emptyPacks = removeEmptyPacks(index, removedEntries);
+                writeIndex(referenceId, index);
+                deletePacks(referenceId, emptyPacks);
+            }
+            return removedKeys;
+        }
+    }
+
+    /**
+     * Delete all packs and the index of a scope.
+     *
+     * @param referenceId scope of the items
+     * @return keys of the packed items that are deleted
+     * @throws IOException if the index is malformed
+     */
+    List<String> deleteAll(String referenceId) throws IOException {
+
+        PackIndex index = getIndex(referenceId);
+        synchronized (index) {
+            refresh(referenceId, index, true);
+            List<String> deletedKeys = new ArrayList<>(index.keys());
+            String prefix = packPrefix + referenceId + "/";
+            String continuationToken = null;
+            do {
+                ObjectListingPage page = backend.listObjects(prefix, null, continuationToken,
+                    BatchDeleter.MAX_KEYS_PER_REQUEST);
+                if (!page.objects().isEmpty()) {
+                    backend.deleteObjects(page.objects().stream().map(StorageObjectInfo::key).toList());
+                }
+                continuationToken = page.nextContinuationToken();
+            } while (continuationToken != null);
+            index.clear();
+            index.markLoaded(null);
+            return deletedKeys;
+        }
+    }
+
+    /**
+     * Rewrite the packs of a scope whose fraction of live bytes fell below the configured minimum, so the space of
+     * deleted and replaced items is reclaimed.
+     *
+     * @param referenceId scope of the items
+     * @return number of rewritten packs
+     * @throws IOException if the index is malformed or a pack cannot be read
+     */
+    int compact(String referenceId) throws IOException {
+
+        PackIndex index = getIndex(referenceId);
+        synchronized (index) {
+            refresh(referenceId, index, true);
+            List<String> candidates = new ArrayList<>();
+            index.getLiveBytes().forEach((pack, liveBytes) -> {
+                if (liveBytes < index.packSizes().get(pack) * properties.getMinLiveRatio()) {
+                    candidates.add(pack);
+                }
+            });
+            if (candidates.isEmpty()) {
+                return 0;
+            }
+
+            Map<String, byte[]> liveItems = new LinkedHashMap<>();
+            for (String pack : candidates) {
+                byte[] content;
+                try (InputStream packStream = new StorageItemInputStream(
+                    backend.getObject(getPackKey(referenceId, pack), ObjectReadOptions.none()))) {
+                    content = packStream.readAllBytes();
+                }
+                index.entries().forEach((key, entry) -> {
+                    if (entry.pack().equals(pack)) {
+                        liveItems.put(key, Arrays.copyOfRange(content, (int) entry.offset(),
+                            (int) entry.offset() + entry.length()));
+                    }
+                });
+            }
+            writePacks(referenceId, liveItems, index);
+            candidates.forEach(index.packSizes()::remove);
+            writeIndex(referenceId, index);
+            deletePacks(referenceId, candidates);
+            return candidates.size();
+        }
+    }
+
+    private PackIndex getIndex(String referenceId) {
+
+        return indexes.computeIfAbsent(referenceId, scope -> new PackIndex());
+    }
+
+    private void refresh(String referenceId, PackIndex index, boolean force) throws IOException {
+
+        if (!force && index.isFresh(properties.getIndexTimeToLive().toNanos())) {
+            return;
+        }
+        ObjectReadOptions options = index.getETag() == null ? ObjectReadOptions.none()
+            : ObjectReadOptions.none().withIfNoneMatch(index.getETag());
+        StorageObject object;
+        try {
+            object = backend.getObject(getIndexKey(referenceId), options);
+        } catch (StorageBackendException exception) {
+            if (exception.getStatusCode() == 304) {
+                index.markLoaded(index.getETag());
+                return;
+            }
+            if (exception.getStatusCode() == 404) {
+                index.clear();
+                index.markLoaded(null);
+                return;
+            }
+            throw exception;
+        }
+        try (InputStream content = new StorageItemInputStream(object)) {
+            index.parse(content.readAllBytes(), object.getInfo().eTag());
+        }
+    }
+
+    private StorageObject read(String referenceId, PackIndex.Entry entry, long offset, long length) {
+
+        String packKey = getPackKey(referenceId, entry.pack());
+        long start = offset >= 0 ? offset : Math.max(0, entry.length() + offset);
+        long count = Math.min(length, Math.max(0, entry.length() - start));
+        if (count == 0) {
+            return new StorageObject(new StorageObjectInfo(packKey, entry.length(), null, null, null, null, null), 0,
+                InputStream.nullInputStream(), () -> {
+            });
+        }
+        return backend.getObject(packKey, ObjectReadOptions.none()
+            .withRange(new ByteRange(entry.offset() + start, entry.offset() + start + count - 1)));
+    }
+
+    private void writePacks(String referenceId, Map<String, byte[]> items, PackIndex index) {
+
+        long maxPackSize = properties.getMaxPackSize().toBytes();
+        Iterator<Map.Entry<String, byte[]>> iterator = items.entrySet().iterator();
+        while (iterator.hasNext()) {
+            String pack = UUID.randomUUID() + ".pack";
+            ByteArrayOutputStream content = new ByteArrayOutputStream();
+            Map<String, PackIndex.Entry> entries = new LinkedHashMap<>();
+            do {
+                Map.Entry<String, byte[]> item = iterator.next();
+                entries.put(item.getKey(), new PackIndex.Entry(pack, content.size(), item.getValue().length));
+                content.writeBytes(item.getValue());
+            } while (iterator.hasNext() && content.size() < maxPackSize);
+
+            backend.putObject(getPackKey(referenceId, pack), new ByteArrayInputStream(content.toByteArray()),
+                content.size(), ObjectWriteOptions.none());
+            index.packSizes().put(pack, (long) content.size());
+            index.entries().putAll(entries);
+        }
+    }
+
+    private void writeIndex(String referenceId, PackIndex index) {
+
+        if (index.entries().isEmpty() && index.packSizes().isEmpty()) {
+            backend.deleteObject(getIndexKey(referenceId));
+            index.markLoaded(null);
+            return;
+        }
+        byte[] content = index.format();
+        index.markLoaded(backend.putObject(getIndexKey(referenceId), new ByteArrayInputStream(content),
+            content.length, ObjectWriteOptions.none()));
+    }
+
+    private List<String> removeEmptyPacks(PackIndex index, Collection<PackIndex.Entry> entries) {
+
+        List<String> emptyPacks = new ArrayList<>();
+        Map<String, Long> liveBytes = index.getLiveBytes();
+        for (PackIndex.Entry entry : entries) {
+            if (entry != null && liveBytes.get(entry.pack()) == 0 && !emptyPacks.contains(entry.pack())) {
+                emptyPacks.add(entry.pack());
+            }
+        }
+        emptyPacks.forEach(index.packSizes()::remove);
+        return emptyPacks;
+    }
+
+    private void deletePacks(String referenceId, List<String> packs) {
+
+        if (packs.isEmpty()) {
+            return;
+        }
+        backend.deleteObjects(packs.stream().map(pack -> getPackKey(referenceId, pack)).toList());
+    }
+
+    private String getIndexKey(String referenceId) {
+
+        return packPrefix + referenceId + "/" + INDEX_NAME;
+    }
+
+    private String getPackKey(String referenceId, String pack) {
+
+        return packPrefix + referenceId + "/" + pack;
+    }
+
+    /**
+     * Merge two iterators over elements in lexicographic order of their keys into one, skipping elements of the
+     * second iterator whose key is also provided by the first.
+     *
+     * @param first first elements
+     * @param second second elements
+     * @param keyOf function providing the key of an element
+     * @param <T> type of the elements
+     * @return elements of both iterators in lexicographic order of their keys
+     */
+    static <T> Iterator<T> merge(Iterator<T> first, Iterator<T> second, Function<T, String> keyOf) {
+
+        return new Iterator<>() {
+            private T nextFirst = first.hasNext() ? first.next() : null;
+
+            private T nextSecond = second.hasNext() ? second.next() : null;
+
+            @Override
+            public boolean hasNext() {
+
+                return nextFirst != null || nextSecond != null;
+            }
+
+            @Override
+            public T next() {
+
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                int order = nextFirst == null ? 1 : nextSecond == null ? -1
+                    : keyOf.apply(nextFirst).compareTo(keyOf.apply(nextSecond));
+                T element = order <= 0 ? nextFirst : nextSecond;
+                if (order <= 0) {
+                    nextFirst = first.hasNext() ? first.next() : null;
+                }
+                if (order >= 0) {
+                    nextSecond = second.hasNext() ? second.next() : null;
+                }
+                return element;
+            }
+        };
+    }
+}
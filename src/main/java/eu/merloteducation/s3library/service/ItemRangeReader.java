@@ -0,0 +1,108 @@
+/*
+ *  Copyright 2024 Dataport. All rights reserved. Developed as part of the MERLOT project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package eu.merloteducation.s3library.service;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Reads ranges of a single item at arbitrary positions. Reads smaller than the read-ahead fetch a whole window of
+ * the read-ahead size and serve subsequent reads within the window from memory. Every window is fetched on its own,
+ * so reads that span several windows may observe a modification of the item in between. A reader is not thread
+ * safe.
+ */
+public class ItemRangeReader {
+    private final RangeSource source;
+
+    private final int readAhead;
+
+    private byte[] window = new byte[0];
+
+    private long windowStart;
+
+    private long itemEnd = -1;
+
+    ItemRangeReader(RangeSource source, int readAhead) {
+
+        this.source = source;
+        this.readAhead = readAhead;
+    }
+
+    /**
+     * Read bytes of the item at the given position into the given buffer.
+     *
+     * @param position position within the item to read from
+     * @param buffer buffer to read the bytes into
+     * @param offset offset in the buffer to write the bytes to
+     * @param length maximum number of bytes to read
+     * @return number of bytes read, less than the length only at the end of the item, -1 if the position is at or
+     *     after the end of the item
+     * @throws IOException if an I/O error occurs
+     * @throws StorageClientException if an error occurs while getting the item
+     */
+    public int read(long position, byte[] buffer, int offset, int length) throws IOException, StorageClientException {
+
+        Objects.checkFromIndexSize(offset, length, buffer.length);
+        if (position < 0) {
+            throw new StorageClientException("The position must not be negative.");
+        }
+        if (length == 0) {
+            return 0;
+        }
+
+        int count = 0;
+        while (count < length) {
+            long current = position + count;
+            if (itemEnd >= 0 && current >= itemEnd) {
+                break;
+            }
+            if (current >= windowStart && current < windowStart + window.length) {
+                int available = (int) Math.min(length - count, windowStart + window.length - current);
+                System.arraycopy(window, (int) (current - windowStart), buffer, offset + count, available);
+                count += available;
+                continue;
+            }
+
+            int remaining = length - count;
+            if (remaining >= readAhead) {
+                int read = source.read(current, buffer, offset + count, remaining);
+                count += read;
+                if (read < remaining) {
+                    itemEnd = current + read;
+                }
+                break;
+            }
+            byte[] fetched = new byte[readAhead];
+            int read = source.read(current, fetched, 0, readAhead);
+            window = read == readAhead ? fetched : Arrays.copyOf(fetched, read);
+            windowStart = current;
+            if (read < readAhead) {
+                itemEnd = current + read;
+            }
+        }
+        return count == 0 ? -1 : count;
+    }
+
+    /**
+     * Source of the ranges of an item.
+     */
+    @FunctionalInterface
+    interface RangeSource {
+        int read(long offset, byte[] buffer, int bufferOffset, int length) throws IOException, StorageClientException;
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ *  Copyright 2024 Dataport. All rights reserved. Developed as part of the MERLOT project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package eu.merloteducation.s3library.service;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Cache of the item keys of whole scopes. Writes of this client update cached listings in place, so they stay
+ * visible without listing the scope again, while writes of other clients become visible after the time to live.
+ * <p>
+ * As in {@link MemoryItemCache}, every update advances a generation counter and listings are only added if their
+ * scope was not updated since the listing started. Updates are tracked for as many scopes as are cached.
+ */
+class ListingCache {
+    private final long timeToLive;
+
+    private final LinkedHashMap<String, Entry> entries;
+
+    private final InvalidationTracker updates;
+
+    ListingCache(Duration timeToLive, int maxScopes) {
+
+        this.timeToLive = timeToLive.toNanos();
+        this.updates = new InvalidationTracker(maxScopes);
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+
+                return size() > maxScopes;
+            }
+        };
+    }
+
+    /**
+     * Get the current generation, to be passed to {@link #put} after listing the storage.
+     *
+     * @return generation
+     */
+    synchronized long getGeneration() {
+
+        return updates.getGeneration();
+    }
+
+    /**
+     * Get the cached keys of a scope.
+     *
+     * @param scope composed prefix of the scope
+     * @return keys in lexicographic order or null if the scope is not cached or expired
+     */
+    synchronized List<String> get(String scope) {
+
+        Entry entry = entries.get(scope);
+        if (entry == null) {
+            return null;
+        }
+        if (System.nanoTime() - entry.expiresAt >= 0) {
+            entries.remove(scope);
+            return null;
+        }
+        return List.copyOf(entry.keys);
+    }
+
+    /**
+     * Cache the keys of a scope unless the scope was updated since the given generation.
+     *
+     * @param scope composed prefix of the scope
+     * @param keys keys of the scope
+     * @param readGeneration generation before the listing started
+     */
+    synchronized void put(String scope, List<String> keys, long readGeneration) {
+
+        if (!updates.isInvalidatedSince(scope, readGeneration)) {
+            entries.put(scope, new Entry(new TreeSet<>(keys), System.nanoTime() + timeToLive));
+        }
+    }
+
+    /**
+     * Add a written key to the cached listing of its scope.
+     *
+     * @param scope composed prefix of the scope
+     * @param key key of the item
+     */
+    synchronized void add(String scope, String key) {
+
+        updates.invalidate(scope);
+        Entry entry = entries.get(scope);
+        if (entry != null) {
+            entry.keys.add(key);
+        }
+    }
+
+    /**
+     * Remove a deleted key from the cached listing of its scope.
+     *
+     * @param scope composed prefix of the scope
+     * @param key key of the item
+     */
+    synchronized void remove(String scope, String key) {
+
+        updates.invalidate(scope);
+        Entry entry = entries.get(scope);
+        if (entry != null) {
+            entry.keys.remove(key);
+        }
+    }
+
+    /**
+     * Remove the cached listing of a scope whose content is unknown after a failed write.
+     *
+     * @param scope composed prefix of the scope
+     */
+    synchronized void invalidate(String scope) {
+
+        updates.invalidate(scope);
+        entries.remove(scope);
+    }
+
+    private record Entry(TreeSet<String> keys, long expiresAt) {
+    }
+}
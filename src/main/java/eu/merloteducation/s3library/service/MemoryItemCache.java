@@ -0,0 +1,190 @@
+/*
+ *  Copyright 2024 Dataport. All rights reserved. Developed as part of the MERLOT project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package eu.merloteducation.s3library.service;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Least recently used cache of item contents that is bounded by the total number of cached bytes. Entries expire
+ * after a fixed time to live and are then revalidated against the storage by their ETag instead of being evicted.
+ * <p>
+ * Every invalidation advances a generation counter. Contents read from the storage are only added if their key was
+ * not invalidated since the read started, so a read that overlaps a write of the same item never caches the old
+ * content, while writes of other items do not keep it from being cached.
+ */
+class MemoryItemCache {
+    private static final int MAX_TRACKED_INVALIDATIONS = 1024;
+
+    private final long maxSize;
+
+    private final long maxItemSize;
+
+    private final long timeToLive;
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final InvalidationTracker invalidations = new InvalidationTracker(MAX_TRACKED_INVALIDATIONS);
+
+    private long size;
+
+    MemoryItemCache(long maxSize, long maxItemSize, Duration timeToLive) {
+
+        this.maxSize = maxSize;
+        this.maxItemSize = maxItemSize;
+        this.timeToLive = timeToLive.toNanos();
+    }
+
+    /**
+     * Get the current generation, to be passed to {@link #put} and {@link #revalidate} after reading the storage.
+     *
+     * @return generation
+     */
+    synchronized long getGeneration() {
+
+        return invalidations.getGeneration();
+    }
+
+    /**
+     * Get the cached entry of the given key, fresh or expired.
+     *
+     * @param key key of the item
+     * @return entry or null if the item is not cached
+     */
+    synchronized Entry get(String key) {
+
+        return entries.get(key);
+    }
+
+    /**
+     * Cache the content of an item unless it exceeds the maximum item size or the item was invalidated since the
+     * given generation.
+     *
+     * @param key key of the item
+     * @param content content of the item, must not be modified afterwards
+     * @param eTag ETag of the item
+     * @param readGeneration generation before the content was read
+     */
+    synchronized void put(String key, byte[] content, String eTag, long readGeneration) {
+
+        if (invalidations.isInvalidatedSince(key, readGeneration) || eTag == null || content.length > maxItemSize) {
+            return;
+        }
+        remove(key);
+        entries.put(key, new Entry(content, eTag, System.nanoTime() + timeToLive));
+        size += content.length;
+
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (size > maxSize && eldest.hasNext()) {
+            size -= eldest.next().content.length;
+            eldest.remove();
+        }
+    }
+
+    /**
+     * Renew the time to live of an entry after the storage confirmed that the item was not modified.
+     *
+     * @param key key of the item
+     * @param entry entry that was revalidated
+     * @param readGeneration generation before the revalidation was sent
+     */
+    synchronized void revalidate(String key, Entry entry, long readGeneration) {
+
+        if (!invalidations.isInvalidatedSince(key, readGeneration) && entries.get(key) == entry) {
+            entry.expiresAt = System.nanoTime() + timeToLive;
+        }
+    }
+
+    /**
+     * Remove the entry of the given key.
+     *
+     * @param key key of the item
+     */
+    synchronized void invalidate(String key) {
+
+        invalidations.invalidate(key);
+        remove(key);
+    }
+
+    /**
+     * Remove the entries of all keys starting with the given prefix.
+     *
+     * @param prefix prefix of the keys
+     */
+    synchronized void invalidatePrefix(String prefix) {
+
+        invalidations.invalidatePrefix(prefix);
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Entry> entry = iterator.next();
+            if (entry.getKey().startsWith(prefix)) {
+                size -= entry.getValue().content.length;
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Get the number of cached bytes.
+     *
+     * @return size in bytes
+     */
+    synchronized long getSize() {
+
+        return size;
+    }
+
+    private void remove(String key) {
+
+        Entry removed = entries.remove(key);
+        if (removed != null) {
+            size -= removed.content.length;
+        }
+    }
+
+    static final class Entry {
+        private final byte[] content;
+
+        private final String eTag;
+
+        private volatile long expiresAt;
+
+        private Entry(byte[] content, String eTag, long expiresAt) {
+
+            this.content = content;
+            this.eTag = eTag;
+            this.expiresAt = expiresAt;
+        }
+
+        byte[] getContent() {
+
+            return content;
+        }
+
+        String getETag() {
+
+            return eTag;
+        }
+
+        boolean isFresh() {
+
+            return System.nanoTime() - expiresAt < 0;
+        }
+    }
+}
@@ -0,0 +1,244 @@
+/*
+ *  Copyright 2024 Dataport. All rights reserved. Developed as part of the MERLOT project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package eu.merloteducation.s3library.service;
+
+import eu.merloteducation.s3library.backend.ObjectWriteOptions;
+import eu.merloteducation.s3library.backend.StorageBackend;
+import eu.merloteducation.s3library.backend.StorageBackendException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Uploads a single item in multiple parts that are transferred concurrently. The content is read sequentially into
+ * a fixed number of reusable part buffers, so the memory used by an upload is bounded by the part size times the
+ * configured concurrency, independent of the item size.
+ */
+class MultipartUploader {
+    static final long MIN_PART_SIZE = 5L * 1024 * 1024;
+
+    private static final int MAX_PARTS = 10000;
+
+    private final StorageBackend backend;
+
+    private final StorageClientProperties.Multipart properties;
+
+    private final Executor executor;
+
+    private final int partRetries;
+
+    /**
+     * Create an uploader on the given backend. Failed parts are retried by the given retrying backend, only if
+     * the client does not retry requests the configured number of part retries is made here.
+     */
+    MultipartUploader(StorageBackend backend, StorageClientProperties.Multipart properties, Executor executor,
+        RetryingStorageBackend retries) {
+
+        this.backend = backend;
+        this.properties = properties;
+        this.executor = executor;
+        this.partRetries = retries != null ? 0 : properties.getPartRetries();
+    }
+
+    /**
+     * Upload the given content to the given key. If any part fails after all retries, the multipart upload is
+     * aborted so that no incomplete parts remain in the bucket. Content of unknown length is read until the end of
+     * the stream in parts of the configured part size.
+     *
+     * @param composedKey key of the item
+     * @param content stream providing the content of the item
+     * @param contentLength exact number of bytes provided by the stream, -1 if unknown
+     * @param options options of the write
+     * @throws StorageClientException if an error occurs while uploading the item
+     */
+    void upload(String composedKey, InputStream content, long contentLength, ObjectWriteOptions options)
+        throws StorageClientException {
+
+        int partSize = getPartSize(contentLength);
+        String uploadId;
+        try {
+            uploadId = backend.createMultipartUpload(composedKey, options);
+        } catch (StorageBackendException exception) {
+            throw new StorageClientException(exception.getMessage(), exception);
+        }
+
+        try {
+            List<String> partETags = uploadParts(composedKey, uploadId, content, contentLength, partSize);
+            backend.completeMultipartUpload(composedKey, uploadId, partETags);
+        } catch (StorageClientException exception) {
+            abort(composedKey, uploadId);
+            throw exception;
+        } catch (StorageBackendException exception) {
+            abort(composedKey, uploadId);
+            throw new StorageClientException(exception.getMessage(), exception);
+        }
+    }
+
+    private List<String> uploadParts(String composedKey, String uploadId, InputStream content,
+        long contentLength, int partSize) throws StorageClientException {
+
+        int concurrency = Math.max(1, properties.getConcurrency());
+        BlockingQueue<byte[]> buffers = new ArrayBlockingQueue<>(concurrency);
+        for (int i = 0; i < concurrency; i++) {
+            buffers.add(new byte[partSize]);
+        }
+
+        List<CompletableFuture<String>> parts = new ArrayList<>();
+        AtomicBoolean failed = new AtomicBoolean();
+        try {
+            long remaining = contentLength;
+            int partNumber = 1;
+            boolean lastPart = false;
+            while (!lastPart && remaining != 0) {
+                byte[] buffer = buffers.take();
+                int length;
+                if (contentLength >= 0) {
+                    length = (int) Math.min(partSize, remaining);
+                    if (content.readNBytes(buffer, 0, length) != length) {
+                        throw new StorageClientException(
+                            "The item ended before the declared content length was reached.");
+                    }
+                    remaining -= length;
+                } else {
+                    length = content.readNBytes(buffer, 0, partSize);
+                    // an upload needs at least one part, which may be empty
+                    if (length == 0 && partNumber > 1) {
+                        buffers.add(buffer);
+                        break;
+                    }
+                    lastPart = length < partSize;
+                    if (!lastPart && partNumber == MAX_PARTS) {
+                        throw new StorageClientException("The item exceeds the maximum number of parts.");
+                    }
+                }
+
+                int currentPartNumber = partNumber++;
+                CompletableFuture<String> part = CompletableFuture.supplyAsync(
+                    () -> uploadPart(composedKey, uploadId, currentPartNumber, buffer, length, failed), executor);
+                parts.add(part.whenComplete((partETag, throwable) -> {
+                    if (throwable != null) {
+                        failed.set(true);
+                    }
+                    buffers.add(buffer);
+                }));
+
+                failFast(parts);
+            }
+            CompletableFuture.allOf(parts.toArray(new CompletableFuture[0])).join();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            awaitSettled(parts, failed);
+            throw new StorageClientException("The upload was interrupted.");
+        } catch (IOException exception) {
+            awaitSettled(parts, failed);
+            throw new StorageClientException(exception.getMessage(), exception);
+        } catch (StorageClientException exception) {
+            awaitSettled(parts, failed);
+            throw exception;
+        } catch (CompletionException exception) {
+            awaitSettled(parts, failed);
+            Throwable failure = getFailure(parts, exception);
+            throw new StorageClientException(failure.getMessage(), failure);
+        }
+        // parts are numbered in the order of the list
+        return parts.stream().map(CompletableFuture::join).toList();
+    }
+
+    private String uploadPart(String composedKey, String uploadId, int partNumber, byte[] buffer, int length,
+        AtomicBoolean failed) {
+
+        int attempt = 0;
+        while (true) {
+            if (failed.get()) {
+                throw new CancellationException("Another part of the upload failed.");
+            }
+            try {
+                return backend.uploadPart(composedKey, uploadId, partNumber,
+                    new ByteArrayInputStream(buffer, 0, length), length);
+            } catch (StorageBackendException exception) {
+                if (attempt++ >= partRetries) {
+                    throw exception;
+                }
+            }
+        }
+    }
+
+    private void failFast(List<CompletableFuture<String>> parts) {
+
+        for (CompletableFuture<String> part : parts) {
+            if (part.isCompletedExceptionally()) {
+                part.join();
+            }
+        }
+    }
+
+    private void awaitSettled(List<CompletableFuture<String>> parts, AtomicBoolean failed) {
+
+        // parts that did not start yet are skipped, running parts have to finish before the upload is aborted
+        failed.set(true);
+        for (CompletableFuture<String> part : parts) {
+            try {
+                part.join();
+            } catch (RuntimeException ignored) {
+                // the first failure is reported by the caller
+            }
+        }
+    }
+
+    private Throwable getFailure(List<CompletableFuture<String>> parts, CompletionException fallback) {
+
+        for (CompletableFuture<String> part : parts) {
+            try {
+                part.join();
+            } catch (CompletionException exception) {
+                if (!(exception.getCause() instanceof CancellationException)) {
+                    return exception.getCause();
+                }
+            }
+        }
+        return fallback.getCause();
+    }
+
+    private void abort(String composedKey, String uploadId) {
+
+        try {
+            backend.abortMultipartUpload(composedKey, uploadId);
+        } catch (StorageBackendException ignored) {
+            // the original failure is more relevant to the caller
+        }
+    }
+
+    private int getPartSize(long contentLength) {
+
+        if (contentLength < 0) {
+            return (int) properties.getPartSize().toBytes();
+        }
+        long partSize = properties.getPartSize().toBytes();
+        long requiredPartSize = (contentLength + MAX_PARTS - 1) / MAX_PARTS;
+        return (int) Math.max(partSize, requiredPartSize);
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ *  Copyright 2024 Dataport. All rights reserved. Developed as part of the MERLOT project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package eu.merloteducation.s3library.service;
+
+import eu.merloteducation.s3library.backend.ObjectListingPage;
+import eu.merloteducation.s3library.backend.StorageBackend;
+import eu.merloteducation.s3library.backend.StorageBackendException;
+import eu.merloteducation.s3library.backend.StorageObjectInfo;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Iterates lazily over all objects below a prefix by following the continuation tokens of the listing. While the
+ * caller works through the current page, the next page can be fetched in the background.
+ */
+class ObjectListingIterator implements Iterator<StorageObjectInfo>, AutoCloseable {
+    private final StorageBackend backend;
+
+    private final String prefix;
+
+    private final int pageSize;
+
+    private final Executor prefetchExecutor;
+
+    private Iterator<StorageObjectInfo> currentPage = Collections.emptyIterator();
+
+    private String continuationToken;
+
+    private CompletableFuture<ObjectListingPage> nextPage;
+
+    private boolean lastPage;
+
+    /**
+     * Create an iterator over the objects below the given prefix.
+     *
+     * @param backend backend to list the objects with
+     * @param prefix prefix of the objects
+     * @param pageSize maximum number of objects per listing request
+     * @param prefetchExecutor executor to fetch the next page in the background with, null to fetch pages on demand
+     */
+    ObjectListingIterator(StorageBackend backend, String prefix, int pageSize, Executor prefetchExecutor) {
+
+        this.backend = backend;
+        this.prefix = prefix;
+        this.pageSize = pageSize;
+        this.prefetchExecutor = prefetchExecutor;
+    }
+
+    /**
+     * Fetch the first page of the listing, so that errors like missing permissions surface immediately.
+     *
+     * @param startAfter key after which the listing starts, may be null
+     * @throws StorageClientException if an error occurs while listing the objects
+     */
+    void start(String startAfter) throws StorageClientException {
+
+        try {
+            accept(backend.listObjects(this.prefix, startAfter, null, this.pageSize));
+        } catch (StorageBackendException exception) {
+            throw new StorageClientException(exception.getMessage(), exception);
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+
+        while (!currentPage.hasNext() && !lastPage) {
+            try {
+                accept(nextPage != null ? nextPage.join() : fetchNextPage());
+            } catch (CompletionException | StorageBackendException exception) {
+                lastPage = true;
+                Throwable cause = exception instanceof CompletionException ? exception.getCause() : exception;
+                throw new UncheckedStorageClientException(new StorageClientException(cause.getMessage(), cause));
+            }
+        }
+        return currentPage.hasNext();
+    }
+
+    @Override
+    public StorageObjectInfo next() {
+
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return currentPage.next();
+    }
+
+    /**
+     * Stop prefetching further pages.
+     */
+    @Override
+    public void close() {
+
+        lastPage = true;
+        if (nextPage != null) {
+            nextPage.cancel(false);
+            nextPage = null;
+        }
+    }
+
+    private void accept(ObjectListingPage result) {
+
+        currentPage = result.objects().iterator();
+        continuationToken = result.nextContinuationToken();
+        lastPage = !result.isTruncated();
+        nextPage = null;
+        if (!lastPage && prefetchExecutor != null) {
+            nextPage = CompletableFuture.supplyAsync(this::fetchNextPage, prefetchExecutor);
+        }
+    }
+
+    private ObjectListingPage fetchNextPage() {
+
+        return backend.listObjects(this.prefix, null, continuationToken, this.pageSize);
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ *  Copyright 2024 Dataport. All rights reserved. Developed as part of the MERLOT project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package eu.merloteducation.s3library.service;
+
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Index of the packed items of a single scope, mapping the key of every packed item to its position in a pack
+ * object. The index is stored as text with one line per pack and one line per item, keys are URL encoded:
+ * <pre>
+ * P &lt;pack&gt; &lt;size&gt;
+ * E &lt;key&gt; &lt;pack&gt; &lt;offset&gt; &lt;length&gt;
+ * </pre>
+ * Instances are not thread safe, they are used while holding their monitor.
+ */
+class PackIndex {
+    private final TreeMap<String, Entry> entries = new TreeMap<>();
+
+    private final Map<String, Long> packSizes = new HashMap<>();
+
+    private String eTag;
+
+    private long loadedAt;
+
+    private boolean loaded;
+
+    /**
+     * Position of a packed item.
+     *
+     * @param pack name of the pack object
+     * @param offset offset of the item in the pack
+     * @param length length of the item
+     */
+    record Entry(String pack, long offset, int length) {
+    }
+
+    Entry get(String key) {
+
+        return entries.get(key);
+    }
+
+    NavigableSet<String> keys() {
+
+        return new TreeSet<>(entries.keySet());
+    }
+
+    Map<String, Entry> entries() {
+
+        return entries;
+    }
+
+    Map<String, Long> packSizes() {
+
+        return packSizes;
+    }
+
+    /**
+     * Get the number of bytes of every pack that belong to items in the index.
+     *
+     * @return live bytes per pack, including packs without live bytes
+     */
+    Map<String, Long> getLiveBytes() {
+
+        Map<String, Long> liveBytes = new HashMap<>();
+        packSizes.keySet().forEach(pack -> liveBytes.put(pack, 0L));
+        entries.values().forEach(entry -> liveBytes.merge(entry.pack(), (long) entry.length(), Long::sum));
+        return liveBytes;
+    }
+
+    String getETag() {
+
+        return eTag;
+    }
+
+    boolean isFresh(long timeToLive) {
+
+        return loaded && System.nanoTime() - loadedAt < timeToLive;
+    }
+
+    /**
+     * Mark the index as identical to the stored index with the given ETag.
+     *
+     * @param eTag ETag of the stored index or null if no index is stored
+     */
+    void markLoaded(String eTag) {
+
+        this.eTag = eTag;
+        this.loaded = true;
+        this.loadedAt = System.nanoTime();
+    }
+
+    void clear() {
+
+        entries.clear();
+        packSizes.clear();
+    }
+
+    /**
+     * Replace the content of this index with the given stored index.
+     *
+     * @param content content of the stored index
+     * @param eTag ETag of the stored index
+     * @throws IOException if the stored index is malformed
+     */
+    void parse(byte[] content, String eTag) throws IOException {
+
+        clear();
+        for (String line : new String(content, StandardCharsets.UTF_8).split("\n")) {
+            String[] fields = line.split(" ");
+            try {
+                if (fields[0].equals("P") && fields.length == 3) {
+                    packSizes.put(fields[1], Long.parseLong(fields[2]));
+                } else if (fields[0].equals("E") && fields.length == 5) {
+                    entries.put(URLDecoder.decode(fields[1], StandardCharsets.UTF_8),
+                        new Entry(fields[2], Long.parseLong(fields[3]), Integer.parseInt(fields[4])));
+                } else if (!line.isEmpty()) {
+                    throw new IOException("The pack index contains an unknown line.");
+                }
+            } catch (IllegalArgumentException exception) {
+                throw new IOException("The pack index is malformed.", exception);
+            }
+        }
+        markLoaded(eTag);
+    }
+
+    byte[] format() {
+
+        StringBuilder content = new StringBuilder();
+        packSizes.forEach((pack, size) -> content.append("P ").append(pack).append(' ').append(size).append('\n'));
+        entries.forEach((key, entry) -> content.append("E ").append(URLEncoder.encode(key, StandardCharsets.UTF_8))
+            .append(' ').append(entry.pack()).append(' ').append(entry.offset()).append(' ').append(entry.length())
+            .append('\n'));
+        return content.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
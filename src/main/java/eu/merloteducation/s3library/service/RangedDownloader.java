@@ -0,0 +1,162 @@
+/*
+ *  Copyright 2024 Dataport. All rights reserved. Developed as part of the MERLOT project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package eu.merloteducation.s3library.service;
+
+import eu.merloteducation.s3library.backend.ByteRange;
+import eu.merloteducation.s3library.backend.ObjectReadOptions;
+import eu.merloteducation.s3library.backend.StorageBackend;
+import eu.merloteducation.s3library.backend.StorageBackendException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Downloads a single item by fetching byte ranges of it concurrently and writing each range directly to its offset
+ * in the target file. Every worker only holds a small transfer buffer, so no part of the item is reassembled in
+ * memory.
+ */
+class RangedDownloader {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final StorageBackend backend;
+
+    private final StorageClientProperties.RangedDownload properties;
+
+    private final Executor executor;
+
+    private final RetryingStorageBackend retries;
+
+    /**
+     * Create a downloader on the given backend. Failed requests are retried by the given retrying backend, which
+     * also paces and budgets the repetition of ranges whose content broke off. Only if the client does not retry
+     * requests, the configured number of range retries is made here.
+     */
+    RangedDownloader(StorageBackend backend, StorageClientProperties.RangedDownload properties, Executor executor,
+        RetryingStorageBackend retries) {
+
+        this.backend = backend;
+        this.properties = properties;
+        this.executor = executor;
+        this.retries = retries;
+    }
+
+    /**
+     * Download the item with the given key into the given channel. All ranges are requested with the given ETag
+     * as matching constraint, so a concurrent modification of the item fails the download instead of mixing two
+     * versions of the item.
+     *
+     * @param composedKey key of the item
+     * @param contentLength content length of the item
+     * @param eTag ETag of the item
+     * @param target channel to write the item to
+     * @throws StorageClientException if an error occurs while downloading the item
+     */
+    void download(String composedKey, long contentLength, String eTag, FileChannel target)
+        throws StorageClientException {
+
+        long rangeSize = properties.getRangeSize().toBytes();
+        int rangeCount = (int) ((contentLength + rangeSize - 1) / rangeSize);
+        AtomicInteger nextRange = new AtomicInteger();
+        AtomicBoolean failed = new AtomicBoolean();
+
+        List<CompletableFuture<Void>> workers = new ArrayList<>();
+        int workerCount = Math.min(Math.max(1, properties.getConcurrency()), rangeCount);
+        for (int i = 0; i < workerCount; i++) {
+            workers.add(CompletableFuture.runAsync(() -> {
+                int range;
+                while (!failed.get() && (range = nextRange.getAndIncrement()) < rangeCount) {
+                    long start = range * rangeSize;
+                    long end = Math.min(start + rangeSize, contentLength) - 1;
+                    try {
+                        downloadRange(composedKey, eTag, start, end, target);
+                    } catch (RuntimeException exception) {
+                        failed.set(true);
+                        throw exception;
+                    }
+                }
+            }, executor));
+        }
+
+        try {
+            CompletableFuture.allOf(workers.toArray(new CompletableFuture[0])).join();
+        } catch (CompletionException exception) {
+            Throwable cause = exception.getCause();
+            if (cause instanceof UncheckedIOException ioException) {
+                cause = ioException.getCause();
+            }
+            throw new StorageClientException(cause.getMessage(), cause);
+        }
+    }
+
+    private void downloadRange(String composedKey, String eTag, long start, long end, FileChannel target) {
+
+        int attempt = 0;
+        while (true) {
+            try {
+                transferRange(composedKey, eTag, start, end, target);
+                return;
+            } catch (StorageBackendException exception) {
+                if (exception.getStatusCode() == 412) {
+                    // the item changed since the download started, every further range would fail the same way
+                    throw new StorageBackendException("The item was modified while it was downloaded.", 412,
+                        exception.getErrorCode(), exception);
+                }
+                // the retrying backend already retried the request
+                if (retries != null || attempt++ >= properties.getRangeRetries()) {
+                    throw exception;
+                }
+            } catch (UncheckedIOException exception) {
+                if (retries != null ? !retries.awaitRetry(++attempt) : attempt++ >= properties.getRangeRetries()) {
+                    throw exception;
+                }
+            }
+        }
+    }
+
+    private void transferRange(String composedKey, String eTag, long start, long end, FileChannel target) {
+
+        ObjectReadOptions options = ObjectReadOptions.none().withRange(new ByteRange(start, end)).withIfMatch(eTag);
+
+        long position = start;
+        try (InputStream content = new StorageItemInputStream(backend.getObject(composedKey, options))) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int count;
+            while ((count = content.read(buffer)) != -1) {
+                ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, 0, count);
+                while (byteBuffer.hasRemaining()) {
+                    position += target.write(byteBuffer, position);
+                }
+            }
+        } catch (IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+
+        if (position != end + 1) {
+            throw new StorageBackendException("The item ended before the requested range was complete.", 0, null);
+        }
+    }
+}
@@ -0,0 +1,249 @@
+/*
+ *  Copyright 2024 Dataport. All rights reserved. Developed as part of the MERLOT project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package eu.merloteducation.s3library.service;
+
+import eu.merloteducation.s3library.backend.ByteRange;
+import eu.merloteducation.s3library.backend.ConnectionPoolStats;
+import eu.merloteducation.s3library.backend.ObjectListingPage;
+import eu.merloteducation.s3library.backend.ObjectReadOptions;
+import eu.merloteducation.s3library.backend.ObjectWriteOptions;
+import eu.merloteducation.s3library.backend.StorageBackend;
+import eu.merloteducation.s3library.backend.StorageBackendException;
+import eu.merloteducation.s3library.backend.StorageObject;
+import eu.merloteducation.s3library.backend.StorageObjectInfo;
+
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Storage backend that paces the requests to another backend per key prefix, so that bulk operations on a single
+ * prefix stay below the request rates the storage allows per prefix instead of being throttled. Reads and writes
+ * are limited separately, each by a token bucket per prefix. Requests exceeding the rate wait for their turn, up
+ * to a maximum wait time after which they fail without being sent.
+ */
+class RateLimitingStorageBackend implements StorageBackend {
+    private final StorageBackend delegate;
+
+    private final StorageClientProperties.RateLimit properties;
+
+    private final Map<String, TokenBucket> buckets;
+
+    private final LongSupplier clock;
+
+    private final Sleeper sleeper;
+
+    /**
+     * Waits for the given number of nanoseconds.
+     */
+    @FunctionalInterface
+    interface Sleeper {
+        void sleep(long nanos) throws InterruptedException;
+    }
+
+    RateLimitingStorageBackend(StorageBackend delegate, StorageClientProperties.RateLimit properties) {
+
+        this(delegate, properties, System::nanoTime, TimeUnit.NANOSECONDS::sleep);
+    }
+
+    RateLimitingStorageBackend(StorageBackend delegate, StorageClientProperties.RateLimit properties,
+        LongSupplier clock, Sleeper sleeper) {
+
+        this.delegate = delegate;
+        this.properties = properties;
+        this.clock = clock;
+        this.sleeper = sleeper;
+        this.buckets = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, TokenBucket> eldest) {
+
+                return size() > properties.getMaxPrefixes();
+            }
+        };
+    }
+
+    @Override
+    public StorageObject getObject(String key, ObjectReadOptions options) {
+
+        acquire(getPrefix(key), false);
+        return delegate.getObject(key, options);
+    }
+
+    @Override
+    public StorageObjectInfo headObject(String key) {
+
+        acquire(getPrefix(key), false);
+        return delegate.headObject(key);
+    }
+
+    @Override
+    public boolean objectExists(String key) {
+
+        acquire(getPrefix(key), false);
+        return delegate.objectExists(key);
+    }
+
+    @Override
+    public String putObject(String key, InputStream content, long contentLength, ObjectWriteOptions options) {
+
+        acquire(getPrefix(key), true);
+        return delegate.putObject(key, content, contentLength, options);
+    }
+
+    @Override
+    public ObjectListingPage listObjects(String prefix, String startAfter, String continuationToken, int maxKeys) {
+
+        acquire(getPrefix(prefix), false);
+        return delegate.listObjects(prefix, startAfter, continuationToken, maxKeys);
+    }
+
+    @Override
+    public String copyObject(String sourceKey, String key, String ifMatch) {
+
+        acquire(getPrefix(key), true);
+        return delegate.copyObject(sourceKey, key, ifMatch);
+    }
+
+    @Override
+    public void deleteObject(String key) {
+
+        acquire(getPrefix(key), true);
+        delegate.deleteObject(key);
+    }
+
+    @Override
+    public Map<String, String> deleteObjects(List<String> keys) {
+
+        keys.stream().map(RateLimitingStorageBackend::getPrefix).distinct().forEach(prefix -> acquire(prefix, true));
+        return delegate.deleteObjects(keys);
+    }
+
+    @Override
+    public String createMultipartUpload(String key, ObjectWriteOptions options) {
+
+        acquire(getPrefix(key), true);
+        return delegate.createMultipartUpload(key, options);
+    }
+
+    @Override
+    public String uploadPart(String key, String uploadId, int partNumber, InputStream content, long contentLength) {
+
+        acquire(getPrefix(key), true);
+        return delegate.uploadPart(key, uploadId, partNumber, content, contentLength);
+    }
+
+    @Override
+    public String copyPart(String key, String uploadId, int partNumber, String sourceKey, ByteRange range,
+        String ifMatch) {
+
+        acquire(getPrefix(key), true);
+        return delegate.copyPart(key, uploadId, partNumber, sourceKey, range, ifMatch);
+    }
+
+    @Override
+    public void completeMultipartUpload(String key, String uploadId, List<String> partETags) {
+
+        acquire(getPrefix(key), true);
+        delegate.completeMultipartUpload(key, uploadId, partETags);
+    }
+
+    @Override
+    public void abortMultipartUpload(String key, String uploadId) {
+
+        acquire(getPrefix(key), true);
+        delegate.abortMultipartUpload(key, uploadId);
+    }
+
+    @Override
+    public ConnectionPoolStats collectConnectionPoolStats() {
+
+        return delegate.collectConnectionPoolStats();
+    }
+
+    @Override
+    public void close() {
+
+        delegate.close();
+    }
+
+    private static String getPrefix(String key) {
+
+        return key == null ? "" : key.substring(0, key.lastIndexOf('/') + 1);
+    }
+
+    private void acquire(String prefix, boolean write) {
+
+        TokenBucket bucket;
+        synchronized (buckets) {
+            bucket = buckets.computeIfAbsent((write ? "w:" : "r:") + prefix, ignored -> new TokenBucket(
+                write ? properties.getWriteRate() : properties.getReadRate(), properties.getBurst().toNanos()));
+        }
+
+        long wait = bucket.reserve(clock.getAsLong(), properties.getMaxWait().toNanos());
+        if (wait < 0) {
+            throw new StorageBackendException(String.format(
+                "The request rate of the prefix %s stayed above the limit for longer than the maximum wait time.",
+                prefix), 0, "ClientRateLimitExceeded");
+        }
+        if (wait > 0) {
+            try {
+                sleeper.sleep(wait);
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                throw new StorageBackendException("The request was interrupted.", 0, null, exception);
+            }
+        }
+    }
+
+    /**
+     * Token bucket in the form of the generic cell rate algorithm. Instead of counting tokens it tracks the time at
+     * which the bucket would be empty again and lets a request through as soon as that time is within the burst.
+     */
+    private static final class TokenBucket {
+        private final long interval;
+
+        private final long tolerance;
+
+        private long emptyAt = Long.MIN_VALUE;
+
+        TokenBucket(double rate, long burst) {
+
+            this.interval = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+            this.tolerance = Math.max(0, burst - interval);
+        }
+
+        /**
+         * Reserve the next slot of the bucket.
+         *
+         * @param now current time
+         * @param maxWait maximum time to wait for a slot
+         * @return time to wait until the reserved slot, negative if no slot is available within the maximum time
+         */
+        synchronized long reserve(long now, long maxWait) {
+
+            long start = Math.max(emptyAt, now);
+            long wait = Math.max(0, start - tolerance - now);
+            if (wait > maxWait) {
+                return -1;
+            }
+            emptyAt = start + interval;
+            return wait;
+        }
+    }
+}
@@ -0,0 +1,292 @@
+/*
+ *  Copyright 2024 Dataport. All rights reserved. Developed as part of the MERLOT project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package eu.merloteducation.s3library.service;
+
+import eu.merloteducation.s3library.backend.ByteRange;
+import eu.merloteducation.s3library.backend.ConnectionPoolStats;
+import eu.merloteducation.s3library.backend.ObjectListingPage;
+import eu.merloteducation.s3library.backend.ObjectReadOptions;
+import eu.merloteducation.s3library.backend.ObjectWriteOptions;
+import eu.merloteducation.s3library.backend.StorageBackend;
+import eu.merloteducation.s3library.backend.StorageBackendException;
+import eu.merloteducation.s3library.backend.StorageObject;
+import eu.merloteducation.s3library.backend.StorageObjectInfo;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Storage backend that retries requests of another backend which fail with a transient error. Throttling, server
+ * errors and I/O failures are retried after a delay with decorrelated jitter, so that clients which failed together
+ * do not retry together. All retries of a client take tokens from a shared retry budget, which stops retries when
+ * most requests fail instead of multiplying the load on an overloaded storage.
+ */
+class RetryingStorageBackend implements StorageBackend {
+    private static final Set<Integer> RETRYABLE_STATUS_CODES = Set.of(408, 429, 500, 502, 503, 504);
+
+    private static final Set<String> RETRYABLE_ERROR_CODES = Set.of("SlowDown", "Throttling", "ThrottlingException",
+        "RequestLimitExceeded", "TooManyRequestsException", "RequestTimeout", "InternalError");
+
+    /**
+     * Largest content of a caller provided stream that is marked for a retry, which is the read limit the SDK marks
+     * on request content itself.
+     */
+    static final int MAX_REPLAY_SIZE = 128 * 1024;
+
+    private final StorageBackend delegate;
+
+    private final StorageClientProperties.Retry properties;
+
+    private final AtomicInteger budget;
+
+    RetryingStorageBackend(StorageBackend delegate, StorageClientProperties.Retry properties) {
+
+        this.delegate = delegate;
+        this.properties = properties;
+        this.budget = new AtomicInteger(properties.getBudget());
+    }
+
+    /**
+     * Check whether a request that failed with the given exception may succeed when it is sent again.
+     *
+     * @param exception failure of the request
+     * @return true if the failure is transient
+     */
+    static boolean isRetryable(StorageBackendException exception) {
+
+        if (RETRYABLE_STATUS_CODES.contains(exception.getStatusCode())
+            || exception.getErrorCode() != null && RETRYABLE_ERROR_CODES.contains(exception.getErrorCode())) {
+            return true;
+        }
+        if (exception.getStatusCode() == 0) {
+            for (Throwable cause = exception.getCause(); cause != null; cause = cause.getCause()) {
+                if (cause instanceof IOException) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Wait before repeating an operation that failed outside of a single request, such as a response stream that
+     * broke while its content was read. The repetition is paced and budgeted like a retried request.
+     *
+     * @param attempt number of the attempt that failed, starting at 1
+     * @return true if the operation may be repeated, false if the attempts or the retry budget are exhausted
+     */
+    boolean awaitRetry(int attempt) {
+
+        if (attempt >= properties.getMaxAttempts() || !acquire(properties.getRetryCost())) {
+            return false;
+        }
+        long delay = properties.getBaseDelay().toNanos();
+        for (int i = 1; i < attempt; i++) {
+            delay = nextDelay(delay);
+        }
+        try {
+            TimeUnit.NANOSECONDS.sleep(nextDelay(delay));
+            return true;
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    @Override
+    public StorageObject getObject(String key, ObjectReadOptions options) {
+
+        return execute(() -> delegate.getObject(key, options), null, 0);
+    }
+
+    @Override
+    public StorageObjectInfo headObject(String key) {
+
+        return execute(() -> delegate.headObject(key), null, 0);
+    }
+
+    @Override
+    public boolean objectExists(String key) {
+
+        return execute(() -> delegate.objectExists(key), null, 0);
+    }
+
+    @Override
+    public String putObject(String key, InputStream content, long contentLength, ObjectWriteOptions options) {
+
+        return execute(() -> delegate.putObject(key, content, contentLength, options), content, contentLength);
+    }
+
+    @Override
+    public ObjectListingPage listObjects(String prefix, String startAfter, String continuationToken, int maxKeys) {
+
+        return execute(() -> delegate.listObjects(prefix, startAfter, continuationToken, maxKeys), null, 0);
+    }
+
+    @Override
+    public String copyObject(String sourceKey, String key, String ifMatch) {
+
+        return execute(() -> delegate.copyObject(sourceKey, key, ifMatch), null, 0);
+    }
+
+    @Override
+    public void deleteObject(String key) {
+
+        execute(() -> {
+            delegate.deleteObject(key);
+            return null;
+        }, null, 0);
+    }
+
+    @Override
+    public Map<String, String> deleteObjects(List<String> keys) {
+
+        return execute(() -> delegate.deleteObjects(keys), null, 0);
+    }
+
+    @Override
+    public String createMultipartUpload(String key, ObjectWriteOptions options) {
+
+        return execute(() -> delegate.createMultipartUpload(key, options), null, 0);
+    }
+
+    @Override
+    public String uploadPart(String key, String uploadId, int partNumber, InputStream content, long contentLength) {
+
+        return execute(() -> delegate.uploadPart(key, uploadId, partNumber, content, contentLength), content,
+            contentLength);
+    }
+
+    @Override
+    public String copyPart(String key, String uploadId, int partNumber, String sourceKey, ByteRange range,
+        String ifMatch) {
+
+        return execute(() -> delegate.copyPart(key, uploadId, partNumber, sourceKey, range, ifMatch), null, 0);
+    }
+
+    @Override
+    public void completeMultipartUpload(String key, String uploadId, List<String> partETags) {
+
+        execute(() -> {
+            delegate.completeMultipartUpload(key, uploadId, partETags);
+            return null;
+        }, null, 0);
+    }
+
+    @Override
+    public void abortMultipartUpload(String key, String uploadId) {
+
+        execute(() -> {
+            delegate.abortMultipartUpload(key, uploadId);
+            return null;
+        }, null, 0);
+    }
+
+    @Override
+    public ConnectionPoolStats collectConnectionPoolStats() {
+
+        return delegate.collectConnectionPoolStats();
+    }
+
+    @Override
+    public void close() {
+
+        delegate.close();
+    }
+
+    /**
+     * Send a request until it succeeds, fails with an error that is not transient, runs out of attempts or the
+     * retry budget is exhausted. Requests with content are only retried if the content is held in memory or is a
+     * small stream that can be read again, marking a large stream would buffer all of it on the heap.
+     */
+    private <T> T execute(Supplier<T> request, InputStream content, long contentLength) {
+
+        boolean replayable = content == null || content instanceof ByteArrayInputStream
+            || content.markSupported() && contentLength >= 0 && contentLength < MAX_REPLAY_SIZE;
+        if (content != null && replayable) {
+            content.mark((int) Math.min(contentLength + 1, Integer.MAX_VALUE));
+        }
+
+        long delay = properties.getBaseDelay().toNanos();
+        int attempt = 1;
+        while (true) {
+            try {
+                T result = request.get();
+                // successful requests refill the budget, a retried request returns the cost of its last retry
+                release(attempt > 1 ? properties.getRetryCost() : 1);
+                return result;
+            } catch (StorageBackendException exception) {
+                if (attempt >= properties.getMaxAttempts() || !isRetryable(exception) || !replayable
+                    || !rewind(content) || !acquire(properties.getRetryCost())) {
+                    throw attempt > 1 ? exception.withAttempts(attempt) : exception;
+                }
+                delay = nextDelay(delay);
+                try {
+                    TimeUnit.NANOSECONDS.sleep(delay);
+                } catch (InterruptedException interruptedException) {
+                    Thread.currentThread().interrupt();
+                    throw exception.withAttempts(attempt);
+                }
+                attempt++;
+            }
+        }
+    }
+
+    private long nextDelay(long delay) {
+
+        long baseDelay = properties.getBaseDelay().toNanos();
+        return Math.min(properties.getMaxDelay().toNanos(),
+            ThreadLocalRandom.current().nextLong(baseDelay, Math.max(baseDelay, delay * 3) + 1));
+    }
+
+    private boolean rewind(InputStream content) {
+
+        if (content == null) {
+            return true;
+        }
+        try {
+            content.reset();
+            return true;
+        } catch (IOException exception) {
+            return false;
+        }
+    }
+
+    private boolean acquire(int tokens) {
+
+        int available;
+        do {
+            available = budget.get();
+            if (available < tokens) {
+                return false;
+            }
+        } while (!budget.compareAndSet(available, available - tokens));
+        return true;
+    }
+
+    private void release(int tokens) {
+
+        budget.updateAndGet(available -> Math.min(properties.getBudget(), available + tokens));
+    }
+}
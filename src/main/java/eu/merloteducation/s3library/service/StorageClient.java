@@ -16,34 +16,92 @@
 
 package eu.merloteducation.s3library.service;
 
-import com.amazonaws.ClientConfiguration;
-import com.amazonaws.SdkClientException;
-import com.amazonaws.auth.AWSStaticCredentialsProvider;
-import com.amazonaws.auth.BasicAWSCredentials;
-import com.amazonaws.client.builder.AwsClientBuilder;
-import com.amazonaws.services.s3.AmazonS3;
-import com.amazonaws.services.s3.AmazonS3ClientBuilder;
-import com.amazonaws.services.s3.model.GetObjectRequest;
-import com.amazonaws.services.s3.model.ListObjectsV2Result;
-import com.amazonaws.services.s3.model.S3Object;
+import eu.merloteducation.s3library.backend.AwsV1StorageBackend;
+import eu.merloteducation.s3library.backend.BoundedInputStream;
+import eu.merloteducation.s3library.backend.ByteRange;
+import eu.merloteducation.s3library.backend.ConnectionPoolStats;
+import eu.merloteducation.s3library.backend.FileSystemStorageBackend;
+import eu.merloteducation.s3library.backend.ObjectReadOptions;
+import eu.merloteducation.s3library.backend.ObjectWriteOptions;
+import eu.merloteducation.s3library.backend.StorageBackend;
+import eu.merloteducation.s3library.backend.StorageBackendException;
+import eu.merloteducation.s3library.backend.StorageObject;
+import eu.merloteducation.s3library.backend.StorageObjectInfo;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.io.ByteArrayInputStream;
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 @Service
-public class StorageClient {
-    private final AmazonS3 s3Client;
+public class StorageClient implements AutoCloseable {
+    private static final String UPLOAD = "upload";
 
-    private final String bucket;
+    private static final String DOWNLOAD = "download";
+
+    private final StorageBackend backend;
 
     private final String rootDirectory;
 
+    private final StorageClientProperties properties;
+
+    private final ExecutorService transferExecutor;
+
+    private final MemoryItemCache itemCache;
+
+    private final DiskItemCache diskCache;
+
+    private final ListingCache listingCache;
+
+    private final Map<String, PackIndex> packIndexes;
+
+    private final ScheduledExecutorService compactionExecutor;
+
+    private volatile StorageClientMetrics metrics = StorageClientMetrics.NONE;
+
     /**
      * Create a StorageClient object with given credentials (accessKey, secret), endpoint configuration
      * (serviceEndpoint, signingRegion) and client configuration (signerType). Set bucket and root directory to use.
+     * All tuning properties use their defaults.
      *
      * @param accessKey access key
      * @param secret secret
@@ -54,32 +112,203 @@ public class StorageClient {
      * @param rootDirectory root directory
      * @throws StorageClientCreationException if an error occurs while creating the storage client
      */
+    public StorageClient(String accessKey, String secret, String serviceEndpoint, String signingRegion,
+        String signerType, String bucket, String rootDirectory) throws StorageClientCreationException {
+
+        this(accessKey, secret, serviceEndpoint, signingRegion, signerType, bucket, rootDirectory,
+            new StorageClientProperties());
+    }
+
+    /**
+     * Create a StorageClient object with given credentials (accessKey, secret), endpoint configuration
+     * (serviceEndpoint, signingRegion) and client configuration (signerType). Set bucket and root directory to use
+     * and tune the client with the given properties. The properties also select the storage backend, the
+     * credentials and endpoint configuration only apply to the AWS SDK backends.
+     *
+     * @param accessKey access key
+     * @param secret secret
+     * @param serviceEndpoint service endpoint
+     * @param signingRegion signing region
+     * @param signerType signer type
+     * @param bucket bucket
+     * @param rootDirectory root directory
+     * @param properties tuning properties
+     * @throws StorageClientCreationException if an error occurs while creating the storage client
+     */
+    @Autowired
     public StorageClient(@Value("${s3-library.access-key}") String accessKey,
         @Value("${s3-library.secret}") String secret, @Value("${s3-library.service-endpoint}") String serviceEndpoint,
         @Value("${s3-library.signing-region}") String signingRegion,
         @Value("${s3-library.signer-type}") String signerType, @Value("${s3-library.bucket}") String bucket,
-        @Value("${s3-library.root-directory}") String rootDirectory) throws StorageClientCreationException {
+        @Value("${s3-library.root-directory}") String rootDirectory, StorageClientProperties properties)
+        throws StorageClientCreationException {
 
-        BasicAWSCredentials awsCredentials = new BasicAWSCredentials(accessKey, secret);
-
-        ClientConfiguration clientConfiguration = new ClientConfiguration();
-        clientConfiguration.setSignerOverride(signerType);
+        if (properties.getTransferThreads() < 1) {
+            throw new StorageClientCreationException("The number of transfer threads must be at least 1.");
+        }
+        if (properties.getMultipart().getPartSize().toBytes() < MultipartUploader.MIN_PART_SIZE) {
+            throw new StorageClientCreationException("The multipart part size must be at least 5MB.");
+        }
+        if (properties.getRangedDownload().getRangeSize().toBytes() < 1) {
+            throw new StorageClientCreationException("The ranged download range size must be positive.");
+        }
+        if (properties.getRangeRead().getReadAhead().toBytes() < 0
+            || properties.getRangeRead().getReadAhead().toBytes() > Integer.MAX_VALUE - 8) {
+            throw new StorageClientCreationException("The range read-ahead must not be negative and below 2GB.");
+        }
+        StorageClientProperties.Copy copyProperties = properties.getCopy();
+        if (copyProperties.getThreshold().toBytes() > ItemCopier.MAX_COPY_SIZE
+            || copyProperties.getPartSize().toBytes() < MultipartUploader.MIN_PART_SIZE
+            || copyProperties.getPartSize().toBytes() > ItemCopier.MAX_COPY_SIZE
+            || copyProperties.getConcurrency() < 1) {
+            throw new StorageClientCreationException(
+                "The copy needs a threshold of at most 5GB, a part size between 5MB and 5GB and a positive "
+                    + "concurrency.");
+        }
+        if (properties.getListing().getPageSize() < 1 || properties.getListing().getPageSize() > 1000) {
+            throw new StorageClientCreationException("The listing page size must be between 1 and 1000.");
+        }
+        if (properties.getBackend() == StorageClientProperties.Backend.AWS_V2 && !AwsV2ClientTransport.isAvailable()) {
+            throw new StorageClientCreationException(
+                "The backend aws-v2 needs the AWS SDK v2 libraries s3 and netty-nio-client on the class path.");
+        }
+        ClientTransport.validate(properties.getClient());
+        StorageClientProperties.Retry retryProperties = properties.getRetry();
+        if (retryProperties.isEnabled() && (retryProperties.getMaxAttempts() < 1
+            || retryProperties.getBaseDelay().isNegative() || retryProperties.getBaseDelay().isZero()
+            || retryProperties.getMaxDelay().compareTo(retryProperties.getBaseDelay()) < 0
+            || retryProperties.getBudget() < 0 || retryProperties.getRetryCost() < 0)) {
+            throw new StorageClientCreationException(
+                "The retries need at least one attempt, a positive base delay of at most the maximum delay and a "
+                    + "budget and retry cost that are not negative.");
+        }
+        StorageClientProperties.Hedging hedgingProperties = properties.getHedging();
+        if (hedgingProperties.isEnabled() && (hedgingProperties.getDelay().isNegative()
+            || hedgingProperties.getPercentile() <= 0 || hedgingProperties.getPercentile() > 100
+            || hedgingProperties.getMinDelay().isNegative()
+            || hedgingProperties.getMaxDelay().compareTo(hedgingProperties.getMinDelay()) < 0
+            || hedgingProperties.getMaxExtraRequests() < 0 || hedgingProperties.getMaxExtraRequests() > 1
+            || hedgingProperties.getMaxThreads() < 1)) {
+            throw new StorageClientCreationException(
+                "The hedging needs a delay that is not negative, a percentile between 0 and 100, a minimum delay of "
+                    + "at most the maximum delay, a fraction of extra requests between 0 and 1 and at least one "
+                    + "thread.");
+        }
+        StorageClientProperties.RateLimit rateLimitProperties = properties.getRateLimit();
+        if (rateLimitProperties.isEnabled() && (rateLimitProperties.getReadRate() <= 0
+            || rateLimitProperties.getWriteRate() <= 0 || rateLimitProperties.getBurst().isNegative()
+            || rateLimitProperties.getMaxWait().isNegative() || rateLimitProperties.getMaxPrefixes() < 1)) {
+            throw new StorageClientCreationException(
+                "The rate limit needs positive rates, a burst and maximum wait time that are not negative and at "
+                    + "least one prefix.");
+        }
+        StorageClientProperties.Compression compressionProperties = properties.getCompression();
+        if (compressionProperties.isEnabled() && !ItemCompression.isAvailable(compressionProperties.getCodec())) {
+            throw new StorageClientCreationException(String.format(
+                "The compression codec %s is not available on the class path.", compressionProperties.getCodec()));
+        }
+        StorageClientProperties.Chunking chunkingProperties = properties.getChunking();
+        if (chunkingProperties.isEnabled() && (chunkingProperties.getMinChunkSize().toBytes() < 64
+            || chunkingProperties.getAverageChunkSize().compareTo(chunkingProperties.getMinChunkSize()) < 0
+            || chunkingProperties.getMaxChunkSize().compareTo(chunkingProperties.getAverageChunkSize()) < 0
+            || chunkingProperties.getMaxChunkSize().toBytes() > MultipartUploader.MIN_PART_SIZE * 100
+            || chunkingProperties.getMaxChunkSize().compareTo(properties.getMultipart().getThreshold()) >= 0
+            || chunkingProperties.getConcurrency() < 1)) {
+            // chunks are uploaded on the transfer executor, a multipart upload of a chunk would wait on the same pool
+            throw new StorageClientCreationException(
+                "The chunking needs a minimum chunk size of at least 64 bytes, an average chunk size between the "
+                    + "minimum and maximum chunk size, a maximum chunk size of at most 500MB and below the "
+                    + "multipart threshold and a positive concurrency.");
+        }
+        StorageClientProperties.Packing packingProperties = properties.getPacking();
+        if (packingProperties.isEnabled() && (packingProperties.getMaxItemSize().toBytes() < 1
+            || packingProperties.getMaxPackSize().compareTo(packingProperties.getMaxItemSize()) < 0
+            || packingProperties.getMaxPackSize().toBytes() > MultipartUploader.MIN_PART_SIZE * 100
+            || packingProperties.getIndexTimeToLive().isNegative() || packingProperties.getMaxScopes() < 1
+            || packingProperties.getMinLiveRatio() < 0 || packingProperties.getMinLiveRatio() > 1
+            || packingProperties.getCompactionInterval().isNegative())) {
+            throw new StorageClientCreationException(
+                "The packing needs a positive maximum item size of at most the maximum pack size, a maximum pack "
+                    + "size of at most 500MB, at least one scope, a minimum live ratio between 0 and 1 and a time "
+                    + "to live and compaction interval that are not negative.");
+        }
+        StorageClientProperties.ItemCache itemCacheProperties = properties.getItemCache();
+        if (itemCacheProperties.isEnabled() && (itemCacheProperties.getMaxSize().toBytes() < 1
+            || itemCacheProperties.getMaxItemSize().toBytes() > itemCacheProperties.getMaxSize().toBytes()
+            || itemCacheProperties.getTimeToLive().isNegative())) {
+            throw new StorageClientCreationException(
+                "The item cache needs a positive maximum size of at least the maximum item size and a time to live "
+                    + "that is not negative.");
+        }
+        StorageClientProperties.DiskCache diskCacheProperties = properties.getDiskCache();
+        if (diskCacheProperties.isEnabled() && (diskCacheProperties.getMaxSize().toBytes() < 1
+            || diskCacheProperties.getMaxItemSize().toBytes() > diskCacheProperties.getMaxSize().toBytes())) {
+            throw new StorageClientCreationException(
+                "The disk cache needs a positive maximum size of at least the maximum item size.");
+        }
+        StorageClientProperties.ListingCache listingCacheProperties = properties.getListingCache();
+        if (listingCacheProperties.isEnabled() && (listingCacheProperties.getMaxScopes() < 1
+            || listingCacheProperties.getTimeToLive().isNegative())) {
+            throw new StorageClientCreationException(
+                "The listing cache needs at least one scope and a time to live that is not negative.");
+        }
 
         try {
-            s3Client = AmazonS3ClientBuilder.standard()
-                .withCredentials(new AWSStaticCredentialsProvider(awsCredentials))
-                .withEndpointConfiguration(new AwsClientBuilder.EndpointConfiguration(serviceEndpoint, signingRegion))
-                .withClientConfiguration(clientConfiguration).build();
-        } catch (IllegalArgumentException | SdkClientException exception) {
+            StorageBackend storageBackend = createBackend(accessKey, secret, serviceEndpoint, signingRegion,
+                signerType, bucket, properties);
+            if (rateLimitProperties.isEnabled()) {
+                storageBackend = new RateLimitingStorageBackend(storageBackend, rateLimitProperties);
+            }
+            if (retryProperties.isEnabled()) {
+                storageBackend = new RetryingStorageBackend(storageBackend, retryProperties);
+            }
+            this.backend = hedgingProperties.isEnabled() ? new HedgingStorageBackend(storageBackend,
+                hedgingProperties) : storageBackend;
+        } catch (IllegalArgumentException | StorageBackendException exception) {
+            throw new StorageClientCreationException(exception.getMessage());
+        }
+        try {
+            this.diskCache = diskCacheProperties.isEnabled() ? new DiskItemCache(diskCacheProperties.getDirectory(),
+                diskCacheProperties.getMaxSize().toBytes(), diskCacheProperties.getMaxItemSize().toBytes()) : null;
+        } catch (IOException exception) {
             throw new StorageClientCreationException(exception.getMessage());
         }
-
-        this.bucket = bucket;
         this.rootDirectory = rootDirectory;
+        this.properties = properties;
+        this.transferExecutor = createTransferExecutor(properties.getTransferThreads());
+        this.itemCache = itemCacheProperties.isEnabled() ? new MemoryItemCache(
+            itemCacheProperties.getMaxSize().toBytes(), itemCacheProperties.getMaxItemSize().toBytes(),
+            itemCacheProperties.getTimeToLive()) : null;
+        this.listingCache = listingCacheProperties.isEnabled() ? new ListingCache(
+            listingCacheProperties.getTimeToLive(), listingCacheProperties.getMaxScopes()) : null;
+        this.packIndexes = packingProperties.isEnabled() ? ItemPacker.createIndexCache(
+            packingProperties.getMaxScopes()) : null;
+        this.compactionExecutor = packingProperties.isEnabled() && !packingProperties.getCompactionInterval()
+            .isZero() ? createCompactionExecutor(packingProperties.getCompactionInterval()) : null;
     }
 
     /**
-     * List items within the scope of the provided referenceId.
+     * Set the receiver of the measurements of this client's operations. By default, nothing is measured.
+     *
+     * @param metrics receiver of the measurements
+     */
+    @Autowired(required = false)
+    public void setMetrics(StorageClientMetrics metrics) {
+
+        this.metrics = metrics;
+        if (metrics == StorageClientMetrics.NONE) {
+            // the connection pool is only measured if the measurements are recorded
+            return;
+        }
+        ConnectionPoolStats connectionPoolStats = backend.collectConnectionPoolStats();
+        if (connectionPoolStats != null) {
+            metrics.bindConnectionPool(connectionPoolStats);
+        }
+    }
+
+    /**
+     * List items within the scope of the provided referenceId. If the listing cache is enabled, the result is
+     * cached for its time to live and kept up to date with the items pushed and deleted by this client.
      *
      * @param referenceId scope of the items
      * @return list of items
@@ -87,15 +316,89 @@ public class StorageClient {
      */
     public List<String> listItems(String referenceId) throws StorageClientException {
 
-        String composedKey = getComposedKey(referenceId, "");
-        ListObjectsV2Result listObjectsV2Result;
-        try {
-            listObjectsV2Result = s3Client.listObjectsV2(this.bucket, composedKey);
-        } catch (SdkClientException exception) {
-            throw new StorageClientException(exception.getMessage());
-        }
-        return listObjectsV2Result.getObjectSummaries().stream().map(obj -> removePrefix(obj.getKey(), composedKey))
-            .toList();
+        return observe("listItems", () -> {
+            String scope = getComposedKey(referenceId, "");
+            long generation = 0;
+            if (listingCache != null) {
+                generation = listingCache.getGeneration();
+                List<String> cached = listingCache.get(scope);
+                if (cached != null) {
+                    return cached;
+                }
+            }
+
+            List<String> items;
+            try (Stream<String> keys = withPackedKeys(referenceId, streamObjectInfos(scope,
+                properties.getListing().getPageSize(), null).map(obj -> removePrefix(obj.key(), scope)), null)) {
+                items = keys.toList();
+            } catch (UncheckedStorageClientException exception) {
+                throw exception.getCause();
+            }
+            if (listingCache != null) {
+                listingCache.put(scope, items, generation);
+            }
+            return items;
+        });
+    }
+
+    /**
+     * List items within the scope of the provided referenceId with the metadata that the listing provides, so no
+     * request per item is needed. The sizes are those of the stored objects, which differ from the item sizes for
+     * compressed, deduplicated and chunked items, {@link #getItemInfo(String, String)} reports the item size for
+     * these. The listing cache is not used.
+     *
+     * @param referenceId scope of the items
+     * @return list of items with their metadata
+     * @throws StorageClientException if an error occurs while getting the list
+     */
+    public List<ItemInfo> listItemsWithMetadata(String referenceId) throws StorageClientException {
+
+        return observe("listItemsWithMetadata", () -> {
+            String scope = getComposedKey(referenceId, "");
+            try (Stream<ItemInfo> items = mergePackedItems(referenceId, streamObjectInfos(scope,
+                    properties.getListing().getPageSize(), null).map(info -> new ItemInfo(removePrefix(info.key(),
+                    scope), info.size(), info.eTag(), info.lastModified(), info.storageClass())), null,
+                ItemInfo::key, (key, size) -> new ItemInfo(key, size, null, null, null))) {
+                return items.toList();
+            } catch (UncheckedStorageClientException exception) {
+                throw exception.getCause();
+            }
+        });
+    }
+
+    /**
+     * Lazily stream the items within the scope of the provided referenceId. Further pages of the listing are only
+     * requested while the stream is consumed. The stream should be closed if it is not consumed completely.
+     *
+     * @param referenceId scope of the items
+     * @return stream of items
+     * @throws StorageClientException if an error occurs while getting the first page of the list
+     */
+    public Stream<String> streamItems(String referenceId) throws StorageClientException {
+
+        return streamItems(referenceId, properties.getListing().getPageSize(), null);
+    }
+
+    /**
+     * Lazily stream the items within the scope of the provided referenceId, starting after the given item. Further
+     * pages of the listing are only requested while the stream is consumed. Errors while requesting further pages
+     * are thrown as {@link UncheckedStorageClientException}. The stream should be closed if it is not consumed
+     * completely.
+     *
+     * @param referenceId scope of the items
+     * @param pageSize maximum number of items per listing request, at most 1000
+     * @param startAfter item after which the listing starts, may be null
+     * @return stream of items
+     * @throws StorageClientException if an error occurs while getting the first page of the list
+     */
+    public Stream<String> streamItems(String referenceId, int pageSize, String startAfter)
+        throws StorageClientException {
+
+        return observe("streamItems", () -> {
+            String composedKey = getComposedKey(referenceId, "");
+            return withPackedKeys(referenceId, streamObjectInfos(composedKey, pageSize, startAfter).map(
+                obj -> removePrefix(obj.key(), composedKey)), startAfter);
+        });
     }
 
     /**
@@ -108,16 +411,169 @@ public class StorageClient {
      */
     public void pushItem(String referenceId, String fileName, byte[] item) throws StorageClientException {
 
-        String composedKey = getComposedKey(referenceId, fileName);
-        try {
-            s3Client.putObject(this.bucket, composedKey, new ByteArrayInputStream(item), null);
-        } catch (SdkClientException exception) {
-            throw new StorageClientException(exception.getMessage());
-        }
+        pushItem(referenceId, fileName, new ByteArrayInputStream(item), item.length, null);
+    }
+
+    /**
+     * Push an item with given file name to the provided scope by streaming it from the given input stream.
+     *
+     * @param referenceId scope to push the item to
+     * @param fileName name of the item
+     * @param item stream providing the content of the item
+     * @param contentLength exact number of bytes provided by the stream
+     * @throws StorageClientException if an error occurs while pushing the item
+     */
+    public void pushItem(String referenceId, String fileName, InputStream item, long contentLength)
+        throws StorageClientException {
+
+        pushItem(referenceId, fileName, item, contentLength, null);
+    }
+
+    /**
+     * Push an item with given file name and content type to the provided scope by streaming it from the given input
+     * stream. As the content length is declared upfront, the content is not buffered in memory. The input stream is
+     * not closed. If compression is enabled, items below the multipart threshold are compressed in memory and
+     * stored compressed only if that makes them smaller, larger items are compressed while they are uploaded. If
+     * deduplication is enabled, the content is hashed before it is uploaded and only stored if no other item has
+     * the same content, items of at least the multipart threshold are hashed into a temporary file. If chunking is
+     * enabled, items of at least the chunking threshold are stored in content defined chunks instead, and only the
+     * chunks that are not stored yet are uploaded.
+     *
+     * @param referenceId scope to push the item to
+     * @param fileName name of the item
+     * @param item stream providing the content of the item
+     * @param contentLength exact number of bytes provided by the stream
+     * @param contentType content type of the item, may be null
+     * @throws StorageClientException if an error occurs while pushing the item
+     */
+    public void pushItem(String referenceId, String fileName, InputStream item, long contentLength,
+        String contentType) throws StorageClientException {
+
+        observe("pushItem", () -> {
+            if (contentLength < 0) {
+                throw new StorageClientException(
+                    String.format("The content length of the item you want to push (%s) must not be negative.",
+                        fileName));
+            }
+
+            String scope = getComposedKey(referenceId, "");
+            String composedKey = getComposedKey(referenceId, fileName);
+            boolean written = false;
+            try {
+                if (properties.getChunking().isEnabled()
+                    && contentLength >= properties.getChunking().getThreshold().toBytes()) {
+                    // a manifest or plain object replacing a pointer releases its blob, whether deduplication is
+                    // still enabled or not
+                    createDeduplicator().replace(composedKey, () -> createChunker().write(composedKey, item,
+                        contentLength, contentType,
+                        (chunkKey, content, length) -> writeItem(chunkKey, content, length, null),
+                        this::readManifest));
+                } else if (properties.getDeduplication().isEnabled()) {
+                    createDeduplicator().write(composedKey, item, contentLength, contentType,
+                        (blobKey, content, length) -> writeItem(blobKey, content, length, contentType));
+                } else {
+                    createDeduplicator().replace(composedKey,
+                        () -> writeItem(composedKey, item, contentLength, contentType));
+                }
+                if (packIndexes != null) {
+                    // the item replaces a packed item of the same key
+                    createPacker().remove(referenceId, List.of(fileName));
+                }
+                written = true;
+                metrics.recordTransfer(UPLOAD, contentLength);
+            } catch (StorageBackendException | IOException exception) {
+                throw new StorageClientException(exception.getMessage(), exception);
+            } finally {
+                // a failed write may still have replaced the item
+                invalidateItem(scope, composedKey);
+                if (written) {
+                    addListedItem(scope, fileName);
+                } else {
+                    invalidateListing(scope);
+                }
+            }
+            return null;
+        });
     }
 
     /**
-     * Get an item with given key from the provided scope.
+     * Push multiple items to the provided scope. If packing is enabled, items of at most the configured maximum item
+     * size are written together into pack objects of the scope and added to its index with a single update, while
+     * larger items are pushed one by one. Otherwise, all items are pushed one by one.
+     *
+     * @param referenceId scope to push the items to
+     * @param items contents of the items by name
+     * @throws StorageClientException if an error occurs while pushing the items
+     */
+    public void pushItems(String referenceId, Map<String, byte[]> items) throws StorageClientException {
+
+        observe("pushItems", () -> {
+            Map<String, byte[]> packedItems = new LinkedHashMap<>();
+            for (Map.Entry<String, byte[]> item : items.entrySet()) {
+                if (packIndexes != null && ItemPacker.isPackable(properties.getPacking(), item.getValue().length)) {
+                    packedItems.put(item.getKey(), item.getValue());
+                } else {
+                    pushItem(referenceId, item.getKey(), item.getValue());
+                }
+            }
+            if (packedItems.isEmpty()) {
+                return null;
+            }
+
+            String scope = getComposedKey(referenceId, "");
+            boolean written = false;
+            try {
+                // packed items replace objects of the same keys, pointers among them release their blobs
+                Map<String, String> blobHashes = new HashMap<>();
+                for (String key : packedItems.keySet()) {
+                    collectBlobHash(getComposedKey(referenceId, key), -1, true, blobHashes);
+                }
+                createPacker().write(referenceId, packedItems);
+                ItemDeduplicator deduplicator = createDeduplicator();
+                blobHashes.forEach(deduplicator::release);
+                written = true;
+                metrics.recordTransfer(UPLOAD, packedItems.values().stream().mapToLong(item -> item.length).sum());
+            } catch (StorageBackendException | IOException exception) {
+                throw new StorageClientException(exception.getMessage(), exception);
+            } finally {
+                packedItems.keySet().forEach(key -> invalidateItem(scope, getComposedKey(referenceId, key)));
+                if (written) {
+                    packedItems.keySet().forEach(key -> addListedItem(scope, key));
+                } else {
+                    invalidateListing(scope);
+                }
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Rewrite the packs of the scope of the provided referenceId whose fraction of bytes belonging to current items
+     * fell below the configured minimum live ratio. The packs of all scopes used by this client are also compacted
+     * in the background if a compaction interval is configured.
+     *
+     * @param referenceId scope to compact
+     * @return number of rewritten packs
+     * @throws StorageClientException if an error occurs while compacting the packs
+     */
+    public int compactScope(String referenceId) throws StorageClientException {
+
+        return observe("compactScope", () -> {
+            if (packIndexes == null) {
+                return 0;
+            }
+            try {
+                return createPacker().compact(referenceId);
+            } catch (StorageBackendException | IOException exception) {
+                throw new StorageClientException(exception.getMessage(), exception);
+            }
+        });
+    }
+
+    /**
+     * Get an item with given key from the provided scope. If the item cache is enabled, cached items are returned
+     * without contacting the storage until their time to live expires, after which they are revalidated by ETag.
+     * Items found in the disk cache are always revalidated by ETag before they are read from disk.
      *
      * @param referenceId scope from where to get the item
      * @param key key of the item
@@ -127,14 +583,345 @@ public class StorageClient {
      */
     public byte[] getItem(String referenceId, String key) throws IOException, StorageClientException {
 
-        String composedKey = getComposedKey(referenceId, key);
-        S3Object object;
-        try {
-            object = s3Client.getObject(new GetObjectRequest(this.bucket, composedKey));
-        } catch (SdkClientException exception) {
-            throw new StorageClientException(exception.getMessage());
-        }
-        return object.getObjectContent().readAllBytes();
+        return observe("getItem", () -> {
+            byte[] item;
+            StorageItemInputStream packedItem = openPackedItem(referenceId, key);
+            if (packedItem != null) {
+                try (packedItem) {
+                    item = packedItem.readAllBytes();
+                }
+            } else if (itemCache != null || diskCache != null) {
+                item = getCachedItem(getComposedKey(referenceId, ""), getComposedKey(referenceId, key));
+            } else {
+                try (InputStream itemStream = openWholeItem(getComposedKey(referenceId, key))) {
+                    item = itemStream.readAllBytes();
+                }
+            }
+            metrics.recordTransfer(DOWNLOAD, item.length);
+            return item;
+        });
+    }
+
+    /**
+     * Open a stream on an item with given key from the provided scope without loading its content into memory.
+     * The caller must close the returned stream to release the underlying connection.
+     *
+     * @param referenceId scope from where to get the item
+     * @param key key of the item
+     * @return stream on the content of the item
+     * @throws StorageClientException if an error occurs while getting the item
+     */
+    public StorageItemInputStream getItemStream(String referenceId, String key) throws StorageClientException {
+
+        return observe("getItemStream", () -> openItem(referenceId, key));
+    }
+
+    /**
+     * Get a range of an item with given key from the provided scope with a ranged request, so the rest of the item
+     * is not transferred. A negative offset starts the range that many bytes before the end of the item. The
+     * range is cut off at the end of the item and is empty if it starts after the end.
+     *
+     * @param referenceId scope from where to get the item
+     * @param key key of the item
+     * @param offset offset of the range within the item, negative to start that many bytes before its end
+     * @param length maximum length of the range
+     * @return content of the range
+     * @throws IOException if an I/O error occurs
+     * @throws StorageClientException if an error occurs while getting the item
+     */
+    public byte[] getItemRange(String referenceId, String key, long offset, int length)
+        throws IOException, StorageClientException {
+
+        return observe("getItemRange", () -> {
+            byte[] range;
+            try (InputStream rangeStream = openItemRange(referenceId, key, offset, length)) {
+                range = rangeStream.readNBytes(length);
+            }
+            metrics.recordTransfer(DOWNLOAD, range.length);
+            return range;
+        });
+    }
+
+    /**
+     * Read a range of an item with given key from the provided scope into the given buffer with a ranged request.
+     * A negative offset starts the range that many bytes before the end of the item.
+     *
+     * @param referenceId scope from where to get the item
+     * @param key key of the item
+     * @param offset offset of the range within the item, negative to start that many bytes before its end
+     * @param buffer buffer to read the range into
+     * @param bufferOffset offset in the buffer to write the range to
+     * @param length maximum length of the range
+     * @return number of bytes read, less than the length if the item ends before
+     * @throws IOException if an I/O error occurs
+     * @throws StorageClientException if an error occurs while getting the item
+     */
+    public int getItemRange(String referenceId, String key, long offset, byte[] buffer, int bufferOffset, int length)
+        throws IOException, StorageClientException {
+
+        Objects.checkFromIndexSize(bufferOffset, length, buffer.length);
+        return observe("getItemRange", () -> {
+            int count;
+            try (InputStream rangeStream = openItemRange(referenceId, key, offset, length)) {
+                count = rangeStream.readNBytes(buffer, bufferOffset, length);
+            }
+            metrics.recordTransfer(DOWNLOAD, count);
+            return count;
+        });
+    }
+
+    /**
+     * Open a stream on a range of an item with given key from the provided scope with a ranged request. A negative
+     * offset starts the range that many bytes before the end of the item. The caller must close the returned stream
+     * to release the underlying connection.
+     *
+     * @param referenceId scope from where to get the item
+     * @param key key of the item
+     * @param offset offset of the range within the item, negative to start that many bytes before its end
+     * @param length maximum length of the range
+     * @return stream on the content of the range
+     * @throws StorageClientException if an error occurs while getting the item
+     */
+    public StorageItemInputStream getItemRangeStream(String referenceId, String key, long offset, long length)
+        throws StorageClientException {
+
+        return observe("getItemRangeStream", () -> openItemRange(referenceId, key, offset, length));
+    }
+
+    /**
+     * Create a reader for ranges of an item with given key from the provided scope. Reads smaller than the
+     * configured read-ahead fetch the whole read-ahead window, so sequential small reads share a single request.
+     *
+     * @param referenceId scope from where to get the item
+     * @param key key of the item
+     * @return reader for ranges of the item
+     */
+    public ItemRangeReader getItemRangeReader(String referenceId, String key) {
+
+        return new ItemRangeReader((offset, buffer, bufferOffset, length) -> getItemRange(referenceId, key, offset,
+            buffer, bufferOffset, length), (int) properties.getRangeRead().getReadAhead().toBytes());
+    }
+
+    /**
+     * Get the metadata of an item with given key from the provided scope without transferring its content. The
+     * size is the size of the item, also for compressed, deduplicated and chunked items.
+     *
+     * @param referenceId scope from where to get the item
+     * @param key key of the item
+     * @return metadata of the item
+     * @throws StorageClientException if an error occurs while getting the metadata
+     */
+    public ItemInfo getItemInfo(String referenceId, String key) throws StorageClientException {
+
+        return observe("getItemInfo", () -> {
+            try {
+                if (packIndexes != null) {
+                    long packedSize = createPacker().getSize(referenceId, key);
+                    if (packedSize >= 0) {
+                        return new ItemInfo(key, packedSize, null, null, null);
+                    }
+                }
+                StorageObjectInfo info = backend.headObject(getComposedKey(referenceId, key));
+                String blobKey = createDeduplicator().getBlobKey(info);
+                StorageObjectInfo content = blobKey == null ? info : backend.headObject(blobKey);
+                String size = content.userMetadata().get(ItemCompression.SIZE_METADATA);
+                // S3 only reports the storage class of objects outside of the standard storage class
+                return new ItemInfo(key, size == null ? content.size() : Long.parseLong(size), info.eTag(),
+                    info.lastModified(), content.storageClass() == null ? "STANDARD" : content.storageClass());
+            } catch (StorageBackendException | IOException exception) {
+                throw new StorageClientException(exception.getMessage(), exception);
+            }
+        });
+    }
+
+    /**
+     * Transfer an item with given key from the provided scope to the given output stream using a fixed size buffer.
+     * The output stream is not closed.
+     *
+     * @param referenceId scope from where to get the item
+     * @param key key of the item
+     * @param target stream to write the item to
+     * @return number of transferred bytes
+     * @throws IOException if an I/O error occurs
+     * @throws StorageClientException if an error occurs while getting the item
+     */
+    public long transferItem(String referenceId, String key, OutputStream target)
+        throws IOException, StorageClientException {
+
+        return observe("transferItem", () -> {
+            long transferred;
+            try (InputStream itemStream = openItem(referenceId, key)) {
+                transferred = itemStream.transferTo(target);
+            }
+            metrics.recordTransfer(DOWNLOAD, transferred);
+            return transferred;
+        });
+    }
+
+    /**
+     * Download an item with given key from the provided scope into the given file, replacing the file if it
+     * exists. Items of at least the configured ranged download threshold are fetched in concurrent byte ranges that
+     * are written directly to their position in the file, unless they are stored compressed. If the download fails,
+     * the file is deleted.
+     *
+     * @param referenceId scope from where to get the item
+     * @param key key of the item
+     * @param target file to write the item to
+     * @return number of downloaded bytes
+     * @throws IOException if an I/O error occurs
+     * @throws StorageClientException if an error occurs while getting the item
+     */
+    public long downloadItem(String referenceId, String key, Path target) throws IOException, StorageClientException {
+
+        return observe("downloadItem", () -> {
+            StorageItemInputStream packedItem = openPackedItem(referenceId, key);
+            if (packedItem != null) {
+                long copied;
+                try (packedItem) {
+                    copied = Files.copy(packedItem, target, StandardCopyOption.REPLACE_EXISTING);
+                }
+                metrics.recordTransfer(DOWNLOAD, copied);
+                return copied;
+            }
+
+            String objectKey = getComposedKey(referenceId, key);
+            StorageObjectInfo info;
+            try {
+                info = backend.headObject(objectKey);
+                String blobKey = createDeduplicator().getBlobKey(info);
+                if (blobKey != null) {
+                    objectKey = blobKey;
+                    info = backend.headObject(blobKey);
+                }
+            } catch (StorageBackendException exception) {
+                throw new StorageClientException(exception.getMessage(), exception);
+            }
+            String composedKey = objectKey;
+
+            long contentLength = info.size();
+            if (contentLength < properties.getRangedDownload().getThreshold().toBytes()
+                || info.userMetadata().containsKey(ItemCompression.ENCODING_METADATA)
+                || ItemChunker.isManifest(info)) {
+                long copied;
+                try (InputStream itemStream = openItem(composedKey)) {
+                    copied = Files.copy(itemStream, target, StandardCopyOption.REPLACE_EXISTING);
+                }
+                metrics.recordTransfer(DOWNLOAD, copied);
+                return copied;
+            }
+
+            try (FileChannel channel = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+                new RangedDownloader(backend, properties.getRangedDownload(), transferExecutor, getRetryingBackend())
+                    .download(composedKey, contentLength, info.eTag(), channel);
+            } catch (StorageClientException | IOException exception) {
+                Files.deleteIfExists(target);
+                throw exception;
+            }
+            metrics.recordTransfer(DOWNLOAD, contentLength);
+            return contentLength;
+        });
+    }
+
+    /**
+     * Copy an item to another key, possibly in another scope, with server-side copy requests, so the content of the
+     * item is not transferred through the client. Items above the configured copy threshold are copied in concurrent
+     * parts. An item with the target key is replaced. Packed items are only a range of their pack and are therefore
+     * read and pushed again.
+     *
+     * @param sourceReferenceId scope of the item to copy
+     * @param sourceKey key of the item to copy
+     * @param targetReferenceId scope to copy the item to
+     * @param targetKey key of the copy
+     * @throws StorageClientException if an error occurs while copying the item
+     */
+    public void copyItem(String sourceReferenceId, String sourceKey, String targetReferenceId, String targetKey)
+        throws StorageClientException {
+
+        observe("copyItem", () -> {
+            copy(sourceReferenceId, sourceKey, targetReferenceId, targetKey);
+            return null;
+        });
+    }
+
+    /**
+     * Move an item to another key, possibly in another scope, by copying it with server-side copy requests and
+     * deleting it afterwards. The move is not atomic, if the deletion fails the item exists under both keys.
+     *
+     * @param sourceReferenceId scope of the item to move
+     * @param sourceKey key of the item to move
+     * @param targetReferenceId scope to move the item to
+     * @param targetKey new key of the item
+     * @throws StorageClientException if an error occurs while moving the item
+     */
+    public void moveItem(String sourceReferenceId, String sourceKey, String targetReferenceId, String targetKey)
+        throws StorageClientException {
+
+        observe("moveItem", () -> {
+            if (copy(sourceReferenceId, sourceKey, targetReferenceId, targetKey)) {
+                deleteItem(sourceReferenceId, sourceKey);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Copy all items of a scope into another scope with server-side copy requests, copying up to the configured
+     * number of items at the same time. Items of the target scope with the same keys are replaced, its other items
+     * are kept. Failures are collected per item instead of stopping the whole copy.
+     *
+     * @param sourceReferenceId scope to copy the items from
+     * @param targetReferenceId scope to copy the items to
+     * @return outcome per item
+     * @throws StorageClientException if an error occurs while listing the items
+     */
+    public BatchCopyResult copyScope(String sourceReferenceId, String targetReferenceId)
+        throws StorageClientException {
+
+        return observe("copyScope", () -> {
+            String sourceScope = getComposedKey(sourceReferenceId, "");
+            String targetScope = getComposedKey(targetReferenceId, "");
+            if (sourceScope.equals(targetScope)) {
+                return new BatchCopyResult(List.of(), Map.of());
+            }
+
+            Semaphore permits = new Semaphore(Math.max(1, properties.getCopy().getConcurrency()));
+            Map<String, CompletableFuture<String>> copies = new LinkedHashMap<>();
+            try (Stream<StorageObjectInfo> objects = streamObjectInfos(sourceScope,
+                properties.getListing().getPageSize(), null)) {
+                Iterator<StorageObjectInfo> iterator = objects.iterator();
+                while (iterator.hasNext()) {
+                    StorageObjectInfo object = iterator.next();
+                    String key = removePrefix(object.key(), sourceScope);
+                    permits.acquire();
+                    copies.put(key, CompletableFuture.supplyAsync(() -> copyScopeItem(object, targetScope + key),
+                        transferExecutor).whenComplete((failure, throwable) -> permits.release()));
+                }
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                throw new StorageClientException("The copy was interrupted.");
+            } catch (UncheckedStorageClientException exception) {
+                throw exception.getCause();
+            } finally {
+                copies.values().forEach(CompletableFuture::join);
+                invalidateScope(targetScope);
+            }
+
+            List<String> copiedItems = new ArrayList<>();
+            Map<String, String> failedItems = new LinkedHashMap<>();
+            copies.forEach((key, copy) -> {
+                String failure = copy.join();
+                if (failure == null) {
+                    copiedItems.add(key);
+                } else {
+                    failedItems.put(key, failure);
+                }
+            });
+            // the copied objects replace packed items of the target scope
+            removePackedItems(targetReferenceId, copiedItems);
+            copyPackedItems(sourceReferenceId, targetReferenceId, copiedItems, failedItems);
+            return new BatchCopyResult(copiedItems, failedItems);
+        });
     }
 
     /**
@@ -146,20 +933,779 @@ public class StorageClient {
      */
     public void deleteItem(String referenceId, String key) throws StorageClientException {
 
-        String composedKey = getComposedKey(referenceId, key);
+        observe("deleteItem", () -> {
+            String scope = getComposedKey(referenceId, "");
+            String composedKey = getComposedKey(referenceId, key);
+            if (!removePackedItems(referenceId, List.of(key)).isEmpty()) {
+                invalidateItem(scope, composedKey);
+                removeListedItem(scope, key);
+                return null;
+            }
+            ItemDeduplicator deduplicator = createDeduplicator();
+            try {
+                StorageObjectInfo info = deduplicator.findObject(composedKey);
+                if (info != null) {
+                    boolean deleted = false;
+                    try {
+                        backend.deleteObject(composedKey);
+                        deleted = true;
+                        String blobHash = ItemDeduplicator.getBlobHash(info);
+                        if (blobHash != null) {
+                            deduplicator.release(composedKey, blobHash);
+                        }
+                    } finally {
+                        invalidateItem(scope, composedKey);
+                        if (deleted) {
+                            removeListedItem(scope, key);
+                        } else {
+                            invalidateListing(scope);
+                        }
+                    }
+                } else {
+                    throw new StorageClientException(
+                        String.format("The item you want to delete (%s) does not exist.", key));
+                }
+            } catch (StorageBackendException exception) {
+                throw new StorageClientException(exception.getMessage(), exception);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Delete the items with given keys from the provided scope using multi-object delete requests that are sent
+     * concurrently. In contrast to {@link #deleteItem(String, String)}, keys of items that do not exist are reported
+     * as deleted and failures are reported per item instead of stopping at the first failure. If deduplication is
+     * enabled, every item is looked up before it is deleted to release the content it references.
+     *
+     * @param referenceId scope from where to delete the items
+     * @param keys keys of the items
+     * @return outcome per item
+     * @throws StorageClientException if the deletion is interrupted
+     */
+    public BatchDeleteResult deleteItems(String referenceId, Collection<String> keys) throws StorageClientException {
+
+        return observe("deleteItems", () -> {
+            String composedKey = getComposedKey(referenceId, "");
+            BatchDeleteResult result = null;
+            Map<String, String> blobHashes = new HashMap<>();
+            try {
+                Set<String> packedKeys = new LinkedHashSet<>(removePackedItems(referenceId, keys));
+                BatchDeleteResult deleted = new BatchDeleter(backend, properties.getBatchDelete().getConcurrency(),
+                    transferExecutor).delete(keys.stream().filter(key -> !packedKeys.contains(key))
+                        .map(key -> composedKey + key).peek(key -> collectBlobHash(key, -1, blobHashes)).iterator(),
+                    key -> removePrefix(key, composedKey));
+                releaseBlobs(composedKey, deleted, blobHashes);
+                result = withPackedItems(packedKeys, deleted);
+                return result;
+            } catch (StorageBackendException exception) {
+                throw new StorageClientException(exception.getMessage(), exception);
+            } finally {
+                keys.forEach(key -> invalidateItem(composedKey, composedKey + key));
+                if (result != null && result.isSuccessful()) {
+                    keys.forEach(key -> removeListedItem(composedKey, key));
+                } else {
+                    invalidateListing(composedKey);
+                }
+            }
+        });
+    }
+
+    /**
+     * Delete all items within the scope of the provided referenceId. Items are deleted with multi-object delete
+     * requests while the listing of the scope is still in progress. If deduplication is enabled, items that may be
+     * pointers to stored contents are looked up before they are deleted to release the content they reference.
+     * If packing is enabled, the packs and the index of the scope are deleted as well.
+     *
+     * @param referenceId scope to delete
+     * @return outcome per item
+     * @throws StorageClientException if an error occurs while getting the list of items
+     */
+    public BatchDeleteResult deleteScope(String referenceId) throws StorageClientException {
+
+        return observe("deleteScope", () -> {
+            String composedKey = getComposedKey(referenceId, "");
+            Map<String, String> blobHashes = new HashMap<>();
+            try (Stream<StorageObjectInfo> objects = streamObjectInfos(composedKey,
+                properties.getListing().getPageSize(), null)) {
+                BatchDeleteResult result = new BatchDeleter(backend, properties.getBatchDelete().getConcurrency(),
+                    transferExecutor).delete(objects.peek(obj -> collectBlobHash(obj.key(), obj.size(), blobHashes))
+                        .map(StorageObjectInfo::key).iterator(),
+                    key -> removePrefix(key, composedKey));
+                releaseBlobs(composedKey, result, blobHashes);
+                return packIndexes == null ? result : withPackedItems(createPacker().deleteAll(referenceId), result);
+            } catch (UncheckedStorageClientException exception) {
+                throw exception.getCause();
+            } catch (StorageBackendException | IOException exception) {
+                throw new StorageClientException(exception.getMessage(), exception);
+            } finally {
+                invalidateScope(composedKey);
+            }
+        });
+    }
+
+    private <T, E extends Exception> T observe(String operation, Operation<T, E> body)
+        throws E, StorageClientException {
+
+        StorageClientMetrics.Sample sample = metrics.start(operation);
+        try {
+            T result = body.execute();
+            sample.stop(null);
+            return result;
+        } catch (Throwable throwable) {
+            sample.stop(throwable);
+            throw throwable;
+        }
+    }
+
+    private void writeItem(String composedKey, InputStream item, long contentLength, String contentType)
+        throws IOException, StorageClientException {
+
+        StorageClientProperties.Compression compression = properties.getCompression();
+        InputStream content = item;
+        if (compression.isEnabled() && ItemCompression.isCandidate(compression, contentLength, contentType)) {
+            PushbackInputStream pushbackContent = new PushbackInputStream(item, ItemCompression.SIGNATURE_LENGTH);
+            byte[] head = pushbackContent.readNBytes(ItemCompression.SIGNATURE_LENGTH);
+            pushbackContent.unread(head);
+            content = pushbackContent;
+            if (!ItemCompression.isCompressed(head)) {
+                writeCompressedItem(composedKey, content, contentLength, contentType, compression.getCodec());
+                return;
+            }
+        }
+        uploadItem(composedKey, content, contentLength, new ObjectWriteOptions(contentType, null));
+    }
+
+    private void writeCompressedItem(String composedKey, InputStream item, long contentLength, String contentType,
+        StorageClientProperties.CompressionCodec codec) throws IOException, StorageClientException {
+
+        ObjectWriteOptions options = new ObjectWriteOptions(contentType, Map.of(
+            ItemCompression.ENCODING_METADATA, ItemCompression.getEncoding(codec),
+            ItemCompression.SIZE_METADATA, Long.toString(contentLength)));
+        if (contentLength >= properties.getMultipart().getThreshold().toBytes()) {
+            // the compressed size is unknown until the whole item has been read
+            createUploader().upload(composedKey, ItemCompression.compressingStream(codec, item, contentLength), -1,
+                options);
+            return;
+        }
+
+        byte[] content = item.readNBytes((int) contentLength);
+        if (content.length != contentLength) {
+            throw new StorageClientException("The item ended before the declared content length was reached.");
+        }
+        byte[] compressed = ItemCompression.compress(codec, content);
+        if (compressed.length < content.length) {
+            backend.putObject(composedKey, new ByteArrayInputStream(compressed), compressed.length, options);
+        } else {
+            backend.putObject(composedKey, new ByteArrayInputStream(content), content.length,
+                new ObjectWriteOptions(contentType, null));
+        }
+    }
+
+    private void uploadItem(String composedKey, InputStream item, long contentLength, ObjectWriteOptions options)
+        throws StorageClientException {
+
+        if (contentLength >= properties.getMultipart().getThreshold().toBytes()) {
+            createUploader().upload(composedKey, item, contentLength, options);
+        } else {
+            backend.putObject(composedKey, item, contentLength, options);
+        }
+    }
+
+    private MultipartUploader createUploader() {
+
+        return new MultipartUploader(backend, properties.getMultipart(), transferExecutor, getRetryingBackend());
+    }
+
+    private RetryingStorageBackend getRetryingBackend() {
+
+        StorageBackend current = backend instanceof HedgingStorageBackend hedgingBackend
+            ? hedgingBackend.getDelegate() : backend;
+        return current instanceof RetryingStorageBackend retryingBackend ? retryingBackend : null;
+    }
+
+    private ItemPacker createPacker() {
+
+        return new ItemPacker(backend, properties.getPacking(), rootDirectory, packIndexes);
+    }
+
+    private ItemChunker createChunker() {
+
+        return new ItemChunker(backend, properties.getChunking(), rootDirectory, transferExecutor);
+    }
+
+    private ItemDeduplicator createDeduplicator() {
+
+        return new ItemDeduplicator(backend, rootDirectory, properties.getMultipart().getThreshold().toBytes());
+    }
+
+    private void collectBlobHash(String composedKey, long size, Map<String, String> blobHashes) {
+
+        collectBlobHash(composedKey, size, properties.getDeduplication().isEnabled(), blobHashes);
+    }
+
+    private void collectBlobHash(String composedKey, long size, boolean deduplication,
+        Map<String, String> blobHashes) {
+
+        // only objects of the size of a pointer can reference a blob, the size is unknown without a listing
+        if (deduplication && (size < 0 || size == ItemDeduplicator.POINTER_SIZE)) {
+            StorageObjectInfo info = createDeduplicator().findObject(composedKey);
+            String blobHash = info == null ? null : ItemDeduplicator.getBlobHash(info);
+            if (blobHash != null) {
+                blobHashes.put(composedKey, blobHash);
+            }
+        }
+    }
+
+    private void releaseBlobs(String scope, BatchDeleteResult result, Map<String, String> blobHashes) {
+
+        ItemDeduplicator deduplicator = createDeduplicator();
+        for (String key : result.deletedItems()) {
+            String blobHash = blobHashes.get(scope + key);
+            if (blobHash != null) {
+                deduplicator.release(scope + key, blobHash);
+            }
+        }
+    }
+
+    private Stream<String> withPackedKeys(String referenceId, Stream<String> listedKeys, String startAfter)
+        throws StorageClientException {
+
+        return mergePackedItems(referenceId, listedKeys, startAfter, Function.identity(), (key, size) -> key);
+    }
+
+    private <T> Stream<T> mergePackedItems(String referenceId, Stream<T> listedItems, String startAfter,
+        Function<T, String> keyOf, BiFunction<String, Integer, T> packedItem) throws StorageClientException {
+
+        if (packIndexes == null) {
+            return listedItems;
+        }
+        NavigableMap<String, Integer> packedSizes;
+        try {
+            packedSizes = createPacker().getSizes(referenceId);
+        } catch (StorageBackendException | IOException exception) {
+            listedItems.close();
+            throw new StorageClientException(exception.getMessage(), exception);
+        }
+        Iterator<T> items = ItemPacker.merge(listedItems.iterator(),
+            (startAfter == null ? packedSizes : packedSizes.tailMap(startAfter, false)).entrySet().stream()
+                .map(entry -> packedItem.apply(entry.getKey(), entry.getValue())).iterator(), keyOf);
+        return StreamSupport.stream(
+                Spliterators.spliteratorUnknownSize(items, Spliterator.ORDERED | Spliterator.NONNULL), false)
+            .onClose(listedItems::close);
+    }
+
+    private List<String> removePackedItems(String referenceId, Collection<String> keys)
+        throws StorageClientException {
+
+        if (packIndexes == null) {
+            return List.of();
+        }
         try {
-            if (s3Client.doesObjectExist(this.bucket, composedKey)) {
-                s3Client.deleteObject(this.bucket, composedKey);
+            return createPacker().remove(referenceId, keys);
+        } catch (StorageBackendException | IOException exception) {
+            throw new StorageClientException(exception.getMessage(), exception);
+        }
+    }
+
+    private static BatchDeleteResult withPackedItems(Collection<String> packedKeys, BatchDeleteResult result) {
+
+        if (packedKeys.isEmpty()) {
+            return result;
+        }
+        List<String> deletedItems = new ArrayList<>(packedKeys);
+        deletedItems.addAll(result.deletedItems());
+        return new BatchDeleteResult(deletedItems, result.failedItems());
+    }
+
+    private boolean copy(String sourceReferenceId, String sourceKey, String targetReferenceId, String targetKey)
+        throws StorageClientException {
+
+        String sourceComposedKey = getComposedKey(sourceReferenceId, sourceKey);
+        String targetScope = getComposedKey(targetReferenceId, "");
+        String composedKey = getComposedKey(targetReferenceId, targetKey);
+        if (sourceComposedKey.equals(composedKey)) {
+            return false;
+        }
+        StorageItemInputStream packedItem = openPackedItem(sourceReferenceId, sourceKey);
+        if (packedItem != null) {
+            byte[] item;
+            try (packedItem) {
+                item = packedItem.readAllBytes();
+            } catch (IOException exception) {
+                throw new StorageClientException(exception.getMessage(), exception);
+            }
+            pushItems(targetReferenceId, Map.of(targetKey, item));
+            return true;
+        }
+
+        boolean written = false;
+        try {
+            copyStoredObject(backend.headObject(sourceComposedKey), composedKey, transferExecutor);
+            if (packIndexes != null) {
+                // the copy replaces a packed item of the same key
+                createPacker().remove(targetReferenceId, List.of(targetKey));
+            }
+            written = true;
+        } catch (StorageBackendException | IOException exception) {
+            throw new StorageClientException(exception.getMessage(), exception);
+        } finally {
+            // a failed copy may still have replaced the item
+            invalidateItem(targetScope, composedKey);
+            if (written) {
+                addListedItem(targetScope, targetKey);
             } else {
-                throw new StorageClientException(
-                    String.format("The item you want to delete (%s) does not exist.", key));
+                invalidateListing(targetScope);
+            }
+        }
+        return true;
+    }
+
+    private String copyScopeItem(StorageObjectInfo source, String composedKey) {
+
+        try {
+            // the items already use the transfer threads, so the parts of a large item are copied one by one
+            copyStoredObject(source, composedKey, Runnable::run);
+            return null;
+        } catch (StorageBackendException | StorageClientException | IOException exception) {
+            return exception.getMessage();
+        }
+    }
+
+    private void copyStoredObject(StorageObjectInfo source, String composedKey, Executor partExecutor)
+        throws IOException, StorageClientException {
+
+        StorageObjectInfo info = source;
+        if (info.userMetadata().isEmpty() && info.size() == ItemDeduplicator.POINTER_SIZE) {
+            // a listing does not tell pointers apart from other objects of their size
+            info = backend.headObject(source.key());
+        }
+        ItemCopier copier = new ItemCopier(backend, properties.getCopy(), partExecutor);
+        StorageObjectInfo copied = info;
+        // pointers are counted and replaced pointers released, whether deduplication is still enabled or not
+        createDeduplicator().copy(copied, composedKey, () -> copier.copy(copied, composedKey));
+    }
+
+    private void copyPackedItems(String sourceReferenceId, String targetReferenceId, List<String> copiedItems,
+        Map<String, String> failedItems) throws StorageClientException {
+
+        if (packIndexes == null) {
+            return;
+        }
+        // packed items are small, so they are read and packed again instead of copying whole packs
+        Map<String, byte[]> packedItems = new TreeMap<>();
+        try {
+            for (String key : createPacker().getSizes(sourceReferenceId).keySet()) {
+                StorageItemInputStream packedItem = openPackedItem(sourceReferenceId, key);
+                if (packedItem != null) {
+                    try (packedItem) {
+                        packedItems.put(key, packedItem.readAllBytes());
+                    }
+                }
+            }
+            pushItems(targetReferenceId, packedItems);
+            copiedItems.addAll(packedItems.keySet());
+        } catch (StorageBackendException | IOException | StorageClientException exception) {
+            packedItems.keySet().forEach(key -> failedItems.put(key, exception.getMessage()));
+        }
+    }
+
+    private StorageItemInputStream openPackedItem(String referenceId, String key) throws StorageClientException {
+
+        if (packIndexes == null) {
+            return null;
+        }
+        try {
+            StorageObject object = createPacker().open(referenceId, key);
+            return object == null ? null : new StorageItemInputStream(object);
+        } catch (StorageBackendException | IOException exception) {
+            throw new StorageClientException(exception.getMessage(), exception);
+        }
+    }
+
+    private StorageItemInputStream openItemRange(String referenceId, String key, long offset, long length)
+        throws StorageClientException {
+
+        if (length < 0) {
+            throw new StorageClientException("The length of a range must not be negative.");
+        }
+        if (length == 0) {
+            return createEmptyStream(getComposedKey(referenceId, key));
+        }
+        try {
+            if (packIndexes != null) {
+                StorageObject packedRange = createPacker().open(referenceId, key, offset, length);
+                if (packedRange != null) {
+                    return new StorageItemInputStream(packedRange);
+                }
+            }
+
+            String composedKey = getComposedKey(referenceId, key);
+            ByteRange range = offset < 0 ? ByteRange.suffix(-offset)
+                : new ByteRange(offset, offset + Math.min(length, Long.MAX_VALUE - offset) - 1);
+            String objectKey = composedKey;
+            StorageObject object = getRange(objectKey, range);
+            // the stored object may be smaller than the item, so an unsatisfiable range needs its metadata
+            StorageObjectInfo info = object != null ? object.getInfo() : backend.headObject(objectKey);
+            String blobKey = createDeduplicator().getBlobKey(info);
+            if (blobKey != null) {
+                abort(object);
+                objectKey = blobKey;
+                object = getRange(objectKey, range);
+                info = object != null ? object.getInfo() : backend.headObject(objectKey);
+            }
+            if (info.userMetadata().containsKey(ItemCompression.ENCODING_METADATA) || ItemChunker.isManifest(info)) {
+                // the stored bytes do not map to positions of the item, so the range is cut from the whole item
+                abort(object);
+                return sliceStream(openItem(objectKey), offset, length);
+            }
+            if (object == null) {
+                return createEmptyStream(composedKey);
+            }
+            // a suffix range is only bounded by the end of the item
+            long count = Math.min(length, object.getContentLength());
+            return new StorageItemInputStream(object, new BoundedInputStream(object.getContent(), count, false),
+                count);
+        } catch (StorageBackendException | IOException exception) {
+            throw new StorageClientException(exception.getMessage(), exception);
+        }
+    }
+
+    private StorageObject getRange(String composedKey, ByteRange range) {
+
+        try {
+            return backend.getObject(composedKey, ObjectReadOptions.none().withRange(range));
+        } catch (StorageBackendException exception) {
+            if (exception.getStatusCode() == 416) {
+                return null;
             }
-        } catch (SdkClientException exception) {
-            throw new StorageClientException(exception.getMessage());
+            throw exception;
         }
     }
 
-    private String getComposedKey(String referenceId, String key) {
+    private static void abort(StorageObject object) {
+
+        if (object != null) {
+            object.abort();
+        }
+    }
+
+    private static StorageItemInputStream sliceStream(StorageItemInputStream item, long offset, long length)
+        throws IOException, StorageClientException {
+
+        long start = offset;
+        if (offset < 0) {
+            if (item.getContentLength() < 0) {
+                item.close();
+                throw new StorageClientException("The size of the item is unknown, so its end cannot be located.");
+            }
+            start = Math.max(0, item.getContentLength() + offset);
+        }
+        try {
+            item.skipNBytes(start);
+        } catch (EOFException exception) {
+            item.close();
+            return createEmptyStream(null);
+        }
+        long count = item.getContentLength() < 0 ? length : Math.min(length, item.getContentLength() - start);
+        StorageObject slice = new StorageObject(null, count, item, () -> {
+            try {
+                item.close();
+            } catch (IOException ignored) {
+                // closing the item before its end only aborts its connection
+            }
+        });
+        return new StorageItemInputStream(slice, new BoundedInputStream(item, count, false), count);
+    }
+
+    private static StorageItemInputStream createEmptyStream(String composedKey) {
+
+        return new StorageItemInputStream(new StorageObject(new StorageObjectInfo(composedKey, 0, null, null, null,
+            null, null), 0, InputStream.nullInputStream(), () -> {
+        }));
+    }
+
+    private StorageItemInputStream openItem(String referenceId, String key) throws StorageClientException {
+
+        StorageItemInputStream packedItem = openPackedItem(referenceId, key);
+        return packedItem != null ? packedItem : openItem(getComposedKey(referenceId, key));
+    }
+
+    private StorageItemInputStream openItem(String composedKey) throws StorageClientException {
+
+        try {
+            return openObject(backend.getObject(composedKey, ObjectReadOptions.none()));
+        } catch (StorageBackendException | IOException exception) {
+            throw new StorageClientException(exception.getMessage(), exception);
+        }
+    }
+
+    private StorageItemInputStream openWholeItem(String composedKey) throws StorageClientException {
+
+        try {
+            return openObject(getWholeObject(composedKey, ObjectReadOptions.none()));
+        } catch (StorageBackendException | IOException exception) {
+            throw new StorageClientException(exception.getMessage(), exception);
+        }
+    }
+
+    private StorageObject getWholeObject(String composedKey, ObjectReadOptions options) {
+
+        // only reads that are consumed right away are hedged, streams are read at the pace of the caller
+        if (backend instanceof HedgingStorageBackend hedgingBackend) {
+            return hedgingBackend.getHedgedObject(composedKey, options);
+        }
+        return backend.getObject(composedKey, options);
+    }
+
+    private StorageItemInputStream openObject(StorageObject object) throws IOException {
+
+        StorageObject resolved = resolvePointer(object);
+        if (!ItemChunker.isManifest(resolved.getInfo())) {
+            return openContent(resolved);
+        }
+        List<ItemChunker.Chunk> chunks;
+        try (InputStream manifest = new StorageItemInputStream(resolved)) {
+            chunks = ItemChunker.parseManifest(manifest.readAllBytes());
+        }
+        String size = resolved.getInfo().userMetadata().get(ItemCompression.SIZE_METADATA);
+        return new StorageItemInputStream(resolved, createChunker().openStream(chunks, this::readChunk),
+            size == null ? -1 : Long.parseLong(size));
+    }
+
+    private byte[] readChunk(String chunkKey) throws IOException {
+
+        try (InputStream chunk = openContent(backend.getObject(chunkKey, ObjectReadOptions.none()))) {
+            return chunk.readAllBytes();
+        }
+    }
+
+    private List<ItemChunker.Chunk> readManifest(String composedKey) throws IOException {
+
+        StorageObjectInfo info = createDeduplicator().findObject(composedKey);
+        if (info == null || !ItemChunker.isManifest(info)) {
+            return List.of();
+        }
+        try (InputStream manifest = new StorageItemInputStream(backend.getObject(composedKey,
+            ObjectReadOptions.none().withIfMatch(info.eTag())))) {
+            return ItemChunker.parseManifest(manifest.readAllBytes());
+        } catch (StorageBackendException exception) {
+            // the previous manifest only saves existence checks of chunks
+            return List.of();
+        }
+    }
+
+    private StorageObject resolvePointer(StorageObject object) throws IOException {
+
+        String blobKey = createDeduplicator().getBlobKey(object.getInfo());
+        if (blobKey == null) {
+            return object;
+        }
+        object.close();
+        return backend.getObject(blobKey, ObjectReadOptions.none());
+    }
+
+    private StorageItemInputStream openContent(StorageObject object) throws IOException {
+
+        String encoding = object.getInfo().userMetadata().get(ItemCompression.ENCODING_METADATA);
+        if (encoding == null) {
+            return new StorageItemInputStream(object);
+        }
+        InputStream content;
+        try {
+            content = ItemCompression.decompressingStream(encoding, object.getContent());
+        } catch (IOException exception) {
+            object.abort();
+            throw exception;
+        }
+        String size = object.getInfo().userMetadata().get(ItemCompression.SIZE_METADATA);
+        return new StorageItemInputStream(object, content, size == null ? -1 : Long.parseLong(size));
+    }
+
+    private byte[] getCachedItem(String scope, String composedKey) throws IOException, StorageClientException {
+
+        long generation = itemCache != null ? itemCache.getGeneration() : 0;
+        MemoryItemCache.Entry cached = itemCache != null ? itemCache.get(composedKey) : null;
+        if (cached != null && cached.isFresh()) {
+            return cached.getContent().clone();
+        }
+        DiskItemCache.Entry stored = cached == null && diskCache != null ? diskCache.get(scope, composedKey) : null;
+
+        String eTag = cached != null ? cached.getETag() : null;
+        if (stored != null) {
+            eTag = stored.eTag();
+        }
+        StorageObject object;
+        try {
+            object = getWholeObject(composedKey,
+                eTag == null ? ObjectReadOptions.none() : ObjectReadOptions.none().withIfNoneMatch(eTag));
+        } catch (StorageBackendException exception) {
+            if (exception.getStatusCode() != 304) {
+                throw new StorageClientException(exception.getMessage(), exception);
+            }
+            if (cached != null) {
+                itemCache.revalidate(composedKey, cached, generation);
+                return cached.getContent().clone();
+            }
+            byte[] content = diskCache.read(stored);
+            if (content == null) {
+                // evicted or unreadable since the lookup
+                diskCache.invalidate(scope, composedKey);
+                return getCachedItem(scope, composedKey);
+            }
+            if (itemCache != null) {
+                itemCache.put(composedKey, content, stored.eTag(), generation);
+                return content.clone();
+            }
+            return content;
+        }
+
+        byte[] content;
+        try (InputStream itemStream = openObject(object)) {
+            content = itemStream.readAllBytes();
+        } catch (StorageBackendException exception) {
+            throw new StorageClientException(exception.getMessage(), exception);
+        }
+        if (diskCache != null) {
+            try {
+                diskCache.put(scope, composedKey, content, object.getInfo().eTag());
+            } catch (IOException ignored) {
+                // the item was read successfully, it is only not cached
+            }
+        }
+        if (itemCache != null) {
+            itemCache.put(composedKey, content, object.getInfo().eTag(), generation);
+            return content.clone();
+        }
+        return content;
+    }
+
+    private void invalidateItem(String scope, String composedKey) {
+
+        if (itemCache != null) {
+            itemCache.invalidate(composedKey);
+        }
+        if (diskCache != null) {
+            diskCache.invalidate(scope, composedKey);
+        }
+    }
+
+    private void addListedItem(String scope, String key) {
+
+        if (listingCache != null) {
+            listingCache.add(scope, key);
+        }
+    }
+
+    private void removeListedItem(String scope, String key) {
+
+        if (listingCache != null) {
+            listingCache.remove(scope, key);
+        }
+    }
+
+    private void invalidateListing(String scope) {
+
+        // the content of the scope is unknown after a failed write
+        if (listingCache != null) {
+            listingCache.invalidate(scope);
+        }
+    }
+
+    private void invalidateScope(String scope) {
+
+        if (itemCache != null) {
+            itemCache.invalidatePrefix(scope);
+        }
+        if (diskCache != null) {
+            diskCache.invalidateScope(scope);
+        }
+        invalidateListing(scope);
+    }
+
+    private Stream<StorageObjectInfo> streamObjectInfos(String composedKey, int pageSize, String startAfter)
+        throws StorageClientException {
+
+        if (pageSize < 1 || pageSize > 1000) {
+            throw new StorageClientException("The page size must be between 1 and 1000.");
+        }
+
+        ObjectListingIterator iterator = new ObjectListingIterator(backend, composedKey, pageSize,
+            properties.getListing().isPrefetch() ? transferExecutor : null);
+        iterator.start(startAfter == null ? null : composedKey + startAfter);
+        return StreamSupport.stream(
+                Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false)
+            .onClose(iterator::close);
+    }
+
+    /**
+     * Shut down the worker threads used for parallel transfers and release the resources of the storage backend.
+     */
+    @Override
+    public void close() {
+
+        transferExecutor.shutdown();
+        if (compactionExecutor != null) {
+            compactionExecutor.shutdown();
+        }
+        backend.close();
+    }
+
+    private static StorageBackend createBackend(String accessKey, String secret, String serviceEndpoint,
+        String signingRegion, String signerType, String bucket, StorageClientProperties properties) {
+
+        return switch (properties.getBackend()) {
+            case AWS_V1 -> AwsV1StorageBackend.create(accessKey, secret, serviceEndpoint, signingRegion,
+                ClientTransport.toClientConfiguration(properties.getClient(), properties.getRetry(), signerType),
+                bucket);
+            // the optional AWS SDK v2 classes are only loaded if the backend is selected
+            case AWS_V2 -> AwsV2ClientTransport.createBackend(accessKey, secret, serviceEndpoint, signingRegion,
+                bucket, properties);
+            case FILESYSTEM -> new FileSystemStorageBackend(properties.getFilesystem().getRootPath(), bucket);
+        };
+    }
+
+    private ScheduledExecutorService createCompactionExecutor(Duration interval) {
+
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "s3-library-compaction");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::compactCachedScopes, interval.toNanos(), interval.toNanos(),
+            TimeUnit.NANOSECONDS);
+        return executor;
+    }
+
+    private void compactCachedScopes() {
+
+        List<String> referenceIds;
+        synchronized (packIndexes) {
+            referenceIds = new ArrayList<>(packIndexes.keySet());
+        }
+        for (String referenceId : referenceIds) {
+            try {
+                compactScope(referenceId);
+            } catch (StorageClientException | RuntimeException ignored) {
+                // the scope is compacted again in the next run
+            }
+        }
+    }
+
+    private static ExecutorService createTransferExecutor(int threads) {
+
+        AtomicInteger threadCount = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(), runnable -> {
+                Thread thread = new Thread(runnable, "s3-library-transfer-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    String getComposedKey(String referenceId, String key) {
 
         StringBuilder str = new StringBuilder();
         str.append(this.rootDirectory);
@@ -170,11 +1716,16 @@ public class StorageClient {
         return str.toString();
     }
 
-    private String removePrefix(String s, String prefix) {
+    String removePrefix(String s, String prefix) {
 
         if (s != null && prefix != null && s.startsWith(prefix)) {
             return s.substring(prefix.length());
         }
         return s;
     }
+
+    @FunctionalInterface
+    private interface Operation<T, E extends Exception> {
+        T execute() throws E, StorageClientException;
+    }
 }
@@ -16,9 +16,31 @@
 
 package eu.merloteducation.s3library.service;
 
+import eu.merloteducation.s3library.backend.StorageBackendException;
+
 public class StorageClientException extends Exception{
     public StorageClientException(String message) {
 
         super(message);
     }
+
+    public StorageClientException(String message, Throwable cause) {
+
+        super(message, cause);
+    }
+
+    /**
+     * Get the number of attempts of the storage request that caused this exception, including retries.
+     *
+     * @return number of attempts, 0 if the exception was not caused by a storage request
+     */
+    public int getAttempts() {
+
+        for (Throwable cause = getCause(); cause != null; cause = cause.getCause()) {
+            if (cause instanceof StorageBackendException backendException) {
+                return backendException.getAttempts();
+            }
+        }
+        return 0;
+    }
 }
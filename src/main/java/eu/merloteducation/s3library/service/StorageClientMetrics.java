@@ -0,0 +1,83 @@
+/*
+ *  Copyright 2024 Dataport. All rights reserved. Developed as part of the MERLOT project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package eu.merloteducation.s3library.service;
+
+import eu.merloteducation.s3library.backend.ConnectionPoolStats;
+
+/**
+ * Receives measurements of the operations of a {@link StorageClient}. A Micrometer based implementation is
+ * configured automatically if a meter registry is available.
+ */
+public interface StorageClientMetrics {
+    /**
+     * Implementation that discards all measurements.
+     */
+    StorageClientMetrics NONE = new StorageClientMetrics() {
+        @Override
+        public Sample start(String operation) {
+
+            return failure -> {
+                // discarded
+            };
+        }
+
+        @Override
+        public void recordTransfer(String direction, long bytes) {
+
+            // discarded
+        }
+    };
+
+    /**
+     * Start measuring an operation.
+     *
+     * @param operation name of the operation, such as getItem
+     * @return sample to stop when the operation completes
+     */
+    Sample start(String operation);
+
+    /**
+     * Record the number of bytes transferred by a completed operation.
+     *
+     * @param direction upload or download
+     * @param bytes number of bytes
+     */
+    void recordTransfer(String direction, long bytes);
+
+    /**
+     * Expose the utilization of the connection pool of the storage backend.
+     *
+     * @param connectionPoolStats connection pool statistics
+     */
+    default void bindConnectionPool(ConnectionPoolStats connectionPoolStats) {
+
+        // not measured by default
+    }
+
+    /**
+     * Measurement of a single running operation.
+     */
+    @FunctionalInterface
+    interface Sample {
+        /**
+         * Stop the measurement.
+         *
+         * @param failure exception the operation failed with, null if it succeeded
+         */
+        void stop(Throwable failure);
+    }
+}
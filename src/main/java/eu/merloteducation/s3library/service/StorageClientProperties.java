@@ -0,0 +1,599 @@
+/*
+ *  Copyright 2024 Dataport. All rights reserved. Developed as part of the MERLOT project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package eu.merloteducation.s3library.service;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Optional tuning properties of the storage client. All properties have defaults, so only the connection
+ * properties need to be configured to use the library.
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "s3-library")
+public class StorageClientProperties {
+    /**
+     * Storage backend the client operates on.
+     */
+    private Backend backend = Backend.AWS_V1;
+
+    /**
+     * Number of worker threads shared by all parallel transfers of a storage client.
+     */
+    private int transferThreads = 16;
+
+    private Client client = new Client();
+
+    private Retry retry = new Retry();
+
+    private Hedging hedging = new Hedging();
+
+    private RateLimit rateLimit = new RateLimit();
+
+    private Compression compression = new Compression();
+
+    private Deduplication deduplication = new Deduplication();
+
+    private Chunking chunking = new Chunking();
+
+    private Packing packing = new Packing();
+
+    private Multipart multipart = new Multipart();
+
+    private RangedDownload rangedDownload = new RangedDownload();
+
+    private RangeRead rangeRead = new RangeRead();
+
+    private Listing listing = new Listing();
+
+    private BatchDelete batchDelete = new BatchDelete();
+
+    private Copy copy = new Copy();
+
+    private Async async = new Async();
+
+    private ItemCache itemCache = new ItemCache();
+
+    private DiskCache diskCache = new DiskCache();
+
+    private ListingCache listingCache = new ListingCache();
+
+    private Filesystem filesystem = new Filesystem();
+
+    public enum Backend {
+        /**
+         * Blocking client of the AWS SDK for Java 1.x.
+         */
+        AWS_V1,
+
+        /**
+         * Asynchronous client of the AWS SDK for Java 2.x on a non-blocking HTTP client.
+         */
+        AWS_V2,
+
+        /**
+         * Local file system, for development and tests.
+         */
+        FILESYSTEM
+    }
+
+    public enum CompressionCodec {
+        /**
+         * Gzip of the Java runtime, always available.
+         */
+        GZIP,
+
+        /**
+         * Zstandard, requires com.github.luben:zstd-jni on the class path.
+         */
+        ZSTD,
+
+        /**
+         * LZ4 frame format, requires org.lz4:lz4-java on the class path.
+         */
+        LZ4
+    }
+
+    @Getter
+    @Setter
+    public static class Client {
+        /**
+         * Maximum number of open HTTP connections to the storage, should cover the concurrency of all transfers.
+         */
+        private int maxConnections = 50;
+
+        /**
+         * Maximum time a pooled connection is reused, zero to reuse connections without limit.
+         */
+        private Duration connectionTtl = Duration.ZERO;
+
+        /**
+         * Maximum time a pooled connection may stay idle before it is closed.
+         */
+        private Duration connectionMaxIdleTime = Duration.ofSeconds(60);
+
+        /**
+         * Whether idle and expired connections are closed by a background reaper.
+         */
+        private boolean idleConnectionReaper = true;
+
+        /**
+         * Maximum time to wait for a connection to be established.
+         */
+        private Duration connectionTimeout = Duration.ofSeconds(10);
+
+        /**
+         * Maximum time to wait for data on an established connection.
+         */
+        private Duration socketTimeout = Duration.ofSeconds(50);
+
+        /**
+         * Maximum time of a single HTTP request attempt, zero to disable.
+         */
+        private Duration requestTimeout = Duration.ZERO;
+
+        /**
+         * Maximum time of a whole operation including all retries, zero to disable.
+         */
+        private Duration clientExecutionTimeout = Duration.ZERO;
+
+        /**
+         * Whether TCP keep-alive probes are sent on idle connections.
+         */
+        private boolean tcpKeepAlive = false;
+
+        /**
+         * Size of the socket send buffer, zero to use the operating system default.
+         */
+        private DataSize socketSendBufferSize = DataSize.ofBytes(0);
+
+        /**
+         * Size of the socket receive buffer, zero to use the operating system default.
+         */
+        private DataSize socketReceiveBufferSize = DataSize.ofBytes(0);
+
+        /**
+         * Whether uploads wait for a 100-continue response before sending the content, only used by the aws-v1
+         * backend.
+         */
+        private boolean useExpectContinue = true;
+    }
+
+    @Getter
+    @Setter
+    public static class Retry {
+        /**
+         * Whether failed requests are retried by the storage client, otherwise the AWS SDK applies its own retries.
+         */
+        private boolean enabled = true;
+
+        /**
+         * Maximum number of attempts of a single request, including the first attempt.
+         */
+        private int maxAttempts = 4;
+
+        /**
+         * Minimum delay before a retry, the delays grow randomly with decorrelated jitter.
+         */
+        private Duration baseDelay = Duration.ofMillis(100);
+
+        /**
+         * Maximum delay before a retry.
+         */
+        private Duration maxDelay = Duration.ofSeconds(20);
+
+        /**
+         * Number of tokens of the retry budget of a client. Every retry takes tokens from the budget and every
+         * successful request returns some, so retries stop when most requests fail.
+         */
+        private int budget = 500;
+
+        /**
+         * Number of tokens a single retry takes from the retry budget.
+         */
+        private int retryCost = 5;
+    }
+
+    @Getter
+    @Setter
+    public static class Hedging {
+        /**
+         * Whether a second read is sent for reads of whole items that did not respond within the hedging delay.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Fixed hedging delay, zero to use the configured percentile of the recent response times instead.
+         */
+        private Duration delay = Duration.ZERO;
+
+        /**
+         * Percentile of the recent response times used as hedging delay.
+         */
+        private double percentile = 95;
+
+        /**
+         * Lower bound of the percentile based hedging delay.
+         */
+        private Duration minDelay = Duration.ofMillis(10);
+
+        /**
+         * Upper bound of the percentile based hedging delay, also used until enough response times are known.
+         */
+        private Duration maxDelay = Duration.ofSeconds(1);
+
+        /**
+         * Maximum number of hedged reads as fraction of all reads.
+         */
+        private double maxExtraRequests = 0.05;
+
+        /**
+         * Maximum number of threads sending hedged reads, further reads are sent by the calling thread unhedged.
+         */
+        private int maxThreads = 16;
+    }
+
+    @Getter
+    @Setter
+    public static class RateLimit {
+        /**
+         * Whether the requests of the client are paced per key prefix.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Maximum number of GET, HEAD and LIST requests per second and prefix.
+         */
+        private double readRate = 5500;
+
+        /**
+         * Maximum number of PUT, POST and DELETE requests per second and prefix.
+         */
+        private double writeRate = 3500;
+
+        /**
+         * Time of requests at the maximum rate that may be sent at once after a pause.
+         */
+        private Duration burst = Duration.ofMillis(100);
+
+        /**
+         * Maximum time a request waits for its turn before it fails without being sent.
+         */
+        private Duration maxWait = Duration.ofSeconds(30);
+
+        /**
+         * Maximum number of prefixes whose rates are tracked, the least recently used prefixes are dropped first.
+         */
+        private int maxPrefixes = 10000;
+    }
+
+    @Getter
+    @Setter
+    public static class Compression {
+        /**
+         * Whether pushed items are compressed, compressed items are always decompressed when they are read.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Codec used to compress pushed items.
+         */
+        private CompressionCodec codec = CompressionCodec.GZIP;
+
+        /**
+         * Items smaller than this size are stored uncompressed.
+         */
+        private DataSize minSize = DataSize.ofKilobytes(1);
+
+        /**
+         * Prefixes of content types that are stored uncompressed because their content is already compressed.
+         */
+        private List<String> skippedContentTypes = new ArrayList<>(List.of("image/", "video/", "audio/",
+            "application/zip", "application/gzip", "application/x-gzip", "application/zstd",
+            "application/x-7z-compressed", "application/x-bzip2", "application/x-xz", "application/x-rar",
+            "application/vnd.rar", "application/pdf", "application/vnd.openxmlformats", "font/woff"));
+    }
+
+    @Getter
+    @Setter
+    public static class Deduplication {
+        /**
+         * Whether the contents of pushed items are stored once per distinct content and referenced by the items.
+         */
+        private boolean enabled = false;
+    }
+
+    @Getter
+    @Setter
+    public static class Chunking {
+        /**
+         * Whether large pushed items are stored in content defined chunks, so new versions only upload the chunks
+         * that changed.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Items with a content length of at least this size are stored in chunks.
+         */
+        private DataSize threshold = DataSize.ofMegabytes(16);
+
+        /**
+         * Minimum size of a chunk, only the last chunk of an item may be smaller.
+         */
+        private DataSize minChunkSize = DataSize.ofKilobytes(256);
+
+        /**
+         * Size the chunks are cut at on average, rounded down to a power of two.
+         */
+        private DataSize averageChunkSize = DataSize.ofMegabytes(1);
+
+        /**
+         * Maximum size of a chunk, which must be below the multipart threshold so that chunks are uploaded in a
+         * single request.
+         */
+        private DataSize maxChunkSize = DataSize.ofMegabytes(4);
+
+        /**
+         * Maximum number of chunks of a single item that are uploaded or fetched at the same time.
+         */
+        private int concurrency = 4;
+    }
+
+    @Getter
+    @Setter
+    public static class Packing {
+        /**
+         * Whether small items pushed with pushItems are stored together in pack objects with an index per scope.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Items with a content length of at most this size are packed.
+         */
+        private DataSize maxItemSize = DataSize.ofKilobytes(4);
+
+        /**
+         * Size at which a pack is completed and the next pack is started.
+         */
+        private DataSize maxPackSize = DataSize.ofMegabytes(16);
+
+        /**
+         * Time after which a cached index is revalidated against the storage by its ETag.
+         */
+        private Duration indexTimeToLive = Duration.ofSeconds(5);
+
+        /**
+         * Maximum number of cached indexes, the least recently used indexes are evicted first.
+         */
+        private int maxScopes = 1000;
+
+        /**
+         * Packs with a smaller fraction of bytes belonging to current items are rewritten by the compaction.
+         */
+        private double minLiveRatio = 0.5;
+
+        /**
+         * Interval of the background compaction of the packs of all cached scopes, zero to only compact on demand.
+         */
+        private Duration compactionInterval = Duration.ofMinutes(10);
+    }
+
+    @Getter
+    @Setter
+    public static class Multipart {
+        /**
+         * Items with a content length of at least this size are uploaded in multiple parts.
+         */
+        private DataSize threshold = DataSize.ofMegabytes(64);
+
+        /**
+         * Size of a single part, must be at least 5MB.
+         */
+        private DataSize partSize = DataSize.ofMegabytes(16);
+
+        /**
+         * Maximum number of parts of a single upload that are buffered and uploaded at the same time.
+         */
+        private int concurrency = 4;
+
+        /**
+         * Number of times the upload of a single part is retried before the whole upload is aborted, only used if
+         * the retries of the client are disabled.
+         */
+        private int partRetries = 2;
+    }
+
+    @Getter
+    @Setter
+    public static class RangedDownload {
+        /**
+         * Items with a content length of at least this size are downloaded to files in concurrent byte ranges.
+         */
+        private DataSize threshold = DataSize.ofMegabytes(64);
+
+        /**
+         * Size of a single byte range.
+         */
+        private DataSize rangeSize = DataSize.ofMegabytes(16);
+
+        /**
+         * Maximum number of byte ranges of a single download that are fetched at the same time.
+         */
+        private int concurrency = 4;
+
+        /**
+         * Number of times the download of a single byte range is retried before the whole download fails, only
+         * used if the retries of the client are disabled.
+         */
+        private int rangeRetries = 2;
+    }
+
+    @Getter
+    @Setter
+    public static class RangeRead {
+        /**
+         * Size of the window a range reader fetches for smaller reads, so sequential small reads are served from a
+         * single request, zero to fetch every read separately.
+         */
+        private DataSize readAhead = DataSize.ofKilobytes(256);
+    }
+
+    @Getter
+    @Setter
+    public static class Listing {
+        /**
+         * Maximum number of items per listing request, at most 1000.
+         */
+        private int pageSize = 1000;
+
+        /**
+         * Whether the next page of a listing is fetched in the background while the current page is consumed.
+         */
+        private boolean prefetch = true;
+    }
+
+    @Getter
+    @Setter
+    public static class BatchDelete {
+        /**
+         * Maximum number of multi-object delete requests of a single batch that are sent at the same time.
+         */
+        private int concurrency = 4;
+    }
+
+    @Getter
+    @Setter
+    public static class Copy {
+        /**
+         * Items larger than this size are copied in multiple parts, at most 5GB, the limit of a single copy request.
+         */
+        private DataSize threshold = DataSize.ofGigabytes(5);
+
+        /**
+         * Size of a single part of a multipart copy, between 5MB and 5GB.
+         */
+        private DataSize partSize = DataSize.ofMegabytes(512);
+
+        /**
+         * Maximum number of items of a scope copy, or parts of a single multipart copy, copied at the same time.
+         */
+        private int concurrency = 8;
+    }
+
+    @Getter
+    @Setter
+    public static class Async {
+        /**
+         * Whether operations of the asynchronous client run on virtual threads if the runtime supports them.
+         */
+        private boolean virtualThreads = true;
+
+        /**
+         * Number of platform threads of the asynchronous client if virtual threads are not used.
+         */
+        private int threads = 32;
+
+        /**
+         * Maximum number of operations of the asynchronous client in flight at the same time.
+         */
+        private int maxInFlight = 256;
+    }
+
+    @Getter
+    @Setter
+    public static class ItemCache {
+        /**
+         * Whether the contents of items read with getItem are cached in memory.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Maximum total size of all cached items, the least recently used items are evicted first.
+         */
+        private DataSize maxSize = DataSize.ofMegabytes(64);
+
+        /**
+         * Items larger than this size are not cached.
+         */
+        private DataSize maxItemSize = DataSize.ofMegabytes(1);
+
+        /**
+         * Time after which a cached item is revalidated against the storage by its ETag.
+         */
+        private Duration timeToLive = Duration.ofSeconds(30);
+    }
+
+    @Getter
+    @Setter
+    public static class DiskCache {
+        /**
+         * Whether the contents of items read with getItem are cached in local files that survive restarts.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Directory of the cached files, should not be shared with other storage clients.
+         */
+        private Path directory = Path.of(System.getProperty("java.io.tmpdir"), "s3-library-cache");
+
+        /**
+         * Maximum total size of all cached files, the least recently used files are deleted first.
+         */
+        private DataSize maxSize = DataSize.ofGigabytes(10);
+
+        /**
+         * Items larger than this size are not cached.
+         */
+        private DataSize maxItemSize = DataSize.ofGigabytes(1);
+    }
+
+    @Getter
+    @Setter
+    public static class ListingCache {
+        /**
+         * Whether the results of listItems are cached per scope and updated by writes of this client.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Time after which a cached listing is fetched from the storage again.
+         */
+        private Duration timeToLive = Duration.ofSeconds(5);
+
+        /**
+         * Maximum number of cached scopes, the least recently used scopes are evicted first.
+         */
+        private int maxScopes = 1000;
+    }
+
+    @Getter
+    @Setter
+    public static class Filesystem {
+        /**
+         * Directory below which the file system backend stores the buckets.
+         */
+        private Path rootPath = Path.of(System.getProperty("java.io.tmpdir"), "s3-library");
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ *  Copyright 2024 Dataport. All rights reserved. Developed as part of the MERLOT project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package eu.merloteducation.s3library.service;
+
+import eu.merloteducation.s3library.backend.StorageObject;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Input stream over the content of a stored item that is bound to the lifecycle of the underlying storage object.
+ * Closing the stream after all content has been read releases the connection back to the pool, closing it
+ * before the end of the content aborts the connection instead of draining the remaining bytes. Compressed items
+ * are decompressed while they are read.
+ */
+public class StorageItemInputStream extends FilterInputStream {
+    private final StorageObject object;
+
+    private final long contentLength;
+
+    private long position;
+
+    private boolean endOfStream;
+
+    private boolean closed;
+
+    StorageItemInputStream(StorageObject object) {
+
+        this(object, object.getContent(), object.getContentLength());
+    }
+
+    StorageItemInputStream(StorageObject object, InputStream content, long contentLength) {
+
+        super(content);
+        this.object = object;
+        this.contentLength = contentLength;
+    }
+
+    /**
+     * Get the content length of the item as it is read from this stream, which is the uncompressed size for
+     * compressed items.
+     *
+     * @return content length in bytes
+     */
+    public long getContentLength() {
+
+        return contentLength;
+    }
+
+    @Override
+    public int read() throws IOException {
+
+        int value = super.read();
+        if (value == -1) {
+            endOfStream = true;
+        } else {
+            advance(1);
+        }
+        return value;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+
+        int count = super.read(b, off, len);
+        if (count == -1) {
+            endOfStream = true;
+        } else {
+            advance(count);
+        }
+        return count;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+
+        long count = super.skip(n);
+        advance(count);
+        return count;
+    }
+
+    private void advance(long count) {
+
+        // bounded reads such as readNBytes stop at the content length without ever seeing the end of the stream
+        position += count;
+        if (contentLength >= 0 && position >= contentLength) {
+            endOfStream = true;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (endOfStream) {
+            object.close();
+        } else {
+            object.abort();
+        }
+        if (in != object.getContent()) {
+            // releases the resources of the decompressor, the connection is already closed
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ *  Copyright 2024 Dataport. All rights reserved. Developed as part of the MERLOT project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package eu.merloteducation.s3library.service;
+
+/**
+ * Wraps a {@link StorageClientException} where checked exceptions cannot be thrown, e.g. while consuming a lazily
+ * loaded stream of items.
+ */
+public class UncheckedStorageClientException extends RuntimeException {
+    public UncheckedStorageClientException(StorageClientException cause) {
+
+        super(cause.getMessage(), cause);
+    }
+
+    @Override
+    public synchronized StorageClientException getCause() {
+
+        return (StorageClientException) super.getCause();
+    }
+}
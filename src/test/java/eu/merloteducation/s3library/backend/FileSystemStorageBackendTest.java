@@ -0,0 +1,213 @@
+/*
+ *  Copyright 2024 Dataport. All rights reserved. Developed as part of the MERLOT project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package eu.merloteducation.s3library.backend;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileSystemStorageBackendTest {
+    @TempDir
+    Path rootPath;
+
+    private FileSystemStorageBackend backend;
+
+    @BeforeEach
+    public void setup() {
+
+        backend = new FileSystemStorageBackend(rootPath, "merlot-storage-test");
+    }
+
+    @Test
+    void testPutAndGetObject() throws IOException {
+
+        String eTag = put("test/item", "Hello World!");
+        backend.putObject("test/typed", new ByteArrayInputStream(new byte[0]), 0,
+            new ObjectWriteOptions("text/plain", Map.of("origin", "test")));
+
+        assertEquals("Hello World!", read("test/item", ObjectReadOptions.none()));
+        assertEquals(eTag, backend.headObject("test/item").eTag());
+        assertEquals(12, backend.headObject("test/item").size());
+        assertEquals("text/plain", backend.headObject("test/typed").contentType());
+        assertEquals(Map.of("origin", "test"), backend.headObject("test/typed").userMetadata());
+        assertTrue(backend.objectExists("test/item"));
+        assertFalse(backend.objectExists("test/missing"));
+    }
+
+    @Test
+    void testGetMissingObject() {
+
+        StorageBackendException exception = assertThrows(StorageBackendException.class,
+            () -> backend.getObject("test/missing", ObjectReadOptions.none()));
+        assertEquals(404, exception.getStatusCode());
+    }
+
+    @Test
+    void testGetObjectRange() throws IOException {
+
+        String eTag = put("test/item", "Hello World!");
+
+        assertEquals("World", read("test/item", ObjectReadOptions.none().withRange(new ByteRange(6, 10))));
+        assertEquals("World!", read("test/item", ObjectReadOptions.none().withRange(new ByteRange(6, 100))));
+        assertEquals("Hello", read("test/item", ObjectReadOptions.none().withRange(new ByteRange(0, 4))
+            .withIfMatch(eTag)));
+        assertEquals(412, assertThrows(StorageBackendException.class,
+            () -> backend.getObject("test/item", ObjectReadOptions.none().withIfMatch("other"))).getStatusCode());
+        assertEquals(416, assertThrows(StorageBackendException.class,
+            () -> backend.getObject("test/item", ObjectReadOptions.none().withRange(new ByteRange(12, 20))))
+            .getStatusCode());
+    }
+
+    @Test
+    void testListObjects() {
+
+        for (int i = 0; i < 5; i++) {
+            put("test/item-" + i, "item");
+        }
+        put("test/nested/item", "item");
+        put("other/item", "item");
+
+        ObjectListingPage first = backend.listObjects("test/item-", null, null, 3);
+        assertEquals(List.of("test/item-0", "test/item-1", "test/item-2"),
+            first.objects().stream().map(StorageObjectInfo::key).toList());
+        assertTrue(first.isTruncated());
+
+        ObjectListingPage second = backend.listObjects("test/item-", null, first.nextContinuationToken(), 3);
+        assertEquals(List.of("test/item-3", "test/item-4"),
+            second.objects().stream().map(StorageObjectInfo::key).toList());
+        assertFalse(second.isTruncated());
+
+        assertEquals(6, backend.listObjects("test/", null, null, 1000).objects().size());
+        assertEquals(List.of("test/nested/item"), backend.listObjects("test/", "test/item-4", null, 1000).objects()
+            .stream().map(StorageObjectInfo::key).toList());
+    }
+
+    @Test
+    void testMultipartUpload() throws IOException {
+
+        String uploadId = backend.createMultipartUpload("test/item", ObjectWriteOptions.none());
+        String second = backend.uploadPart("test/item", uploadId, 2, stream("World!"), 6);
+        String first = backend.uploadPart("test/item", uploadId, 1, stream("Hello "), 6);
+        backend.completeMultipartUpload("test/item", uploadId, List.of(first, second));
+
+        assertEquals("Hello World!", read("test/item", ObjectReadOptions.none()));
+        assertTrue(backend.headObject("test/item").eTag().endsWith("-2"));
+    }
+
+    @Test
+    void testStaleMetadata() throws IOException {
+
+        // content replaced without its metadata, as if writing the metadata failed, is not served with the old ETag
+        String eTag = put("test/item", "Hello World!");
+        String changedETag = put("test/other", "Hello Changed!");
+        Files.writeString(rootPath.resolve("merlot-storage-test/objects/test/item"), "Hello Changed!");
+
+        assertEquals(changedETag, backend.headObject("test/item").eTag());
+        assertEquals(412, assertThrows(StorageBackendException.class,
+            () -> read("test/item", ObjectReadOptions.none().withIfMatch(eTag))).getStatusCode());
+    }
+
+    @Test
+    void testCopyObject() throws IOException {
+
+        String eTag = put("test/item", "Hello World!");
+        backend.putObject("test/typed", stream("Hello"), 5,
+            new ObjectWriteOptions("text/plain", Map.of("origin", "test")));
+
+        backend.copyObject("test/item", "copy/item", eTag);
+        backend.copyObject("test/typed", "copy/typed", null);
+        assertEquals("Hello World!", read("copy/item", ObjectReadOptions.none()));
+        assertEquals("text/plain", backend.headObject("copy/typed").contentType());
+        assertEquals(Map.of("origin", "test"), backend.headObject("copy/typed").userMetadata());
+        assertEquals(412, assertThrows(StorageBackendException.class,
+            () -> backend.copyObject("test/item", "copy/other", "other")).getStatusCode());
+
+        String uploadId = backend.createMultipartUpload("copy/parts", ObjectWriteOptions.none());
+        String first = backend.copyPart("copy/parts", uploadId, 1, "test/item", new ByteRange(6, 11), eTag);
+        String second = backend.copyPart("copy/parts", uploadId, 2, "test/item", new ByteRange(5, 5), null);
+        backend.completeMultipartUpload("copy/parts", uploadId, List.of(first, second));
+        assertEquals("World! ", read("copy/parts", ObjectReadOptions.none()));
+    }
+
+    @Test
+    void testAbortMultipartUpload() {
+
+        String uploadId = backend.createMultipartUpload("test/item", ObjectWriteOptions.none());
+        backend.uploadPart("test/item", uploadId, 1, stream("Hello"), 5);
+        backend.abortMultipartUpload("test/item", uploadId);
+
+        assertFalse(backend.objectExists("test/item"));
+        assertEquals(404, assertThrows(StorageBackendException.class,
+            () -> backend.uploadPart("test/item", uploadId, 2, stream("World"), 5)).getStatusCode());
+    }
+
+    @Test
+    void testDeleteObjects() {
+
+        put("test/item-1", "item");
+        put("test/item-2", "item");
+
+        assertTrue(backend.deleteObjects(List.of("test/item-1", "test/item-2", "test/missing")).isEmpty());
+        assertFalse(backend.objectExists("test/item-1"));
+        assertFalse(backend.objectExists("test/item-2"));
+    }
+
+    @Test
+    void testInvalidKey() {
+
+        assertEquals(400, assertThrows(StorageBackendException.class,
+            () -> backend.putObject("test/../item", stream("item"), 4, ObjectWriteOptions.none())).getStatusCode());
+    }
+
+    @Test
+    void testConflictingKeys() {
+
+        // a key cannot be both an object and a prefix, which is a permanent error that is not retried
+        put("test/item", "Hello World!");
+        assertEquals(409, assertThrows(StorageBackendException.class, () -> put("test/item/child", "Hello"))
+            .getStatusCode());
+        assertEquals(409, assertThrows(StorageBackendException.class, () -> put("test", "Hello")).getStatusCode());
+    }
+
+    private String put(String key, String content) {
+
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        return backend.putObject(key, new ByteArrayInputStream(bytes), bytes.length, ObjectWriteOptions.none());
+    }
+
+    private String read(String key, ObjectReadOptions options) throws IOException {
+
+        try (StorageObject object = backend.getObject(key, options)) {
+            return new String(object.getContent().readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private ByteArrayInputStream stream(String content) {
+
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ *  Copyright 2024 Dataport. All rights reserved. Developed as part of the MERLOT project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package eu.merloteducation.s3library.metrics;
+
+import eu.merloteducation.s3library.service.StorageClient;
+import eu.merloteducation.s3library.service.StorageClientCreationException;
+import eu.merloteducation.s3library.service.StorageClientException;
+import eu.merloteducation.s3library.service.StorageClientMetrics;
+import eu.merloteducation.s3library.service.StorageClientProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MicrometerStorageClientMetricsTest {
+    @TempDir
+    Path rootPath;
+
+    private MeterRegistry registry;
+
+    private StorageClient storageClient;
+
+    @BeforeEach
+    public void setup() throws StorageClientCreationException {
+
+        StorageClientProperties properties = new StorageClientProperties();
+        properties.setBackend(StorageClientProperties.Backend.FILESYSTEM);
+        properties.getFilesystem().setRootPath(rootPath);
+        storageClient = new StorageClient("accessKey", "secret", "example.com", "de", "S3SignerType",
+            "merlot-storage-test", "test", properties);
+        registry = new SimpleMeterRegistry();
+        storageClient.setMetrics(new MicrometerStorageClientMetrics(registry));
+    }
+
+    @AfterEach
+    public void tearDown() {
+
+        storageClient.close();
+    }
+
+    @Test
+    void testOperationsAreTimed() throws IOException, StorageClientException {
+
+        storageClient.pushItem("test:01", "item", "Hello World!".getBytes());
+        storageClient.getItem("test:01", "item");
+        storageClient.getItem("test:01", "item");
+        storageClient.listItems("test:01");
+
+        assertEquals(1, registry.get("s3library.operations").tags("operation", "pushItem", "outcome", "success")
+            .timer().count());
+        assertEquals(2, registry.get("s3library.operations").tags("operation", "getItem", "outcome", "success")
+            .timer().count());
+        assertEquals(1, registry.get("s3library.operations").tags("operation", "listItems").timer().count());
+        assertEquals(0, registry.get("s3library.operations.active").tags("operation", "getItem").gauge().value());
+    }
+
+    @Test
+    void testTransferredBytesAreRecorded() throws IOException, StorageClientException {
+
+        storageClient.pushItem("test:01", "item", "Hello World!".getBytes());
+        storageClient.getItem("test:01", "item");
+        storageClient.getItem("test:01", "item");
+
+        assertEquals(12, registry.get("s3library.transfer").tags("direction", "upload").summary().totalAmount());
+        assertEquals(24, registry.get("s3library.transfer").tags("direction", "download").summary().totalAmount());
+    }
+
+    @Test
+    void testErrorsAreCounted() {
+
+        assertThrows(StorageClientException.class, () -> storageClient.getItem("test:01", "missing"));
+        assertThrows(StorageClientException.class, () -> storageClient.deleteItem("test:01", "missing"));
+
+        assertEquals(1, registry.get("s3library.operations.errors")
+            .tags("operation", "getItem", "exception", "StorageClientException").counter().count());
+        assertEquals(1, registry.get("s3library.operations").tags("operation", "deleteItem", "outcome", "error")
+            .timer().count());
+    }
+
+    @Test
+    void testConnectionPoolIsBoundIfAvailable() throws StorageClientCreationException {
+
+        // the file system backend has no connection pool
+        assertNull(registry.find("s3library.connections.leased").gauge());
+
+        StorageClientProperties properties = new StorageClientProperties();
+        properties.getRetry().setEnabled(false);
+        try (StorageClient client = new StorageClient("accessKey", "secret", "example.com", "de", "S3SignerType",
+            "merlot-storage-test", "test", properties)) {
+            // requests only carry a metric collector if the measurements are recorded
+            Object backend = ReflectionTestUtils.getField(client, "backend");
+            client.setMetrics(StorageClientMetrics.NONE);
+            assertNull(ReflectionTestUtils.getField(backend, "metricCollector"));
+
+            client.setMetrics(new MicrometerStorageClientMetrics(registry));
+            assertNotNull(ReflectionTestUtils.getField(backend, "metricCollector"));
+            assertEquals(0, registry.get("s3library.connections.leased").gauge().value());
+            assertEquals(0, registry.get("s3library.connections.pending").gauge().value());
+        }
+
+        properties.setBackend(StorageClientProperties.Backend.AWS_V2);
+        try (StorageClient client = new StorageClient("accessKey", "secret", "example.com", "de", "S3SignerType",
+            "merlot-storage-test", "test", properties)) {
+            Object backend = ReflectionTestUtils.getField(client, "backend");
+            client.setMetrics(StorageClientMetrics.NONE);
+            assertNull(ReflectionTestUtils.getField(backend, "metricPublisher"));
+
+            client.setMetrics(new MicrometerStorageClientMetrics(new SimpleMeterRegistry()));
+            assertNotNull(ReflectionTestUtils.getField(backend, "metricPublisher"));
+        }
+    }
+}
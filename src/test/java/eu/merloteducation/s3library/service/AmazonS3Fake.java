@@ -1,5 +1,6 @@
 package eu.merloteducation.s3library.service;
 
+import com.amazonaws.AbortedException;
 import com.amazonaws.AmazonServiceException;
 import com.amazonaws.AmazonWebServiceRequest;
 import com.amazonaws.HttpMethod;
@@ -8,6 +9,7 @@ import com.amazonaws.regions.Region;
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.S3ClientOptions;
 import com.amazonaws.services.s3.S3ResponseMetadata;
+import com.amazonaws.services.s3.Headers;
 import com.amazonaws.services.s3.model.*;
 import com.amazonaws.services.s3.model.analytics.AnalyticsConfiguration;
 import com.amazonaws.services.s3.model.intelligenttiering.IntelligentTieringConfiguration;
@@ -15,16 +17,302 @@ import com.amazonaws.services.s3.model.inventory.InventoryConfiguration;
 import com.amazonaws.services.s3.model.metrics.MetricsConfiguration;
 import com.amazonaws.services.s3.model.ownership.OwnershipControls;
 import com.amazonaws.services.s3.waiters.AmazonS3Waiters;
+import com.amazonaws.util.BinaryUtils;
+import com.amazonaws.util.Md5Utils;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.SocketException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.*;
-
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Thread-safe in-memory stand-in for a single S3 bucket. It supports paginated listings with prefix and delimiter,
+ * ranged and conditional reads, copies, multipart uploads and batch deletes, and can be configured with a latency
+ * per operation, a throughput limit and injected failures to test the behaviour of clients under load. The fake is
+ * published with the test-jar of the library, so it can also be used by the tests of dependent services.
+ */
 public class AmazonS3Fake implements AmazonS3 {
-    private final Map<String, byte[]> bucketObjects = new HashMap<>();
+    private final Map<String, StoredObject> bucketObjects = new ConcurrentHashMap<>();
+
+    private final Map<String, PendingMultipartUpload> multipartUploads = new ConcurrentHashMap<>();
+
+    private final Map<Integer, AtomicInteger> failingParts = new ConcurrentHashMap<>();
+
+    private final AtomicInteger uploadPartCount = new AtomicInteger();
+
+    private final AtomicInteger copyPartCount = new AtomicInteger();
+
+    private final AtomicInteger listObjectsV2Count = new AtomicInteger();
+
+    private final AtomicInteger deleteObjectsCount = new AtomicInteger();
+
+    private final AtomicInteger getObjectCount = new AtomicInteger();
+
+    private final AtomicInteger releasedObjectCount = new AtomicInteger();
+
+    private final AtomicInteger abortedObjectCount = new AtomicInteger();
+
+    private final Set<String> failingDeleteKeys = ConcurrentHashMap.newKeySet();
+
+    private final Map<Operation, Duration> latencies = new ConcurrentHashMap<>();
+
+    private final Map<Operation, InjectedFailure> injectedFailures = new ConcurrentHashMap<>();
+
+    private final Map<Operation, InjectedStall> injectedStalls = new ConcurrentHashMap<>();
+
+    private final Object throughputLock = new Object();
+
+    private volatile long throughputLimit;
+
+    private long nextTransferEnd;
+
+    /**
+     * Requests of the fake for which latency and failures can be configured.
+     */
+    public enum Operation {
+        GET_OBJECT, HEAD_OBJECT, PUT_OBJECT, COPY_OBJECT, LIST_OBJECTS, DELETE_OBJECT, DELETE_OBJECTS,
+        CREATE_MULTIPART_UPLOAD, UPLOAD_PART, COPY_PART, COMPLETE_MULTIPART_UPLOAD, ABORT_MULTIPART_UPLOAD
+    }
+
+    /**
+     * Delay every request of the given operation by the given latency before it is processed.
+     *
+     * @param operation operation to delay
+     * @param latency latency of every request, zero for no delay
+     */
+    public void setLatency(Operation operation, Duration latency) {
+        latencies.put(operation, latency);
+    }
+
+    /**
+     * Let the next requests of the given operation stall for the given time in addition to the configured latency.
+     *
+     * @param operation operation to stall
+     * @param times number of stalling requests
+     * @param stall additional delay of each stalling request
+     */
+    public void stallOperation(Operation operation, int times, Duration stall) {
+        injectedStalls.put(operation, new InjectedStall(new AtomicInteger(times), stall));
+    }
+
+    /**
+     * Limit the combined throughput of all object contents that are read and written. Concurrent transfers share
+     * the limit, so the fake behaves like a single saturated link.
+     *
+     * @param bytesPerSecond maximum number of bytes per second, zero for no limit
+     */
+    public void setThroughputLimit(long bytesPerSecond) {
+        throughputLimit = bytesPerSecond;
+    }
+
+    /**
+     * Let the next requests of the given operation fail. A status code of zero simulates a failure of the
+     * connection instead of an error response of the storage.
+     *
+     * @param operation operation to fail
+     * @param times number of failing requests
+     * @param statusCode HTTP status code of the error response
+     * @param errorCode S3 error code of the error response
+     */
+    public void failOperation(Operation operation, int times, int statusCode, String errorCode) {
+        injectedFailures.put(operation, new InjectedFailure(new AtomicInteger(times), 0, statusCode, errorCode));
+    }
+
+    /**
+     * Let requests of the given operation fail randomly with the given probability. A status code of zero
+     * simulates a failure of the connection instead of an error response of the storage.
+     *
+     * @param operation operation to fail
+     * @param rate probability of a failure between zero and one
+     * @param statusCode HTTP status code of the error response
+     * @param errorCode S3 error code of the error response
+     */
+    public void setFailureRate(Operation operation, double rate, int statusCode, String errorCode) {
+        injectedFailures.put(operation, new InjectedFailure(new AtomicInteger(), rate, statusCode, errorCode));
+    }
+
+    /**
+     * Remove all configured latencies, throughput limits and injected failures.
+     */
+    public void resetFaults() {
+        latencies.clear();
+        injectedFailures.clear();
+        injectedStalls.clear();
+        failingParts.clear();
+        failingDeleteKeys.clear();
+        throughputLimit = 0;
+    }
+
+    /**
+     * Let the upload of the part with the given number fail the given number of times.
+     *
+     * @param partNumber number of the part
+     * @param times number of failures
+     */
+    public void failUploadPart(int partNumber, int times) {
+        failingParts.put(partNumber, new AtomicInteger(times));
+    }
+
+    public int getUploadPartCount() {
+        return uploadPartCount.get();
+    }
+
+    public int getCopyPartCount() {
+        return copyPartCount.get();
+    }
+
+    public int getListObjectsV2Count() {
+        return listObjectsV2Count.get();
+    }
+
+    public int getDeleteObjectsCount() {
+        return deleteObjectsCount.get();
+    }
+
+    public int getGetObjectCount() {
+        return getObjectCount.get();
+    }
+
+    /**
+     * Get the number of object contents that were closed normally, which releases the connection back to the pool.
+     *
+     * @return number of released object contents
+     */
+    public int getReleasedObjectCount() {
+        return releasedObjectCount.get();
+    }
+
+    /**
+     * Get the number of object contents that were aborted, which drops the connection.
+     *
+     * @return number of aborted object contents
+     */
+    public int getAbortedObjectCount() {
+        return abortedObjectCount.get();
+    }
+
+    /**
+     * Let multi-object deletes report an error for the object with the given key.
+     *
+     * @param key key of the object
+     */
+    public void failDeleteKey(String key) {
+        failingDeleteKeys.add(key);
+    }
+
+    private class TrackingObjectInputStream extends S3ObjectInputStream {
+        private boolean done;
+
+        TrackingObjectInputStream(InputStream in) {
+            super(in, null);
+        }
+
+        @Override
+        public void abort() {
+            if (!done) {
+                done = true;
+                abortedObjectCount.incrementAndGet();
+            }
+            super.abort();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!done) {
+                done = true;
+                releasedObjectCount.incrementAndGet();
+            }
+            super.close();
+        }
+    }
+
+    private record PendingMultipartUpload(String key, ObjectMetadata metadata, Map<Integer, byte[]> parts) {
+    }
+
+    private record StoredObject(byte[] content, ObjectMetadata metadata) {
+    }
+
+    private record InjectedFailure(AtomicInteger remaining, double rate, int statusCode, String errorCode) {
+        boolean applies() {
+            return remaining.getAndUpdate(count -> Math.max(0, count - 1)) > 0
+                || rate > 0 && ThreadLocalRandom.current().nextDouble() < rate;
+        }
+    }
+
+    private record InjectedStall(AtomicInteger remaining, Duration stall) {
+    }
+
+    private ObjectMetadata store(String key, byte[] content, ObjectMetadata objectMetadata, String eTag) {
+        ObjectMetadata metadata = objectMetadata == null ? new ObjectMetadata() : objectMetadata.clone();
+        metadata.setContentLength(content.length);
+        metadata.setHeader(Headers.ETAG, eTag);
+        metadata.setLastModified(new Date());
+        bucketObjects.put(key, new StoredObject(content, metadata));
+        return metadata;
+    }
+
+    private void simulate(Operation operation) {
+        Duration latency = latencies.get(operation);
+        if (latency != null) {
+            sleep(latency.toNanos());
+        }
+        InjectedStall stall = injectedStalls.get(operation);
+        if (stall != null && stall.remaining().getAndUpdate(count -> Math.max(0, count - 1)) > 0) {
+            sleep(stall.stall().toNanos());
+        }
+        InjectedFailure failure = injectedFailures.get(operation);
+        if (failure != null && failure.applies()) {
+            if (failure.statusCode() == 0) {
+                throw new SdkClientException("Connection reset", new SocketException("Connection reset"));
+            }
+            throw createServiceException(failure.statusCode(), failure.errorCode(), "Injected failure.");
+        }
+    }
+
+    private void throttle(long bytes) {
+        long limit = throughputLimit;
+        if (limit <= 0 || bytes <= 0) {
+            return;
+        }
+        long transferEnd;
+        synchronized (throughputLock) {
+            transferEnd = Math.max(System.nanoTime(), nextTransferEnd) + (long) (bytes * 1e9 / limit);
+            nextTransferEnd = transferEnd;
+        }
+        sleep(transferEnd - System.nanoTime());
+    }
+
+    private static void sleep(long nanos) {
+        if (nanos <= 0) {
+            return;
+        }
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new AbortedException(exception);
+        }
+    }
+
+    private static AmazonS3Exception createServiceException(int statusCode, String errorCode, String message) {
+        AmazonS3Exception exception = new AmazonS3Exception(message);
+        exception.setStatusCode(statusCode);
+        exception.setErrorCode(errorCode);
+        exception.setErrorType(statusCode >= 500 ? AmazonServiceException.ErrorType.Service
+            : AmazonServiceException.ErrorType.Client);
+        return exception;
+    }
 
     @Override
     public void setEndpoint(String s) {
@@ -68,28 +356,80 @@ public class AmazonS3Fake implements AmazonS3 {
 
     @Override
     public ListObjectsV2Result listObjectsV2(String s) throws SdkClientException, AmazonServiceException {
-
-        ListObjectsV2Result result = new ListObjectsV2Result();
-        for (String objectKey: bucketObjects.keySet()) {
-            S3ObjectSummary summary = new S3ObjectSummary();
-            summary.setKey(objectKey);
-            result.getObjectSummaries().add(summary);
-        }
-
-        return result;
+        return listObjectsV2(s, "");
     }
 
     @Override
     public ListObjectsV2Result listObjectsV2(String s, String s1) throws SdkClientException, AmazonServiceException {
-        if (s.equals("dummy")) {
-            throw new SdkClientException("Access Denied");
-        }
-        return listObjectsV2(s);
+        return listObjectsV2(new ListObjectsV2Request().withBucketName(s).withPrefix(s1));
     }
 
     @Override
     public ListObjectsV2Result listObjectsV2(ListObjectsV2Request listObjectsV2Request) throws SdkClientException, AmazonServiceException {
-        return listObjectsV2("");
+        if (listObjectsV2Request.getBucketName().equals("dummy")) {
+            throw new SdkClientException("Access Denied");
+        }
+        simulate(Operation.LIST_OBJECTS);
+        listObjectsV2Count.incrementAndGet();
+
+        String prefix = listObjectsV2Request.getPrefix() == null ? "" : listObjectsV2Request.getPrefix();
+        String delimiter = listObjectsV2Request.getDelimiter() == null || listObjectsV2Request.getDelimiter().isEmpty()
+            ? null : listObjectsV2Request.getDelimiter();
+        String token = listObjectsV2Request.getContinuationToken();
+        String after = token != null ? token : listObjectsV2Request.getStartAfter();
+        int maxKeys = listObjectsV2Request.getMaxKeys() == null ? 1000 : listObjectsV2Request.getMaxKeys();
+
+        NavigableSet<String> keys = new TreeSet<>(bucketObjects.keySet());
+        keys = after != null && after.compareTo(prefix) >= 0 ? keys.tailSet(after, false) : keys.tailSet(prefix, true);
+
+        ListObjectsV2Result result = new ListObjectsV2Result();
+        result.setBucketName(listObjectsV2Request.getBucketName());
+        result.setPrefix(prefix);
+        result.setDelimiter(delimiter);
+        result.setMaxKeys(maxKeys);
+        result.setStartAfter(listObjectsV2Request.getStartAfter());
+        result.setContinuationToken(token);
+        String lastEntry = null;
+        int count = 0;
+        for (String objectKey : keys) {
+            if (!objectKey.startsWith(prefix)) {
+                break;
+            }
+            // a continuation token that ends with the delimiter is a common prefix that was already returned
+            if (token != null && delimiter != null && token.endsWith(delimiter) && objectKey.startsWith(token)) {
+                continue;
+            }
+            int delimiterIndex = delimiter == null ? -1 : objectKey.indexOf(delimiter, prefix.length());
+            String entry = delimiterIndex < 0 ? objectKey : objectKey.substring(0, delimiterIndex + delimiter.length());
+            if (delimiterIndex >= 0 && entry.equals(lastEntry)) {
+                continue;
+            }
+            StoredObject object = bucketObjects.get(objectKey);
+            if (object == null) {
+                continue;
+            }
+            if (count == maxKeys) {
+                result.setTruncated(true);
+                result.setNextContinuationToken(lastEntry);
+                break;
+            }
+            if (delimiterIndex >= 0) {
+                result.getCommonPrefixes().add(entry);
+            } else {
+                S3ObjectSummary summary = new S3ObjectSummary();
+                summary.setBucketName(listObjectsV2Request.getBucketName());
+                summary.setKey(objectKey);
+                summary.setSize(object.content().length);
+                summary.setETag(object.metadata().getETag());
+                summary.setLastModified(object.metadata().getLastModified());
+                summary.setStorageClass(StorageClass.Standard.toString());
+                result.getObjectSummaries().add(summary);
+            }
+            lastEntry = entry;
+            count++;
+        }
+        result.setKeyCount(count);
+        return result;
     }
 
     @Override
@@ -259,12 +599,22 @@ public class AmazonS3Fake implements AmazonS3 {
 
     @Override
     public ObjectMetadata getObjectMetadata(String s, String s1) throws SdkClientException, AmazonServiceException {
-        return null;
+        if (s.equals("dummy")) {
+            throw new SdkClientException("Forbidden");
+        }
+        simulate(Operation.HEAD_OBJECT);
+        StoredObject object = bucketObjects.get(s1);
+        if (object != null) {
+            return object.metadata().clone();
+        }
+        AmazonS3Exception exception = new AmazonS3Exception("Not Found");
+        exception.setStatusCode(404);
+        throw exception;
     }
 
     @Override
     public ObjectMetadata getObjectMetadata(GetObjectMetadataRequest getObjectMetadataRequest) throws SdkClientException, AmazonServiceException {
-        return null;
+        return getObjectMetadata(getObjectMetadataRequest.getBucketName(), getObjectMetadataRequest.getKey());
     }
 
     @Override
@@ -277,12 +627,59 @@ public class AmazonS3Fake implements AmazonS3 {
         if (getObjectRequest.getBucketName().equals("dummy")) {
             throw new SdkClientException("Access Denied");
         }
-        if (bucketObjects.containsKey(getObjectRequest.getKey())) {
-            S3Object s3Object = new S3Object();
-            s3Object.setObjectContent(new ByteArrayInputStream(bucketObjects.get(getObjectRequest.getKey())));
-            return s3Object;
+        // requests are counted when they arrive, also if they stall or fail
+        getObjectCount.incrementAndGet();
+        simulate(Operation.GET_OBJECT);
+        StoredObject object = bucketObjects.get(getObjectRequest.getKey());
+        if (object == null) {
+            throw createServiceException(404, "NoSuchKey", "The specified key does not exist.");
+        }
+
+        byte[] content = object.content();
+        ObjectMetadata metadata = object.metadata().clone();
+        // the SDK returns null if a constraint is not met
+        if (!getObjectRequest.getMatchingETagConstraints().isEmpty()
+            && !getObjectRequest.getMatchingETagConstraints().contains(metadata.getETag())) {
+            return null;
+        }
+        if (getObjectRequest.getNonmatchingETagConstraints().contains(metadata.getETag())) {
+            return null;
+        }
+        if (getObjectRequest.getModifiedSinceConstraint() != null
+            && !metadata.getLastModified().after(getObjectRequest.getModifiedSinceConstraint())) {
+            return null;
+        }
+        if (getObjectRequest.getUnmodifiedSinceConstraint() != null
+            && metadata.getLastModified().after(getObjectRequest.getUnmodifiedSinceConstraint())) {
+            return null;
         }
-        throw new SdkClientException("The specified key does not exist");
+
+        long[] range = getObjectRequest.getRange();
+        String rangeHeader = getObjectRequest.getCustomRequestHeaders() == null ? null
+            : getObjectRequest.getCustomRequestHeaders().get(Headers.RANGE);
+        if (range == null && rangeHeader != null && rangeHeader.startsWith("bytes=-")) {
+            long suffixLength = Long.parseLong(rangeHeader.substring("bytes=-".length()));
+            range = new long[] { Math.max(0, content.length - suffixLength), content.length - 1L };
+        }
+        if (range != null) {
+            if (range[0] >= content.length) {
+                throw createServiceException(416, "InvalidRange", "The requested range is not satisfiable.");
+            }
+            int start = (int) range[0];
+            int end = (int) Math.min(range[1], content.length - 1L);
+            metadata.setHeader(Headers.CONTENT_RANGE,
+                String.format("bytes %d-%d/%d", start, end, content.length));
+            content = Arrays.copyOfRange(content, start, end + 1);
+            metadata.setContentLength(content.length);
+        }
+        throttle(content.length);
+
+        S3Object s3Object = new S3Object();
+        s3Object.setBucketName(getObjectRequest.getBucketName());
+        s3Object.setKey(getObjectRequest.getKey());
+        s3Object.setObjectMetadata(metadata);
+        s3Object.setObjectContent(new TrackingObjectInputStream(new ByteArrayInputStream(content)));
+        return s3Object;
     }
 
     @Override
@@ -322,12 +719,21 @@ public class AmazonS3Fake implements AmazonS3 {
 
     @Override
     public PutObjectResult putObject(PutObjectRequest putObjectRequest) throws SdkClientException, AmazonServiceException {
-        return new PutObjectResult();
+        if (putObjectRequest.getFile() != null) {
+            try (InputStream inputStream = new FileInputStream(putObjectRequest.getFile())) {
+                return putObject(putObjectRequest.getBucketName(), putObjectRequest.getKey(), inputStream,
+                    putObjectRequest.getMetadata());
+            } catch (IOException exception) {
+                throw new SdkClientException(exception.getMessage(), exception);
+            }
+        }
+        return putObject(putObjectRequest.getBucketName(), putObjectRequest.getKey(),
+            putObjectRequest.getInputStream(), putObjectRequest.getMetadata());
     }
 
     @Override
     public PutObjectResult putObject(String s, String s1, File file) throws SdkClientException, AmazonServiceException {
-        return new PutObjectResult();
+        return putObject(new PutObjectRequest(s, s1, file));
     }
 
     @Override
@@ -335,47 +741,147 @@ public class AmazonS3Fake implements AmazonS3 {
         if (s.equals("dummy")) {
             throw new SdkClientException("Access Denied");
         }
+        simulate(Operation.PUT_OBJECT);
 
+        byte[] content;
         try {
-            bucketObjects.put(s1, inputStream.readAllBytes());
-        } catch (IOException ignored) {
+            content = inputStream.readAllBytes();
+        } catch (IOException exception) {
+            throw new SdkClientException(exception.getMessage(), exception);
         }
-        return new PutObjectResult();
+        throttle(content.length);
+        ObjectMetadata metadata = store(s1, content, objectMetadata,
+            BinaryUtils.toHex(Md5Utils.computeMD5Hash(content)));
+
+        PutObjectResult result = new PutObjectResult();
+        result.setETag(metadata.getETag());
+        result.setMetadata(metadata.clone());
+        return result;
     }
 
     @Override
     public PutObjectResult putObject(String s, String s1, String s2) throws AmazonServiceException, SdkClientException {
-        return new PutObjectResult();
+        byte[] content = s2.getBytes(StandardCharsets.UTF_8);
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentType("text/plain");
+        return putObject(s, s1, new ByteArrayInputStream(content), metadata);
     }
 
     @Override
     public CopyObjectResult copyObject(String s, String s1, String s2, String s3) throws SdkClientException, AmazonServiceException {
-        return null;
+        return copyObject(new CopyObjectRequest(s, s1, s2, s3));
     }
 
     @Override
     public CopyObjectResult copyObject(CopyObjectRequest copyObjectRequest) throws SdkClientException, AmazonServiceException {
-        return null;
+        if (copyObjectRequest.getDestinationBucketName().equals("dummy")) {
+            throw new SdkClientException("Access Denied");
+        }
+        simulate(Operation.COPY_OBJECT);
+        StoredObject source = bucketObjects.get(copyObjectRequest.getSourceKey());
+        if (source == null) {
+            throw createServiceException(404, "NoSuchKey", "The specified key does not exist.");
+        }
+        if (!copyObjectRequest.getMatchingETagConstraints().isEmpty()
+            && !copyObjectRequest.getMatchingETagConstraints().contains(source.metadata().getETag())) {
+            throw createServiceException(412, "PreconditionFailed",
+                "At least one of the pre-conditions you specified did not hold.");
+        }
+
+        ObjectMetadata metadata = copyObjectRequest.getNewObjectMetadata() != null
+            ? copyObjectRequest.getNewObjectMetadata() : source.metadata();
+        ObjectMetadata copy = store(copyObjectRequest.getDestinationKey(), source.content(), metadata,
+            source.metadata().getETag());
+
+        CopyObjectResult result = new CopyObjectResult();
+        result.setETag(copy.getETag());
+        result.setLastModifiedDate(copy.getLastModified());
+        return result;
     }
 
     @Override
     public CopyPartResult copyPart(CopyPartRequest copyPartRequest) throws SdkClientException, AmazonServiceException {
-        return null;
+        copyPartCount.incrementAndGet();
+        simulate(Operation.COPY_PART);
+        PendingMultipartUpload upload = multipartUploads.get(copyPartRequest.getUploadId());
+        if (upload == null) {
+            throw createServiceException(404, "NoSuchUpload", "The specified upload does not exist.");
+        }
+        StoredObject source = bucketObjects.get(copyPartRequest.getSourceKey());
+        if (source == null) {
+            throw createServiceException(404, "NoSuchKey", "The specified key does not exist.");
+        }
+        if (!copyPartRequest.getMatchingETagConstraints().isEmpty()
+            && !copyPartRequest.getMatchingETagConstraints().contains(source.metadata().getETag())) {
+            throw createServiceException(412, "PreconditionFailed",
+                "At least one of the pre-conditions you specified did not hold.");
+        }
+
+        byte[] content = source.content();
+        if (copyPartRequest.getFirstByte() != null) {
+            long firstByte = copyPartRequest.getFirstByte();
+            long lastByte = copyPartRequest.getLastByte();
+            if (firstByte > lastByte || lastByte >= content.length) {
+                throw createServiceException(416, "InvalidRange", "The requested range is not satisfiable.");
+            }
+            content = Arrays.copyOfRange(content, (int) firstByte, (int) lastByte + 1);
+        }
+        upload.parts().put(copyPartRequest.getPartNumber(), content);
+
+        CopyPartResult result = new CopyPartResult();
+        result.setPartNumber(copyPartRequest.getPartNumber());
+        result.setETag(Integer.toHexString(Arrays.hashCode(content)));
+        return result;
     }
 
     @Override
     public void deleteObject(String s, String s1) throws SdkClientException, AmazonServiceException {
+        if (s.equals("dummy")) {
+            throw new SdkClientException("Access Denied");
+        }
+        simulate(Operation.DELETE_OBJECT);
         bucketObjects.remove(s1);
     }
 
     @Override
     public void deleteObject(DeleteObjectRequest deleteObjectRequest) throws SdkClientException, AmazonServiceException {
-
+        deleteObject(deleteObjectRequest.getBucketName(), deleteObjectRequest.getKey());
     }
 
     @Override
     public DeleteObjectsResult deleteObjects(DeleteObjectsRequest deleteObjectsRequest) throws SdkClientException, AmazonServiceException {
-        return null;
+        if (deleteObjectsRequest.getBucketName().equals("dummy")) {
+            throw new SdkClientException("Access Denied");
+        }
+        if (deleteObjectsRequest.getKeys().size() > 1000) {
+            throw new AmazonS3Exception("The XML you provided was not well-formed");
+        }
+        simulate(Operation.DELETE_OBJECTS);
+        deleteObjectsCount.incrementAndGet();
+
+        List<DeleteObjectsResult.DeletedObject> deletedObjects = new ArrayList<>();
+        List<MultiObjectDeleteException.DeleteError> errors = new ArrayList<>();
+        for (DeleteObjectsRequest.KeyVersion keyVersion : deleteObjectsRequest.getKeys()) {
+            if (failingDeleteKeys.contains(keyVersion.getKey())) {
+                MultiObjectDeleteException.DeleteError error = new MultiObjectDeleteException.DeleteError();
+                error.setKey(keyVersion.getKey());
+                error.setCode("AccessDenied");
+                error.setMessage("Access Denied");
+                errors.add(error);
+                continue;
+            }
+            bucketObjects.remove(keyVersion.getKey());
+            if (!deleteObjectsRequest.getQuiet()) {
+                DeleteObjectsResult.DeletedObject deletedObject = new DeleteObjectsResult.DeletedObject();
+                deletedObject.setKey(keyVersion.getKey());
+                deletedObjects.add(deletedObject);
+            }
+        }
+
+        if (!errors.isEmpty()) {
+            throw new MultiObjectDeleteException(errors, deletedObjects);
+        }
+        return new DeleteObjectsResult(deletedObjects);
     }
 
     @Override
@@ -605,32 +1111,119 @@ public class AmazonS3Fake implements AmazonS3 {
 
     @Override
     public InitiateMultipartUploadResult initiateMultipartUpload(InitiateMultipartUploadRequest initiateMultipartUploadRequest) throws SdkClientException, AmazonServiceException {
-        return null;
+        if (initiateMultipartUploadRequest.getBucketName().equals("dummy")) {
+            throw new SdkClientException("Access Denied");
+        }
+        simulate(Operation.CREATE_MULTIPART_UPLOAD);
+
+        String uploadId = UUID.randomUUID().toString();
+        ObjectMetadata metadata = initiateMultipartUploadRequest.getObjectMetadata();
+        multipartUploads.put(uploadId, new PendingMultipartUpload(initiateMultipartUploadRequest.getKey(),
+            metadata == null ? new ObjectMetadata() : metadata.clone(), new ConcurrentHashMap<>()));
+
+        InitiateMultipartUploadResult result = new InitiateMultipartUploadResult();
+        result.setBucketName(initiateMultipartUploadRequest.getBucketName());
+        result.setKey(initiateMultipartUploadRequest.getKey());
+        result.setUploadId(uploadId);
+        return result;
     }
 
     @Override
     public UploadPartResult uploadPart(UploadPartRequest uploadPartRequest) throws SdkClientException, AmazonServiceException {
-        return null;
+        uploadPartCount.incrementAndGet();
+        AtomicInteger failures = failingParts.get(uploadPartRequest.getPartNumber());
+        if (failures != null && failures.getAndDecrement() > 0) {
+            throw new SdkClientException("Connection reset", new SocketException("Connection reset"));
+        }
+        simulate(Operation.UPLOAD_PART);
+
+        PendingMultipartUpload upload = multipartUploads.get(uploadPartRequest.getUploadId());
+        if (upload == null) {
+            throw createServiceException(404, "NoSuchUpload", "The specified upload does not exist.");
+        }
+
+        byte[] content;
+        try {
+            content = uploadPartRequest.getInputStream().readNBytes((int) uploadPartRequest.getPartSize());
+        } catch (IOException exception) {
+            throw new SdkClientException(exception.getMessage());
+        }
+        throttle(content.length);
+        upload.parts().put(uploadPartRequest.getPartNumber(), content);
+
+        UploadPartResult result = new UploadPartResult();
+        result.setPartNumber(uploadPartRequest.getPartNumber());
+        result.setETag(Integer.toHexString(Arrays.hashCode(content)));
+        return result;
     }
 
     @Override
     public PartListing listParts(ListPartsRequest listPartsRequest) throws SdkClientException, AmazonServiceException {
-        return null;
+        PendingMultipartUpload upload = multipartUploads.get(listPartsRequest.getUploadId());
+        if (upload == null) {
+            throw createServiceException(404, "NoSuchUpload", "The specified upload does not exist.");
+        }
+
+        PartListing listing = new PartListing();
+        listing.setBucketName(listPartsRequest.getBucketName());
+        listing.setKey(upload.key());
+        listing.setUploadId(listPartsRequest.getUploadId());
+        new TreeMap<>(upload.parts()).forEach((partNumber, content) -> {
+            PartSummary part = new PartSummary();
+            part.setPartNumber(partNumber);
+            part.setSize(content.length);
+            part.setETag(Integer.toHexString(Arrays.hashCode(content)));
+            listing.getParts().add(part);
+        });
+        return listing;
     }
 
     @Override
     public void abortMultipartUpload(AbortMultipartUploadRequest abortMultipartUploadRequest) throws SdkClientException, AmazonServiceException {
-
+        simulate(Operation.ABORT_MULTIPART_UPLOAD);
+        multipartUploads.remove(abortMultipartUploadRequest.getUploadId());
     }
 
     @Override
     public CompleteMultipartUploadResult completeMultipartUpload(CompleteMultipartUploadRequest completeMultipartUploadRequest) throws SdkClientException, AmazonServiceException {
-        return null;
+        simulate(Operation.COMPLETE_MULTIPART_UPLOAD);
+        PendingMultipartUpload upload = multipartUploads.remove(completeMultipartUploadRequest.getUploadId());
+        if (upload == null) {
+            throw createServiceException(404, "NoSuchUpload", "The specified upload does not exist.");
+        }
+
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        for (PartETag partETag : completeMultipartUploadRequest.getPartETags()) {
+            byte[] part = upload.parts().get(partETag.getPartNumber());
+            if (part == null || !Integer.toHexString(Arrays.hashCode(part)).equals(partETag.getETag())) {
+                throw createServiceException(400, "InvalidPart",
+                    "One or more of the specified parts could not be found.");
+            }
+            content.writeBytes(part);
+        }
+
+        byte[] bytes = content.toByteArray();
+        ObjectMetadata metadata = store(upload.key(), bytes, upload.metadata(),
+            BinaryUtils.toHex(Md5Utils.computeMD5Hash(bytes)) + "-" + completeMultipartUploadRequest.getPartETags().size());
+
+        CompleteMultipartUploadResult result = new CompleteMultipartUploadResult();
+        result.setBucketName(completeMultipartUploadRequest.getBucketName());
+        result.setKey(upload.key());
+        result.setETag(metadata.getETag());
+        return result;
     }
 
     @Override
     public MultipartUploadListing listMultipartUploads(ListMultipartUploadsRequest listMultipartUploadsRequest) throws SdkClientException, AmazonServiceException {
-        return null;
+        MultipartUploadListing listing = new MultipartUploadListing();
+        listing.setBucketName(listMultipartUploadsRequest.getBucketName());
+        for (Map.Entry<String, PendingMultipartUpload> entry : multipartUploads.entrySet()) {
+            MultipartUpload upload = new MultipartUpload();
+            upload.setUploadId(entry.getKey());
+            upload.setKey(entry.getValue().key());
+            listing.getMultipartUploads().add(upload);
+        }
+        return listing;
     }
 
     @Override
@@ -708,6 +1301,7 @@ public class AmazonS3Fake implements AmazonS3 {
         if (s.equals("dummy")) {
             throw new SdkClientException("Forbidden");
         }
+        simulate(Operation.HEAD_OBJECT);
         return bucketObjects.containsKey(s1);
     }
 
@@ -0,0 +1,144 @@
+/*
+ *  Copyright 2024 Dataport. All rights reserved. Developed as part of the MERLOT project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package eu.merloteducation.s3library.service;
+
+import com.amazonaws.SdkClientException;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AmazonS3FakeTest {
+    private static final String BUCKET = "merlot-storage-test";
+
+    private AmazonS3Fake s3;
+
+    @BeforeEach
+    public void setup() {
+
+        s3 = new AmazonS3Fake();
+    }
+
+    @Test
+    void testListObjectsWithDelimiter() {
+
+        for (String key : List.of("a/1", "a/b/1", "a/b/2", "a/c/1", "a/d", "b/1")) {
+            put(key, "content");
+        }
+
+        List<String> entries = new ArrayList<>();
+        String token = null;
+        do {
+            ListObjectsV2Result result = s3.listObjectsV2(new ListObjectsV2Request().withBucketName(BUCKET)
+                .withPrefix("a/").withDelimiter("/").withMaxKeys(2).withContinuationToken(token));
+            assertTrue(result.getKeyCount() <= 2);
+            result.getObjectSummaries().stream().map(S3ObjectSummary::getKey).forEach(entries::add);
+            entries.addAll(result.getCommonPrefixes());
+            token = result.isTruncated() ? result.getNextContinuationToken() : null;
+        } while (token != null);
+
+        assertEquals(List.of("a/1", "a/b/", "a/c/", "a/d"), entries.stream().sorted().toList());
+    }
+
+    @Test
+    void testGetObjectRangeAndConditions() throws IOException {
+
+        String eTag = put("item", "Hello World!");
+
+        assertEquals("World", read(new GetObjectRequest(BUCKET, "item").withRange(6, 10)));
+        assertEquals("World!", read(new GetObjectRequest(BUCKET, "item").withRange(6)));
+        assertNull(s3.getObject(new GetObjectRequest(BUCKET, "item").withMatchingETagConstraint("other")));
+        assertNull(s3.getObject(new GetObjectRequest(BUCKET, "item").withNonmatchingETagConstraint(eTag)));
+        assertEquals(416, assertThrows(AmazonS3Exception.class,
+            () -> s3.getObject(new GetObjectRequest(BUCKET, "item").withRange(12, 20))).getStatusCode());
+        assertEquals(404, assertThrows(AmazonS3Exception.class,
+            () -> s3.getObject(new GetObjectRequest(BUCKET, "missing"))).getStatusCode());
+    }
+
+    @Test
+    void testInjectedFailures() {
+
+        put("item", "content");
+        s3.failOperation(AmazonS3Fake.Operation.GET_OBJECT, 2, 503, "SlowDown");
+
+        AmazonS3Exception exception = assertThrows(AmazonS3Exception.class,
+            () -> s3.getObject(new GetObjectRequest(BUCKET, "item")));
+        assertEquals(503, exception.getStatusCode());
+        assertEquals("SlowDown", exception.getErrorCode());
+        assertThrows(AmazonS3Exception.class, () -> s3.getObject(new GetObjectRequest(BUCKET, "item")));
+        assertNotNull(s3.getObject(new GetObjectRequest(BUCKET, "item")));
+
+        s3.setFailureRate(AmazonS3Fake.Operation.PUT_OBJECT, 1, 0, null);
+        assertThrows(SdkClientException.class, () -> put("other", "content"));
+        s3.resetFaults();
+        put("other", "content");
+    }
+
+    @Test
+    void testLatencyAndThroughputLimit() throws Exception {
+
+        s3.setLatency(AmazonS3Fake.Operation.PUT_OBJECT, Duration.ofMillis(50));
+        long start = System.nanoTime();
+        put("item", "content");
+        assertTrue(System.nanoTime() - start >= Duration.ofMillis(50).toNanos());
+
+        // four concurrent transfers of 25KB share a limit of 1MB/s
+        s3.setThroughputLimit(1000 * 1000);
+        byte[] content = new byte[25 * 1000];
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            start = System.nanoTime();
+            List<CompletableFuture<Void>> transfers = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                String key = "item-" + i;
+                transfers.add(CompletableFuture.runAsync(
+                    () -> s3.putObject(BUCKET, key, new ByteArrayInputStream(content), new ObjectMetadata()),
+                    executor));
+            }
+            CompletableFuture.allOf(transfers.toArray(new CompletableFuture[0])).get();
+            assertTrue(System.nanoTime() - start >= Duration.ofMillis(100).toNanos());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private String put(String key, String content) {
+
+        return s3.putObject(BUCKET, key, new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)),
+            new ObjectMetadata()).getETag();
+    }
+
+    private String read(GetObjectRequest request) throws IOException {
+
+        return new String(s3.getObject(request).getObjectContent().readAllBytes(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ *  Copyright 2024 Dataport. All rights reserved. Developed as part of the MERLOT project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package eu.merloteducation.s3library.service;
+
+import com.amazonaws.SdkClientException;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.S3Object;
+import eu.merloteducation.s3library.backend.AwsV1StorageBackend;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AsyncStorageClientTest {
+    private StorageClient storageClient;
+
+    private AsyncStorageClient asyncStorageClient;
+
+    @BeforeEach
+    public void setup() throws StorageClientCreationException {
+
+        storageClient = new StorageClient("accessKey", "secret", "example.com", "de", "S3SignerType",
+            "merlot-storage-test", "test");
+        ReflectionTestUtils.setField(storageClient, "backend",
+            new AwsV1StorageBackend(new AmazonS3Fake(), "merlot-storage-test"));
+        asyncStorageClient = new AsyncStorageClient(storageClient, new StorageClientProperties());
+    }
+
+    @AfterEach
+    public void tearDown() {
+
+        asyncStorageClient.close();
+        storageClient.close();
+    }
+
+    @Test
+    void testFanOut() throws ExecutionException, InterruptedException {
+
+        List<CompletableFuture<Void>> pushes = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            pushes.add(asyncStorageClient.pushItem("test:01", "item-" + i, ("data-" + i).getBytes()));
+        }
+        CompletableFuture.allOf(pushes.toArray(new CompletableFuture[0])).get();
+
+        assertEquals(100, asyncStorageClient.listItems("test:01").get().size());
+
+        List<CompletableFuture<byte[]>> gets = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            gets.add(asyncStorageClient.getItem("test:01", "item-" + i));
+        }
+        for (int i = 0; i < 100; i++) {
+            assertArrayEquals(("data-" + i).getBytes(), gets.get(i).get());
+        }
+
+        assertTrue(asyncStorageClient.deleteScope("test:01").get().isSuccessful());
+        assertTrue(asyncStorageClient.listItems("test:01").get().isEmpty());
+    }
+
+    @Test
+    void testFailedOperation() {
+
+        ExecutionException exception = assertThrows(ExecutionException.class,
+            () -> asyncStorageClient.deleteItem("dummy:00", "dummy").get());
+        assertInstanceOf(StorageClientException.class, exception.getCause());
+        assertEquals(String.format("The item you want to delete (%s) does not exist.", "dummy"),
+            exception.getCause().getMessage());
+    }
+
+    @Test
+    void testFailedOperationWithError() throws ExecutionException, InterruptedException {
+
+        AmazonS3Fake s3Fake = new AmazonS3Fake() {
+            @Override
+            public S3Object getObject(GetObjectRequest getObjectRequest) {
+                throw new LinkageError("broken");
+            }
+        };
+        ReflectionTestUtils.setField(storageClient, "backend", new AwsV1StorageBackend(s3Fake, "merlot-storage-test"));
+        s3Fake.putObject("merlot-storage-test", "test/test:01/item", new ByteArrayInputStream(new byte[1]),
+            null);
+
+        ExecutionException exception = assertThrows(ExecutionException.class,
+            () -> asyncStorageClient.getItem("test:01", "item").get(5, TimeUnit.SECONDS));
+        assertInstanceOf(LinkageError.class, exception.getCause());
+        assertEquals(List.of("item"), asyncStorageClient.listItems("test:01").get());
+    }
+
+    @Test
+    void testMaxInFlight() throws ExecutionException, InterruptedException, StorageClientCreationException {
+
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        AmazonS3Fake s3Fake = new AmazonS3Fake() {
+            @Override
+            public S3Object getObject(GetObjectRequest getObjectRequest) {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException exception) {
+                    Thread.currentThread().interrupt();
+                    throw new SdkClientException(exception.getMessage());
+                } finally {
+                    running.decrementAndGet();
+                }
+                return super.getObject(getObjectRequest);
+            }
+        };
+        ReflectionTestUtils.setField(storageClient, "backend", new AwsV1StorageBackend(s3Fake, "merlot-storage-test"));
+        s3Fake.putObject("merlot-storage-test", "test/test:01/item", new ByteArrayInputStream(new byte[1]),
+            null);
+
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        try {
+            AsyncStorageClient cappedClient = new AsyncStorageClient(storageClient, executor, 3);
+            List<CompletableFuture<byte[]>> gets = new ArrayList<>();
+            for (int i = 0; i < 30; i++) {
+                gets.add(cappedClient.getItem("test:01", "item"));
+            }
+            CompletableFuture.allOf(gets.toArray(new CompletableFuture[0])).get();
+        } finally {
+            executor.shutdown();
+        }
+
+        assertTrue(maxRunning.get() <= 3);
+    }
+
+    @Test
+    void testRejectedOperation() throws StorageClientCreationException {
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        executor.shutdown();
+        AsyncStorageClient rejectingClient = new AsyncStorageClient(storageClient, executor, 1);
+
+        // a rejected operation fails and returns its permit, so the next operation is not stuck in the queue
+        for (int i = 0; i < 2; i++) {
+            CompletableFuture<byte[]> get = rejectingClient.getItem("test:01", "item");
+            assertTrue(get.isCompletedExceptionally());
+            ExecutionException exception = assertThrows(ExecutionException.class, get::get);
+            assertInstanceOf(RejectedExecutionException.class, exception.getCause());
+        }
+    }
+
+    @Test
+    void testInvalidMaxInFlight() {
+
+        StorageClientProperties properties = new StorageClientProperties();
+        properties.getAsync().setMaxInFlight(0);
+        assertThrows(StorageClientCreationException.class,
+            () -> new AsyncStorageClient(storageClient, properties));
+    }
+}
@@ -16,20 +16,44 @@
 
 package eu.merloteducation.s3library.service;
 
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ListMultipartUploadsRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.S3Object;
+import eu.merloteducation.s3library.backend.AwsV1StorageBackend;
+import eu.merloteducation.s3library.backend.StorageBackendException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
 @SpringBootTest(classes = { StorageClient.class })
+@EnableConfigurationProperties(StorageClientProperties.class)
 class StorageClientTest {
     @Autowired
     StorageClient storageClient;
@@ -57,7 +81,7 @@ class StorageClientTest {
 
     @BeforeEach
     public void setup() {
-        ReflectionTestUtils.setField(storageClient, "s3Client", new AmazonS3Fake());
+        ReflectionTestUtils.setField(storageClient, "backend", new AwsV1StorageBackend(new AmazonS3Fake(), bucket));
     }
 
     @Test
@@ -81,6 +105,90 @@ class StorageClientTest {
         deleteTestData(referenceId, key1, key2);
     }
 
+    @Test
+    void testPushItemStream() throws IOException, StorageClientException {
+
+        String referenceId = "test:01";
+        String key1 = "test";
+        String key2 = "test-copy";
+
+        byte[] testData = getTestData();
+        storageClient.pushItem(referenceId, key1, new ByteArrayInputStream(testData), testData.length);
+        storageClient.pushItem(referenceId, key2, new ByteArrayInputStream(testData), testData.length, "text/plain");
+
+        assertArrayEquals(testData, storageClient.getItem(referenceId, key1));
+        assertArrayEquals(testData, storageClient.getItem(referenceId, key2));
+
+        deleteTestData(referenceId, key1, key2);
+    }
+
+    @Test
+    void testPushItemStreamWithNegativeLength() {
+
+        Exception exception = assertThrows(StorageClientException.class,
+            () -> storageClient.pushItem("test:01", "test", new ByteArrayInputStream(getTestData()), -1));
+        String expectedMessage = String.format(
+            "The content length of the item you want to push (%s) must not be negative.", "test");
+        assertEquals(expectedMessage, exception.getMessage());
+    }
+
+    @Test
+    void testPushItemMultipart() throws IOException, StorageClientException, StorageClientCreationException {
+
+        AmazonS3Fake s3Fake = new AmazonS3Fake();
+        try (StorageClient client = createMultipartClient(s3Fake)) {
+            byte[] testData = getLargeTestData(12 * 1024 * 1024 + 17);
+            client.pushItem("test:01", "large", new ByteArrayInputStream(testData), testData.length);
+
+            assertEquals(3, s3Fake.getUploadPartCount());
+            assertArrayEquals(testData, client.getItem("test:01", "large"));
+            assertTrue(s3Fake.listMultipartUploads(new ListMultipartUploadsRequest(bucket)).getMultipartUploads()
+                .isEmpty());
+        }
+    }
+
+    @Test
+    void testPushItemMultipartRetriesPart() throws IOException, StorageClientException,
+        StorageClientCreationException {
+
+        AmazonS3Fake s3Fake = new AmazonS3Fake();
+        s3Fake.failUploadPart(2, 2);
+        try (StorageClient client = createMultipartClient(s3Fake)) {
+            byte[] testData = getLargeTestData(12 * 1024 * 1024);
+            client.pushItem("test:01", "large", testData);
+
+            assertEquals(5, s3Fake.getUploadPartCount());
+            assertArrayEquals(testData, client.getItem("test:01", "large"));
+        }
+    }
+
+    @Test
+    void testPushItemMultipartAbortsOnFailure() throws StorageClientCreationException {
+
+        AmazonS3Fake s3Fake = new AmazonS3Fake();
+        s3Fake.failUploadPart(2, 4);
+        try (StorageClient client = createMultipartClient(s3Fake)) {
+            byte[] testData = getLargeTestData(12 * 1024 * 1024);
+
+            Exception exception = assertThrows(StorageClientException.class,
+                () -> client.pushItem("test:01", "large", testData));
+            assertEquals("Connection reset", exception.getMessage());
+            assertTrue(s3Fake.listMultipartUploads(new ListMultipartUploadsRequest(bucket)).getMultipartUploads()
+                .isEmpty());
+            assertThrows(StorageClientException.class, () -> client.getItem("test:01", "large"));
+        }
+    }
+
+    @Test
+    void testInvalidMultipartPartSize() {
+
+        StorageClientProperties properties = new StorageClientProperties();
+        properties.getMultipart().setPartSize(DataSize.ofMegabytes(1));
+        assertThrows(StorageClientCreationException.class,
+            () -> new StorageClient(accessKey, secret, serviceEndpoint, signingRegion, signerType, bucket,
+                rootDirectory, properties));
+    }
+
     @Test
     void testListItems() throws StorageClientException {
 
@@ -97,6 +205,48 @@ class StorageClientTest {
         deleteTestData(referenceId, key1, key2);
     }
 
+    @Test
+    void testListItemsAcrossPages() throws StorageClientException {
+
+        AmazonS3Fake s3Fake = new AmazonS3Fake();
+        ReflectionTestUtils.setField(storageClient, "backend", new AwsV1StorageBackend(s3Fake, bucket));
+        for (int i = 0; i < 2500; i++) {
+            storageClient.pushItem("test:01", String.format("item-%04d", i), getTestData());
+        }
+        storageClient.pushItem("test:02", "other", getTestData());
+
+        List<String> listOfItems = storageClient.listItems("test:01");
+        assertEquals(2500, listOfItems.size());
+        assertEquals("item-0000", listOfItems.get(0));
+        assertEquals("item-2499", listOfItems.get(2499));
+        assertEquals(3, s3Fake.getListObjectsV2Count());
+    }
+
+    @Test
+    void testStreamItems() throws StorageClientException {
+
+        AmazonS3Fake s3Fake = new AmazonS3Fake();
+        ReflectionTestUtils.setField(storageClient, "backend", new AwsV1StorageBackend(s3Fake, bucket));
+        for (int i = 0; i < 10; i++) {
+            storageClient.pushItem("test:01", "item-" + i, getTestData());
+        }
+
+        try (Stream<String> items = storageClient.streamItems("test:01", 3, "item-4")) {
+            assertEquals(List.of("item-5", "item-6"), items.limit(2).toList());
+        }
+
+        try (Stream<String> items = storageClient.streamItems("test:01", 3, "item-4")) {
+            assertEquals(List.of("item-5", "item-6", "item-7", "item-8", "item-9"), items.toList());
+        }
+    }
+
+    @Test
+    void testStreamItemsWithInvalidPageSize() {
+
+        assertThrows(StorageClientException.class, () -> storageClient.streamItems("test:01", 0, null));
+        assertThrows(StorageClientException.class, () -> storageClient.streamItems("test:01", 1001, null));
+    }
+
     @Test
     void testGetItem() throws IOException, StorageClientException {
 
@@ -116,6 +266,166 @@ class StorageClientTest {
         deleteTestData(referenceId, key1, key2);
     }
 
+    @Test
+    void testGetItemStream() throws IOException, StorageClientException {
+
+        String referenceId = "test:01";
+        String key1 = "test";
+        String key2 = "test-copy";
+
+        pushTestData(referenceId, key1, key2);
+
+        byte[] dataFromLocal = getTestData();
+        try (StorageItemInputStream itemStream = storageClient.getItemStream(referenceId, key1)) {
+            assertEquals(dataFromLocal.length, itemStream.getContentLength());
+            assertArrayEquals(dataFromLocal, itemStream.readAllBytes());
+        }
+
+        // closing a partially read stream must not fail
+        try (StorageItemInputStream itemStream = storageClient.getItemStream(referenceId, key2)) {
+            assertEquals(dataFromLocal[0], itemStream.read());
+        }
+
+        deleteTestData(referenceId, key1, key2);
+    }
+
+    @Test
+    void testTransferItem() throws IOException, StorageClientException {
+
+        String referenceId = "test:01";
+        String key1 = "test";
+        String key2 = "test-copy";
+
+        pushTestData(referenceId, key1, key2);
+
+        ByteArrayOutputStream target = new ByteArrayOutputStream();
+        long transferred = storageClient.transferItem(referenceId, key1, target);
+
+        assertEquals(getTestData().length, transferred);
+        assertArrayEquals(getTestData(), target.toByteArray());
+
+        deleteTestData(referenceId, key1, key2);
+    }
+
+    @Test
+    void testGetNonExistentItemStream() {
+
+        Exception exception = assertThrows(StorageClientException.class,
+            () -> storageClient.getItemStream("dummy:00", "dummy"));
+        assertTrue(exception.getMessage().contains("The specified key does not exist"));
+    }
+
+    @Test
+    void testDownloadItem(@TempDir Path tempDir) throws IOException, StorageClientException {
+
+        String referenceId = "test:01";
+        String key1 = "test";
+        String key2 = "test-copy";
+
+        pushTestData(referenceId, key1, key2);
+
+        Path target = tempDir.resolve("download");
+        assertEquals(getTestData().length, storageClient.downloadItem(referenceId, key1, target));
+        assertArrayEquals(getTestData(), Files.readAllBytes(target));
+
+        deleteTestData(referenceId, key1, key2);
+    }
+
+    @Test
+    void testDownloadItemInRanges(@TempDir Path tempDir) throws IOException, StorageClientException,
+        StorageClientCreationException {
+
+        StorageClientProperties properties = new StorageClientProperties();
+        properties.getRangedDownload().setThreshold(DataSize.ofKilobytes(1));
+        properties.getRangedDownload().setRangeSize(DataSize.ofBytes(1000));
+        properties.getRangedDownload().setConcurrency(3);
+        try (StorageClient client = new StorageClient(accessKey, secret, serviceEndpoint, signingRegion, signerType,
+            bucket, rootDirectory, properties)) {
+            ReflectionTestUtils.setField(client, "backend", new AwsV1StorageBackend(new AmazonS3Fake(), bucket));
+
+            byte[] testData = getLargeTestData(10500);
+            client.pushItem("test:01", "large", testData);
+
+            Path target = tempDir.resolve("download");
+            Files.write(target, getLargeTestData(20000));
+            assertEquals(testData.length, client.downloadItem("test:01", "large", target));
+            assertArrayEquals(testData, Files.readAllBytes(target));
+        }
+
+        // a modification of the item during the download fails it without retrying the range
+        properties.getRangedDownload().setConcurrency(1);
+        AmazonS3Fake s3Fake = new AmazonS3Fake() {
+            @Override
+            public S3Object getObject(GetObjectRequest getObjectRequest) {
+                if (getObjectRequest.getRange() != null && getGetObjectCount() == 0) {
+                    putObject(bucket, getObjectRequest.getKey(), new ByteArrayInputStream(getLargeTestData(10400)),
+                        new ObjectMetadata());
+                }
+                return super.getObject(getObjectRequest);
+            }
+        };
+        try (StorageClient client = new StorageClient(accessKey, secret, serviceEndpoint, signingRegion, signerType,
+            bucket, rootDirectory, properties)) {
+            ReflectionTestUtils.setField(client, "backend", new AwsV1StorageBackend(s3Fake, bucket));
+            client.pushItem("test:01", "large", getLargeTestData(10500));
+
+            StorageClientException exception = assertThrows(StorageClientException.class,
+                () -> client.downloadItem("test:01", "large", tempDir.resolve("modified")));
+            assertEquals("The item was modified while it was downloaded.", exception.getMessage());
+            assertEquals(1, s3Fake.getGetObjectCount());
+        }
+
+        // with retries of the client a failing range is only sent as often as the retries allow
+        properties.getRetry().setBaseDelay(Duration.ofMillis(1));
+        properties.getRetry().setMaxDelay(Duration.ofMillis(10));
+        AmazonS3Fake failingFake = new AmazonS3Fake();
+        try (StorageClient client = new StorageClient(accessKey, secret, serviceEndpoint, signingRegion, signerType,
+            bucket, rootDirectory, properties)) {
+            ReflectionTestUtils.setField(client, "backend",
+                new RetryingStorageBackend(new AwsV1StorageBackend(failingFake, bucket), properties.getRetry()));
+            client.pushItem("test:01", "large", getLargeTestData(10500));
+
+            failingFake.failOperation(AmazonS3Fake.Operation.GET_OBJECT, 20, 503, "SlowDown");
+            assertThrows(StorageClientException.class,
+                () -> client.downloadItem("test:01", "large", tempDir.resolve("failing")));
+            assertEquals(properties.getRetry().getMaxAttempts(), failingFake.getGetObjectCount());
+        }
+    }
+
+    @Test
+    void testFileSystemBackend(@TempDir Path tempDir) throws IOException, StorageClientException,
+        StorageClientCreationException {
+
+        StorageClientProperties properties = new StorageClientProperties();
+        properties.setBackend(StorageClientProperties.Backend.FILESYSTEM);
+        properties.getFilesystem().setRootPath(tempDir);
+        properties.getMultipart().setThreshold(DataSize.ofMegabytes(6));
+        properties.getMultipart().setPartSize(DataSize.ofMegabytes(5));
+        try (StorageClient client = new StorageClient(accessKey, secret, serviceEndpoint, signingRegion, signerType,
+            bucket, rootDirectory, properties)) {
+            byte[] largeData = getLargeTestData(12 * 1024 * 1024);
+            client.pushItem("test:01", "large", largeData);
+            client.pushItem("test:01", "small", getTestData());
+
+            assertEquals(List.of("large", "small"), client.listItems("test:01"));
+            assertArrayEquals(largeData, client.getItem("test:01", "large"));
+            assertArrayEquals(getTestData(), client.getItem("test:01", "small"));
+
+            client.deleteItem("test:01", "small");
+            assertEquals(List.of("large"), client.listItems("test:01"));
+            assertTrue(client.deleteScope("test:01").isSuccessful());
+            assertTrue(client.listItems("test:01").isEmpty());
+        }
+    }
+
+    @Test
+    void testDownloadNonExistentItem(@TempDir Path tempDir) {
+
+        Path target = tempDir.resolve("download");
+        assertThrows(StorageClientException.class, () -> storageClient.downloadItem("dummy:00", "dummy", target));
+        assertFalse(Files.exists(target));
+    }
+
     @Test
     void testDeleteItem() throws StorageClientException {
 
@@ -137,6 +447,54 @@ class StorageClientTest {
         assertFalse(listOfItemsAfterDelete.contains(key2));
     }
 
+    @Test
+    void testDeleteItems() throws StorageClientException {
+
+        AmazonS3Fake s3Fake = new AmazonS3Fake();
+        ReflectionTestUtils.setField(storageClient, "backend", new AwsV1StorageBackend(s3Fake, bucket));
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < 2500; i++) {
+            keys.add("item-" + i);
+            storageClient.pushItem("test:01", "item-" + i, getTestData());
+        }
+        s3Fake.failDeleteKey(rootDirectory + "/test:01/item-7");
+
+        BatchDeleteResult result = storageClient.deleteItems("test:01", keys);
+
+        assertFalse(result.isSuccessful());
+        assertEquals(2499, result.deletedItems().size());
+        assertEquals(Map.of("item-7", "Access Denied"), result.failedItems());
+        assertEquals(3, s3Fake.getDeleteObjectsCount());
+        assertEquals(List.of("item-7"), storageClient.listItems("test:01"));
+    }
+
+    @Test
+    void testDeleteScope() throws StorageClientException {
+
+        AmazonS3Fake s3Fake = new AmazonS3Fake();
+        ReflectionTestUtils.setField(storageClient, "backend", new AwsV1StorageBackend(s3Fake, bucket));
+        for (int i = 0; i < 2500; i++) {
+            storageClient.pushItem("test:01", "item-" + i, getTestData());
+        }
+        storageClient.pushItem("test:02", "other", getTestData());
+
+        BatchDeleteResult result = storageClient.deleteScope("test:01");
+
+        assertTrue(result.isSuccessful());
+        assertEquals(2500, result.deletedItems().size());
+        assertTrue(result.deletedItems().contains("item-42"));
+        assertTrue(storageClient.listItems("test:01").isEmpty());
+        assertEquals(List.of("other"), storageClient.listItems("test:02"));
+    }
+
+    @Test
+    void testDeleteScopeForNonExistentReferenceId() throws StorageClientException {
+
+        BatchDeleteResult result = storageClient.deleteScope("dummy:00");
+        assertTrue(result.isSuccessful());
+        assertTrue(result.deletedItems().isEmpty());
+    }
+
     @Test
     void testDeleteNonExistentItem() {
 
@@ -175,13 +533,774 @@ class StorageClientTest {
                 rootDirectory));
     }
 
+    @Test
+    void testItemCache() throws IOException, StorageClientException, StorageClientCreationException {
+
+        AmazonS3Fake s3Fake = new AmazonS3Fake();
+        try (StorageClient client = createCachingClient(s3Fake, Duration.ofMinutes(5))) {
+            client.pushItem("test:01", "cached", getTestData());
+
+            byte[] item = client.getItem("test:01", "cached");
+            item[0] = 0;
+            assertArrayEquals(getTestData(), client.getItem("test:01", "cached"));
+            assertEquals(1, s3Fake.getGetObjectCount());
+
+            client.pushItem("test:01", "cached", "Changed".getBytes());
+            assertArrayEquals("Changed".getBytes(), client.getItem("test:01", "cached"));
+            assertEquals(2, s3Fake.getGetObjectCount());
+
+            client.deleteItem("test:01", "cached");
+            assertThrows(StorageClientException.class, () -> client.getItem("test:01", "cached"));
+        }
+
+        // a read that overlaps a write is only dropped if the write is to the same item or its scope
+        MemoryItemCache cache = new MemoryItemCache(1024, 1024, Duration.ofMinutes(5));
+        long generation = cache.getGeneration();
+        cache.invalidate("test:01/other");
+        cache.put("test:01/item", getTestData(), "etag", generation);
+        assertNotNull(cache.get("test:01/item"));
+        generation = cache.getGeneration();
+        cache.invalidate("test:01/item");
+        cache.put("test:01/item", getTestData(), "etag", generation);
+        assertNull(cache.get("test:01/item"));
+        generation = cache.getGeneration();
+        cache.invalidatePrefix("test:01/");
+        cache.put("test:01/item", getTestData(), "etag", generation);
+        cache.put("test:02/item", getTestData(), "etag", generation);
+        assertNull(cache.get("test:01/item"));
+        assertNotNull(cache.get("test:02/item"));
+    }
+
+    @Test
+    void testItemCacheRevalidation() throws IOException, StorageClientException, StorageClientCreationException {
+
+        AmazonS3Fake s3Fake = new AmazonS3Fake();
+        try (StorageClient client = createCachingClient(s3Fake, Duration.ZERO)) {
+            client.pushItem("test:01", "cached", getTestData());
+            assertArrayEquals(getTestData(), client.getItem("test:01", "cached"));
+
+            // not modified, served from the cache after the conditional request
+            assertArrayEquals(getTestData(), client.getItem("test:01", "cached"));
+            assertEquals(2, s3Fake.getGetObjectCount());
+
+            // modified by another node, the conditional request returns the new content
+            s3Fake.putObject(bucket, rootDirectory + "/test:01/cached", new ByteArrayInputStream("Changed".getBytes()),
+                null);
+            assertArrayEquals("Changed".getBytes(), client.getItem("test:01", "cached"));
+        }
+    }
+
+    @Test
+    void testItemCacheEviction() throws IOException, StorageClientException, StorageClientCreationException {
+
+        AmazonS3Fake s3Fake = new AmazonS3Fake();
+        try (StorageClient client = createCachingClient(s3Fake, Duration.ofMinutes(5))) {
+            MemoryItemCache itemCache = (MemoryItemCache) ReflectionTestUtils.getField(client, "itemCache");
+            client.pushItem("test:01", "first", getLargeTestData(600));
+            client.pushItem("test:01", "second", getLargeTestData(600));
+            client.pushItem("test:01", "large", getLargeTestData(2000));
+
+            client.getItem("test:01", "first");
+            client.getItem("test:01", "second");
+            client.getItem("test:01", "large");
+            assertEquals(600, itemCache.getSize());
+            assertNull(itemCache.get(rootDirectory + "/test:01/first"));
+            assertNull(itemCache.get(rootDirectory + "/test:01/large"));
+
+            client.deleteScope("test:01");
+            assertEquals(0, itemCache.getSize());
+        }
+    }
+
+    @Test
+    void testDiskCache(@TempDir Path tempDir) throws IOException, StorageClientException,
+        StorageClientCreationException {
+
+        AmazonS3Fake s3Fake = new AmazonS3Fake();
+        byte[] testData = getLargeTestData(600);
+        try (StorageClient client = createDiskCachingClient(s3Fake, tempDir)) {
+            client.pushItem("test:01", "cached", testData);
+            assertArrayEquals(testData, client.getItem("test:01", "cached"));
+        }
+
+        // the index is rebuilt from the files left by the previous client
+        try (StorageClient client = createDiskCachingClient(s3Fake, tempDir)) {
+            DiskItemCache diskCache = (DiskItemCache) ReflectionTestUtils.getField(client, "diskCache");
+            assertEquals(600, diskCache.getSize());
+            assertArrayEquals(testData, client.getItem("test:01", "cached"));
+
+            s3Fake.putObject(bucket, rootDirectory + "/test:01/cached", new ByteArrayInputStream("Changed".getBytes()),
+                null);
+            assertArrayEquals("Changed".getBytes(), client.getItem("test:01", "cached"));
+            assertEquals("Changed".length(), diskCache.getSize());
+
+            client.pushItem("test:01", "first", getLargeTestData(600));
+            client.pushItem("test:01", "second", getLargeTestData(700));
+            client.getItem("test:01", "first");
+            client.getItem("test:01", "second");
+            assertEquals(700, diskCache.getSize());
+
+            client.deleteScope("test:01");
+            assertEquals(0, diskCache.getSize());
+        }
+    }
+
+    @Test
+    void testListingCache() throws StorageClientException, StorageClientCreationException {
+
+        AmazonS3Fake s3Fake = new AmazonS3Fake();
+        StorageClientProperties properties = new StorageClientProperties();
+        properties.getListingCache().setEnabled(true);
+        properties.getListingCache().setTimeToLive(Duration.ofMinutes(5));
+        try (StorageClient client = new StorageClient(accessKey, secret, serviceEndpoint, signingRegion, signerType,
+            bucket, rootDirectory, properties)) {
+            ReflectionTestUtils.setField(client, "backend", new AwsV1StorageBackend(s3Fake, bucket));
+            client.pushItem("test:01", "b", getTestData());
+
+            assertEquals(List.of("b"), client.listItems("test:01"));
+            assertEquals(1, s3Fake.getListObjectsV2Count());
+
+            client.pushItem("test:01", "a", getTestData());
+            client.pushItem("test:01", "c", getTestData());
+            client.deleteItem("test:01", "b");
+            client.deleteItems("test:01", List.of("c"));
+            assertEquals(List.of("a"), client.listItems("test:01"));
+            assertEquals(1, s3Fake.getListObjectsV2Count());
+
+            // writes of other clients are not visible until the scope is listed again
+            s3Fake.putObject(bucket, rootDirectory + "/test:01/d", new ByteArrayInputStream(getTestData()), null);
+            assertEquals(List.of("a"), client.listItems("test:01"));
+
+            client.deleteScope("test:01");
+            assertTrue(client.listItems("test:01").isEmpty());
+            assertEquals(3, s3Fake.getListObjectsV2Count());
+        }
+
+        // a listing that overlaps a write is only dropped if the write is to the same scope
+        ListingCache cache = new ListingCache(Duration.ofMinutes(5), 10);
+        long generation = cache.getGeneration();
+        cache.add("test:02/", "item");
+        cache.put("test:01/", List.of("item"), generation);
+        assertEquals(List.of("item"), cache.get("test:01/"));
+        generation = cache.getGeneration();
+        cache.remove("test:01/", "item");
+        cache.put("test:01/", List.of("item"), generation);
+        assertEquals(List.of(), cache.get("test:01/"));
+    }
+
+    @Test
+    void testInvalidClientProperties() {
+
+        StorageClientProperties properties = new StorageClientProperties();
+        properties.getClient().setMaxConnections(0);
+        assertThrows(StorageClientCreationException.class,
+            () -> new StorageClient(accessKey, secret, serviceEndpoint, signingRegion, signerType, bucket,
+                rootDirectory, properties));
+
+        properties.getClient().setMaxConnections(50);
+        properties.getClient().setSocketTimeout(Duration.ofSeconds(-1));
+        assertThrows(StorageClientCreationException.class,
+            () -> new StorageClient(accessKey, secret, serviceEndpoint, signingRegion, signerType, bucket,
+                rootDirectory, properties));
+
+        properties.getClient().setSocketTimeout(Duration.ofSeconds(50));
+        properties.getRetry().setMaxDelay(Duration.ofMillis(10));
+        assertThrows(StorageClientCreationException.class,
+            () -> new StorageClient(accessKey, secret, serviceEndpoint, signingRegion, signerType, bucket,
+                rootDirectory, properties));
+
+        properties.getRetry().setMaxDelay(Duration.ofSeconds(20));
+        properties.getChunking().setEnabled(true);
+        properties.getChunking().setMaxChunkSize(properties.getMultipart().getThreshold());
+        assertThrows(StorageClientCreationException.class,
+            () -> new StorageClient(accessKey, secret, serviceEndpoint, signingRegion, signerType, bucket,
+                rootDirectory, properties));
+    }
+
+    @Test
+    void testClientProperties() throws StorageClientCreationException {
+
+        StorageClientProperties properties = new StorageClientProperties();
+        properties.getClient().setMaxConnections(128);
+        properties.getClient().setConnectionTtl(Duration.ofMinutes(5));
+        properties.getClient().setSocketTimeout(Duration.ofSeconds(20));
+        properties.getClient().setRequestTimeout(Duration.ofSeconds(30));
+        properties.getClient().setTcpKeepAlive(true);
+        properties.getClient().setSocketReceiveBufferSize(DataSize.ofKilobytes(256));
+        properties.getClient().setUseExpectContinue(false);
+
+        ClientConfiguration configuration = ClientTransport.toClientConfiguration(properties.getClient(),
+            properties.getRetry(), signerType);
+        assertEquals(128, configuration.getMaxConnections());
+        assertEquals(300000, configuration.getConnectionTTL());
+        assertEquals(20000, configuration.getSocketTimeout());
+        assertEquals(30000, configuration.getRequestTimeout());
+        assertEquals(0, configuration.getClientExecutionTimeout());
+        assertTrue(configuration.useTcpKeepAlive());
+        assertEquals(256 * 1024, configuration.getSocketBufferSizeHints()[1]);
+        assertFalse(configuration.isUseExpectContinue());
+        assertEquals(signerType, configuration.getSignerOverride());
+
+        properties.setBackend(StorageClientProperties.Backend.AWS_V2);
+        new StorageClient(accessKey, secret, serviceEndpoint, signingRegion, signerType, bucket, rootDirectory,
+            properties).close();
+    }
+
+    @Test
+    void testRetry() throws IOException, StorageClientException, StorageClientCreationException {
+
+        AmazonS3Fake s3Fake = new AmazonS3Fake();
+        StorageClientProperties properties = new StorageClientProperties();
+        properties.getRetry().setMaxAttempts(3);
+        properties.getRetry().setBaseDelay(Duration.ofMillis(1));
+        properties.getRetry().setMaxDelay(Duration.ofMillis(10));
+        properties.getRetry().setBudget(15);
+        properties.getRetry().setRetryCost(5);
+        StorageClient client = new StorageClient(accessKey, secret, serviceEndpoint, signingRegion, signerType,
+            bucket, rootDirectory, properties);
+        ReflectionTestUtils.setField(client, "backend",
+            new RetryingStorageBackend(new AwsV1StorageBackend(s3Fake, bucket), properties.getRetry()));
+
+        client.pushItem("test:01", "test", getTestData());
+        s3Fake.failOperation(AmazonS3Fake.Operation.GET_OBJECT, 2, 503, "SlowDown");
+        assertArrayEquals(getTestData(), client.getItem("test:01", "test"));
+
+        s3Fake.failOperation(AmazonS3Fake.Operation.GET_OBJECT, 3, 0, null);
+        StorageClientException exception = assertThrows(StorageClientException.class,
+            () -> client.getItem("test:01", "test"));
+        assertEquals(3, exception.getAttempts());
+        assertInstanceOf(StorageBackendException.class, exception.getCause());
+
+        s3Fake.failOperation(AmazonS3Fake.Operation.GET_OBJECT, 1, 403, "AccessDenied");
+        exception = assertThrows(StorageClientException.class, () -> client.getItem("test:01", "test"));
+        assertEquals(1, exception.getAttempts());
+        assertEquals(403, ((StorageBackendException) exception.getCause()).getStatusCode());
+
+        // the failed retries used up the budget that the successful requests did not refill
+        s3Fake.failOperation(AmazonS3Fake.Operation.PUT_OBJECT, 10, 503, "SlowDown");
+        exception = assertThrows(StorageClientException.class,
+            () -> client.pushItem("test:01", "test", getTestData()));
+        assertEquals(1, exception.getAttempts());
+        client.close();
+    }
+
+    @Test
+    void testRetryOnlyReplaysSmallStreams() throws IOException, StorageClientException,
+        StorageClientCreationException {
+
+        AmazonS3Fake s3Fake = new AmazonS3Fake();
+        StorageClientProperties properties = new StorageClientProperties();
+        properties.getRetry().setMaxAttempts(3);
+        properties.getRetry().setBaseDelay(Duration.ofMillis(1));
+        properties.getRetry().setMaxDelay(Duration.ofMillis(10));
+        StorageClient client = new StorageClient(accessKey, secret, serviceEndpoint, signingRegion, signerType,
+            bucket, rootDirectory, properties);
+        ReflectionTestUtils.setField(client, "backend",
+            new RetryingStorageBackend(new AwsV1StorageBackend(s3Fake, bucket), properties.getRetry()));
+
+        byte[] small = getLargeTestData(1024);
+        s3Fake.failOperation(AmazonS3Fake.Operation.PUT_OBJECT, 1, 503, "SlowDown");
+        client.pushItem("test:01", "small", new BufferedInputStream(new ByteArrayInputStream(small)), small.length);
+        assertArrayEquals(small, client.getItem("test:01", "small"));
+
+        // a large stream is not buffered for a retry even though it supports marks
+        byte[] large = getLargeTestData(RetryingStorageBackend.MAX_REPLAY_SIZE * 2);
+        s3Fake.failOperation(AmazonS3Fake.Operation.PUT_OBJECT, 1, 503, "SlowDown");
+        StorageClientException exception = assertThrows(StorageClientException.class,
+            () -> client.pushItem("test:01", "large",
+                new BufferedInputStream(new ByteArrayInputStream(large), large.length + 1), large.length));
+        assertEquals(1, exception.getAttempts());
+
+        // content held in memory is always replayed
+        s3Fake.failOperation(AmazonS3Fake.Operation.PUT_OBJECT, 1, 503, "SlowDown");
+        client.pushItem("test:01", "large", large);
+        assertArrayEquals(large, client.getItem("test:01", "large"));
+        client.close();
+    }
+
+    @Test
+    void testHedging() throws IOException, StorageClientException, StorageClientCreationException {
+
+        AmazonS3Fake s3Fake = new AmazonS3Fake();
+        StorageClientProperties properties = new StorageClientProperties();
+        properties.getHedging().setEnabled(true);
+        properties.getHedging().setDelay(Duration.ofMillis(20));
+        StorageClient client = new StorageClient(accessKey, secret, serviceEndpoint, signingRegion, signerType,
+            bucket, rootDirectory, properties);
+        ReflectionTestUtils.setField(client, "backend",
+            new HedgingStorageBackend(new AwsV1StorageBackend(s3Fake, bucket), properties.getHedging()));
+
+        client.pushItem("test:01", "test", getTestData());
+        assertArrayEquals(getTestData(), client.getItem("test:01", "test"));
+        assertEquals(1, s3Fake.getGetObjectCount());
+
+        // the stalled read is answered by the hedged read
+        s3Fake.stallOperation(AmazonS3Fake.Operation.GET_OBJECT, 1, Duration.ofSeconds(5));
+        assertArrayEquals(getTestData(), client.getItem("test:01", "test"));
+        assertEquals(3, s3Fake.getGetObjectCount());
+
+        // definite errors are not hedged
+        s3Fake.failOperation(AmazonS3Fake.Operation.GET_OBJECT, 1, 404, "NoSuchKey");
+        assertThrows(StorageClientException.class, () -> client.getItem("test:01", "test"));
+        assertEquals(4, s3Fake.getGetObjectCount());
+
+        // streamed reads are not hedged
+        s3Fake.stallOperation(AmazonS3Fake.Operation.GET_OBJECT, 1, Duration.ofMillis(200));
+        int getCount = s3Fake.getGetObjectCount();
+        try (StorageItemInputStream itemStream = client.getItemStream("test:01", "test")) {
+            assertArrayEquals(getTestData(), itemStream.readAllBytes());
+        }
+        assertEquals(1, s3Fake.getGetObjectCount() - getCount);
+        client.close();
+    }
+
+    @Test
+    void testRateLimit() throws IOException, StorageClientException, StorageClientCreationException {
+
+        StorageClientProperties properties = new StorageClientProperties();
+        properties.getRateLimit().setEnabled(true);
+        properties.getRateLimit().setWriteRate(20);
+        // the burst is shorter than the write interval, but lets through the lookups preceding each write
+        properties.getRateLimit().setBurst(Duration.ofMillis(1));
+        StorageClient client = new StorageClient(accessKey, secret, serviceEndpoint, signingRegion, signerType,
+            bucket, rootDirectory, properties);
+        // the clock only advances while a request waits
+        AtomicLong clock = new AtomicLong();
+        List<Long> waits = new ArrayList<>();
+        ReflectionTestUtils.setField(client, "backend",
+            new RateLimitingStorageBackend(new AwsV1StorageBackend(new AmazonS3Fake(), bucket),
+                properties.getRateLimit(), clock::get, nanos -> {
+                    waits.add(nanos);
+                    clock.addAndGet(nanos);
+                }));
+
+        // writes to one prefix are paced, writes to other prefixes and reads are not
+        for (int i = 0; i < 3; i++) {
+            client.pushItem("test:01", "test" + i, getTestData());
+        }
+        long interval = Duration.ofMillis(50).toNanos();
+        assertEquals(List.of(interval, interval), waits);
+        client.pushItem("test:02", "test", getTestData());
+        client.getItem("test:01", "test0");
+        assertEquals(2, waits.size());
+
+        // requests that would wait longer than the maximum wait time fail
+        properties.getRateLimit().setMaxWait(Duration.ofMillis(10));
+        client.pushItem("test:03", "test", getTestData());
+        StorageClientException exception = assertThrows(StorageClientException.class,
+            () -> client.pushItem("test:03", "test", getTestData()));
+        assertTrue(exception.getMessage().contains("maximum wait time"));
+        client.close();
+    }
+
+    @Test
+    void testCompression(@TempDir Path tempDir) throws IOException, StorageClientException,
+        StorageClientCreationException {
+
+        byte[] document = "{\"name\": \"test\", \"value\": 42}\n".repeat(200).getBytes();
+        for (StorageClientProperties.CompressionCodec codec : StorageClientProperties.CompressionCodec.values()) {
+            AmazonS3Fake s3Fake = new AmazonS3Fake();
+            StorageClient client = createCompressingClient(s3Fake, codec);
+            client.pushItem("test:01", "document", document);
+
+            ObjectMetadata metadata = s3Fake.getObjectMetadata(bucket, rootDirectory + "/test:01/document");
+            assertEquals(codec.name().toLowerCase(), metadata.getUserMetaDataOf(ItemCompression.ENCODING_METADATA));
+            assertTrue(metadata.getContentLength() < document.length / 5);
+            assertArrayEquals(document, client.getItem("test:01", "document"));
+            try (StorageItemInputStream itemStream = client.getItemStream("test:01", "document")) {
+                assertEquals(document.length, itemStream.getContentLength());
+                assertArrayEquals(document, itemStream.readAllBytes());
+            }
+            client.close();
+        }
+
+        // small, already compressed and incompressible items are stored as they are
+        AmazonS3Fake s3Fake = new AmazonS3Fake();
+        StorageClient client = createCompressingClient(s3Fake, StorageClientProperties.CompressionCodec.GZIP);
+        client.pushItem("test:01", "small", getTestData());
+        client.pushItem("test:01", "image", new ByteArrayInputStream(document), document.length, "image/png");
+        byte[] archive = new byte[document.length];
+        archive[0] = 0x1f;
+        archive[1] = (byte) 0x8b;
+        client.pushItem("test:01", "archive", archive);
+        client.pushItem("test:01", "random", getLargeTestData(4096));
+        for (String key : List.of("small", "image", "archive", "random")) {
+            assertNull(s3Fake.getObjectMetadata(bucket, rootDirectory + "/test:01/" + key)
+                .getUserMetaDataOf(ItemCompression.ENCODING_METADATA));
+        }
+        assertArrayEquals(archive, client.getItem("test:01", "archive"));
+
+        // large items are compressed while they are uploaded in parts
+        byte[] largeDocument = "<item><name>test</name></item>\n".repeat(200000).getBytes();
+        client.pushItem("test:01", "large", new ByteArrayInputStream(largeDocument), largeDocument.length);
+        assertEquals("gzip", s3Fake.getObjectMetadata(bucket, rootDirectory + "/test:01/large")
+            .getUserMetaDataOf(ItemCompression.ENCODING_METADATA));
+        assertEquals(1, s3Fake.getUploadPartCount());
+        Path target = tempDir.resolve("large");
+        assertEquals(largeDocument.length, client.downloadItem("test:01", "large", target));
+        assertArrayEquals(largeDocument, Files.readAllBytes(target));
+        client.close();
+    }
+
+    @Test
+    void testDeduplication(@TempDir Path tempDir) throws IOException, StorageClientException,
+        StorageClientCreationException {
+
+        AmazonS3Fake s3Fake = new AmazonS3Fake();
+        StorageClientProperties properties = new StorageClientProperties();
+        properties.getDeduplication().setEnabled(true);
+        StorageClient client = new StorageClient(accessKey, secret, serviceEndpoint, signingRegion, signerType,
+            bucket, rootDirectory, properties);
+        ReflectionTestUtils.setField(client, "backend", new AwsV1StorageBackend(s3Fake, bucket));
+        String blobPrefix = rootDirectory + "/.s3library/blobs/";
+
+        // identical contents are stored once and referenced by every item
+        byte[] attachment = getLargeTestData(2048);
+        client.pushItem("test:01", "attachment", attachment);
+        client.pushItem("test:02", "attachment", attachment);
+        client.pushItem("test:03", "copy", new ByteArrayInputStream(attachment), attachment.length, "text/plain");
+        assertEquals(1, s3Fake.listObjectsV2(bucket, blobPrefix).getObjectSummaries().size());
+        assertEquals(List.of("attachment"), client.listItems("test:01"));
+        assertArrayEquals(attachment, client.getItem("test:02", "attachment"));
+        try (StorageItemInputStream itemStream = client.getItemStream("test:03", "copy")) {
+            assertArrayEquals(attachment, itemStream.readAllBytes());
+        }
+        Path target = tempDir.resolve("attachment");
+        assertEquals(attachment.length, client.downloadItem("test:01", "attachment", target));
+        assertArrayEquals(attachment, Files.readAllBytes(target));
+
+        // the content is deleted with its last reference
+        client.deleteItem("test:01", "attachment");
+        assertTrue(client.deleteItems("test:02", List.of("attachment")).isSuccessful());
+        assertEquals(1, s3Fake.listObjectsV2(bucket, blobPrefix).getObjectSummaries().size());
+        client.pushItem("test:03", "other", getTestData());
+        client.deleteScope("test:03");
+        assertTrue(s3Fake.listObjectsV2(bucket, rootDirectory + "/.s3library/").getObjectSummaries().isEmpty());
+
+        // replacing an item releases its previous content
+        client.pushItem("test:01", "test", attachment);
+        client.pushItem("test:01", "test", getTestData());
+        assertEquals(1, s3Fake.listObjectsV2(bucket, blobPrefix).getObjectSummaries().size());
+        assertArrayEquals(getTestData(), client.getItem("test:01", "test"));
+
+        // pointers replaced by plain, chunked or packed items release their content even without deduplication
+        client.pushItem("test:01", "chunked", attachment);
+        client.pushItem("test:01", "packed", getLargeTestData(512));
+        properties.getDeduplication().setEnabled(false);
+        properties.getChunking().setEnabled(true);
+        properties.getChunking().setThreshold(DataSize.ofKilobytes(64));
+        properties.getPacking().setEnabled(true);
+        client.pushItem("test:01", "test", attachment);
+        client.pushItem("test:01", "chunked", getLargeTestData(128 * 1024));
+        StorageClient packingClient = new StorageClient(accessKey, secret, serviceEndpoint, signingRegion,
+            signerType, bucket, rootDirectory, properties);
+        ReflectionTestUtils.setField(packingClient, "backend", new AwsV1StorageBackend(s3Fake, bucket));
+        packingClient.pushItems("test:01", Map.of("packed", getTestData()));
+        assertTrue(s3Fake.listObjectsV2(bucket, rootDirectory + "/.s3library/refs/").getObjectSummaries().isEmpty());
+        assertTrue(s3Fake.listObjectsV2(bucket, blobPrefix).getObjectSummaries().isEmpty());
+        assertArrayEquals(attachment, client.getItem("test:01", "test"));
+        assertArrayEquals(getTestData(), packingClient.getItem("test:01", "packed"));
+        packingClient.close();
+        client.close();
+    }
+
+    @Test
+    void testChunking(@TempDir Path tempDir) throws IOException, StorageClientException,
+        StorageClientCreationException {
+
+        AmazonS3Fake s3Fake = new AmazonS3Fake();
+        StorageClientProperties properties = new StorageClientProperties();
+        properties.getChunking().setEnabled(true);
+        properties.getChunking().setThreshold(DataSize.ofKilobytes(64));
+        properties.getChunking().setMinChunkSize(DataSize.ofKilobytes(1));
+        properties.getChunking().setAverageChunkSize(DataSize.ofKilobytes(4));
+        properties.getChunking().setMaxChunkSize(DataSize.ofKilobytes(16));
+        StorageClient client = new StorageClient(accessKey, secret, serviceEndpoint, signingRegion, signerType,
+            bucket, rootDirectory, properties);
+        ReflectionTestUtils.setField(client, "backend", new AwsV1StorageBackend(s3Fake, bucket));
+        String chunkPrefix = rootDirectory + "/.s3library/chunks/";
+
+        byte[] dataset = getLargeTestData(256 * 1024);
+        client.pushItem("test:01", "dataset", dataset);
+        int chunkCount = s3Fake.listObjectsV2(bucket, chunkPrefix).getObjectSummaries().size();
+        assertTrue(chunkCount > 16);
+        assertArrayEquals(dataset, client.getItem("test:01", "dataset"));
+
+        // inserting bytes only changes the chunks around the insertion
+        ByteArrayOutputStream changed = new ByteArrayOutputStream();
+        changed.write(dataset, 0, 100000);
+        changed.write(getLargeTestData(100));
+        changed.write(dataset, 100000, dataset.length - 100000);
+        byte[] newVersion = changed.toByteArray();
+        client.pushItem("test:01", "dataset", new ByteArrayInputStream(newVersion), newVersion.length);
+        assertTrue(s3Fake.listObjectsV2(bucket, chunkPrefix).getObjectSummaries().size() <= chunkCount + 3);
+
+        try (StorageItemInputStream itemStream = client.getItemStream("test:01", "dataset")) {
+            assertEquals(newVersion.length, itemStream.getContentLength());
+            assertArrayEquals(newVersion, itemStream.readAllBytes());
+        }
+        Path target = tempDir.resolve("dataset");
+        assertEquals(newVersion.length, client.downloadItem("test:01", "dataset", target));
+        assertArrayEquals(newVersion, Files.readAllBytes(target));
+
+        s3Fake.failOperation(AmazonS3Fake.Operation.GET_OBJECT, 2, 500, "InternalError");
+        assertThrows(StorageClientException.class, () -> client.getItem("test:01", "dataset"));
+
+        // a chunk that does not match its hash is not returned as part of the item
+        s3Fake.resetFaults();
+        String chunkKey = s3Fake.listObjectsV2(bucket, chunkPrefix).getObjectSummaries().get(0).getKey();
+        byte[] chunk = s3Fake.getObject(new GetObjectRequest(bucket, chunkKey)).getObjectContent().readAllBytes();
+        chunk[0] ^= 1;
+        s3Fake.putObject(bucket, chunkKey, new ByteArrayInputStream(chunk), new ObjectMetadata());
+        assertThrows(IOException.class, () -> client.getItem("test:01", "dataset"));
+        client.close();
+    }
+
+    @Test
+    void testPacking(@TempDir Path tempDir) throws IOException, StorageClientException,
+        StorageClientCreationException {
+
+        AmazonS3Fake s3Fake = new AmazonS3Fake();
+        StorageClientProperties properties = new StorageClientProperties();
+        properties.getPacking().setEnabled(true);
+        properties.getPacking().setMaxItemSize(DataSize.ofBytes(100));
+        properties.getPacking().setMaxPackSize(DataSize.ofKilobytes(1));
+        properties.getPacking().setCompactionInterval(Duration.ZERO);
+        StorageClient client = new StorageClient(accessKey, secret, serviceEndpoint, signingRegion, signerType,
+            bucket, rootDirectory, properties);
+        ReflectionTestUtils.setField(client, "backend", new AwsV1StorageBackend(s3Fake, bucket));
+        String packPrefix = rootDirectory + "/.s3library/packs/test:01/";
+
+        // small items are written into two packs, the large item is stored as object
+        Map<String, byte[]> items = new TreeMap<>();
+        for (int i = 0; i < 20; i++) {
+            items.put(String.format("item%02d", i), getLargeTestData(60 + i));
+        }
+        items.put("large", getLargeTestData(500));
+        client.pushItem("test:01", "item00", getTestData());
+        client.pushItems("test:01", items);
+        assertEquals(3, s3Fake.listObjectsV2(bucket, packPrefix).getObjectSummaries().size());
+        assertEquals(List.of("large"), s3Fake.listObjectsV2(bucket, rootDirectory + "/test:01/")
+            .getObjectSummaries().stream().map(summary -> summary.getKey().substring(rootDirectory.length() + 9))
+            .toList());
+        assertEquals(new ArrayList<>(items.keySet()), client.listItems("test:01"));
+        try (Stream<String> stream = client.streamItems("test:01", 5, "item17")) {
+            assertEquals(List.of("item18", "item19", "large"), stream.toList());
+        }
+        assertArrayEquals(items.get("item00"), client.getItem("test:01", "item00"));
+        assertArrayEquals(items.get("large"), client.getItem("test:01", "large"));
+        try (StorageItemInputStream itemStream = client.getItemStream("test:01", "item07")) {
+            assertArrayEquals(items.get("item07"), itemStream.readAllBytes());
+        }
+        Path target = tempDir.resolve("item19");
+        assertEquals(79, client.downloadItem("test:01", "item19", target));
+        assertArrayEquals(items.get("item19"), Files.readAllBytes(target));
+
+        // the index is shared with other clients
+        StorageClient otherClient = new StorageClient(accessKey, secret, serviceEndpoint, signingRegion, signerType,
+            bucket, rootDirectory, properties);
+        ReflectionTestUtils.setField(otherClient, "backend", new AwsV1StorageBackend(s3Fake, bucket));
+        assertArrayEquals(items.get("item03"), otherClient.getItem("test:01", "item03"));
+        otherClient.close();
+
+        // deleted and replaced items are reclaimed by the compaction
+        client.deleteItem("test:01", "item00");
+        assertTrue(client.deleteItems("test:01", List.of("item01", "item02", "item03", "item04", "item05",
+            "item06", "item07", "item08", "item09", "item10", "item11")).isSuccessful());
+        client.pushItem("test:01", "item12", getTestData());
+        assertThrows(StorageClientException.class, () -> client.getItem("test:01", "item00"));
+        assertEquals(1, client.compactScope("test:01"));
+        assertEquals(0, client.compactScope("test:01"));
+        assertArrayEquals(getTestData(), client.getItem("test:01", "item12"));
+        assertArrayEquals(items.get("item15"), client.getItem("test:01", "item15"));
+        assertEquals(List.of("item12", "item13", "item14", "item15", "item16", "item17", "item18", "item19",
+            "large"), client.listItems("test:01"));
+
+        assertEquals(9, client.deleteScope("test:01").deletedItems().size());
+        assertTrue(s3Fake.listObjectsV2(bucket, packPrefix).getObjectSummaries().isEmpty());
+        assertTrue(client.listItems("test:01").isEmpty());
+        client.close();
+    }
+
+    @Test
+    void testItemRange() throws IOException, StorageClientException, StorageClientCreationException {
+
+        AmazonS3Fake s3Fake = new AmazonS3Fake();
+        StorageClientProperties properties = new StorageClientProperties();
+        properties.getRangeRead().setReadAhead(DataSize.ofBytes(1024));
+        StorageClient client = new StorageClient(accessKey, secret, serviceEndpoint, signingRegion, signerType,
+            bucket, rootDirectory, properties);
+        ReflectionTestUtils.setField(client, "backend", new AwsV1StorageBackend(s3Fake, bucket));
+        byte[] item = getLargeTestData(4096);
+        client.pushItem("test:01", "item", item);
+
+        assertArrayEquals(Arrays.copyOfRange(item, 100, 200), client.getItemRange("test:01", "item", 100, 100));
+        assertArrayEquals(Arrays.copyOfRange(item, 4000, 4096), client.getItemRange("test:01", "item", -96, 200));
+        assertArrayEquals(Arrays.copyOfRange(item, 4000, 4010), client.getItemRange("test:01", "item", -96, 10));
+        assertArrayEquals(Arrays.copyOfRange(item, 4090, 4096), client.getItemRange("test:01", "item", 4090, 10));
+        assertEquals(0, client.getItemRange("test:01", "item", 5000, 10).length);
+        byte[] buffer = new byte[20];
+        assertEquals(10, client.getItemRange("test:01", "item", 50, buffer, 5, 10));
+        assertArrayEquals(Arrays.copyOfRange(item, 50, 60), Arrays.copyOfRange(buffer, 5, 15));
+        try (StorageItemInputStream rangeStream = client.getItemRangeStream("test:01", "item", 1000, 2000)) {
+            assertEquals(2000, rangeStream.getContentLength());
+            assertArrayEquals(Arrays.copyOfRange(item, 1000, 3000), rangeStream.readAllBytes());
+        }
+
+        // sequential small reads are served from the read-ahead window
+        int getCount = s3Fake.getGetObjectCount();
+        ItemRangeReader reader = client.getItemRangeReader("test:01", "item");
+        byte[] content = new byte[item.length];
+        int position = 0;
+        int count;
+        while ((count = reader.read(position, content, position, Math.min(100, item.length - position))) > 0) {
+            position += count;
+        }
+        assertArrayEquals(item, content);
+        assertEquals(4, s3Fake.getGetObjectCount() - getCount);
+        // the end of the item is only known after a read past it
+        assertEquals(-1, reader.read(item.length, buffer, 0, 10));
+        assertEquals(-1, reader.read(item.length + 10, buffer, 0, 10));
+        assertEquals(5, s3Fake.getGetObjectCount() - getCount);
+        client.close();
+
+        // ranges of compressed items are cut from the decompressed item
+        byte[] document = "{\"name\": \"test\", \"value\": 42}\n".repeat(200).getBytes();
+        StorageClient compressingClient = createCompressingClient(new AmazonS3Fake(),
+            StorageClientProperties.CompressionCodec.GZIP);
+        compressingClient.pushItem("test:01", "document", document);
+        assertArrayEquals(Arrays.copyOfRange(document, 3000, 3100),
+            compressingClient.getItemRange("test:01", "document", 3000, 100));
+        assertArrayEquals(Arrays.copyOfRange(document, document.length - 50, document.length),
+            compressingClient.getItemRange("test:01", "document", -50, 100));
+        compressingClient.close();
+    }
+
+    @Test
+    void testItemRangeReleasesConnection() throws IOException, StorageClientException, StorageClientCreationException {
+
+        AmazonS3Fake s3Fake = new AmazonS3Fake();
+        StorageClient client = new StorageClient(accessKey, secret, serviceEndpoint, signingRegion, signerType,
+            bucket, rootDirectory, new StorageClientProperties());
+        ReflectionTestUtils.setField(client, "backend", new AwsV1StorageBackend(s3Fake, bucket));
+        byte[] item = getLargeTestData(4096);
+        client.pushItem("test:01", "item", item);
+
+        // complete range reads stop at the end of the range and must still release the connection
+        assertArrayEquals(Arrays.copyOfRange(item, 100, 200), client.getItemRange("test:01", "item", 100, 100));
+        byte[] buffer = new byte[20];
+        assertEquals(10, client.getItemRange("test:01", "item", 50, buffer, 5, 10));
+        ItemRangeReader reader = client.getItemRangeReader("test:01", "item");
+        assertEquals(20, reader.read(1000, buffer, 0, 20));
+        assertEquals(3, s3Fake.getReleasedObjectCount());
+        assertEquals(0, s3Fake.getAbortedObjectCount());
+
+        // closing a range stream before its end aborts the connection
+        try (StorageItemInputStream rangeStream = client.getItemRangeStream("test:01", "item", 1000, 2000)) {
+            assertEquals(10, rangeStream.readNBytes(10).length);
+        }
+        assertEquals(3, s3Fake.getReleasedObjectCount());
+        assertEquals(1, s3Fake.getAbortedObjectCount());
+        client.close();
+    }
+
+    @Test
+    void testItemMetadata() throws StorageClientException, StorageClientCreationException {
+
+        AmazonS3Fake s3Fake = new AmazonS3Fake();
+        StorageClientProperties properties = new StorageClientProperties();
+        properties.getCompression().setEnabled(true);
+        properties.getPacking().setEnabled(true);
+        properties.getPacking().setMaxItemSize(DataSize.ofBytes(100));
+        properties.getPacking().setCompactionInterval(Duration.ZERO);
+        StorageClient client = new StorageClient(accessKey, secret, serviceEndpoint, signingRegion, signerType,
+            bucket, rootDirectory, properties);
+        ReflectionTestUtils.setField(client, "backend", new AwsV1StorageBackend(s3Fake, bucket));
+        byte[] document = "{\"name\": \"test\", \"value\": 42}\n".repeat(200).getBytes();
+        client.pushItem("test:01", "document", document);
+        client.pushItem("test:01", "random", getLargeTestData(2048));
+        client.pushItems("test:01", Map.of("packed", getLargeTestData(50)));
+
+        // the listing reports the stored objects without a request per item
+        int getCount = s3Fake.getGetObjectCount();
+        List<ItemInfo> items = client.listItemsWithMetadata("test:01");
+        assertEquals(List.of("document", "packed", "random"), items.stream().map(ItemInfo::key).toList());
+        assertTrue(items.get(0).size() < document.length);
+        assertEquals(new ItemInfo("packed", 50, null, null, null), items.get(1));
+        ItemInfo random = items.get(2);
+        assertEquals(2048, random.size());
+        assertNotNull(random.eTag());
+        assertNotNull(random.lastModified());
+        assertNotNull(random.storageClass());
+        assertEquals(getCount, s3Fake.getGetObjectCount());
+
+        assertEquals(document.length, client.getItemInfo("test:01", "document").size());
+        assertEquals(random, client.getItemInfo("test:01", "random"));
+        assertEquals(50, client.getItemInfo("test:01", "packed").size());
+        assertThrows(StorageClientException.class, () -> client.getItemInfo("test:01", "missing"));
+        assertEquals(getCount, s3Fake.getGetObjectCount());
+        client.close();
+    }
+
+    @Test
+    void testCopy() throws IOException, StorageClientException, StorageClientCreationException {
+
+        AmazonS3Fake s3Fake = new AmazonS3Fake();
+        StorageClientProperties properties = new StorageClientProperties();
+        properties.getDeduplication().setEnabled(true);
+        properties.getPacking().setEnabled(true);
+        properties.getPacking().setMaxItemSize(DataSize.ofBytes(100));
+        properties.getPacking().setCompactionInterval(Duration.ZERO);
+        properties.getCopy().setThreshold(DataSize.ofMegabytes(5));
+        properties.getCopy().setPartSize(DataSize.ofMegabytes(5));
+        StorageClient client = new StorageClient(accessKey, secret, serviceEndpoint, signingRegion, signerType,
+            bucket, rootDirectory, properties);
+        ReflectionTestUtils.setField(client, "backend", new AwsV1StorageBackend(s3Fake, bucket));
+        byte[] attachment = getLargeTestData(2048);
+        byte[] large = getLargeTestData(12 * 1024 * 1024);
+        client.pushItem("test:01", "attachment", attachment);
+        client.pushItems("test:01", Map.of("packed", getTestData()));
+        StorageClient multipartClient = createMultipartClient(s3Fake);
+        multipartClient.pushItem("test:01", "large", new ByteArrayInputStream(large), large.length, "text/plain");
+        multipartClient.close();
+        int putCount = s3Fake.getUploadPartCount();
+
+        // items are copied on the server side, large items in parts
+        client.copyItem("test:01", "attachment", "test:02", "attachment");
+        client.copyItem("test:01", "large", "test:02", "large");
+        client.copyItem("test:01", "packed", "test:02", "packed");
+        assertEquals(3, s3Fake.getCopyPartCount());
+        assertEquals(putCount, s3Fake.getUploadPartCount());
+        assertArrayEquals(attachment, client.getItem("test:02", "attachment"));
+        assertArrayEquals(large, client.getItem("test:02", "large"));
+        assertEquals("text/plain", s3Fake.getObjectMetadata(bucket, rootDirectory + "/test:02/large")
+            .getContentType());
+        assertArrayEquals(getTestData(), client.getItem("test:02", "packed"));
+        assertEquals(List.of("attachment", "large", "packed"), client.listItems("test:02"));
+
+        // a moved item keeps the content of its deduplicated source alive
+        client.moveItem("test:02", "attachment", "test:03", "moved");
+        assertThrows(StorageClientException.class, () -> client.getItem("test:02", "attachment"));
+        client.deleteItem("test:01", "attachment");
+        assertArrayEquals(attachment, client.getItem("test:03", "moved"));
+
+        BatchCopyResult result = client.copyScope("test:01", "test:04");
+        assertTrue(result.isSuccessful());
+        assertEquals(List.of("large", "packed"), result.copiedItems());
+        assertEquals(List.of("large", "packed"), client.listItems("test:04"));
+        assertArrayEquals(large, client.getItem("test:04", "large"));
+        assertArrayEquals(getTestData(), client.getItem("test:04", "packed"));
+        assertThrows(StorageClientException.class, () -> client.copyItem("test:01", "missing", "test:04", "item"));
+        client.close();
+    }
+
     @Test
     void testInvalidBucket() throws StorageClientCreationException {
 
         String invalidBucket = "dummy";
         StorageClient client = new StorageClient(accessKey, secret, serviceEndpoint, signingRegion, signerType,
             invalidBucket, rootDirectory);
-        ReflectionTestUtils.setField(client, "s3Client", new AmazonS3Fake());
+        ReflectionTestUtils.setField(client, "backend", new AwsV1StorageBackend(new AmazonS3Fake(), invalidBucket));
 
         String expectedMessage = "Access Denied";
 
@@ -199,10 +1318,11 @@ class StorageClientTest {
         String actualMessageList = exceptionList.getMessage();
         assertTrue(actualMessageList.contains(expectedMessage));
 
+        // the lookup of a replaced item fails before the item is written
         Exception exceptionPush = assertThrows(StorageClientException.class,
             () -> client.pushItem("dummy:00", "dummy", getTestData()));
         String actualMessagePush = exceptionPush.getMessage();
-        assertTrue(actualMessagePush.contains(expectedMessage));
+        assertTrue(actualMessagePush.contains(expectedMessageDelete));
     }
 
     private byte[] getTestData() {
@@ -210,6 +1330,71 @@ class StorageClientTest {
         return "This is test data.".getBytes();
     }
 
+    private byte[] getLargeTestData(int size) {
+
+        byte[] testData = new byte[size];
+        new Random(size).nextBytes(testData);
+        return testData;
+    }
+
+    private StorageClient createMultipartClient(AmazonS3Fake s3Fake) throws StorageClientCreationException {
+
+        StorageClientProperties properties = new StorageClientProperties();
+        properties.getMultipart().setThreshold(DataSize.ofMegabytes(5));
+        properties.getMultipart().setPartSize(DataSize.ofMegabytes(5));
+        properties.getMultipart().setConcurrency(2);
+        properties.getRetry().setBaseDelay(Duration.ofMillis(1));
+        properties.getRetry().setMaxDelay(Duration.ofMillis(10));
+        StorageClient client = new StorageClient(accessKey, secret, serviceEndpoint, signingRegion, signerType,
+            bucket, rootDirectory, properties);
+        ReflectionTestUtils.setField(client, "backend",
+            new RetryingStorageBackend(new AwsV1StorageBackend(s3Fake, bucket), properties.getRetry()));
+        return client;
+    }
+
+    private StorageClient createCompressingClient(AmazonS3Fake s3Fake, StorageClientProperties.CompressionCodec codec)
+        throws StorageClientCreationException {
+
+        StorageClientProperties properties = new StorageClientProperties();
+        properties.getCompression().setEnabled(true);
+        properties.getCompression().setCodec(codec);
+        properties.getMultipart().setThreshold(DataSize.ofMegabytes(5));
+        properties.getMultipart().setPartSize(DataSize.ofMegabytes(5));
+        properties.getRangedDownload().setThreshold(DataSize.ofMegabytes(1));
+        StorageClient client = new StorageClient(accessKey, secret, serviceEndpoint, signingRegion, signerType,
+            bucket, rootDirectory, properties);
+        ReflectionTestUtils.setField(client, "backend", new AwsV1StorageBackend(s3Fake, bucket));
+        return client;
+    }
+
+    private StorageClient createCachingClient(AmazonS3Fake s3Fake, Duration timeToLive)
+        throws StorageClientCreationException {
+
+        StorageClientProperties properties = new StorageClientProperties();
+        properties.getItemCache().setEnabled(true);
+        properties.getItemCache().setMaxSize(DataSize.ofBytes(1000));
+        properties.getItemCache().setMaxItemSize(DataSize.ofBytes(1000));
+        properties.getItemCache().setTimeToLive(timeToLive);
+        StorageClient client = new StorageClient(accessKey, secret, serviceEndpoint, signingRegion, signerType,
+            bucket, rootDirectory, properties);
+        ReflectionTestUtils.setField(client, "backend", new AwsV1StorageBackend(s3Fake, bucket));
+        return client;
+    }
+
+    private StorageClient createDiskCachingClient(AmazonS3Fake s3Fake, Path directory)
+        throws StorageClientCreationException {
+
+        StorageClientProperties properties = new StorageClientProperties();
+        properties.getDiskCache().setEnabled(true);
+        properties.getDiskCache().setDirectory(directory);
+        properties.getDiskCache().setMaxSize(DataSize.ofBytes(1000));
+        properties.getDiskCache().setMaxItemSize(DataSize.ofBytes(1000));
+        StorageClient client = new StorageClient(accessKey, secret, serviceEndpoint, signingRegion, signerType,
+            bucket, rootDirectory, properties);
+        ReflectionTestUtils.setField(client, "backend", new AwsV1StorageBackend(s3Fake, bucket));
+        return client;
+    }
+
     private void pushTestData(String referenceId, String key1, String key2) throws StorageClientException {
 
         byte[] testData = getTestData();